@@ -0,0 +1,42 @@
+package sjdb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class runs the query benchmarks over generated workloads, for each
+ * combination of relation count and predicate density (see
+ * WorkloadGenerator). A generated query joins every relation in its
+ * catalogue along a chain, plus the given fraction of the remaining
+ * possible join predicates between them, and has a selection on each
+ * relation.
+ */
+@State(Scope.Benchmark)
+public class GeneratedQueryBenchmark extends QueryBenchmark {
+	@Param({ "2", "4", "8", "12", "16", "20" })
+	public int relations;
+
+	@Param({ "0.0", "0.25" })
+	public double density;
+
+	@Param({ "1" })
+	public long seed;
+
+	@Setup
+	public void setup() throws Exception {
+		WorkloadGenerator generator = new WorkloadGenerator(this.seed, this.relations);
+		File catFile = File.createTempFile("sjdb-bench", ".txt");
+		catFile.deleteOnExit();
+		Writer out = new FileWriter(catFile);
+		generator.writeCatalogue(out);
+		out.close();
+
+		prepare(catFile.getPath(), generator.generateQuery(this.relations, this.density, 1.0));
+	}
+}
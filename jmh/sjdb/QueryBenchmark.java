@@ -0,0 +1,85 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class holds the benchmarks of the parsing, estimation and
+ * optimisation stages, which are run over the catalogue and query set up
+ * by a subclass:
+ *
+ * - catalogue: CatalogueParser.parse() over the serialised catalogue
+ * - parse: QueryParser.parse() of the query
+ * - estimate: the Estimator over the canonical plan of the query
+ * - optimise: parsing and Optimiser.optimise() of the query, end to end
+ *
+ * Each benchmark is run with each join ordering strategy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class QueryBenchmark {
+	@Param({ "GREEDY", "DYNAMIC", "MEMO" })
+	public String strategy;
+
+	private String catFile;
+	private String query;
+	private QueryParser parser;
+	private Operator plan;
+	private Estimator estimator;
+	private Optimiser optimiser;
+
+	/**
+	 * Set up the benchmarks over a catalogue and query
+	 * @param catFile Serialised catalogue
+	 * @param query Query text
+	 */
+	protected void prepare(String catFile, String query) throws Exception {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser(catFile, cat).parse();
+
+		this.catFile = catFile;
+		this.query = query;
+		this.parser = new QueryParser(cat);
+		this.plan = this.parser.parse(new StringReader(query));
+		this.estimator = new Estimator();
+		this.optimiser = new Optimiser(cat, Optimiser.Strategy.valueOf(this.strategy));
+	}
+
+	@Benchmark
+	public Catalogue catalogue() {
+		Catalogue fresh = new Catalogue();
+		new CatalogueParser(this.catFile, fresh).parse();
+		return fresh;
+	}
+
+	@Benchmark
+	public Operator parse() throws Exception {
+		return this.parser.parse(new StringReader(this.query));
+	}
+
+	@Benchmark
+	public Relation estimate() {
+		this.plan.accept(this.estimator);
+		return this.plan.getOutput();
+	}
+
+	@Benchmark
+	public Operator optimise() throws Exception {
+		return this.optimiser.optimise(this.parser.parse(new StringReader(this.query)));
+	}
+}
@@ -0,0 +1,29 @@
+package sjdb;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This class runs the query benchmarks over the sample catalogue and
+ * queries in data. Other files can be given with JMH's -p option, e.g.
+ * -p catalogue=data/unicat.txt.
+ */
+@State(Scope.Benchmark)
+public class SampleQueryBenchmark extends QueryBenchmark {
+	@Param({ "data/cat.txt" })
+	public String catalogue;
+
+	@Param({ "data/q1.txt", "data/q2.txt", "data/q3.txt", "data/q4.txt", "data/q5.txt" })
+	public String queryFile;
+
+	@Setup
+	public void setup() throws Exception {
+		String query = new String(Files.readAllBytes(new File(this.queryFile).toPath()), "UTF-8");
+		prepare(this.catalogue, query);
+	}
+}
@@ -0,0 +1,121 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class represents an Aggregate operator, which divides the tuples of
+ * its input into groups with the same values of the grouping attributes,
+ * and produces a tuple for each group holding those values followed by the
+ * results of the aggregate functions over the group. Without grouping
+ * attributes, all the tuples form a single group; an empty input has no
+ * groups, and so no output.
+ *
+ * An aggregate over a join may be computed in two phases, by a partial
+ * aggregate below the join and a final one above it (see
+ * AggregateFunction.getPartials()).
+ */
+public class Aggregate extends UnaryOperator {
+	private List<Attribute> groupBy;
+	private List<AggregateFunction> functions;
+
+	/**
+	 * Create a new aggregate operator.
+	 * @param input Child operator
+	 * @param groupBy Attributes whose values form the groups
+	 * @param functions Aggregates computed over each group
+	 */
+	public Aggregate(Operator input, List<Attribute> groupBy, List<AggregateFunction> functions) {
+		super(input);
+		this.groupBy = groupBy;
+		this.functions = functions;
+	}
+
+	/**
+	 * Return the grouping attributes
+	 * @return
+	 */
+	public List<Attribute> getGroupBy() {
+		return this.groupBy;
+	}
+
+	/**
+	 * Return the aggregates computed over each group
+	 * @return
+	 */
+	public List<AggregateFunction> getFunctions() {
+		return this.functions;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#copy(sjdb.Operator)
+	 */
+	protected Operator copy(Operator input) {
+		return new Aggregate(input, this.groupBy, this.functions);
+	}
+
+	/**
+	 * Return the attributes of the output: the grouping attributes, then
+	 * the results of the aggregates
+	 * @return
+	 */
+	public List<Attribute> getAttributes() {
+		List<Attribute> attributes = new ArrayList<Attribute>(this.groupBy);
+		for (AggregateFunction function : this.functions) {
+			attributes.add(function.getOutput());
+		}
+		return attributes;
+	}
+
+	/**
+	 * Return the attributes of the input that are read: the grouping
+	 * attributes and those aggregated by the functions
+	 * @return
+	 */
+	public List<Attribute> getInputAttributes() {
+		List<Attribute> attributes = new ArrayList<Attribute>(this.groupBy);
+		for (AggregateFunction function : this.functions) {
+			for (Attribute attr : function.getAttributes()) {
+				if (!attributes.contains(attr)) {
+					attributes.add(attr);
+				}
+			}
+		}
+		return attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = "AGGREGATE [";
+		Iterator<Attribute> iter = this.groupBy.iterator();
+
+		while (iter.hasNext()) {
+			ret += iter.next().getName() + (iter.hasNext() ? "," : ";");
+		}
+		Iterator<AggregateFunction> functions = this.functions.iterator();
+		while (functions.hasNext()) {
+			ret += functions.next().toString() + (functions.hasNext() ? "," : "");
+		}
+		ret += "] (" + getInput().toString() + ")";
+
+		return ret;
+	}
+}
@@ -0,0 +1,205 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class describes an aggregate computed by an Aggregate operator over
+ * each group of its input tuples, and the attribute that holds its result.
+ * COUNT counts the tuples of the group, SUM adds up the values of its
+ * argument, and AVG divides that sum by the number of tuples. The values
+ * summed must be decimal numbers.
+ *
+ * An aggregate may also be computed in two phases, from partial aggregates
+ * of subsets of its group (see getPartials() and getFinal()): the partial
+ * counts and sums are then themselves summed. The average of partial sums
+ * is an AVG with a count attribute, whose values are summed to give the
+ * divisor in place of the number of tuples.
+ */
+public class AggregateFunction {
+	/**
+	 * The aggregates that may be computed
+	 */
+	public enum Kind {
+		/** The number of tuples */
+		COUNT,
+		/** The sum of the values of the argument */
+		SUM,
+		/** The sum of the values of the argument, divided by the count */
+		AVG
+	}
+
+	private Kind kind;
+	private Attribute argument;
+	private Attribute count;
+	private Attribute output;
+
+	/**
+	 * Create an aggregate whose result is named after it, as in SUM(attr)
+	 * @param kind
+	 * @param argument Attribute whose values are aggregated, or null for COUNT
+	 */
+	public AggregateFunction(Kind kind, Attribute argument) {
+		this(kind, argument, null, new Attribute(kind + "(" + (argument == null ? "*" : argument.getName()) + ")"));
+	}
+
+	/**
+	 * Create an aggregate with a given result attribute
+	 * @param kind
+	 * @param argument Attribute whose values are aggregated, or null for COUNT
+	 * @param count Attribute whose values are summed to give the divisor of
+	 * an AVG, or null to divide by the number of tuples
+	 * @param output Attribute that holds the result
+	 */
+	public AggregateFunction(Kind kind, Attribute argument, Attribute count, Attribute output) {
+		this.kind = kind;
+		this.argument = argument;
+		this.count = count;
+		this.output = output;
+	}
+
+	/**
+	 * Return the kind of aggregate
+	 * @return
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * Return the attribute whose values are aggregated
+	 * @return Argument, or null for COUNT
+	 */
+	public Attribute getArgument() {
+		return this.argument;
+	}
+
+	/**
+	 * Return the attribute whose values are summed to give the divisor of
+	 * an AVG
+	 * @return Count attribute, or null if the divisor is the number of tuples
+	 */
+	public Attribute getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Return the attribute that holds the result
+	 * @return
+	 */
+	public Attribute getOutput() {
+		return this.output;
+	}
+
+	/**
+	 * Return the attributes of the input whose values are aggregated
+	 * @return
+	 */
+	public List<Attribute> getAttributes() {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		if (this.argument != null) {
+			attributes.add(this.argument);
+		}
+		if (this.count != null) {
+			attributes.add(this.count);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Return the partial aggregates from which this aggregate can be
+	 * computed by getFinal(). Each partial aggregate is a COUNT or a SUM
+	 * whose result is named after it, so partial aggregates with the same
+	 * result attribute compute the same values.
+	 * @return
+	 */
+	public List<AggregateFunction> getPartials() {
+		List<AggregateFunction> partials = new ArrayList<AggregateFunction>();
+		if (this.kind == Kind.COUNT) {
+			partials.add(new AggregateFunction(Kind.COUNT, null));
+			return partials;
+		}
+
+		partials.add(new AggregateFunction(Kind.SUM, this.argument));
+		if (this.kind == Kind.AVG) {
+			partials.add(this.count == null ? new AggregateFunction(Kind.COUNT, null) :
+					new AggregateFunction(Kind.SUM, this.count));
+		}
+		return partials;
+	}
+
+	/**
+	 * Return the aggregate that computes the result of this aggregate from
+	 * the results of its partial aggregates (see getPartials())
+	 * @return
+	 */
+	public AggregateFunction getFinal() {
+		List<AggregateFunction> partials = getPartials();
+		Attribute first = partials.get(0).getOutput();
+
+		if (this.kind == Kind.AVG) {
+			return new AggregateFunction(Kind.AVG, first, partials.get(1).getOutput(), this.output);
+		}
+		return new AggregateFunction(Kind.SUM, first, null, this.output);
+	}
+
+	/**
+	 * Add a tuple to the running state of a group, which holds the sum of
+	 * the argument followed by the count
+	 * @param state Running state, initially zero
+	 * @param argument Value of the argument in the tuple, or null for COUNT
+	 * @param count Value of the count attribute in the tuple, or null
+	 */
+	public void accumulate(double[] state, String argument, String count) throws DatabaseException {
+		if (argument != null) {
+			state[0] += number(this.argument, argument);
+		}
+		state[1] += count == null ? 1 : number(this.count, count);
+	}
+
+	/**
+	 * Return the result of this aggregate for the running state of a group
+	 * @param state
+	 * @return
+	 */
+	public String result(double[] state) {
+		switch (this.kind) {
+		case COUNT:
+			return format(state[1]);
+		case SUM:
+			return format(state[0]);
+		default:
+			return format(state[0] / state[1]);
+		}
+	}
+
+	private static double number(Attribute attr, String value) throws DatabaseException {
+		if (!Predicate.isNumber(value)) {
+			throw new DatabaseException("Cannot aggregate value " + value + " of " + attr.getName());
+		}
+		return Double.parseDouble(value);
+	}
+
+	/**
+	 * Format a number, without a fraction if it is a whole number
+	 */
+	private static String format(double value) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = this.kind + "(" + (this.argument == null ? "*" : this.argument.getName());
+		if (this.count != null) {
+			ret += "/" + this.count.getName();
+		}
+		ret += ")";
+
+		return ret.equals(this.output.getName()) ? ret : this.output.getName() + "=" + ret;
+	}
+}
@@ -3,14 +3,26 @@
  */
 package sjdb;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
+ * This class represents an attribute and its statistics: the number of
+ * distinct values it takes and, optionally, a list of its most common
+ * values and an equi-depth histogram of its other values, and the degree
+ * to which the values of other attributes depend on its values.
+ * 
  * @author nmg
  *
  */
 public class Attribute {
 
 	private String name;
-	private int values;
+	private long values;
+	private MostCommonValues mostCommon;
+	private Histogram histogram;
+	private Map<String, Double> dependencies = Collections.emptyMap();
 
 	public Attribute(String name) {
 		this.name = name;
@@ -20,14 +32,54 @@ public class Attribute {
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
 		this.name = name;
 		this.values = values;
 	}
 	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mostCommon most common values, or null
+	 * @param histogram histogram of the values that are not most common, or null
+	 */
+	public Attribute(String name, long values, MostCommonValues mostCommon, Histogram histogram) {
+		this.name = name;
+		this.values = values;
+		this.mostCommon = mostCommon;
+		this.histogram = histogram;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param mostCommon most common values, or null
+	 * @param histogram histogram of the values that are not most common, or null
+	 * @param dependencies degree of dependency on this attribute of each 
+	 * other attribute, by name (see getDependency())
+	 */
+	public Attribute(String name, long values, MostCommonValues mostCommon, Histogram histogram,
+			Map<String, Double> dependencies) {
+		this(name, values, mostCommon, histogram);
+		this.dependencies = new LinkedHashMap<String, Double>(dependencies);
+	}
+	
 	public Attribute(Attribute attr) {
+		this(attr, attr.values);
+	}
+	
+	/**
+	 * Copy an attribute and its distribution with a different number of
+	 * distinct values
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, long values) {
 		this.name = attr.name;
-		this.values = attr.values;
+		this.values = values;
+		this.mostCommon = attr.mostCommon;
+		this.histogram = attr.histogram;
+		this.dependencies = attr.dependencies;
 	}
 	
 	/**
@@ -40,10 +92,46 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
 	
+	/**
+	 * @return the most common values taken by this attribute, or null
+	 */
+	public MostCommonValues getMostCommonValues() {
+		return mostCommon;
+	}
+	
+	/**
+	 * @return the histogram of the values taken by this attribute that are
+	 * not among the most common values, or null
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+	
+	
+	/**
+	 * Return the degree to which the values of another attribute depend on
+	 * the values of this one: the fraction of the tuples in which the value
+	 * of this attribute determines the value of the other, from 0 (the 
+	 * attributes are independent) to 1 (a functional dependency)
+	 * @param other
+	 * @return the degree, or 0 if none is recorded
+	 */
+	public double getDependency(Attribute other) {
+		Double degree = dependencies.get(other.getName());
+		return degree == null ? 0 : degree.doubleValue();
+	}
+	
+	/**
+	 * @return the degree of dependency on this attribute of each other
+	 * attribute, by name
+	 */
+	public Map<String, Double> getDependencies() {
+		return dependencies;
+	}
 	
 	@Override
 	public int hashCode() {
@@ -68,7 +156,21 @@ public class Attribute {
 	}
 	
 	public String render() {
-		return name + "," + values;
+		String ret = name + "," + values;
+		if (mostCommon != null) {
+			ret += ",mcv=" + mostCommon.render();
+		}
+		if (histogram != null) {
+			ret += ",hist=" + histogram.render();
+		}
+		if (!dependencies.isEmpty()) {
+			String deps = "";
+			for (Map.Entry<String, Double> entry : dependencies.entrySet()) {
+				deps += (deps.isEmpty() ? "" : ";") + entry.getKey() + "@" + entry.getValue();
+			}
+			ret += ",dep=" + deps;
+		}
+		return ret;
 	}
 	
 	
@@ -0,0 +1,128 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes an Aggregate operator in batches, by hashing. When
+ * the iterator is opened, the rows of its input batches update the running
+ * state of their groups, which are found in a hash table on the codes of
+ * the grouping attributes, since equal values have equal codes; only the
+ * aggregated values are decoded. The results of the aggregates are
+ * encoded as the output batches are produced, one row per group.
+ */
+public class BatchAggregateIterator implements BatchIterator {
+	private BatchIterator input;
+	private List<Attribute> groupBy;
+	private List<AggregateFunction> functions;
+	private ValueDictionary dictionary;
+	private List<Attribute> attributes;
+	private Map<List<Integer>, double[][]> groups;
+	private Iterator<Map.Entry<List<Integer>, double[][]>> position;
+
+	/**
+	 * Create a new batch aggregate iterator
+	 * @param input Iterator over the batches to be aggregated
+	 * @param groupBy Attributes whose values form the groups
+	 * @param functions Aggregates computed over each group
+	 * @param dictionary Dictionary that encodes the values of the input
+	 */
+	public BatchAggregateIterator(BatchIterator input, List<Attribute> groupBy,
+			List<AggregateFunction> functions, ValueDictionary dictionary) {
+		this.input = input;
+		this.groupBy = groupBy;
+		this.functions = functions;
+		this.dictionary = dictionary;
+		this.attributes = new ArrayList<Attribute>(groupBy);
+		for (AggregateFunction function : functions) {
+			this.attributes.add(function.getOutput());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		List<Attribute> inputAttributes = this.input.getAttributes();
+		int[] keys = new int[this.groupBy.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = Executor.indexOf(inputAttributes, this.groupBy.get(i));
+		}
+		int[][] columns = HashAggregateIterator.columns(inputAttributes, this.functions);
+
+		this.groups = new LinkedHashMap<List<Integer>, double[][]>();
+		this.input.open();
+		ColumnBatch batch;
+		while ((batch = this.input.nextBatch()) != null) {
+			for (int i = 0; i < batch.size(); i++) {
+				int row = batch.getRow(i);
+				Integer[] codes = new Integer[keys.length];
+				for (int k = 0; k < keys.length; k++) {
+					codes[k] = batch.getColumn(keys[k])[row];
+				}
+				List<Integer> key = Arrays.asList(codes);
+
+				double[][] state = this.groups.get(key);
+				if (state == null) {
+					state = new double[columns.length][2];
+					this.groups.put(key, state);
+				}
+				for (int f = 0; f < columns.length; f++) {
+					this.functions.get(f).accumulate(state[f], decode(batch, columns[f][0], row),
+							decode(batch, columns[f][1], row));
+				}
+			}
+		}
+		this.input.close();
+
+		this.position = this.groups.entrySet().iterator();
+	}
+
+	private String decode(ColumnBatch batch, int column, int row) {
+		return column < 0 ? null : this.dictionary.decode(batch.getColumn(column)[row]);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() {
+		if (!this.position.hasNext()) {
+			return null;
+		}
+
+		int width = this.groupBy.size();
+		ColumnBatch out = new ColumnBatch(this.attributes.size(), ColumnBatch.SIZE);
+		while (!out.isFull() && this.position.hasNext()) {
+			Map.Entry<List<Integer>, double[][]> group = this.position.next();
+			int to = out.addRow();
+			for (int c = 0; c < width; c++) {
+				out.getColumn(c)[to] = group.getKey().get(c);
+			}
+			for (int f = 0; f < this.functions.size(); f++) {
+				out.getColumn(width + f)[to] = this.dictionary.encode(
+						this.functions.get(f).result(group.getValue()[f]));
+			}
+		}
+
+		return out;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() {
+		this.groups = null;
+		this.position = null;
+	}
+}
@@ -0,0 +1,202 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes query plans in batches. Like Executor, it visits a
+ * plan to build a tree of iterators over the tuples provided by a
+ * TupleSource, but the iterators exchange ColumnBatches of
+ * dictionary-encoded values rather than single tuples. Values are encoded
+ * as they are scanned, and decoded only when the output of the plan is
+ * read as tuples.
+ *
+ * The tuples found by index scans are encoded as they are read from the
+ * index; like those of Executor, indexes are built the first time they
+ * are used, and kept for later plans.
+ *
+ * A BatchExecutor may be used for many plans, but by only one thread at a
+ * time, and only one of the plans it builds may be executed at a time,
+ * as they share its dictionary.
+ */
+public class BatchExecutor implements PlanVisitor {
+	private TupleSource source;
+	private ValueDictionary dictionary;
+	private Deque<BatchIterator> iterators;
+	private Map<String, TupleIndex> indexes;
+
+	/**
+	 * Create a batch executor over the given tuples
+	 * @param source Source of the tuples of named relations
+	 */
+	public BatchExecutor(TupleSource source) {
+		this.source = source;
+		this.dictionary = new ValueDictionary();
+		this.iterators = new ArrayDeque<BatchIterator>();
+		this.indexes = new HashMap<String, TupleIndex>();
+	}
+
+	/**
+	 * Return the dictionary used to encode the values of executed plans
+	 * @return
+	 */
+	public ValueDictionary getDictionary() {
+		return this.dictionary;
+	}
+
+	/**
+	 * Build the batch iterator that executes a plan. The iterator has not
+	 * been opened, and no tuples have been read.
+	 * @param plan Query plan
+	 * @return Iterator over the output of the plan
+	 */
+	public BatchIterator build(Operator plan) {
+		this.iterators.clear();
+		plan.accept(this);
+		return this.iterators.pop();
+	}
+
+	/**
+	 * Build an iterator that executes a plan in batches and returns its
+	 * output as decoded tuples
+	 * @param plan Query plan
+	 * @return Iterator over the output of the plan
+	 */
+	public TupleIterator buildTuples(Operator plan) {
+		final BatchIterator batches = build(plan);
+
+		return new TupleIterator() {
+			private ColumnBatch batch;
+			private int position;
+
+			public List<Attribute> getAttributes() {
+				return batches.getAttributes();
+			}
+
+			public void open() throws DatabaseException {
+				batches.open();
+				this.batch = null;
+				this.position = 0;
+			}
+
+			public String[] next() throws DatabaseException {
+				if (this.batch == null || this.position == this.batch.size()) {
+					if ((this.batch = batches.nextBatch()) == null) {
+						return null;
+					}
+					this.position = 0;
+				}
+
+				int row = this.batch.getRow(this.position++);
+				String[] tuple = new String[this.batch.getWidth()];
+				for (int i = 0; i < tuple.length; i++) {
+					tuple[i] = dictionary.decode(this.batch.getColumn(i)[row]);
+				}
+				return tuple;
+			}
+
+			public void close() throws DatabaseException {
+				this.batch = null;
+				batches.close();
+			}
+		};
+	}
+
+	/**
+	 * Execute a plan in batches and count the tuples it produces
+	 * @param plan Query plan
+	 * @return Number of output tuples
+	 */
+	public long count(Operator plan) throws DatabaseException {
+		BatchIterator iter = build(plan);
+		long count = 0;
+
+		iter.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = iter.nextBatch()) != null) {
+				count += batch.size();
+			}
+		} finally {
+			iter.close();
+		}
+
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Scan)
+	 */
+	public void visit(Scan op) {
+		TupleIterator tuples = this.source.scan((NamedRelation) op.getRelation());
+		this.iterators.push(new BatchScanIterator(tuples, this.dictionary));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.IndexScan)
+	 */
+	public void visit(IndexScan op) {
+		Index index = op.getIndex();
+		TupleIndex tuples = Executor.getIndex(this.indexes, this.source, (NamedRelation) op.getRelation(),
+				index.getAttribute(), index.getType());
+		this.iterators.push(new BatchScanIterator(new IndexScanIterator(tuples, op.getPredicate()), 
+				this.dictionary));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Project)
+	 */
+	public void visit(Project op) {
+		this.iterators.push(new BatchProjectIterator(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Select)
+	 */
+	public void visit(Select op) {
+		this.iterators.push(new BatchSelectIterator(this.iterators.pop(), op.getPredicate(), this.dictionary));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Product)
+	 */
+	public void visit(Product op) {
+		BatchIterator right = this.iterators.pop();
+		BatchIterator left = this.iterators.pop();
+		this.iterators.push(new BatchProductIterator(left, right));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		BatchIterator right = this.iterators.pop();
+		BatchIterator left = this.iterators.pop();
+		this.iterators.push(new BatchJoinIterator(left, right, op.getPredicate()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Sort)
+	 */
+	public void visit(Sort op) {
+		this.iterators.push(new BatchSortIterator(this.iterators.pop(), op.getAttributes(), this.dictionary));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Aggregate)
+	 */
+	public void visit(Aggregate op) {
+		this.iterators.push(new BatchAggregateIterator(this.iterators.pop(), op.getGroupBy(), op.getFunctions(),
+				this.dictionary));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Exchange)
+	 */
+	public void visit(Exchange op) {
+		// batches are produced by a single thread, so the input is used as is
+	}
+}
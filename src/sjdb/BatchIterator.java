@@ -0,0 +1,31 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This is an interface for the iterators that execute a query plan in
+ * batches. It corresponds to TupleIterator, but each call to nextBatch()
+ * returns a ColumnBatch of up to ColumnBatch.SIZE tuples, so that the
+ * per-call overhead is paid once per batch and the operators work on
+ * whole columns of dictionary-encoded values at a time.
+ */
+public interface BatchIterator {
+	/**
+	 * Return the attributes of the tuples produced by this iterator
+	 * @return Attributes, in the order of the columns of each batch
+	 */
+	public List<Attribute> getAttributes();
+	/**
+	 * Prepare to produce batches, opening any inputs
+	 */
+	public void open() throws DatabaseException;
+	/**
+	 * Return the next batch, which contains at least one tuple
+	 * @return Next batch, or null if there are no more tuples
+	 */
+	public ColumnBatch nextBatch() throws DatabaseException;
+	/**
+	 * Release any resources held by this iterator and its inputs
+	 */
+	public void close() throws DatabaseException;
+}
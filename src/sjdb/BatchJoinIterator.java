@@ -0,0 +1,82 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class executes a Join operator in batches. When the iterator is
+ * opened, the rows of the right input are chained together by the code of
+ * their join attribute value, in a table indexed directly by code; each
+ * left row is then combined with the right rows in the chain for its own
+ * join attribute value.
+ */
+public class BatchJoinIterator extends BatchProductIterator {
+	private Predicate predicate;
+	private List<Attribute> leftAttributes;
+	private List<Attribute> rightAttributes;
+	private int leftKey;
+	private int[] heads;
+	private int[] chains;
+
+	/**
+	 * Create a new batch join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input, which is read into memory
+	 * @param predicate Join predicate
+	 */
+	public BatchJoinIterator(BatchIterator left, BatchIterator right, Predicate predicate) {
+		super(left, right);
+		this.predicate = predicate;
+		this.leftAttributes = left.getAttributes();
+		this.rightAttributes = right.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchProductIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.leftAttributes, this.rightAttributes, this.predicate);
+		this.leftKey = keys[0];
+		int rightKey = keys[1];
+
+		super.open();
+
+		// chain the right rows in reverse, so that each chain is in row order
+		int[] column = this.rightRows.getColumn(rightKey);
+		int maxCode = -1;
+		for (int row = 0; row < this.rightRows.size(); row++) {
+			maxCode = Math.max(maxCode, column[row]);
+		}
+		this.heads = new int[maxCode + 1];
+		Arrays.fill(this.heads, -1);
+		this.chains = new int[this.rightRows.size()];
+		for (int row = this.rightRows.size() - 1; row >= 0; row--) {
+			this.chains[row] = this.heads[column[row]];
+			this.heads[column[row]] = row;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchProductIterator#firstMatch(sjdb.ColumnBatch, int)
+	 */
+	protected int firstMatch(ColumnBatch leftBatch, int leftRow) {
+		int code = leftBatch.getColumn(this.leftKey)[leftRow];
+		return code < this.heads.length ? this.heads[code] : -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchProductIterator#nextMatch(int)
+	 */
+	protected int nextMatch(int rightRow) {
+		return this.chains[rightRow];
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchProductIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.heads = null;
+		this.chains = null;
+		super.close();
+	}
+}
@@ -0,0 +1,134 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Product operator in batches. The right input is
+ * read into a single batch when the iterator is opened, and each row of
+ * the left input is combined with each of its rows in turn; the combined
+ * rows are copied into output batches of up to ColumnBatch.SIZE rows.
+ * Subclasses may restrict the right rows that each left row is combined
+ * with.
+ */
+public class BatchProductIterator implements BatchIterator {
+	private BatchIterator left;
+	private BatchIterator right;
+	private List<Attribute> attributes;
+	private int leftWidth;
+	private int rightWidth;
+	/**
+	 * The rows of the right input
+	 */
+	protected ColumnBatch rightRows;
+	private ColumnBatch leftBatch;
+	private int leftPosition;
+	private int rightRow;
+
+	/**
+	 * Create a new batch product iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input, which is read into memory
+	 */
+	public BatchProductIterator(BatchIterator left, BatchIterator right) {
+		this.left = left;
+		this.right = right;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+		this.leftWidth = left.getAttributes().size();
+		this.rightWidth = right.getAttributes().size();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		List<ColumnBatch> batches = new ArrayList<ColumnBatch>();
+		this.right.open();
+		ColumnBatch batch;
+		while ((batch = this.right.nextBatch()) != null) {
+			batches.add(batch);
+		}
+		this.right.close();
+		this.rightRows = ColumnBatch.concatenate(batches, this.rightWidth);
+
+		this.left.open();
+		this.leftBatch = null;
+		this.leftPosition = 0;
+		this.rightRow = -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() throws DatabaseException {
+		if (this.rightRows.size() == 0) {
+			return null;
+		}
+
+		ColumnBatch out = new ColumnBatch(this.leftWidth + this.rightWidth, ColumnBatch.SIZE);
+
+		while (!out.isFull()) {
+			if (this.rightRow < 0) {
+				// move on to the next left row that has a matching right row
+				if (this.leftBatch == null || ++this.leftPosition == this.leftBatch.size()) {
+					if ((this.leftBatch = this.left.nextBatch()) == null) {
+						break;
+					}
+					this.leftPosition = 0;
+				}
+				this.rightRow = firstMatch(this.leftBatch, this.leftBatch.getRow(this.leftPosition));
+				continue;
+			}
+
+			int leftRow = this.leftBatch.getRow(this.leftPosition);
+			int row = out.addRow();
+			for (int c = 0; c < this.leftWidth; c++) {
+				out.getColumn(c)[row] = this.leftBatch.getColumn(c)[leftRow];
+			}
+			for (int c = 0; c < this.rightWidth; c++) {
+				out.getColumn(this.leftWidth + c)[row] = this.rightRows.getColumn(c)[this.rightRow];
+			}
+
+			this.rightRow = nextMatch(this.rightRow);
+		}
+
+		return out.size() > 0 ? out : null;
+	}
+
+	/**
+	 * Return the first right row to be combined with a left row
+	 * @param leftBatch Batch containing the left row
+	 * @param leftRow Position of the left row in the batch's columns
+	 * @return Position of the right row, or -1 if there is none
+	 */
+	protected int firstMatch(ColumnBatch leftBatch, int leftRow) {
+		return 0;
+	}
+
+	/**
+	 * Return the next right row to be combined with the current left row
+	 * @param rightRow Position of the previous right row
+	 * @return Position of the right row, or -1 if there are no more
+	 */
+	protected int nextMatch(int rightRow) {
+		return rightRow + 1 < this.rightRows.size() ? rightRow + 1 : -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.rightRows = null;
+		this.leftBatch = null;
+		this.left.close();
+	}
+}
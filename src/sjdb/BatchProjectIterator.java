@@ -0,0 +1,69 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Project operator in batches, by selecting a subset
+ * of the columns of each input batch without copying them. As in the
+ * Estimator, the attributes keep the order in which they appear in the
+ * input.
+ */
+public class BatchProjectIterator implements BatchIterator {
+	private BatchIterator input;
+	private List<Attribute> attributes;
+	private int[] indexes;
+
+	/**
+	 * Create a new batch project iterator
+	 * @param input Iterator over the batches to be projected
+	 * @param attributes Attributes to retain
+	 */
+	public BatchProjectIterator(BatchIterator input, List<Attribute> attributes) {
+		this.input = input;
+		this.attributes = new ArrayList<Attribute>();
+
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<Attribute> inputAttributes = input.getAttributes();
+		for (int i = 0; i < inputAttributes.size(); i++) {
+			if (attributes.contains(inputAttributes.get(i))) {
+				this.attributes.add(inputAttributes.get(i));
+				indexes.add(i);
+			}
+		}
+
+		this.indexes = new int[indexes.size()];
+		for (int i = 0; i < this.indexes.length; i++) {
+			this.indexes[i] = indexes.get(i);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.input.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() throws DatabaseException {
+		ColumnBatch batch = this.input.nextBatch();
+		return batch == null ? null : batch.project(this.indexes);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.input.close();
+	}
+}
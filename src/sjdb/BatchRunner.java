@@ -0,0 +1,266 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class optimises a stream of queries against a catalogue that is
+ * loaded once. Queries are separated by blank lines and are optimised by
+ * a pool of worker threads as they are read; the results are written in
+ * the order in which the queries were read, each with the time taken to
+ * parse, estimate and optimise it. Each result is printed as SJDB prints
+ * a single query.
+ * 
+ * All worker threads share a single QueryParser and Optimiser.
+ */
+public class BatchRunner {
+	/**
+	 * Marker that is queued after the last query has been submitted
+	 */
+	private static final Future<String> END = new FutureTask<String>(new Callable<String>() {
+		public String call() {
+			return null;
+		}
+	});
+
+	private QueryParser parser;
+	private Optimiser optimiser;
+	private int threads;
+	private int queries;
+	private long totalNanos;
+	private long maxNanos;
+
+	/**
+	 * Create a new batch runner
+	 * @param catalogue Catalogue that the queries refer to
+	 * @param threads Number of worker threads
+	 */
+	public BatchRunner(Catalogue catalogue, int threads) {
+		this(catalogue, new Optimiser(catalogue), threads);
+	}
+
+	/**
+	 * Create a new batch runner that uses the given optimiser
+	 * @param catalogue Catalogue that the queries refer to
+	 * @param optimiser Optimiser shared by all worker threads
+	 * @param threads Number of worker threads
+	 */
+	public BatchRunner(Catalogue catalogue, Optimiser optimiser, int threads) {
+		this.parser = new QueryParser(catalogue);
+		this.optimiser = optimiser;
+		this.threads = threads;
+		this.queries = 0;
+		this.totalNanos = 0;
+		this.maxNanos = 0;
+	}
+
+	/**
+	 * Read queries from the input until it is exhausted, and write the
+	 * optimised plans to the output, followed by a latency summary on
+	 * standard error.
+	 * @param input Queries separated by blank lines
+	 * @param output Stream to write the results to
+	 */
+	public void run(Reader input, final PrintStream output) throws Exception {
+		BufferedReader reader = new BufferedReader(input);
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		final BlockingQueue<Future<String>> results =
+				new LinkedBlockingQueue<Future<String>>(this.threads * 4);
+
+		// write the results in order while further queries are being read
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Future<String> result;
+					while ((result = results.take()) != END) {
+						output.println(result.get());
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}, "sjdb-writer");
+		writer.start();
+
+		long start = System.nanoTime();
+		String query;
+		int number = 0;
+
+		try {
+			while ((query = readQuery(reader)) != null) {
+				results.put(pool.submit(new QueryTask(++number, query)));
+			}
+		} finally {
+			results.put(END);
+			pool.shutdown();
+		}
+
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		writer.join();
+		output.flush();
+
+		long elapsed = System.nanoTime() - start;
+		System.err.println(summary(elapsed));
+	}
+
+	/**
+	 * Stress test the shared parser and optimiser: read all queries from 
+	 * the input and optimise each of them once on the calling thread, then
+	 * optimise them all again the given number of times concurrently on 
+	 * the worker pool, and report every result that differs from the 
+	 * single-threaded one.
+	 * @param input Queries separated by blank lines
+	 * @param rounds Number of times each query is optimised concurrently
+	 * @param output Stream to report mismatches to
+	 * @return Number of mismatching results
+	 */
+	public int stress(Reader input, int rounds, PrintStream output) throws Exception {
+		BufferedReader reader = new BufferedReader(input);
+		List<String> queries = new ArrayList<String>();
+		List<String> expected = new ArrayList<String>();
+		String query;
+
+		while ((query = readQuery(reader)) != null) {
+			queries.add(query);
+			expected.add(optimiseQuery(query));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+
+		for (int round = 0; round < rounds; round++) {
+			for (final String text : queries) {
+				results.add(pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return optimiseQuery(text);
+					}
+				}));
+			}
+		}
+		pool.shutdown();
+
+		int mismatches = 0;
+		for (int i = 0; i < results.size(); i++) {
+			String result = results.get(i).get();
+			String wanted = expected.get(i % queries.size());
+
+			if (!result.equals(wanted)) {
+				mismatches++;
+				output.println("Mismatch for query " + (i % queries.size() + 1) + 
+						" in round " + (i / queries.size() + 1) + ":\n" + result + 
+						"expected:\n" + wanted);
+			}
+		}
+
+		output.println(results.size() + " concurrent results on " + this.threads + 
+				" threads, " + mismatches + " mismatches");
+		return mismatches;
+	}
+
+	/**
+	 * Parse, estimate and optimise a query
+	 * @param query Query text
+	 * @return Canonical and optimised plans with their estimates
+	 */
+	private String optimiseQuery(String query) throws Exception {
+		Operator plan = this.parser.parse(new StringReader(query));
+
+		Estimator est = new Estimator();
+		plan.accept(est);
+		Relation output = plan.getOutput();
+		String ret = plan.toString() + "\n" + output.getTupleCount() + "\n" +
+				output.getAttributes() + "\n";
+
+		// as in single-query mode, the optimised plan is reported with the
+		// output of the canonical plan
+		Operator optPlan = this.optimiser.optimise(plan);
+		optPlan.accept(est);
+		output = plan.getOutput();
+		ret += "\nOptimised plan\n" + optPlan.toString() + "\n" +
+				output.getTupleCount() + "\n" + output.getAttributes() + "\n";
+
+		return ret;
+	}
+
+	/**
+	 * Read the next query, i.e. the next block of non-blank lines
+	 * @param reader Input to read from
+	 * @return Query text, or null if the input is exhausted
+	 */
+	public static String readQuery(BufferedReader reader) throws Exception {
+		StringBuilder query = new StringBuilder();
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				if (query.length() > 0) {
+					break;
+				}
+			} else {
+				query.append(line).append('\n');
+			}
+		}
+
+		return query.length() > 0 ? query.toString() : null;
+	}
+
+	private synchronized void record(long nanos) {
+		this.queries++;
+		this.totalNanos += nanos;
+		this.maxNanos = Math.max(this.maxNanos, nanos);
+	}
+
+	private synchronized String summary(long elapsed) {
+		double mean = this.queries == 0 ? 0 : millis(this.totalNanos) / this.queries;
+		double rate = elapsed == 0 ? 0 : this.queries / (elapsed / 1e9);
+
+		return String.format("%d queries in %.3f ms (%.1f queries/s), " +
+				"latency mean %.3f ms, max %.3f ms, %d threads", this.queries,
+				millis(elapsed), rate, mean, millis(this.maxNanos), this.threads);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Task that parses, estimates and optimises a single query
+	 */
+	private class QueryTask implements Callable<String> {
+		private int number;
+		private String query;
+
+		private QueryTask(int number, String query) {
+			this.number = number;
+			this.query = query;
+		}
+
+		public String call() {
+			long start = System.nanoTime();
+			String ret;
+
+			try {
+				ret = optimiseQuery(this.query);
+			} catch (Exception e) {
+				ret = "Error: " + e.toString() + "\n";
+			}
+
+			long nanos = System.nanoTime() - start;
+			record(nanos);
+
+			return String.format("Query %d (%.3f ms)%n", this.number, millis(nanos)) + ret;
+		}
+	}
+}
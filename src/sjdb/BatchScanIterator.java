@@ -0,0 +1,62 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class executes a Scan operator in batches, reading the tuples of a
+ * named relation from a TupleSource and encoding them into columns. It
+ * also executes IndexScan operators, over the tuples found in an index.
+ */
+public class BatchScanIterator implements BatchIterator {
+	private TupleIterator tuples;
+	private ValueDictionary dictionary;
+
+	/**
+	 * Create a new batch scan iterator
+	 * @param tuples Iterator over the tuples of the named relation
+	 * @param dictionary Dictionary used to encode values
+	 */
+	public BatchScanIterator(TupleIterator tuples, ValueDictionary dictionary) {
+		this.tuples = tuples;
+		this.dictionary = dictionary;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.tuples.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.tuples.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() throws DatabaseException {
+		int width = getAttributes().size();
+		ColumnBatch batch = new ColumnBatch(width, ColumnBatch.SIZE);
+		String[] tuple;
+
+		while (!batch.isFull() && (tuple = this.tuples.next()) != null) {
+			int row = batch.addRow();
+			for (int i = 0; i < width; i++) {
+				batch.getColumn(i)[row] = this.dictionary.encode(tuple[i]);
+			}
+		}
+
+		return batch.size() > 0 ? batch : null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.tuples.close();
+	}
+}
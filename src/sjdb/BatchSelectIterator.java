@@ -0,0 +1,172 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class executes a Select operator in batches. The predicate is
+ * evaluated over the whole of each input batch by comparing encoded
+ * values, and the rows that satisfy it are returned as a selection over
+ * the input batch's columns. Comparisons other than equality are decided
+ * once for each encoded value, and the results remembered by code.
+ */
+public class BatchSelectIterator implements BatchIterator {
+	private BatchIterator input;
+	private Predicate predicate;
+	private ValueDictionary dictionary;
+	private int leftIndex;
+	private int rightIndex;
+	// for compound predicates, the columns of the attributes of the predicate
+	private int[] columns;
+	// for each code, 0 if not yet tested, 1 if it satisfies the predicate, 2 if not
+	private byte[] results;
+
+	/**
+	 * Create a new batch select iterator
+	 * @param input Iterator over the batches to be filtered
+	 * @param predicate Select predicate
+	 * @param dictionary Dictionary used to encode values
+	 */
+	public BatchSelectIterator(BatchIterator input, Predicate predicate, ValueDictionary dictionary) {
+		this.input = input;
+		this.predicate = predicate;
+		this.dictionary = dictionary;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.input.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		if (this.predicate.hasParameters()) {
+			throw new DatabaseException("Unbound parameter in " + this.predicate);
+		}
+		if (this.predicate.isCompound()) {
+			List<Attribute> attributes = this.predicate.getAttributes();
+			this.columns = new int[attributes.size()];
+			for (int i = 0; i < this.columns.length; i++) {
+				this.columns[i] = Executor.indexOf(getAttributes(), attributes.get(i));
+			}
+			this.input.open();
+			return;
+		}
+		this.leftIndex = Executor.indexOf(getAttributes(), this.predicate.getLeftAttribute());
+		if (!this.predicate.hasValue()) {
+			this.rightIndex = Executor.indexOf(getAttributes(), this.predicate.getRightAttribute());
+		}
+		this.results = new byte[0];
+		this.input.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() throws DatabaseException {
+		ColumnBatch batch;
+
+		while ((batch = this.input.nextBatch()) != null) {
+			int[] selection = new int[batch.size()];
+			int size;
+			if (this.predicate.isCompound()) {
+				size = selectCompound(batch, selection);
+			} else if (!this.predicate.hasValue()) {
+				size = selectAttribute(batch, selection);
+			} else if (this.predicate.getComparison() == Predicate.Comparison.EQUALS) {
+				size = selectValue(batch, selection);
+			} else {
+				size = selectComparison(batch, selection);
+			}
+			if (size > 0) {
+				return batch.select(selection, size);
+			}
+		}
+
+		return null;
+	}
+
+	private int selectValue(ColumnBatch batch, int[] selection) {
+		// the value is looked up for each batch, as it may be encoded by a
+		// scan part way through the input
+		int code = this.dictionary.lookup(this.predicate.getRightValue());
+		if (code < 0) {
+			return 0;
+		}
+
+		int[] column = batch.getColumn(this.leftIndex);
+		int size = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			int row = batch.getRow(i);
+			if (column[row] == code) {
+				selection[size++] = row;
+			}
+		}
+		return size;
+	}
+
+	private int selectComparison(ColumnBatch batch, int[] selection) {
+		int[] column = batch.getColumn(this.leftIndex);
+		int size = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			int row = batch.getRow(i);
+			int code = column[row];
+			if (code >= this.results.length) {
+				this.results = Arrays.copyOf(this.results, Math.max(code + 1, this.results.length * 2));
+			}
+			if (this.results[code] == 0) {
+				this.results[code] = this.predicate.test(this.dictionary.decode(code)) ? (byte) 1 : (byte) 2;
+			}
+			if (this.results[code] == 1) {
+				selection[size++] = row;
+			}
+		}
+		return size;
+	}
+
+	private int selectCompound(ColumnBatch batch, int[] selection) {
+		int[][] columns = new int[this.columns.length][];
+		int[] slots = new int[this.columns.length];
+		for (int c = 0; c < columns.length; c++) {
+			columns[c] = batch.getColumn(this.columns[c]);
+			slots[c] = c;
+		}
+
+		String[] values = new String[columns.length];
+		int size = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			int row = batch.getRow(i);
+			for (int c = 0; c < columns.length; c++) {
+				values[c] = this.dictionary.decode(columns[c][row]);
+			}
+			if (this.predicate.test(values, slots)) {
+				selection[size++] = row;
+			}
+		}
+		return size;
+	}
+
+	private int selectAttribute(ColumnBatch batch, int[] selection) {
+		int[] left = batch.getColumn(this.leftIndex);
+		int[] right = batch.getColumn(this.rightIndex);
+		int size = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			int row = batch.getRow(i);
+			if (left[row] == right[row]) {
+				selection[size++] = row;
+			}
+		}
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.input.close();
+	}
+}
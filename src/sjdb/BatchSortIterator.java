@@ -0,0 +1,108 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class executes a Sort operator in batches. When the iterator is
+ * opened, the rows of its input are copied into a single batch and their
+ * positions are sorted on the decoded values of the sort attributes, as
+ * by Sort.compare(), since the codes of the dictionary are not in value
+ * order; the rows are then copied to the output batches in sorted order.
+ */
+public class BatchSortIterator implements BatchIterator {
+	private BatchIterator input;
+	private List<Attribute> keys;
+	private ValueDictionary dictionary;
+	private ColumnBatch rows;
+	private List<Integer> order;
+	private int position;
+
+	/**
+	 * Create a new batch sort iterator
+	 * @param input Iterator over the batches to be sorted
+	 * @param keys Attributes to sort on, most significant first
+	 * @param dictionary Dictionary that encodes the values of the input
+	 */
+	public BatchSortIterator(BatchIterator input, List<Attribute> keys, ValueDictionary dictionary) {
+		this.input = input;
+		this.keys = keys;
+		this.dictionary = dictionary;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.input.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		final int[][] columns = new int[this.keys.size()][];
+
+		List<ColumnBatch> batches = new ArrayList<ColumnBatch>();
+		this.input.open();
+		ColumnBatch batch;
+		while ((batch = this.input.nextBatch()) != null) {
+			batches.add(batch);
+		}
+		this.input.close();
+		this.rows = ColumnBatch.concatenate(batches, getAttributes().size());
+
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = this.rows.getColumn(Executor.indexOf(getAttributes(), this.keys.get(i)));
+		}
+
+		this.order = new ArrayList<Integer>();
+		for (int row = 0; row < this.rows.size(); row++) {
+			this.order.add(row);
+		}
+		Collections.sort(this.order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				for (int[] column : columns) {
+					int codeA = column[a];
+					int codeB = column[b];
+					if (codeA != codeB) {
+						return Sort.compare(dictionary.decode(codeA), dictionary.decode(codeB));
+					}
+				}
+				return 0;
+			}
+		});
+		this.position = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#nextBatch()
+	 */
+	public ColumnBatch nextBatch() {
+		if (this.position == this.order.size()) {
+			return null;
+		}
+
+		int width = this.rows.getWidth();
+		ColumnBatch out = new ColumnBatch(width, ColumnBatch.SIZE);
+		while (!out.isFull() && this.position < this.order.size()) {
+			int from = this.order.get(this.position++);
+			int to = out.addRow();
+			for (int c = 0; c < width; c++) {
+				out.getColumn(c)[to] = this.rows.getColumn(c)[from];
+			}
+		}
+
+		return out;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.BatchIterator#close()
+	 */
+	public void close() {
+		this.rows = null;
+		this.order = null;
+	}
+}
@@ -35,6 +35,33 @@ public abstract class BinaryOperator extends Operator {
 		return this.inputs.get(1);
 	}
 
+	/**
+	 * Return this operator over the given inputs: the operator itself if 
+	 * they are its current inputs, or otherwise a copy (see 
+	 * Operator.withInputs())
+	 * @param left New left input
+	 * @param right New right input
+	 * @return Operator over the inputs
+	 */
+	public Operator withInputs(Operator left, Operator right) {
+		return left == getLeft() && right == getRight() ? this : copy(left, right);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#copy(java.util.List)
+	 */
+	protected Operator copy(List<Operator> inputs) {
+		return copy(inputs.get(0), inputs.get(1));
+	}
+
+	/**
+	 * Return a copy of this operator over new inputs
+	 * @param left New left input
+	 * @param right New right input
+	 * @return Copy of this operator
+	 */
+	protected abstract Operator copy(Operator left, Operator right);
+
 	/* (non-Javadoc)
 	 * @see sjdb.Operator#getInputs()
 	 */
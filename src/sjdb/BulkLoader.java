@@ -0,0 +1,215 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class loads CSV files into a data directory, and builds the named
+ * relations and attributes that describe them in a catalogue. The first
+ * line of each input file names the attributes of the relation, and each
+ * following line holds a tuple; the relation is named after the file, so
+ * the tuples of R.csv are loaded into the relation R.
+ *
+ * Each file is read in a single streaming pass, in which its tuples are
+ * copied to R.csv in the data directory (see FileTupleSource), counted,
+ * and added to a HyperLogLog sketch per attribute that estimates its
+ * number of distinct values, and to a ColumnSample per attribute from
+ * which its most common values and histogram are built. Memory use
+ * therefore depends only on the number of attributes, not on the size of
+ * the files. Files are loaded in parallel by a pool of worker threads;
+ * the relations are only added to the catalogue once every file has been
+ * loaded, in the order the files were given.
+ *
+ * Usage:
+ *
+ * java sjdb.BulkLoader [-threads <n>] [-catalogue <file>] <data directory> <CSV file>...
+ *   loads the CSV files into the data directory, and writes the catalogue
+ *   of the loaded relations to the catalogue file (or stdout)
+ */
+public class BulkLoader {
+	private Catalogue catalogue;
+	private File directory;
+	private int threads;
+
+	/**
+	 * The statistics gathered while loading one file
+	 */
+	private static class Statistics {
+		private String name;
+		private String[] attributes;
+		private HyperLogLog[] sketches;
+		private ColumnSample[] samples;
+		private long tuples;
+	}
+
+	/**
+	 * Create a loader
+	 * @param catalogue Catalogue to add the loaded relations to
+	 * @param directory Data directory to copy the tuples to
+	 * @param threads Number of worker threads
+	 */
+	public BulkLoader(Catalogue catalogue, File directory, int threads) {
+		this.catalogue = catalogue;
+		this.directory = directory;
+		this.threads = threads;
+	}
+
+	/**
+	 * Load CSV files, and add a named relation for each to the catalogue
+	 * @param files
+	 * @return The named relations, in the order of the files
+	 */
+	public List<NamedRelation> load(List<File> files) throws DatabaseException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, files.size())));
+		List<Future<Statistics>> results = new ArrayList<Future<Statistics>>();
+
+		try {
+			for (final File file : files) {
+				results.add(pool.submit(new Callable<Statistics>() {
+					public Statistics call() throws DatabaseException {
+						return loadFile(file);
+					}
+				}));
+			}
+
+			List<NamedRelation> relations = new ArrayList<NamedRelation>();
+			for (Future<Statistics> result : results) {
+				relations.add(register(result.get()));
+			}
+			return relations;
+		} catch (InterruptedException e) {
+			throw new DatabaseException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof DatabaseException) {
+				throw (DatabaseException) e.getCause();
+			}
+			throw new DatabaseException("Load failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Copy the tuples of a CSV file to the data directory, and gather the
+	 * statistics of its relation
+	 * @param input
+	 * @return
+	 */
+	private Statistics loadFile(File input) throws DatabaseException {
+		String fileName = input.getName();
+		Statistics stats = new Statistics();
+		stats.name = fileName.endsWith(".csv") ? fileName.substring(0, fileName.length() - 4) : fileName;
+		File output = new File(this.directory, stats.name + ".csv");
+
+		try {
+			if (output.getCanonicalFile().equals(input.getCanonicalFile())) {
+				throw new DatabaseException(input + ": cannot load a file into itself");
+			}
+
+			BufferedReader reader = new BufferedReader(new FileReader(input));
+			try {
+				String header = reader.readLine();
+				if (header == null) {
+					throw new DatabaseException(input + ": missing header line");
+				}
+				stats.attributes = header.split(",", -1);
+				stats.sketches = new HyperLogLog[stats.attributes.length];
+				stats.samples = new ColumnSample[stats.attributes.length];
+				for (int i = 0; i < stats.attributes.length; i++) {
+					stats.attributes[i] = stats.attributes[i].trim();
+					stats.sketches[i] = new HyperLogLog();
+					// seeded by name, so that loading the same files gives the same statistics
+					stats.samples[i] = new ColumnSample((stats.name + "." + stats.attributes[i]).hashCode());
+				}
+
+				BufferedWriter writer = new BufferedWriter(new FileWriter(output));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] tuple = line.split(",", -1);
+						if (tuple.length != stats.attributes.length) {
+							throw new DatabaseException(input + ":" + (stats.tuples + 2) + ": expected " +
+									stats.attributes.length + " values, found " + tuple.length);
+						}
+						for (int i = 0; i < tuple.length; i++) {
+							stats.sketches[i].add(tuple[i]);
+							stats.samples[i].add(tuple[i]);
+						}
+						writer.write(line);
+						writer.newLine();
+						stats.tuples++;
+					}
+				} finally {
+					writer.close();
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot load " + input, e);
+		}
+
+		return stats;
+	}
+
+	/**
+	 * Add the named relation described by the statistics of a loaded file
+	 * to the catalogue
+	 * @param stats
+	 * @return
+	 */
+	private NamedRelation register(Statistics stats) {
+		NamedRelation relation = this.catalogue.createRelation(stats.name, stats.tuples);
+
+		for (int i = 0; i < stats.attributes.length; i++) {
+			// a sketch may overestimate, but there cannot be more values than tuples
+			long values = Math.min(stats.sketches[i].estimate(), stats.tuples);
+			MostCommonValues mostCommon = stats.samples[i].getMostCommonValues(values);
+			Histogram histogram = stats.samples[i].getHistogram(values, mostCommon);
+			this.catalogue.createAttribute(stats.name, stats.attributes[i], values, mostCommon, histogram);
+		}
+
+		return relation;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		String catFile = null;
+		File directory = null;
+		List<File> files = new ArrayList<File>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-catalogue")) {
+				catFile = args[++i];
+			} else if (directory == null) {
+				directory = new File(args[i]);
+			} else {
+				files.add(new File(args[i]));
+			}
+		}
+
+		BulkLoader loader = new BulkLoader(new Catalogue(), directory, threads);
+		List<NamedRelation> relations = loader.load(files);
+
+		PrintWriter out = catFile == null ? new PrintWriter(System.out) :
+				new PrintWriter(new FileWriter(catFile));
+		for (NamedRelation relation : relations) {
+			out.println(relation.render());
+		}
+		out.close();
+	}
+}
@@ -1,6 +1,8 @@
 package sjdb;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -8,26 +10,48 @@ import java.util.HashMap;
  * 
  * - creating new NamedRelations
  * - creating new Attributes
+ * - declaring Indexes over attributes
  * 
  * The catalogue maintains a directory of NamedRelations and
  * Attributes, indexed by name.
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue, and that indexes are listed by the relations
+ * they index.
+ * 
+ * The catalogue keeps a version number, which is incremented whenever a
+ * relation, attribute or index is created, and a version number for each 
+ * named relation, which is set to the catalogue version whenever that 
+ * relation or one of its attributes is (re)created or indexed. Cached query plans record the
+ * versions of the relations they read, so that they can detect updates.
+ * 
+ * The tuples of a named relation may be stored in a ColumnFile, which is
+ * attached to the relation in the catalogue and read by a 
+ * StoredTupleSource. Attaching a file does not change the statistics of
+ * the relation, and so does not change any version number.
+ * 
+ * Lookups may be made concurrently from many threads; updates are 
+ * serialised.
  * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	private ConcurrentHashMap<String, NamedRelation> relations;
+	private ConcurrentHashMap<String, Attribute> attributes;
+	private ConcurrentHashMap<String, Long> relationVersions;
+	private ConcurrentHashMap<String, ColumnFile> files;
+	private volatile long version;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this.relations = new ConcurrentHashMap<String, NamedRelation>();
+		this.attributes = new ConcurrentHashMap<String, Attribute>();
+		this.relationVersions = new ConcurrentHashMap<String, Long>();
+		this.files = new ConcurrentHashMap<String, ColumnFile>();
+		this.version = 0;
 	}
 	
 	/**
@@ -37,9 +61,10 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
+	public synchronized NamedRelation createRelation(String relName, long size) {
 		NamedRelation reln = new NamedRelation(relName, size);
 		relations.put(relName, reln);
+		relationVersions.put(relName, ++version);
 		return reln;
 	}
 	
@@ -53,13 +78,94 @@ public class Catalogue {
 	 * @param values
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
+	public synchronized Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, null, null);
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values and distribution of values, add it to the directory and 
+	 * associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param mostCommon most common values, or null
+	 * @param histogram histogram of the other values, or null
+	 * @return
+	 */
+	public synchronized Attribute createAttribute(String relName, String attName, long values,
+			MostCommonValues mostCommon, Histogram histogram) {
+		return createAttribute(relName, attName, values, mostCommon, histogram, 
+				Collections.<String, Double>emptyMap());
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values, distribution of values and degree of dependency on it of
+	 * other attributes (see Attribute.getDependency()), add it to the
+	 * directory and associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param mostCommon most common values, or null
+	 * @param histogram histogram of the other values, or null
+	 * @param dependencies degree of dependency of other attributes, by name
+	 * @return
+	 */
+	public synchronized Attribute createAttribute(String relName, String attName, long values,
+			MostCommonValues mostCommon, Histogram histogram, Map<String, Double> dependencies) {
+		Attribute attr = new Attribute(attName, values, mostCommon, histogram, dependencies);
 		attributes.put(attName, attr);
 		relations.get(relName).addAttribute(attr);
+		relationVersions.put(relName, ++version);
 		return attr;
 	}
 	
+	/**
+	 * Declare an index of the given type over the Attribute with the 
+	 * specified name of the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param type
+	 * @return
+	 */
+	public synchronized Index createIndex(String relName, String attName, Index.Type type) {
+		Index index = new Index(relName, attributes.get(attName), type);
+		relations.get(relName).addIndex(index);
+		relationVersions.put(relName, ++version);
+		return index;
+	}
+	
+	/**
+	 * Return the version of the catalogue, which increases with every
+	 * update.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Return the version of the catalogue at which the NamedRelation with 
+	 * the specified name or any of its attributes was last updated.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public long getRelationVersion(String name) throws DatabaseException {
+		Long relnVersion = relationVersions.get(name);
+		
+		if (relnVersion==null) {
+			throw new DatabaseException("Named relation " + name + " not found");
+		}
+		
+		return relnVersion.longValue();
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
@@ -91,4 +197,28 @@ public class Catalogue {
 		
 		return attr;
 	}
+	
+	/**
+	 * Attach a columnar file holding the tuples of the NamedRelation with 
+	 * the specified name, replacing any file already attached. The file 
+	 * must store the attributes of the relation, in order.
+	 * 
+	 * @param relName
+	 * @param file
+	 */
+	public void attachFile(String relName, ColumnFile file) throws DatabaseException {
+		file.check(getRelation(relName));
+		files.put(relName, file);
+	}
+	
+	/**
+	 * Return the columnar file attached to the NamedRelation with the 
+	 * specified name.
+	 * 
+	 * @param name
+	 * @return the file, or null if no file is attached
+	 */
+	public ColumnFile getFile(String name) {
+		return files.get(name);
+	}
 }
@@ -1,5 +1,9 @@
 package sjdb;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,9 +14,32 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * The value count of an attribute may be followed by a list of its most
+ * common values and a histogram of its other values (see MostCommonValues
+ * and Histogram), either of which may be omitted:
+ * 
+ * <attr name>,<value count>,mcv=<value>@<fraction>;...,hist=<lower>;<upper>/<value count>;...
+ * 
+ * and by the degree to which the values of other attributes depend on 
+ * its values (see Attribute.getDependency()), as hints for the estimation
+ * of conjunctions that compare correlated attributes:
+ * 
+ * <attr name>,<value count>,dep=<attr name>@<degree>;<attr name>@<degree>;...
+ * 
+ * and by the indexes declared over it, each of which is either a hash 
+ * index or a B+tree index (see Index):
+ * 
+ * <attr name>,<value count>,idx=hash;btree
+ * 
+ * The characters that separate the parts of a line, and %, are written 
+ * in the values of most common value lists and histograms as %XX, where 
+ * XX is the hexadecimal code of the character (see escape()).
+ * 
  * @author nmg
  */
 public class CatalogueParser {
+	private static final String RESERVED = "%:,;@/\r\n";
+
 	private BufferedReader read;
 	private Catalogue catalogue;
 
@@ -44,7 +71,7 @@ public class CatalogueParser {
 	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
@@ -55,8 +82,84 @@ public class CatalogueParser {
 
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		MostCommonValues mostCommon = null;
+		String histogram = null;
+		Map<String, Double> dependencies = new LinkedHashMap<String, Double>();
+		List<Index.Type> indexes = new ArrayList<Index.Type>();
 		
-		catalogue.createAttribute(reln, attr, values);
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].startsWith("mcv=")) {
+				mostCommon = MostCommonValues.parse(parts[i].substring(4));
+			} else if (parts[i].startsWith("hist=")) {
+				histogram = parts[i].substring(5);
+			} else if (parts[i].startsWith("dep=")) {
+				for (String entry : parts[i].substring(4).split(";")) {
+					int at = entry.lastIndexOf('@');
+					dependencies.put(entry.substring(0, at), Double.valueOf(entry.substring(at + 1)));
+				}
+			} else if (parts[i].startsWith("idx=")) {
+				for (String type : parts[i].substring(4).split(";")) {
+					indexes.add(Index.Type.valueOf(type.trim().toUpperCase()));
+				}
+			}
+		}
+		
+		// the histogram covers the tuples whose values are not most common
+		double fraction = mostCommon == null ? 1 : Math.max(0, 1 - mostCommon.getTotalFrequency());
+		catalogue.createAttribute(reln, attr, values, mostCommon, 
+				histogram == null ? null : Histogram.parse(histogram, fraction), dependencies);
+		
+		for (Index.Type type : indexes) {
+			catalogue.createIndex(reln, attr, type);
+		}
+	}
+
+	/**
+	 * Escape the characters of a value that would be taken for separators
+	 * in the catalogue syntax
+	 * @param value
+	 * @return
+	 */
+	static String escape(String value) {
+		StringBuilder ret = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (RESERVED.indexOf(c) >= 0) {
+				ret.append(String.format("%%%02X", (int) c));
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Undo escape(). A % that is not followed by two hexadecimal digits
+	 * is kept as it is, as in catalogues written before values were
+	 * escaped.
+	 * @param text
+	 * @return
+	 */
+	static String unescape(String text) {
+		if (text.indexOf('%') < 0) {
+			return text;
+		}
+		StringBuilder ret = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '%' && i + 2 < text.length() && 
+					isHex(text.charAt(i + 1)) && isHex(text.charAt(i + 2))) {
+				ret.append((char) Integer.parseInt(text.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.toString();
+	}
+
+	private static boolean isHex(char c) {
+		return Character.digit(c, 16) >= 0;
 	}
 }
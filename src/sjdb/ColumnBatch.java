@@ -0,0 +1,145 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class holds a batch of tuples in columnar form for batch execution:
+ * one array of dictionary-encoded values per attribute, and an optional
+ * selection vector giving the positions of the rows that are part of the
+ * batch. Filtering a batch sets a new selection vector, and projecting it
+ * selects a subset of its columns; neither copies any values.
+ *
+ * Batches may share column arrays, so their values must not be modified
+ * once they have been returned by an iterator.
+ */
+public class ColumnBatch {
+	/**
+	 * The number of rows in the batches produced by batch iterators
+	 */
+	public static final int SIZE = 1024;
+
+	private int[][] columns;
+	private int capacity;
+	private int rowCount;
+	private int[] selection;
+	private int size;
+
+	/**
+	 * Create an empty batch
+	 * @param width Number of columns
+	 * @param capacity Maximum number of rows
+	 */
+	public ColumnBatch(int width, int capacity) {
+		this(new int[width][capacity], capacity, 0, null, 0);
+	}
+
+	private ColumnBatch(int[][] columns, int capacity, int rowCount, int[] selection, int size) {
+		this.columns = columns;
+		this.capacity = capacity;
+		this.rowCount = rowCount;
+		this.selection = selection;
+		this.size = size;
+	}
+
+	/**
+	 * Return the number of columns
+	 * @return
+	 */
+	public int getWidth() {
+		return this.columns.length;
+	}
+
+	/**
+	 * Return the values of a column, indexed by row position
+	 * @param index
+	 * @return
+	 */
+	public int[] getColumn(int index) {
+		return this.columns[index];
+	}
+
+	/**
+	 * Return the number of rows in the batch
+	 * @return
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Return the position in the columns of the i'th row of the batch
+	 * @param i
+	 * @return
+	 */
+	public int getRow(int i) {
+		return this.selection == null ? i : this.selection[i];
+	}
+
+	/**
+	 * Return true if no more rows can be added to the batch
+	 * @return
+	 */
+	public boolean isFull() {
+		return this.rowCount == this.capacity;
+	}
+
+	/**
+	 * Add a row to a batch that has no selection vector; the caller sets
+	 * its values in each column
+	 * @return Position of the new row in the columns
+	 */
+	public int addRow() {
+		this.size++;
+		return this.rowCount++;
+	}
+
+	/**
+	 * Return a batch of a subset of the rows of this batch
+	 * @param selection Positions of the rows in the columns, in increasing order
+	 * @param size Number of rows
+	 * @return Batch sharing the columns of this batch
+	 */
+	public ColumnBatch select(int[] selection, int size) {
+		return new ColumnBatch(this.columns, this.capacity, this.rowCount, selection, size);
+	}
+
+	/**
+	 * Return a batch of a subset of the columns of this batch
+	 * @param indexes Indexes of the columns to retain
+	 * @return Batch sharing the columns of this batch
+	 */
+	public ColumnBatch project(int[] indexes) {
+		int[][] columns = new int[indexes.length][];
+		for (int i = 0; i < indexes.length; i++) {
+			columns[i] = this.columns[indexes[i]];
+		}
+		return new ColumnBatch(columns, this.capacity, this.rowCount, this.selection, this.size);
+	}
+
+	/**
+	 * Copy the rows of a number of batches into a single batch without a
+	 * selection vector
+	 * @param batches
+	 * @param width Number of columns in each batch
+	 * @return
+	 */
+	public static ColumnBatch concatenate(List<ColumnBatch> batches, int width) {
+		int total = 0;
+		for (ColumnBatch batch : batches) {
+			total += batch.size();
+		}
+
+		ColumnBatch ret = new ColumnBatch(width, total);
+		for (ColumnBatch batch : batches) {
+			for (int i = 0; i < batch.size(); i++) {
+				int from = batch.getRow(i);
+				int to = ret.addRow();
+				for (int c = 0; c < width; c++) {
+					ret.columns[c][to] = batch.columns[c][from];
+				}
+			}
+		}
+
+		return ret;
+	}
+}
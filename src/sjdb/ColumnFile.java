@@ -0,0 +1,369 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores the tuples of a named relation in a columnar file,
+ * which is read through a memory-mapped FileChannel. Each column holds the
+ * values of one attribute, encoded with a dictionary of the distinct
+ * values of that column. The file is laid out as follows, with all
+ * numbers big-endian:
+ *
+ * - header: magic number, format version, tuple count, column count
+ * - column directory: for each column, its attribute name (length and
+ *   UTF-8 bytes), dictionary size, code width in bytes, and the offsets
+ *   of its dictionary and codes in the file
+ * - dictionaries: for each column, the end offset of each value relative
+ *   to the start of the value bytes, followed by the UTF-8 value bytes
+ * - codes: for each column, the code of the value of each tuple, stored
+ *   in one, two or four bytes depending on the size of the dictionary
+ *
+ * Scans read the codes straight from the mapped file, and decode each
+ * dictionary value at most once. A ColumnFile may be scanned by many
+ * threads at once.
+ */
+public class ColumnFile {
+	/**
+	 * The file name extension of columnar files
+	 */
+	public static final String EXTENSION = ".col";
+
+	private static final int MAGIC = 0x534A4442;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File file;
+	private int tupleCount;
+	private String[] names;
+	private Column[] columns;
+
+	/**
+	 * A column of the file: its dictionary and its codes
+	 */
+	private static class Column {
+		private ByteBuffer dictionary;
+		private ByteBuffer codes;
+		private int width;
+		private String[] values;
+
+		private String decode(int code) {
+			String value = this.values[code];
+			if (value == null) {
+				// decoded values are immutable, so a race only decodes a value twice
+				int base = this.values.length * 4;
+				int start = code == 0 ? 0 : this.dictionary.getInt((code - 1) * 4);
+				int end = this.dictionary.getInt(code * 4);
+				byte[] bytes = new byte[end - start];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = this.dictionary.get(base + start + i);
+				}
+				value = new String(bytes, UTF8);
+				this.values[code] = value;
+			}
+			return value;
+		}
+
+		private int code(int row) {
+			switch (this.width) {
+			case 1:
+				return this.codes.get(row) & 0xFF;
+			case 2:
+				return this.codes.getShort(row * 2) & 0xFFFF;
+			default:
+				return this.codes.getInt(row * 4);
+			}
+		}
+	}
+
+	/**
+	 * Open a columnar file, and map its contents into memory
+	 * @param file
+	 */
+	public ColumnFile(File file) throws DatabaseException {
+		this.file = file;
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer header = map(channel, 0, Math.min(channel.size(), 16));
+				if (header.remaining() < 16 || header.getInt(0) != MAGIC) {
+					throw new DatabaseException(file + ": not a columnar file");
+				}
+				if (header.getInt(4) != VERSION) {
+					throw new DatabaseException(file + ": unsupported format version " + header.getInt(4));
+				}
+				this.tupleCount = header.getInt(8);
+				this.names = new String[header.getInt(12)];
+				this.columns = new Column[this.names.length];
+
+				ByteBuffer directory = map(channel, 16, channel.size() - 16);
+				for (int i = 0; i < this.columns.length; i++) {
+					byte[] name = new byte[directory.getInt()];
+					directory.get(name);
+					this.names[i] = new String(name, UTF8);
+
+					Column column = new Column();
+					column.values = new String[directory.getInt()];
+					column.width = directory.get();
+					long dictionaryOffset = directory.getLong();
+					long codesOffset = directory.getLong();
+					column.dictionary = map(channel, dictionaryOffset, codesOffset - dictionaryOffset);
+					column.codes = map(channel, codesOffset, (long) this.tupleCount * column.width);
+					this.columns[i] = column;
+				}
+			} finally {
+				// the mappings remain valid after the channel is closed
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read columnar file " + file, e);
+		} catch (RuntimeException e) {
+			throw new DatabaseException(file + ": corrupt columnar file", e);
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Mapped region of " + size + " bytes is too large");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+	}
+
+	/**
+	 * Return the file
+	 * @return
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Return the number of tuples stored in the file
+	 * @return
+	 */
+	public int getTupleCount() {
+		return this.tupleCount;
+	}
+
+	/**
+	 * Return the names of the attributes stored in the file, in column order
+	 * @return
+	 */
+	public List<String> getAttributeNames() {
+		return Arrays.asList(this.names);
+	}
+
+	/**
+	 * Return the number of distinct values of a column
+	 * @param column Column number
+	 * @return
+	 */
+	public int getValueCount(int column) {
+		return this.columns[column].values.length;
+	}
+
+	/**
+	 * Return the code of the value of a tuple in a column; codes are
+	 * numbered from 0 in the order in which the values were first stored
+	 * @param column Column number
+	 * @param row Tuple number
+	 * @return
+	 */
+	public int getCode(int column, int row) {
+		return this.columns[column].code(row);
+	}
+
+	/**
+	 * Return the value with a code in a column
+	 * @param column Column number
+	 * @param code
+	 * @return
+	 */
+	public String getValue(int column, int code) {
+		return this.columns[column].decode(code);
+	}
+
+	/**
+	 * Return an iterator over the tuples stored in the file
+	 * @param relation Named relation whose tuples are stored in the file
+	 * @return
+	 */
+	public TupleIterator scan(final NamedRelation relation) {
+		return new TupleIterator() {
+			private int row;
+
+			public List<Attribute> getAttributes() {
+				return relation.getAttributes();
+			}
+
+			public void open() {
+				this.row = 0;
+			}
+
+			public String[] next() {
+				if (this.row == tupleCount) {
+					return null;
+				}
+
+				String[] tuple = new String[columns.length];
+				for (int i = 0; i < tuple.length; i++) {
+					tuple[i] = columns[i].decode(columns[i].code(this.row));
+				}
+				this.row++;
+				return tuple;
+			}
+
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Check that the file stores the attributes of a named relation, in
+	 * the order of the relation's attributes
+	 * @param relation
+	 */
+	public void check(NamedRelation relation) throws DatabaseException {
+		List<String> attributes = new ArrayList<String>();
+		for (Attribute attr : relation.getAttributes()) {
+			attributes.add(attr.getName());
+		}
+
+		if (!attributes.equals(getAttributeNames())) {
+			throw new DatabaseException(this.file + ": stores attributes " + getAttributeNames() +
+					", not those of " + relation.getName() + " " + attributes);
+		}
+	}
+
+	/**
+	 * Write the tuples produced by an iterator to a columnar file,
+	 * replacing the file if it exists. The codes of the tuples are held in
+	 * memory until the dictionaries are complete.
+	 * @param file
+	 * @param relation Named relation whose tuples are written
+	 * @param tuples Iterator over tuples in the order of the relation's attributes
+	 * @return Number of tuples written
+	 */
+	public static long write(File file, NamedRelation relation, TupleIterator tuples) throws DatabaseException {
+		int width = relation.getAttributes().size();
+		List<Map<String, Integer>> dictionaries = new ArrayList<Map<String, Integer>>();
+		List<List<byte[]>> values = new ArrayList<List<byte[]>>();
+		int[][] codes = new int[width][1024];
+		int capacity = 1024;
+		int count = 0;
+
+		for (int i = 0; i < width; i++) {
+			dictionaries.add(new HashMap<String, Integer>());
+			values.add(new ArrayList<byte[]>());
+		}
+
+		tuples.open();
+		String[] tuple;
+		while ((tuple = tuples.next()) != null) {
+			if (count == capacity) {
+				capacity *= 2;
+				for (int i = 0; i < width; i++) {
+					codes[i] = Arrays.copyOf(codes[i], capacity);
+				}
+			}
+			for (int i = 0; i < width; i++) {
+				Integer code = dictionaries.get(i).get(tuple[i]);
+				if (code == null) {
+					code = values.get(i).size();
+					dictionaries.get(i).put(tuple[i], code);
+					values.get(i).add(tuple[i].getBytes(UTF8));
+				}
+				codes[i][count] = code.intValue();
+			}
+			count++;
+		}
+		tuples.close();
+
+		// lay out the file: header, column directory, dictionaries, codes
+		byte[][] names = new byte[width][];
+		long offset = 16;
+		for (int i = 0; i < width; i++) {
+			names[i] = relation.getAttributes().get(i).getName().getBytes(UTF8);
+			offset += 4 + names[i].length + 4 + 1 + 8 + 8;
+		}
+		long[] dictionaryOffsets = new long[width];
+		for (int i = 0; i < width; i++) {
+			dictionaryOffsets[i] = offset;
+			offset += 4 * values.get(i).size();
+			for (byte[] value : values.get(i)) {
+				offset += value.length;
+			}
+		}
+		long[] codesOffsets = new long[width];
+		int[] widths = new int[width];
+		for (int i = 0; i < width; i++) {
+			int size = values.get(i).size();
+			widths[i] = size <= 0x100 ? 1 : size <= 0x10000 ? 2 : 4;
+			codesOffsets[i] = offset;
+			offset += (long) count * widths[i];
+		}
+
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(count);
+				out.writeInt(width);
+				for (int i = 0; i < width; i++) {
+					out.writeInt(names[i].length);
+					out.write(names[i]);
+					out.writeInt(values.get(i).size());
+					out.writeByte(widths[i]);
+					out.writeLong(dictionaryOffsets[i]);
+					out.writeLong(codesOffsets[i]);
+				}
+				for (int i = 0; i < width; i++) {
+					int end = 0;
+					for (byte[] value : values.get(i)) {
+						end += value.length;
+						out.writeInt(end);
+					}
+					for (byte[] value : values.get(i)) {
+						out.write(value);
+					}
+				}
+				for (int i = 0; i < width; i++) {
+					for (int row = 0; row < count; row++) {
+						switch (widths[i]) {
+						case 1:
+							out.writeByte(codes[i][row]);
+							break;
+						case 2:
+							out.writeShort(codes[i][row]);
+							break;
+						default:
+							out.writeInt(codes[i][row]);
+						}
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot write columnar file " + file, e);
+		}
+
+		return count;
+	}
+}
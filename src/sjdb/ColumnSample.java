@@ -0,0 +1,165 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class keeps a uniform random sample of the values of an attribute,
+ * of at most SIZE values, from which the list of its most common values
+ * and a histogram of its other values are built. The sample is maintained
+ * by reservoir sampling, so the values can be streamed through it in a
+ * single pass in bounded memory; if no more than SIZE values are added,
+ * the sample holds all of them and the statistics are exact.
+ */
+public class ColumnSample {
+	/**
+	 * The largest number of values kept in a sample
+	 */
+	public static final int SIZE = 10000;
+
+	/**
+	 * The largest number of most common values
+	 */
+	public static final int MOST_COMMON = 20;
+
+	/**
+	 * The largest number of buckets in a histogram
+	 */
+	public static final int BUCKETS = 20;
+
+	private String[] values;
+	private int size;
+	private long seen;
+	private Random random;
+
+	/**
+	 * Create an empty sample
+	 * @param seed Seed of the random choice of the sampled values
+	 */
+	public ColumnSample(long seed) {
+		this.values = new String[SIZE];
+		this.size = 0;
+		this.seen = 0;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Add a value to the sample
+	 * @param value
+	 */
+	public void add(String value) {
+		this.seen++;
+		if (this.size < SIZE) {
+			this.values[this.size++] = value;
+		} else {
+			long slot = (long) (this.random.nextDouble() * this.seen);
+			if (slot < SIZE) {
+				this.values[(int) slot] = value;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of times each sampled value occurs in the sample
+	 */
+	private Map<String, Integer> counts() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < this.size; i++) {
+			Integer count = counts.get(this.values[i]);
+			counts.put(this.values[i], count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+	/**
+	 * Return the most common values of the attribute: those that occur
+	 * noticeably more often in the sample than the average value, or every
+	 * value if the whole attribute has few enough values
+	 * @param distinct Number of distinct values of the attribute
+	 * @return the values, or null if no value is more common than the rest
+	 */
+	public MostCommonValues getMostCommonValues(long distinct) {
+		final Map<String, Integer> counts = counts();
+		List<String> candidates = new ArrayList<String>(counts.keySet());
+		Collections.sort(candidates, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int result = counts.get(b).compareTo(counts.get(a));
+				return result != 0 ? result : Sort.compare(a, b);
+			}
+		});
+
+		boolean complete = this.seen == this.size && counts.size() <= MOST_COMMON;
+		double minimum = Math.max(2, 1.25 * this.size / Math.max(1, distinct));
+		Map<String, Double> frequencies = new LinkedHashMap<String, Double>();
+		for (String value : candidates) {
+			if (frequencies.size() == MOST_COMMON || (!complete && counts.get(value) < minimum)) {
+				break;
+			}
+			frequencies.put(value, (double) counts.get(value) / this.size);
+		}
+
+		return frequencies.isEmpty() ? null : new MostCommonValues(frequencies);
+	}
+
+	/**
+	 * Return an equi-depth histogram of the values of the attribute that
+	 * are not among its most common values. The distinct value counts of
+	 * the buckets are scaled up from the sample to the whole attribute.
+	 * @param distinct Number of distinct values of the attribute
+	 * @param mostCommon Most common values of the attribute, or null
+	 * @return the histogram, or null if fewer than two other values were sampled
+	 */
+	public Histogram getHistogram(long distinct, MostCommonValues mostCommon) {
+		List<String> others = new ArrayList<String>();
+		for (int i = 0; i < this.size; i++) {
+			if (mostCommon == null || mostCommon.getFrequency(this.values[i]) < 0) {
+				others.add(this.values[i]);
+			}
+		}
+		Collections.sort(others, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Sort.compare(a, b);
+			}
+		});
+
+		int sampledDistinct = 0;
+		for (int i = 0; i < others.size(); i++) {
+			if (i == 0 || !others.get(i).equals(others.get(i - 1))) {
+				sampledDistinct++;
+			}
+		}
+		if (sampledDistinct < 2) {
+			return null;
+		}
+
+		int buckets = Math.min(BUCKETS, sampledDistinct);
+		String[] bounds = new String[buckets + 1];
+		for (int b = 0; b <= buckets; b++) {
+			bounds[b] = others.get((int) ((long) b * (others.size() - 1) / buckets));
+		}
+
+		double fraction = mostCommon == null ? 1 : Math.max(0, 1 - mostCommon.getTotalFrequency());
+		Histogram sampled = new Histogram(bounds, new int[buckets], fraction);
+		int[] bucketDistinct = new int[buckets];
+		for (int i = 0; i < others.size(); i++) {
+			if (i == 0 || !others.get(i).equals(others.get(i - 1))) {
+				bucketDistinct[sampled.bucketOf(others.get(i))]++;
+			}
+		}
+
+		// values missing from the sample are assumed to be spread like those in it
+		long otherDistinct = distinct - (mostCommon == null ? 0 : mostCommon.size());
+		double scale = Math.max(1, (double) otherDistinct / sampledDistinct);
+		for (int b = 0; b < buckets; b++) {
+			bucketDistinct[b] = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round(bucketDistinct[b] * scale)));
+		}
+
+		return new Histogram(bounds, bucketDistinct, fraction);
+	}
+}
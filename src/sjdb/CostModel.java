@@ -0,0 +1,487 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class computes the cost of each operator of a plan: the cumulative
+ * cost of producing its output, including the cost of its inputs. Costs
+ * are expressed in units of sequential page reads, and combine:
+ *
+ * - I/O: the pages of each scanned relation, and the pages that a join
+ *   writes out and reads back when its inputs do not fit in memory; the
+ *   pages that an index scan reads from its index and its relation are
+ *   read at random, and each costs RANDOM_PAGE_COST
+ * - CPU: CPU_TUPLE_COST for every tuple read, hashed, combined or
+ *   produced, and CPU_OPERATOR_COST for every comparison made by a
+ *   predicate (so a compound predicate costs one per operand)
+ * - memory: a join whose build (or inner) side does not fit in the memory
+ *   budget pays for spilling it
+ *
+ * The width of a tuple is the sum of the widths of its attributes, where
+ * the width of an attribute is the average length of its most common
+ * values, weighted by their frequencies, or DEFAULT_ATTRIBUTE_WIDTH if
+ * the catalogue does not list them. Page counts follow from the widths
+ * and estimated tuple counts.
+ *
+ * An index nested loop join reads the pages of an index declared over the
+ * join attribute of the scanned relation at random, as an index scan does.
+ * If no index is declared, the join pays for building one over the scanned
+ * relation, as the Executor does the first time it uses the index.
+ *
+ * A join is costed with the cheapest of its methods, which is the one that
+ * JoinPlanner chooses for it, so plans can be costed before the methods
+ * are chosen, unless the optimiser has fixed its method. Sorts, and the
+ * sorts made by sort-merge joins, cost a single pass over input that is
+ * already in the required order (see Operator.getOrder()). Aggregates
+ * hash each input tuple into its group, and partition their input if the
+ * groups do not fit in memory.
+ * Costs are cached on the operators along with their estimates, and are
+ * computed incrementally in the same way (see Estimator.estimate()).
+ */
+public class CostModel implements PlanVisitor {
+	/**
+	 * The number of bytes in a page
+	 */
+	public static final int PAGE_SIZE = 4096;
+
+	/**
+	 * The number of bytes of each tuple that are not attribute values
+	 */
+	public static final int TUPLE_OVERHEAD = 8;
+
+	/**
+	 * The width, in bytes, assumed for an attribute whose values are not
+	 * known
+	 */
+	public static final int DEFAULT_ATTRIBUTE_WIDTH = 8;
+
+	/**
+	 * The default number of pages that a join may hold in memory
+	 */
+	public static final long DEFAULT_MEMORY_PAGES = 16384;
+
+	/**
+	 * The cost of inserting a tuple into a hash table, relative to probing
+	 */
+	public static final double BUILD_WEIGHT = 2;
+
+	/**
+	 * The cost of reading a page sequentially
+	 */
+	public static final double PAGE_COST = 1;
+
+	/**
+	 * The cost of reading a page at random, relative to reading it
+	 * sequentially
+	 */
+	public static final double RANDOM_PAGE_COST = 4;
+
+	/**
+	 * The cost of processing a tuple, relative to reading a page
+	 */
+	public static final double CPU_TUPLE_COST = 0.01;
+
+	/**
+	 * The cost of making a comparison, relative to reading a page
+	 */
+	public static final double CPU_OPERATOR_COST = 0.0025;
+
+	private Estimator estimator;
+	private long memoryPages;
+
+	/**
+	 * Create a cost model with the default memory budget
+	 * @param estimator Estimator used to estimate the plans to be costed
+	 */
+	public CostModel(Estimator estimator) {
+		this(estimator, DEFAULT_MEMORY_PAGES);
+	}
+
+	/**
+	 * Create a cost model with the given memory budget
+	 * @param estimator Estimator used to estimate the plans to be costed
+	 * @param memoryPages Number of pages that a join may hold in memory
+	 */
+	public CostModel(Estimator estimator, long memoryPages) {
+		this.estimator = estimator;
+		this.memoryPages = memoryPages;
+	}
+
+	/**
+	 * Return the estimator used by this cost model
+	 * @return
+	 */
+	public Estimator getEstimator() {
+		return this.estimator;
+	}
+
+	/**
+	 * Return the cumulative cost of a plan, estimating and costing only the
+	 * operators whose cached estimates or costs are not current
+	 * @param op Root of the plan
+	 * @return Cost, in page reads
+	 */
+	public double cost(Operator op) {
+		this.estimator.estimate(op);
+		costPlan(op);
+		return op.getCost();
+	}
+
+	private void costPlan(Operator op) {
+		if (op.isCosted()) {
+			return;
+		}
+
+		for (Operator input : op.inputs) {
+			costPlan(input);
+		}
+
+		op.acceptLocal(this);
+	}
+
+	/**
+	 * Return the cost that the output of a plan imposes on the operators
+	 * that consume it: processing each of its tuples, and writing out and
+	 * reading back each of its pages should it not fit in memory. Unlike
+	 * cost(), this does not depend on how the output was produced.
+	 * @param op Root of an estimated plan
+	 * @return Cost, in page reads
+	 */
+	public double outputCost(Operator op) {
+		this.estimator.estimate(op);
+		return tuples(op) * CPU_TUPLE_COST + 2 * pages(op) * PAGE_COST;
+	}
+
+	/**
+	 * Return the width of the tuples of a relation, in bytes
+	 * @param relation
+	 * @return
+	 */
+	public static double width(Relation relation) {
+		double width = TUPLE_OVERHEAD;
+		for (Attribute attr : relation.getAttributes()) {
+			width += width(attr);
+		}
+		return width;
+	}
+
+	/**
+	 * Return the average width of the values of an attribute, in bytes
+	 * @param attr
+	 * @return
+	 */
+	public static double width(Attribute attr) {
+		MostCommonValues mostCommon = attr.getMostCommonValues();
+		if (mostCommon == null || mostCommon.getTotalFrequency() <= 0) {
+			return DEFAULT_ATTRIBUTE_WIDTH;
+		}
+
+		double width = 0;
+		for (Map.Entry<String, Double> entry : mostCommon.getFrequencies().entrySet()) {
+			width += entry.getKey().length() * entry.getValue();
+		}
+		return width / mostCommon.getTotalFrequency();
+	}
+
+	private static double tuples(Operator op) {
+		return op.getOutput().getTupleCount();
+	}
+
+	/**
+	 * Return the number of pages filled by the output of an operator
+	 */
+	private static double pages(Operator op) {
+		return pages(op.getOutput());
+	}
+
+	private static double pages(Relation relation) {
+		return Math.ceil(relation.getTupleCount() * width(relation) / PAGE_SIZE);
+	}
+
+	/**
+	 * Return the number of comparisons made by a predicate
+	 */
+	private static int comparisons(Predicate predicate) {
+		if (!predicate.isCompound()) {
+			return 1;
+		}
+
+		int comparisons = 0;
+		for (Predicate operand : predicate.getOperands()) {
+			comparisons += comparisons(operand);
+		}
+		return comparisons;
+	}
+
+	private static double log2(double n) {
+		return n > 1 ? Math.log(n) / Math.log(2) : 0;
+	}
+
+	/**
+	 * Return the I/O cost of a nested loop over two inputs, whose inner
+	 * (right) input is held in memory if it fits; otherwise it is written
+	 * out, and read back once for every block of the outer input that
+	 * fits in memory
+	 */
+	private double nestedLoopIO(Operator outer, Operator inner) {
+		double innerPages = pages(inner);
+		if (innerPages <= this.memoryPages) {
+			return 0;
+		}
+		double blocks = Math.max(1, Math.ceil(pages(outer) / this.memoryPages));
+		return (1 + blocks) * innerPages * PAGE_COST;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Scan)
+	 */
+	public void visit(Scan op) {
+		op.setCost(pages(op) * PAGE_COST + tuples(op) * CPU_TUPLE_COST);
+	}
+
+	/**
+	 * Return the number of pages of an index read to find a value: a hash
+	 * index finds the bucket of a value directly, and a B+tree descends
+	 * from its root to the leaf of the first value in range
+	 */
+	private static double descent(Index index, Relation relation) {
+		if (index.getType() != Index.Type.BTREE) {
+			return 1;
+		}
+		double fanout = Math.max(2, Math.floor(PAGE_SIZE / (width(index.getAttribute()) + TUPLE_OVERHEAD)));
+		return Math.max(1, Math.ceil(Math.log(Math.max(2, relation.getTupleCount())) / Math.log(fanout)));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.IndexScan)
+	 */
+	public void visit(IndexScan op) {
+		Relation relation = op.getRelation();
+		double entryWidth = width(op.getIndex().getAttribute()) + TUPLE_OVERHEAD;
+		double matches = tuples(op);
+
+		double descent = descent(op.getIndex(), relation);
+
+		// the entries of the matching tuples are read in order, and each
+		// tuple is fetched from its page, which is read at most once
+		double entries = Math.ceil(matches * entryWidth / PAGE_SIZE);
+		double fetches = Math.min(matches, pages(relation));
+
+		op.setCost((descent + fetches) * RANDOM_PAGE_COST + entries * PAGE_COST +
+				matches * (CPU_TUPLE_COST + CPU_OPERATOR_COST));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Project)
+	 */
+	public void visit(Project op) {
+		Operator input = op.getInput();
+		op.setCost(input.getCost() + tuples(input) * CPU_TUPLE_COST);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Select)
+	 */
+	public void visit(Select op) {
+		Operator input = op.getInput();
+		op.setCost(input.getCost() + tuples(input) * comparisons(op.getPredicate()) * CPU_OPERATOR_COST);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Product)
+	 */
+	public void visit(Product op) {
+		Operator left = op.getLeft();
+		Operator right = op.getRight();
+		op.setCost(left.getCost() + right.getCost() + tuples(right) * CPU_TUPLE_COST +
+				nestedLoopIO(left, right) + tuples(op) * CPU_TUPLE_COST);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		double best;
+
+		if (op.isMethodFixed()) {
+			best = joinCost(op, op.getMethod(), op.isBuildLeft());
+		} else {
+			best = Double.POSITIVE_INFINITY;
+			for (Join.Method method : Join.Method.values()) {
+				best = Math.min(best, Math.min(joinCost(op, method, true), joinCost(op, method, false)));
+			}
+		}
+
+		op.setCost(best + tuples(op) * CPU_TUPLE_COST);
+	}
+
+	/**
+	 * Return the cost of a join executed by the given method, including
+	 * the costs of its inputs but not of producing its output, or infinity
+	 * if the method cannot be used. The inputs must have been costed.
+	 * @param op Join
+	 * @param method Join method
+	 * @param buildLeft true if the left input is the build (or indexed) side
+	 * @return Cost, in page reads
+	 */
+	public double joinCost(Join op, Join.Method method, boolean buildLeft) {
+		Operator left = op.getLeft();
+		Operator right = op.getRight();
+		Operator build = buildLeft ? left : right;
+		Operator probe = buildLeft ? right : left;
+		double inputs = left.getCost() + right.getCost();
+
+		switch (method) {
+		case NESTED_LOOP:
+			// the right input is always the inner one
+			return buildLeft ? Double.POSITIVE_INFINITY : inputs + tuples(right) * CPU_TUPLE_COST + 
+					nestedLoopIO(left, right) + tuples(left) * tuples(right) * CPU_OPERATOR_COST;
+		case HASH:
+		case GRACE_HASH:
+			// a grace hash join is needed if the build side does not fit in memory
+			if ((method == Join.Method.GRACE_HASH) != (pages(build) > this.memoryPages)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double hash = BUILD_WEIGHT * tuples(build) * CPU_TUPLE_COST +
+					tuples(probe) * (CPU_TUPLE_COST + CPU_OPERATOR_COST);
+			if (method == Join.Method.GRACE_HASH) {
+				hash += 2 * (pages(left) + pages(right)) * PAGE_COST;
+			}
+			return inputs + hash;
+		case SORT_MERGE:
+			// both inputs are sorted whatever the build side
+			return buildLeft ? Double.POSITIVE_INFINITY : inputs + 
+					sortCost(left, op.getPredicate()) + sortCost(right, op.getPredicate()) +
+					(tuples(left) + tuples(right)) * CPU_OPERATOR_COST;
+		default:
+			if (!(build instanceof Scan)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double lookups = tuples(probe) * (CPU_TUPLE_COST + CPU_OPERATOR_COST);
+			Index index = joinIndex((Scan) build, op.getPredicate());
+			if (index != null) {
+				// the indexed relation is not scanned; each outer tuple
+				// reads the index and fetches the pages of its matches, and
+				// no page is read more than once
+				Relation relation = ((Scan) build).getRelation();
+				double entries = Math.ceil(relation.getTupleCount() *
+						(width(index.getAttribute()) + TUPLE_OVERHEAD) / PAGE_SIZE);
+				double descent = descent(index, relation);
+				double reads = Math.min(tuples(probe) * descent, descent + entries) +
+						Math.min(tuples(op), pages(relation));
+				return probe.getCost() + reads * RANDOM_PAGE_COST + lookups;
+			}
+			// without a declared index, one is built when the join is
+			// executed, by scanning the indexed relation and hashing each
+			// of its tuples into memory
+			if (pages(build) > this.memoryPages) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return inputs + BUILD_WEIGHT * tuples(build) * CPU_TUPLE_COST + lookups;
+		}
+	}
+
+	/**
+	 * Return the index declared over the join attribute of a scanned named
+	 * relation, or null if there is none
+	 * @param scan Indexed input of an index nested loop join
+	 * @param predicate Join predicate
+	 * @return
+	 */
+	public static Index joinIndex(Scan scan, Predicate predicate) {
+		if (!(scan.getRelation() instanceof NamedRelation)) {
+			return null;
+		}
+		NamedRelation relation = (NamedRelation) scan.getRelation();
+		Attribute attribute = relation.getAttributes().contains(predicate.getLeftAttribute()) ?
+				predicate.getLeftAttribute() : predicate.getRightAttribute();
+		return relation.getIndex(attribute);
+	}
+
+	/**
+	 * Return the cost of sorting an input of a sort-merge join on its join
+	 * attribute, which is a single pass if it is already in that order
+	 */
+	private double sortCost(Operator input, Predicate predicate) {
+		Attribute key = input.getOutput().getAttributes().contains(predicate.getLeftAttribute()) ?
+				predicate.getLeftAttribute() : predicate.getRightAttribute();
+		List<Attribute> keys = new ArrayList<Attribute>();
+		keys.add(key);
+		return sortCost(input, keys);
+	}
+
+	/**
+	 * Return the cost of sorting the output of an operator: the comparisons
+	 * of an in-memory sort, and writing out and reading back every page of
+	 * an input that does not fit in memory. Input that is already in order
+	 * is only checked, in a single pass.
+	 */
+	private double sortCost(Operator input, List<Attribute> keys) {
+		double tuples = tuples(input);
+		if (isOrdered(input, keys)) {
+			return tuples * CPU_OPERATOR_COST;
+		}
+
+		double sort = tuples * log2(tuples) * keys.size() * CPU_OPERATOR_COST;
+		if (pages(input) > this.memoryPages) {
+			sort += 2 * pages(input) * PAGE_COST;
+		}
+		return sort;
+	}
+
+	/**
+	 * Return true if the output of an operator is ordered on the given
+	 * attributes: its order begins with them, or with attributes that the
+	 * operator has equated with them (see Operator.getOrderClasses())
+	 * @param op
+	 * @param keys Attributes, most significant first
+	 * @return
+	 */
+	public static boolean isOrdered(Operator op, List<Attribute> keys) {
+		List<List<Attribute>> classes = op.getOrderClasses();
+		if (classes.size() < keys.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < keys.size(); i++) {
+			if (!classes.get(i).contains(keys.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Sort)
+	 */
+	public void visit(Sort op) {
+		Operator input = op.getInput();
+		op.setCost(input.getCost() + sortCost(input, op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Aggregate)
+	 */
+	public void visit(Aggregate op) {
+		// each input tuple is hashed into its group and updates every
+		// aggregate; groups that do not fit in memory are partitioned, as
+		// by a grace hash join, which writes out and reads back the input
+		Operator input = op.getInput();
+		double cost = input.getCost() + tuples(input) * (CPU_TUPLE_COST +
+				op.getFunctions().size() * CPU_OPERATOR_COST) + tuples(op) * CPU_TUPLE_COST;
+		if (pages(op) > this.memoryPages) {
+			cost += 2 * pages(input) * PAGE_COST;
+		}
+		op.setCost(cost);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Exchange)
+	 */
+	public void visit(Exchange op) {
+		Operator input = op.getInput();
+		op.setCost(input.getCost() + tuples(input) * CPU_TUPLE_COST);
+	}
+}
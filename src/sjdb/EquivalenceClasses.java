@@ -0,0 +1,265 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class partitions attributes into equivalence classes: sets of
+ * attributes that are known to take the same value in every tuple, because
+ * predicates of the form attr=attr equate them. Classes are kept in a
+ * union-find structure, so adding an equality and finding the class of an
+ * attribute take close to constant time.
+ *
+ * The classes are used by the optimiser to infer the comparisons implied
+ * by those of a query (see infer()), to join any two relations that share
+ * a class (see QueryGraph and getJoinPredicates()), and to recognise join
+ * predicates that are redundant because the attributes they equate are
+ * already equal.
+ */
+public class EquivalenceClasses {
+	private Map<Attribute, Attribute> parents;
+
+	/**
+	 * Create a partition in which every attribute is in a class of its own
+	 */
+	public EquivalenceClasses() {
+		this.parents = new LinkedHashMap<Attribute, Attribute>();
+	}
+
+	/**
+	 * Return the equivalence classes of the attributes that are equated by
+	 * the joins and selects of a plan
+	 * @param plan
+	 * @return
+	 */
+	public static EquivalenceClasses of(Operator plan) {
+		EquivalenceClasses classes = new EquivalenceClasses();
+		classes.addPlan(plan);
+		return classes;
+	}
+
+	private void addPlan(Operator plan) {
+		if (plan instanceof Select) {
+			add(((Select) plan).getPredicate());
+		}
+		else if (plan instanceof Join) {
+			add(((Join) plan).getPredicate());
+		}
+
+		if (!(plan instanceof Scan)) {
+			for (Operator input : plan.getInputs()) {
+				addPlan(input);
+			}
+		}
+	}
+
+	/**
+	 * Add the equality stated by a predicate of the form attr=attr, or by
+	 * each such operand of a conjunction; other predicates state no
+	 * equality and are ignored
+	 * @param predicate
+	 */
+	public void add(Predicate predicate) {
+		if (predicate.getConnective() == Predicate.Connective.AND) {
+			for (Predicate operand : predicate.getOperands()) {
+				add(operand);
+			}
+		}
+		else if (!predicate.hasValue()) {
+			union(predicate.getLeftAttribute(), predicate.getRightAttribute());
+		}
+	}
+
+	/**
+	 * Merge the classes of two attributes
+	 * @param a
+	 * @param b
+	 */
+	public void union(Attribute a, Attribute b) {
+		Attribute rootA = find(a);
+		Attribute rootB = find(b);
+
+		if (!rootA.equals(rootB)) {
+			this.parents.put(rootB, rootA);
+		}
+	}
+
+	/**
+	 * Return the representative of the class of an attribute
+	 * @param attr
+	 * @return
+	 */
+	public Attribute find(Attribute attr) {
+		Attribute parent = this.parents.get(attr);
+		if (parent == null) {
+			this.parents.put(attr, attr);
+			return attr;
+		}
+		if (parent.equals(attr)) {
+			return attr;
+		}
+
+		Attribute root = find(parent);
+		this.parents.put(attr, root);
+		return root;
+	}
+
+	/**
+	 * Return true if two attributes are in the same class
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public boolean isEquivalent(Attribute a, Attribute b) {
+		return a.equals(b) || find(a).equals(find(b));
+	}
+
+	/**
+	 * Return the members of the class of an attribute, in the order in
+	 * which they were first added
+	 * @param attr
+	 * @return
+	 */
+	public List<Attribute> getMembers(Attribute attr) {
+		Attribute root = find(attr);
+		List<Attribute> members = new ArrayList<Attribute>();
+
+		for (Attribute member : new ArrayList<Attribute>(this.parents.keySet())) {
+			if (find(member).equals(root)) {
+				members.add(member);
+			}
+		}
+
+		return members;
+	}
+
+	/**
+	 * Return the classes with more than one member
+	 * @return
+	 */
+	public List<List<Attribute>> getClasses() {
+		Map<Attribute, List<Attribute>> classes = new LinkedHashMap<Attribute, List<Attribute>>();
+
+		for (Attribute member : new ArrayList<Attribute>(this.parents.keySet())) {
+			Attribute root = find(member);
+			List<Attribute> members = classes.get(root);
+			if (members == null) {
+				members = new ArrayList<Attribute>();
+				classes.put(root, members);
+			}
+			members.add(member);
+		}
+
+		List<List<Attribute>> ret = new ArrayList<List<Attribute>>();
+		for (List<Attribute> members : classes.values()) {
+			if (members.size() > 1) {
+				ret.add(members);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the equalities that join the outputs of two operators over
+	 * disjoint sets of relations: for each class with members in both, the
+	 * equality of the member in each output with the fewest values. The
+	 * other equalities between the outputs follow from these, given those
+	 * within each output.
+	 * @param left Estimated output on one side
+	 * @param right Estimated output on the other side
+	 * @return Join predicates
+	 */
+	public List<Predicate> getJoinPredicates(Relation left, Relation right) {
+		List<Predicate> predicates = new ArrayList<Predicate>();
+
+		for (List<Attribute> members : getClasses()) {
+			Attribute leftMember = getMember(members, left);
+			Attribute rightMember = getMember(members, right);
+			if (leftMember != null && rightMember != null) {
+				predicates.add(new Predicate(leftMember, rightMember));
+			}
+		}
+
+		return predicates;
+	}
+
+	/**
+	 * Return the member of a class with the fewest values in a relation, 
+	 * or null if it has none of them
+	 */
+	private static Attribute getMember(List<Attribute> members, Relation relation) {
+		Attribute member = null;
+		List<Attribute> attributes = relation.getAttributes();
+
+		for (Attribute candidate : members) {
+			int index = attributes.indexOf(candidate);
+			if (index >= 0 && (member == null || 
+					attributes.get(index).getValueCount() < relation.getAttribute(member).getValueCount())) {
+				member = candidate;
+			}
+		}
+		return member;
+	}
+
+	/**
+	 * Infer the comparisons that are implied by the given predicates, whose
+	 * equalities must have been added to the classes, but are not among
+	 * them: the comparison of every attribute in a class with each value
+	 * that any other member of the class is compared with, and the equality
+	 * of the members of a class that belong to the same relation, so that
+	 * the comparisons can be applied to each relation before it is joined.
+	 * The equalities between members of different relations are not 
+	 * inferred, as there are as many as pairs of its members; the join 
+	 * graph uses the class itself.
+	 * @param predicates Predicates of a query
+	 * @param relations Relations of the query
+	 * @return Implied predicates
+	 */
+	public List<Predicate> infer(List<Predicate> predicates, List<Relation> relations) {
+		Set<String> stated = new HashSet<String>();
+		for (Predicate predicate : predicates) {
+			stated.add(predicate.toString());
+		}
+
+		List<Predicate> implied = new ArrayList<Predicate>();
+
+		for (Predicate predicate : predicates) {
+			if (!predicate.isCompound() && predicate.hasValue()) {
+				for (Attribute member : getMembers(predicate.getLeftAttribute())) {
+					if (!member.equals(predicate.getLeftAttribute())) {
+						addImplied(predicate.substitute(member), stated, implied);
+					}
+				}
+			}
+		}
+
+		for (List<Attribute> members : getClasses()) {
+			for (Relation relation : relations) {
+				Attribute first = null;
+				for (Attribute member : members) {
+					if (!relation.getAttributes().contains(member)) {
+						continue;
+					}
+					if (first == null) {
+						first = member;
+					}
+					else if (!stated.contains(new Predicate(member, first).toString())) {
+						addImplied(new Predicate(first, member), stated, implied);
+					}
+				}
+			}
+		}
+
+		return implied;
+	}
+
+	private static void addImplied(Predicate predicate, Set<String> stated, List<Predicate> implied) {
+		if (stated.add(predicate.toString())) {
+			implied.add(predicate);
+		}
+	}
+}
@@ -2,15 +2,65 @@ package sjdb;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
+/**
+ * This class estimates the output of each operator of a plan. Estimates
+ * assume that the values of each attribute are uniformly distributed and
+ * independent of those of other attributes, except that the selectivity of
+ * attr=value, of comparisons such as attr<value, and of equijoins is 
+ * estimated from the most common values and histograms of the attributes,
+ * where the catalogue provides them. Without them, a fixed fraction of
+ * the tuples is assumed to satisfy each range comparison. The catalogue
+ * may also record that the values of one attribute depend on those of
+ * another, which is taken into account when both are compared by the
+ * same conjunction.
+ * 
+ * Tuple counts are computed in floating point, so that fractional 
+ * selectivities are not lost to integer division, and then rounded to
+ * 64-bit counts that saturate at Long.MAX_VALUE rather than overflow.
+ */
 public class Estimator implements PlanVisitor {
+	/**
+	 * The fraction of tuples assumed to satisfy attr<value, attr>value,
+	 * etc. when the distribution of the attribute is unknown
+	 */
+	public static final double RANGE_SELECTIVITY = 1.0 / 3;
+	
+	/**
+	 * The fraction of tuples assumed to satisfy attr BETWEEN lower AND upper
+	 * when the distribution of the attribute is unknown
+	 */
+	public static final double BETWEEN_SELECTIVITY = 1.0 / 4;
 
 
 	public Estimator() {
 		// empty constructor
 	}
 
+	/**
+	 * Estimate the output of an operator, reusing the estimates cached on
+	 * its inputs. Unlike accept(), which always visits the whole plan, this
+	 * only descends into inputs whose estimates are not current, so 
+	 * estimating a new operator over estimated inputs takes constant time.
+	 * @param op Operator to be estimated
+	 */
+	public void estimate(Operator op) {
+		if (op.isEstimated()) {
+			return;
+		}
+		
+		for (Operator input : op.inputs) {
+			estimate(input);
+		}
+		
+		op.acceptLocal(this);
+	}
+
 	/* 
 	 * Create output relation on Scan operator
 	 *
@@ -46,12 +96,64 @@ public class Estimator implements PlanVisitor {
 	}
 	
 	public void visit(Select op) {
-		Relation input = op.getInput().getOutput();
-		Predicate predicate = op.getPredicate();
+		op.setOutput(select(op.getInput().getOutput(), op.getPredicate()));
+	}
+	
+	/*
+	 * Create output relation on IndexScan operator, which is that of a
+	 * select with its predicate over a scan of its relation
+	 */
+	public void visit(IndexScan op) {
+		Relation input = op.getRelation();
+		Relation scanned = new Relation(input.getTupleCount());
+		
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			scanned.addAttribute(new Attribute(iter.next()));
+		}
+		
+		op.setOutput(select(scanned, op.getPredicate()));
+	}
+	
+	/**
+	 * Estimate the output of a select with the given predicate over a 
+	 * relation
+	 */
+	private Relation select(Relation input, Predicate predicate) {
+		if (predicate.isCompound()) {
+			return selectCompound(input, predicate);
+		}
+		
 		Attribute leftAttr = input.getAttribute(predicate.getLeftAttribute());
 		
-		if (predicate.equalsValue()) {
-			int size = input.getTupleCount() / leftAttr.getValueCount();
+		if (predicate.hasValue() && predicate.getComparison() != Predicate.Comparison.EQUALS) {
+			double selectivity = comparisonSelectivity(leftAttr, predicate);
+			long size = cardinality(input.getTupleCount() * selectivity);
+			long valueCount = (long) Math.ceil(leftAttr.getValueCount() * selectivity);
+			Relation output = new Relation(size);
+			
+			Iterator<Attribute> iter = input.getAttributes().iterator();
+			while (iter.hasNext()) {
+				Attribute attr = iter.next();
+				if (!attr.equals(leftAttr)) {
+					output.addAttribute(new Attribute(attr));
+				}
+				else {
+					output.addAttribute(new Attribute(attr.getName(), valueCount));
+				}
+			}
+			
+			return output;
+		}
+		else if (predicate.hasValue()) {
+			long size;
+			if (hasDistribution(leftAttr) && !predicate.isParameter()) {
+				double selectivity = frequency(leftAttr, predicate.getRightValue());
+				size = Math.max(cardinality(input.getTupleCount() * selectivity), 
+						Math.min(input.getTupleCount(), 1));
+			} else {
+				size = cardinality((double) input.getTupleCount() / Math.max(1, leftAttr.getValueCount()));
+			}
 			Relation output = new Relation(size);
 			
 			Iterator<Attribute> iter = input.getAttributes().iterator();
@@ -65,14 +167,15 @@ public class Estimator implements PlanVisitor {
 				}
 			}
 			
-			op.setOutput(output);
+			return output;
 		}
 		else {
 			Attribute rightAttr = input.getAttribute(predicate.getRightAttribute());
-			int size = input.getTupleCount() / Math.max(leftAttr.getValueCount(), rightAttr.getValueCount());
+			long size = cardinality((double) input.getTupleCount() / 
+					Math.max(1, Math.max(leftAttr.getValueCount(), rightAttr.getValueCount())));
 			Relation output = new Relation(size);
 			
-			int valueCount = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
+			long valueCount = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
 			
 			Iterator<Attribute> iter = input.getAttributes().iterator();
 			while (iter.hasNext()) {
@@ -85,16 +188,209 @@ public class Estimator implements PlanVisitor {
 				}
 			}
 			
-			op.setOutput(output);
+			return output;
+		}
+	}
+	
+	/**
+	 * Estimate the output of a select with a compound predicate. The 
+	 * number of distinct values of each attribute compared by an operand
+	 * of a conjunction is reduced as it would be by a select with that 
+	 * operand alone; the attributes compared within a disjunction or a
+	 * negation keep their value counts (bounded by the output size).
+	 */
+	private Relation selectCompound(Relation input, Predicate predicate) {
+		double selectivity = selectivity(input, predicate);
+		long size = Math.max(cardinality(input.getTupleCount() * selectivity), 
+				Math.min(input.getTupleCount(), 1));
+		Relation output = new Relation(size);
+		
+		Map<Attribute, Long> valueCounts = new HashMap<Attribute, Long>();
+		if (predicate.getConnective() == Predicate.Connective.AND) {
+			for (Predicate operand : predicate.getOperands()) {
+				if (!operand.isCompound()) {
+					restrictValueCounts(input, operand, valueCounts);
+				}
+			}
 		}
 		
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			Attribute attr = iter.next();
+			if (valueCounts.containsKey(attr)) {
+				output.addAttribute(new Attribute(attr.getName(), valueCounts.get(attr)));
+			}
+			else {
+				output.addAttribute(new Attribute(attr));
+			}
+		}
+		
+		return output;
+	}
+	
+	/**
+	 * Record the number of distinct values left to the attributes of a 
+	 * comparison once it has been applied, keeping the least of those
+	 * recorded for each attribute
+	 */
+	private static void restrictValueCounts(Relation input, Predicate predicate, 
+			Map<Attribute, Long> valueCounts) {
+		Attribute leftAttr = input.getAttribute(predicate.getLeftAttribute());
+		long leftCount;
+		Attribute rightAttr = null;
+		
+		if (!predicate.hasValue()) {
+			rightAttr = input.getAttribute(predicate.getRightAttribute());
+			leftCount = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
+		}
+		else if (predicate.getComparison() == Predicate.Comparison.EQUALS) {
+			leftCount = 1;
+		}
+		else {
+			leftCount = (long) Math.ceil(leftAttr.getValueCount() * comparisonSelectivity(leftAttr, predicate));
+		}
+		
+		for (Attribute attr : new Attribute[] { leftAttr, rightAttr }) {
+			if (attr != null) {
+				Long count = valueCounts.get(attr);
+				valueCounts.put(attr, count == null ? leftCount : Math.min(count, leftCount));
+			}
+		}
 	}
 	
+	/**
+	 * Estimate the fraction of the tuples of a relation that satisfy a 
+	 * predicate. The operands of compound predicates are assumed to be 
+	 * independent, except where the catalogue records that the values of
+	 * one attribute depend on those of another (see conjunctionSelectivity).
+	 */
+	private static double selectivity(Relation input, Predicate predicate) {
+		if (predicate.isCompound()) {
+			List<Predicate> operands = predicate.getOperands();
+			switch (predicate.getConnective()) {
+			case AND:
+				return conjunctionSelectivity(input, operands);
+			case OR:
+				double none = 1;
+				for (Predicate operand : operands) {
+					none *= 1 - selectivity(input, operand);
+				}
+				return 1 - none;
+			default:
+				return 1 - selectivity(input, operands.get(0));
+			}
+		}
+		
+		Attribute leftAttr = input.getAttribute(predicate.getLeftAttribute());
+		if (!predicate.hasValue()) {
+			Attribute rightAttr = input.getAttribute(predicate.getRightAttribute());
+			return 1.0 / Math.max(1, Math.max(leftAttr.getValueCount(), rightAttr.getValueCount()));
+		}
+		else if (predicate.getComparison() != Predicate.Comparison.EQUALS) {
+			return comparisonSelectivity(leftAttr, predicate);
+		}
+		else if (hasDistribution(leftAttr) && !predicate.isParameter()) {
+			return frequency(leftAttr, predicate.getRightValue());
+		}
+		return 1.0 / Math.max(1, leftAttr.getValueCount());
+	}
+	
+	/**
+	 * Estimate the selectivity of a conjunction. The operands are taken 
+	 * from the most to the least selective; each comparison of an attribute
+	 * whose values depend to degree d on an attribute compared by an 
+	 * earlier operand (see Attribute.getDependency()) only removes the
+	 * tuples that it would remove independently from the fraction 1-d of
+	 * tuples in which its value is not determined: sel(a AND b) = 
+	 * sel(a) * (d + (1-d) * sel(b)). With no dependencies, this is the 
+	 * product of the selectivities of the operands.
+	 */
+	private static double conjunctionSelectivity(Relation input, List<Predicate> operands) {
+		final Map<Predicate, Double> selectivities = new HashMap<Predicate, Double>();
+		for (Predicate operand : operands) {
+			selectivities.put(operand, selectivity(input, operand));
+		}
+		List<Predicate> ordered = new ArrayList<Predicate>(operands);
+		Collections.sort(ordered, new Comparator<Predicate>() {
+			public int compare(Predicate a, Predicate b) {
+				return selectivities.get(a).compareTo(selectivities.get(b));
+			}
+		});
+		
+		double selectivity = 1;
+		List<Attribute> compared = new ArrayList<Attribute>();
+		for (Predicate operand : ordered) {
+			double degree = 0;
+			if (!operand.isCompound()) {
+				Attribute attr = input.getAttribute(operand.getLeftAttribute());
+				for (Attribute other : compared) {
+					if (!other.equals(attr)) {
+						degree = Math.max(degree, other.getDependency(attr));
+					}
+				}
+				compared.add(attr);
+			}
+			selectivity *= degree + (1 - degree) * selectivities.get(operand);
+		}
+		
+		return selectivity;
+	}
+	
+	public void visit(Exchange op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = new Relation(input.getTupleCount());
+		
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			output.addAttribute(new Attribute(iter.next()));
+		}
+		
+		op.setOutput(output);
+	}
+	
+	public void visit(Sort op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = new Relation(input.getTupleCount());
+		
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			output.addAttribute(new Attribute(iter.next()));
+		}
+		
+		op.setOutput(output);
+	}
+	
+	/*
+	 * Create output relation on Aggregate operator, which has a tuple for
+	 * each group: there cannot be more groups than input tuples, nor than
+	 * the product of the value counts of the grouping attributes. Each
+	 * value of a grouping attribute may occur in many groups, and so no
+	 * longer has the distribution it had in the input.
+	 */
+	public void visit(Aggregate op) {
+		Relation input = op.getInput().getOutput();
+
+		long groups = 1;
+		for (Attribute attr : op.getGroupBy()) {
+			groups = saturatedMultiply(groups, input.getAttribute(attr).getValueCount());
+		}
+		Relation output = new Relation(Math.min(groups, input.getTupleCount()));
+
+		for (Attribute attr : op.getGroupBy()) {
+			output.addAttribute(new Attribute(attr.getName(), input.getAttribute(attr).getValueCount()));
+		}
+		for (AggregateFunction function : op.getFunctions()) {
+			output.addAttribute(new Attribute(function.getOutput().getName(), output.getTupleCount()));
+		}
+
+		op.setOutput(output);
+	}
+
 	public void visit(Product op) {
 		Relation leftRel = op.getLeft().getOutput();
 		Relation rightRel = op.getRight().getOutput();
 		
-		int outputSize = leftRel.getTupleCount() * rightRel.getTupleCount();
+		long outputSize = saturatedMultiply(leftRel.getTupleCount(), rightRel.getTupleCount());
 		Relation output = new Relation(outputSize);
 		
 		Iterator<Attribute> leftIter = leftRel.getAttributes().iterator();
@@ -116,11 +412,16 @@ public class Estimator implements PlanVisitor {
 		Attribute leftAttr = this.locateLeftJoinAttributes(op); 
 		Attribute rightAttr = this.locateRightJoinAttributes(op); 
 		
-		int size = (leftInput.getTupleCount() * rightInput.getTupleCount()) /
-				Math.max(leftAttr.getValueCount(), rightAttr.getValueCount());
+		double selectivity;
+		if (leftAttr.getMostCommonValues() != null || rightAttr.getMostCommonValues() != null) {
+			selectivity = joinSelectivity(leftAttr, rightAttr);
+		} else {
+			selectivity = 1.0 / Math.max(1, Math.max(leftAttr.getValueCount(), rightAttr.getValueCount()));
+		}
+		long size = cardinality((double) leftInput.getTupleCount() * rightInput.getTupleCount() * selectivity);
 		Relation output = new Relation(size);
 		
-		int attrValueCount = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
+		long attrValueCount = Math.min(leftAttr.getValueCount(), rightAttr.getValueCount());
 		
 		addRelationAttributes(leftInput, output, leftAttr, attrValueCount);
 		addRelationAttributes(rightInput, output, rightAttr, attrValueCount);
@@ -128,7 +429,161 @@ public class Estimator implements PlanVisitor {
 		op.setOutput(output);
 	}
 	
-	private void addRelationAttributes(Relation input, Relation output, Attribute joinAttr, int valueCount) {
+	/**
+	 * Return the tuple count nearest to an estimate, which saturates at
+	 * Long.MAX_VALUE rather than overflowing, and is never negative
+	 * @param estimate
+	 * @return
+	 */
+	public static long cardinality(double estimate) {
+		// Math.round() saturates, and returns 0 for NaN
+		return Math.max(0, Math.round(estimate));
+	}
+	
+	/**
+	 * Add two tuple counts or costs, saturating at Long.MAX_VALUE
+	 * @param a non-negative count
+	 * @param b non-negative count
+	 * @return
+	 */
+	public static long saturatedAdd(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+	
+	/**
+	 * Multiply two tuple counts, saturating at Long.MAX_VALUE
+	 * @param a non-negative count
+	 * @param b non-negative count
+	 * @return
+	 */
+	public static long saturatedMultiply(long a, long b) {
+		if (a != 0 && b > Long.MAX_VALUE / a) {
+			return Long.MAX_VALUE;
+		}
+		return a * b;
+	}
+	
+	/**
+	 * Return true if an attribute carries a list of most common values or
+	 * a histogram
+	 */
+	private static boolean hasDistribution(Attribute attr) {
+		return attr.getMostCommonValues() != null || attr.getHistogram() != null;
+	}
+	
+	/**
+	 * Estimate the fraction of the tuples in which an attribute takes a 
+	 * value, from its most common values, then its histogram, and then the
+	 * assumption that its other values are equally frequent
+	 */
+	private static double frequency(Attribute attr, String value) {
+		MostCommonValues mostCommon = attr.getMostCommonValues();
+		if (mostCommon != null) {
+			double frequency = mostCommon.getFrequency(value);
+			if (frequency >= 0) {
+				return frequency;
+			}
+		}
+		
+		if (attr.getHistogram() != null) {
+			return attr.getHistogram().frequency(value);
+		}
+		return otherFrequency(attr);
+	}
+	
+	/**
+	 * Estimate the frequency of each value of an attribute that is not one
+	 * of its most common values
+	 */
+	private static double otherFrequency(Attribute attr) {
+		return otherFraction(attr) / Math.max(1, otherValueCount(attr));
+	}
+	
+	private static double otherFraction(Attribute attr) {
+		MostCommonValues mostCommon = attr.getMostCommonValues();
+		return mostCommon == null ? 1 : Math.max(0, 1 - mostCommon.getTotalFrequency());
+	}
+	
+	private static long otherValueCount(Attribute attr) {
+		MostCommonValues mostCommon = attr.getMostCommonValues();
+		return attr.getValueCount() - (mostCommon == null ? 0 : mostCommon.size());
+	}
+	
+	/**
+	 * Estimate the fraction of the tuples that satisfy a comparison other
+	 * than equality. The most common values that satisfy the comparison
+	 * are counted exactly, and the fraction of the other values that do so
+	 * is read from the histogram.
+	 */
+	private static double comparisonSelectivity(Attribute attr, Predicate predicate) {
+		Predicate.Comparison comparison = predicate.getComparison();
+		
+		if (comparison == Predicate.Comparison.NOT_EQUALS) {
+			if (predicate.isParameter()) {
+				return 1 - 1.0 / Math.max(1, attr.getValueCount());
+			}
+			return Math.max(0, 1 - (hasDistribution(attr) ? frequency(attr, predicate.getRightValue()) : 
+					1.0 / Math.max(1, attr.getValueCount())));
+		}
+		
+		double defaultSelectivity = comparison == Predicate.Comparison.BETWEEN ? 
+				BETWEEN_SELECTIVITY : RANGE_SELECTIVITY;
+		if (predicate.isParameter()) {
+			return defaultSelectivity;
+		}
+		
+		double selectivity = 0;
+		MostCommonValues mostCommon = attr.getMostCommonValues();
+		if (mostCommon != null) {
+			for (Map.Entry<String, Double> entry : mostCommon.getFrequencies().entrySet()) {
+				if (predicate.test(entry.getKey())) {
+					selectivity += entry.getValue();
+				}
+			}
+		}
+		
+		if (attr.getHistogram() != null) {
+			selectivity += attr.getHistogram().fraction(predicate);
+		} else {
+			selectivity += otherFraction(attr) * defaultSelectivity;
+		}
+		return Math.min(1, Math.max(0, selectivity));
+	}
+	
+	/**
+	 * Estimate the selectivity of an equijoin, at least one of whose 
+	 * attributes has a list of most common values. The tuples of each side
+	 * are divided into those with most common values and the others: each
+	 * most common value of the left is matched against the distribution of
+	 * the right, each most common value of the right only against the
+	 * other values of the left, and the other values of both sides are 
+	 * assumed to match uniformly.
+	 */
+	private static double joinSelectivity(Attribute leftAttr, Attribute rightAttr) {
+		MostCommonValues leftCommon = leftAttr.getMostCommonValues();
+		MostCommonValues rightCommon = rightAttr.getMostCommonValues();
+		double selectivity = 0;
+		
+		if (leftCommon != null) {
+			for (Map.Entry<String, Double> entry : leftCommon.getFrequencies().entrySet()) {
+				selectivity += entry.getValue() * frequency(rightAttr, entry.getKey());
+			}
+		}
+		if (rightCommon != null) {
+			for (Map.Entry<String, Double> entry : rightCommon.getFrequencies().entrySet()) {
+				if (leftCommon == null || leftCommon.getFrequency(entry.getKey()) < 0) {
+					selectivity += entry.getValue() * frequency(leftAttr, entry.getKey());
+				}
+			}
+		}
+		
+		selectivity += otherFraction(leftAttr) * otherFraction(rightAttr) / 
+				Math.max(1, Math.max(otherValueCount(leftAttr), otherValueCount(rightAttr)));
+		return Math.min(1, selectivity);
+	}
+	
+	private void addRelationAttributes(Relation input, Relation output, Attribute joinAttr, long valueCount) {
 		Iterator<Attribute> iter = input.getAttributes().iterator();
 		
 		while (iter.hasNext()) {
@@ -142,27 +597,27 @@ public class Estimator implements PlanVisitor {
 		}
 	}
 	
+	/**
+	 * Return the join attribute of the left input of a join, which may be
+	 * either attribute of its predicate
+	 */
 	private Attribute locateLeftJoinAttributes(Join op) {
-		Relation leftInput = op.getLeft().getOutput();
-		Relation rightInput = op.getRight().getOutput();
-		
-		if (leftInput.getAttributes().contains(op.getPredicate().getLeftAttribute())) {
-			return leftInput.getAttribute(op.getPredicate().getLeftAttribute());
-		}
-		else {
-			return rightInput.getAttribute(op.getPredicate().getLeftAttribute());
-		}
+		return locateJoinAttribute(op.getLeft().getOutput(), op.getPredicate());
 	}
 	
+	/**
+	 * Return the join attribute of the right input of a join
+	 */
 	private Attribute locateRightJoinAttributes(Join op) {
-		Relation leftInput = op.getLeft().getOutput();
-		Relation rightInput = op.getRight().getOutput();
-		
-		if (rightInput.getAttributes().contains(op.getPredicate().getRightAttribute())) {
-			return rightInput.getAttribute(op.getPredicate().getRightAttribute());
+		return locateJoinAttribute(op.getRight().getOutput(), op.getPredicate());
+	}
+	
+	private static Attribute locateJoinAttribute(Relation input, Predicate predicate) {
+		if (input.getAttributes().contains(predicate.getLeftAttribute())) {
+			return input.getAttribute(predicate.getLeftAttribute());
 		}
 		else {
-			return leftInput.getAttribute(op.getPredicate().getRightAttribute());
+			return input.getAttribute(predicate.getRightAttribute());
 		}
 	}
 }
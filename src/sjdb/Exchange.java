@@ -0,0 +1,59 @@
+package sjdb;
+
+/**
+ * This class represents an exchange operator, which marks a subtree of a
+ * plan that is executed in parallel. The output of the subtree is produced
+ * by a number of worker threads, and gathered into a single stream of
+ * tuples for the rest of the plan; an exchange does not change the tuples
+ * themselves. Exchanges are added by the optimiser (see ParallelPlanner).
+ */
+public class Exchange extends UnaryOperator {
+	private int degree;
+
+	/**
+	 * Create a new exchange operator
+	 * @param input Child operator, executed in parallel
+	 * @param degree Number of worker threads
+	 */
+	public Exchange(Operator input, int degree) {
+		super(input);
+		this.degree = degree;
+	}
+
+	/**
+	 * Return the number of worker threads that execute the input
+	 * @return Degree of parallelism
+	 */
+	public int getDegree() {
+		return this.degree;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#copy(sjdb.Operator)
+	 */
+	protected Operator copy(Operator input) {
+		return new Exchange(input, this.degree);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "EXCHANGE [" + this.degree + "] (" + getInput().toString() + ")";
+	}
+}
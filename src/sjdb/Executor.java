@@ -0,0 +1,268 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class executes query plans. It visits a plan to build a tree of
+ * iterators, one for each operator, over the tuples of the named relations
+ * provided by a TupleSource; tuples are then pulled through the tree one
+ * at a time from the iterator for the root of the plan. Each Join is
+ * executed by the method chosen for it by the optimiser (see JoinPlanner).
+ * The indexes used by index scans and index nested loop joins are built
+ * the first time they are used, and kept for later plans. The subtrees below Exchange
+ * operators are executed in parallel on a fork-join pool.
+ *
+ * An Executor may be used for many plans, but by only one thread at a
+ * time; the iterators it builds are independent of it.
+ */
+public class Executor implements PlanVisitor {
+	private TupleSource source;
+	private Deque<TupleIterator> iterators;
+	private Map<String, TupleIndex> indexes;
+	private ForkJoinPool pool;
+
+	/**
+	 * Create an executor over the given tuples
+	 * @param source Source of the tuples of named relations
+	 */
+	public Executor(TupleSource source) {
+		this(source, null);
+	}
+
+	/**
+	 * Create an executor over the given tuples that executes the parallel
+	 * parts of plans on the given pool
+	 * @param source Source of the tuples of named relations
+	 * @param pool Pool for parallel execution, or null to create one with
+	 * the degree of parallelism of the first Exchange executed
+	 */
+	public Executor(TupleSource source, ForkJoinPool pool) {
+		this(source, pool, new HashMap<String, TupleIndex>());
+	}
+
+	private Executor(TupleSource source, ForkJoinPool pool, Map<String, TupleIndex> indexes) {
+		this.source = source;
+		this.iterators = new ArrayDeque<TupleIterator>();
+		this.indexes = indexes;
+		this.pool = pool;
+	}
+
+	/**
+	 * Build the iterator that executes a plan. The iterator has not been
+	 * opened, and no tuples have been read.
+	 * @param plan Query plan
+	 * @return Iterator over the output of the plan
+	 */
+	public TupleIterator build(Operator plan) {
+		this.iterators.clear();
+		plan.accept(this);
+		return this.iterators.pop();
+	}
+
+	/**
+	 * Execute a plan and count the tuples it produces
+	 * @param plan Query plan
+	 * @return Number of output tuples
+	 */
+	public long count(Operator plan) throws DatabaseException {
+		TupleIterator iter = build(plan);
+		long count = 0;
+
+		iter.open();
+		try {
+			while (iter.next() != null) {
+				count++;
+			}
+		} finally {
+			iter.close();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Return the position of an attribute in a list of tuple attributes
+	 * @param attributes
+	 * @param attribute
+	 * @return
+	 */
+	static int indexOf(List<Attribute> attributes, Attribute attribute) throws DatabaseException {
+		int index = attributes.indexOf(attribute);
+
+		if (index < 0) {
+			throw new DatabaseException("Attribute " + attribute + " not found in " + attributes);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Return the positions of the attributes of a join predicate in the
+	 * tuples of the left and right inputs of the join; either attribute of
+	 * the predicate may belong to either input
+	 * @param left Attributes of the left input
+	 * @param right Attributes of the right input
+	 * @param predicate Join predicate
+	 * @return Positions of the left and right join attributes
+	 */
+	static int[] joinKeys(List<Attribute> left, List<Attribute> right, Predicate predicate)
+			throws DatabaseException {
+		Attribute leftAttr = predicate.getLeftAttribute();
+		Attribute rightAttr = predicate.getRightAttribute();
+
+		if (!left.contains(leftAttr)) {
+			leftAttr = predicate.getRightAttribute();
+			rightAttr = predicate.getLeftAttribute();
+		}
+
+		return new int[] { indexOf(left, leftAttr), indexOf(right, rightAttr) };
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Scan)
+	 */
+	public void visit(Scan op) {
+		this.iterators.push(this.source.scan((NamedRelation) op.getRelation()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.IndexScan)
+	 */
+	public void visit(IndexScan op) {
+		Index index = op.getIndex();
+		this.iterators.push(new IndexScanIterator(getIndex(this.indexes, this.source, 
+				(NamedRelation) op.getRelation(), index.getAttribute(), index.getType()), op.getPredicate()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Project)
+	 */
+	public void visit(Project op) {
+		this.iterators.push(new ProjectIterator(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Select)
+	 */
+	public void visit(Select op) {
+		this.iterators.push(new SelectIterator(this.iterators.pop(), op.getPredicate()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Product)
+	 */
+	public void visit(Product op) {
+		TupleIterator right = this.iterators.pop();
+		TupleIterator left = this.iterators.pop();
+		this.iterators.push(new ProductIterator(left, right));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		TupleIterator right = this.iterators.pop();
+		TupleIterator left = this.iterators.pop();
+		Predicate predicate = op.getPredicate();
+
+		switch (op.getMethod()) {
+		case HASH:
+			this.iterators.push(new HashJoinIterator(left, right, predicate, op.isBuildLeft()));
+			break;
+		case GRACE_HASH:
+			this.iterators.push(new GraceHashJoinIterator(left, right, predicate, op.isBuildLeft()));
+			break;
+		case SORT_MERGE:
+			this.iterators.push(new SortMergeJoinIterator(left, right, predicate));
+			break;
+		case INDEX_NESTED_LOOP:
+			Operator inner = op.isBuildLeft() ? op.getLeft() : op.getRight();
+			if (inner instanceof Scan) {
+				TupleIterator outer = op.isBuildLeft() ? right : left;
+				NamedRelation relation = (NamedRelation) ((Scan) inner).getRelation();
+				Attribute attribute = relation.getAttributes().contains(predicate.getLeftAttribute()) ?
+						predicate.getLeftAttribute() : predicate.getRightAttribute();
+				// use the kind of index declared over the attribute, if any
+				Index declared = CostModel.joinIndex((Scan) inner, predicate);
+				TupleIndex index = getIndex(this.indexes, this.source, relation, attribute, 
+						declared == null ? Index.Type.HASH : declared.getType());
+				this.iterators.push(new IndexJoinIterator(outer, index, predicate, op.isBuildLeft()));
+				break;
+			}
+			// without a named relation to index, fall back to a hash join
+			this.iterators.push(new HashJoinIterator(left, right, predicate, op.isBuildLeft()));
+			break;
+		default:
+			this.iterators.push(new JoinIterator(left, right, predicate));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Sort)
+	 */
+	public void visit(Sort op) {
+		this.iterators.push(new SortIterator(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Aggregate)
+	 */
+	public void visit(Aggregate op) {
+		this.iterators.push(new HashAggregateIterator(this.iterators.pop(), op.getGroupBy(), op.getFunctions()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Exchange)
+	 */
+	public void visit(Exchange op) {
+		// the iterators built for the input run on a single thread; replace
+		// them with a parallel iterator where the input can be parallelised
+		TupleIterator serial = this.iterators.pop();
+		Operator input = op.getInput();
+
+		if (this.pool == null) {
+			this.pool = new ForkJoinPool(op.getDegree());
+		}
+
+		if (ParallelPlanner.getPipelineScan(input) != null) {
+			this.iterators.push(new ParallelPipelineIterator(input, this.source, this.pool, op.getDegree()));
+		} else if (input instanceof Join && ((Join) input).getMethod() == Join.Method.HASH) {
+			Join join = (Join) input;
+			Executor child = new Executor(this.source, this.pool, this.indexes);
+			TupleIterator left = child.build(join.getLeft());
+			TupleIterator right = child.build(join.getRight());
+			this.iterators.push(new ParallelHashJoinIterator(left, right, join.getPredicate(),
+					join.isBuildLeft(), this.pool, op.getDegree()));
+		} else {
+			this.iterators.push(serial);
+		}
+	}
+
+	/**
+	 * Return the index of the given type over an attribute of a named
+	 * relation, creating it if necessary
+	 * @param indexes Indexes created so far, by relation, attribute and type
+	 * @param source Source of the tuples of the relation
+	 * @param relation
+	 * @param attribute
+	 * @param type
+	 * @return
+	 */
+	static TupleIndex getIndex(Map<String, TupleIndex> indexes, TupleSource source, 
+			NamedRelation relation, Attribute attribute, Index.Type type) {
+		String key = relation.getName() + "." + attribute.getName() + ":" + type;
+
+		TupleIndex index = indexes.get(key);
+		if (index == null) {
+			index = new TupleIndex(relation, attribute, type, source);
+			indexes.put(key, index);
+		}
+
+		return index;
+	}
+}
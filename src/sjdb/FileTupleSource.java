@@ -0,0 +1,126 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This class reads the tuples of named relations from text files in a
+ * directory. The tuples of relation R are stored in the file R.csv, one
+ * tuple per line, with the values separated by commas in the order of the
+ * relation's attributes. Values may not contain commas or line breaks.
+ */
+public class FileTupleSource implements TupleSource {
+	private File directory;
+
+	/**
+	 * Create a tuple source over the files in a directory
+	 * @param directory Directory containing one file per named relation
+	 */
+	public FileTupleSource(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Return the file holding the tuples of a named relation
+	 * @param relation
+	 * @return
+	 */
+	public File getFile(NamedRelation relation) {
+		return new File(this.directory, relation.getName() + ".csv");
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleSource#scan(sjdb.NamedRelation)
+	 */
+	public TupleIterator scan(final NamedRelation relation) {
+		return new TupleIterator() {
+			private BufferedReader reader;
+			private int line;
+
+			public List<Attribute> getAttributes() {
+				return relation.getAttributes();
+			}
+
+			public void open() throws DatabaseException {
+				try {
+					this.reader = new BufferedReader(new FileReader(getFile(relation)));
+					this.line = 0;
+				} catch (IOException e) {
+					throw new DatabaseException("Cannot read tuples of " + relation.getName(), e);
+				}
+			}
+
+			public String[] next() throws DatabaseException {
+				String text;
+				try {
+					text = this.reader.readLine();
+				} catch (IOException e) {
+					throw new DatabaseException("Cannot read tuples of " + relation.getName(), e);
+				}
+				if (text == null) {
+					return null;
+				}
+				this.line++;
+
+				String[] tuple = text.split(",", -1);
+				if (tuple.length != relation.getAttributes().size()) {
+					throw new DatabaseException(getFile(relation) + ":" + this.line + ": expected " +
+							relation.getAttributes().size() + " values, found " + tuple.length);
+				}
+				return tuple;
+			}
+
+			public void close() throws DatabaseException {
+				try {
+					if (this.reader != null) {
+						this.reader.close();
+						this.reader = null;
+					}
+				} catch (IOException e) {
+					throw new DatabaseException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Write the tuples produced by an iterator to the file of a named
+	 * relation, replacing any tuples already stored there
+	 * @param relation Named relation whose tuples are written
+	 * @param tuples Iterator over tuples in the order of the relation's attributes
+	 * @return Number of tuples written
+	 */
+	public long write(NamedRelation relation, TupleIterator tuples) throws DatabaseException {
+		long count = 0;
+
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(getFile(relation)));
+			try {
+				tuples.open();
+				String[] tuple;
+				while ((tuple = tuples.next()) != null) {
+					for (int i = 0; i < tuple.length; i++) {
+						if (i > 0) {
+							writer.write(',');
+						}
+						writer.write(tuple[i]);
+					}
+					writer.newLine();
+					count++;
+				}
+				tuples.close();
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot write tuples of " + relation.getName(), e);
+		}
+
+		return count;
+	}
+}
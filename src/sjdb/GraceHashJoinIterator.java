@@ -0,0 +1,267 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes a Join operator as a grace hash join, for build
+ * inputs that are too large to hash in memory. When the iterator is
+ * opened, the tuples of both inputs are partitioned by a hash of their
+ * join attribute value into temporary files, so that matching tuples are
+ * always in partitions with the same number. Each pair of partitions is
+ * then joined in turn as an in-memory hash join, so only one partition of
+ * the build input is held in memory at a time.
+ */
+public class GraceHashJoinIterator implements TupleIterator {
+	/**
+	 * The default number of partitions of each input
+	 */
+	public static final int DEFAULT_PARTITIONS = 32;
+
+	private TupleIterator left;
+	private TupleIterator right;
+	private Predicate predicate;
+	private boolean buildLeft;
+	private int partitions;
+	private List<Attribute> attributes;
+	private File[] buildFiles;
+	private File[] probeFiles;
+	private int[] buildCounts;
+	private int[] probeCounts;
+	private int probeWidth;
+	private int buildKey;
+	private int probeKey;
+	private int partition;
+	private Map<String, List<String[]>> table;
+	private DataInputStream probeInput;
+	private int probeRemaining;
+	private String[] probeTuple;
+	private List<String[]> matches;
+	private int matchPosition;
+
+	/**
+	 * Create a new grace hash join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param predicate Join predicate
+	 * @param buildLeft true to build hash tables over the partitions of the
+	 * left input, false to build them over those of the right input
+	 */
+	public GraceHashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate,
+			boolean buildLeft) {
+		this(left, right, predicate, buildLeft, DEFAULT_PARTITIONS);
+	}
+
+	/**
+	 * Create a new grace hash join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param predicate Join predicate
+	 * @param buildLeft true to build hash tables over the partitions of the
+	 * left input, false to build them over those of the right input
+	 * @param partitions Number of partitions of each input
+	 */
+	public GraceHashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate,
+			boolean buildLeft, int partitions) {
+		this.left = left;
+		this.right = right;
+		this.predicate = predicate;
+		this.buildLeft = buildLeft;
+		this.partitions = partitions;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.left.getAttributes(), this.right.getAttributes(), this.predicate);
+		TupleIterator build = this.buildLeft ? this.left : this.right;
+		TupleIterator probe = this.buildLeft ? this.right : this.left;
+		this.buildKey = this.buildLeft ? keys[0] : keys[1];
+		this.probeKey = this.buildLeft ? keys[1] : keys[0];
+		this.probeWidth = probe.getAttributes().size();
+
+		this.buildFiles = new File[this.partitions];
+		this.probeFiles = new File[this.partitions];
+		this.buildCounts = new int[this.partitions];
+		this.probeCounts = new int[this.partitions];
+
+		try {
+			partition(build, this.buildKey, this.buildFiles, this.buildCounts);
+			partition(probe, this.probeKey, this.probeFiles, this.probeCounts);
+		} catch (IOException e) {
+			deleteFiles();
+			throw new DatabaseException("Cannot partition join inputs", e);
+		}
+
+		this.partition = -1;
+		this.probeRemaining = 0;
+		this.matches = null;
+	}
+
+	/**
+	 * Write the tuples of an input to partition files
+	 */
+	private void partition(TupleIterator input, int key, File[] files, int[] counts)
+			throws IOException, DatabaseException {
+		DataOutputStream[] outputs = new DataOutputStream[this.partitions];
+
+		try {
+			for (int i = 0; i < this.partitions; i++) {
+				files[i] = File.createTempFile("sjdb-join", ".part");
+				outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[i])));
+			}
+
+			input.open();
+			String[] tuple;
+			while ((tuple = input.next()) != null) {
+				int i = partitionOf(tuple[key]);
+				for (String value : tuple) {
+					outputs[i].writeUTF(value);
+				}
+				counts[i]++;
+			}
+			input.close();
+		} finally {
+			for (DataOutputStream output : outputs) {
+				if (output != null) {
+					output.close();
+				}
+			}
+		}
+	}
+
+	private int partitionOf(String value) {
+		// mix the hash code, so that the partition does not determine the
+		// bucket of the value in the hash table of the partition
+		int hash = value.hashCode() * 0x9E3779B9;
+		return (hash >>> 1) % this.partitions;
+	}
+
+	private static String[] readTuple(DataInputStream input, int width) throws IOException {
+		String[] tuple = new String[width];
+		for (int i = 0; i < width; i++) {
+			tuple[i] = input.readUTF();
+		}
+		return tuple;
+	}
+
+	/**
+	 * Load the hash table for the next pair of non-empty partitions, and
+	 * open its probe partition
+	 * @return false if there are no more partitions
+	 */
+	private boolean nextPartition() throws IOException {
+		closeProbeInput();
+
+		while (++this.partition < this.partitions) {
+			if (this.buildCounts[this.partition] == 0 || this.probeCounts[this.partition] == 0) {
+				continue;
+			}
+
+			int buildWidth = this.attributes.size() - this.probeWidth;
+			this.table = new HashMap<String, List<String[]>>();
+
+			DataInputStream input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(this.buildFiles[this.partition])));
+			try {
+				for (int i = 0; i < this.buildCounts[this.partition]; i++) {
+					String[] tuple = readTuple(input, buildWidth);
+					List<String[]> bucket = this.table.get(tuple[this.buildKey]);
+					if (bucket == null) {
+						bucket = new ArrayList<String[]>(1);
+						this.table.put(tuple[this.buildKey], bucket);
+					}
+					bucket.add(tuple);
+				}
+			} finally {
+				input.close();
+			}
+
+			this.probeInput = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(this.probeFiles[this.partition])));
+			this.probeRemaining = this.probeCounts[this.partition];
+			return true;
+		}
+
+		this.table = null;
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		try {
+			while (this.matches == null || this.matchPosition == this.matches.size()) {
+				if (this.probeRemaining == 0 && !nextPartition()) {
+					return null;
+				}
+				this.probeTuple = readTuple(this.probeInput, this.probeWidth);
+				this.probeRemaining--;
+				this.matches = this.table.get(this.probeTuple[this.probeKey]);
+				this.matchPosition = 0;
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read join partition", e);
+		}
+
+		String[] match = this.matches.get(this.matchPosition++);
+		return this.buildLeft ? ProductIterator.concatenate(match, this.probeTuple) :
+				ProductIterator.concatenate(this.probeTuple, match);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		try {
+			closeProbeInput();
+		} catch (IOException e) {
+			throw new DatabaseException(e);
+		} finally {
+			this.table = null;
+			this.matches = null;
+			deleteFiles();
+		}
+	}
+
+	private void closeProbeInput() throws IOException {
+		if (this.probeInput != null) {
+			this.probeInput.close();
+			this.probeInput = null;
+		}
+	}
+
+	private void deleteFiles() {
+		for (File[] files : new File[][] { this.buildFiles, this.probeFiles }) {
+			if (files != null) {
+				for (File file : files) {
+					if (file != null) {
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes an Aggregate operator by hashing. When the iterator
+ * is opened, the tuples of its input are read one at a time, and each
+ * updates the running state of the aggregates of its group, which is
+ * found in a hash table on the values of the grouping attributes. A tuple
+ * is then returned for each group, in the order in which the groups were
+ * first seen.
+ */
+public class HashAggregateIterator implements TupleIterator {
+	private TupleIterator input;
+	private List<Attribute> groupBy;
+	private List<AggregateFunction> functions;
+	private List<Attribute> attributes;
+	private Map<List<String>, double[][]> groups;
+	private Iterator<Map.Entry<List<String>, double[][]>> position;
+
+	/**
+	 * Create a new hash aggregate iterator
+	 * @param input Iterator over the tuples to be aggregated
+	 * @param groupBy Attributes whose values form the groups
+	 * @param functions Aggregates computed over each group
+	 */
+	public HashAggregateIterator(TupleIterator input, List<Attribute> groupBy, List<AggregateFunction> functions) {
+		this.input = input;
+		this.groupBy = groupBy;
+		this.functions = functions;
+		this.attributes = new ArrayList<Attribute>(groupBy);
+		for (AggregateFunction function : functions) {
+			this.attributes.add(function.getOutput());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * Return the positions of the argument and count attributes of each
+	 * aggregate in the tuples of an input, or -1 where it has none
+	 * @param attributes Attributes of the input
+	 * @param functions
+	 * @return
+	 */
+	static int[][] columns(List<Attribute> attributes, List<AggregateFunction> functions)
+			throws DatabaseException {
+		int[][] columns = new int[functions.size()][2];
+		for (int i = 0; i < columns.length; i++) {
+			AggregateFunction function = functions.get(i);
+			columns[i][0] = function.getArgument() == null ? -1 :
+					Executor.indexOf(attributes, function.getArgument());
+			columns[i][1] = function.getCount() == null ? -1 :
+					Executor.indexOf(attributes, function.getCount());
+		}
+		return columns;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		List<Attribute> inputAttributes = this.input.getAttributes();
+		int[] keys = new int[this.groupBy.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = Executor.indexOf(inputAttributes, this.groupBy.get(i));
+		}
+		int[][] columns = columns(inputAttributes, this.functions);
+
+		this.groups = new LinkedHashMap<List<String>, double[][]>();
+		this.input.open();
+		String[] tuple;
+		while ((tuple = this.input.next()) != null) {
+			String[] values = new String[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				values[i] = tuple[keys[i]];
+			}
+			List<String> key = Arrays.asList(values);
+
+			double[][] state = this.groups.get(key);
+			if (state == null) {
+				state = new double[columns.length][2];
+				this.groups.put(key, state);
+			}
+			for (int i = 0; i < columns.length; i++) {
+				this.functions.get(i).accumulate(state[i],
+						columns[i][0] < 0 ? null : tuple[columns[i][0]],
+						columns[i][1] < 0 ? null : tuple[columns[i][1]]);
+			}
+		}
+		this.input.close();
+
+		this.position = this.groups.entrySet().iterator();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() {
+		if (!this.position.hasNext()) {
+			return null;
+		}
+
+		Map.Entry<List<String>, double[][]> group = this.position.next();
+		String[] tuple = new String[this.attributes.size()];
+		int width = this.groupBy.size();
+		for (int i = 0; i < width; i++) {
+			tuple[i] = group.getKey().get(i);
+		}
+		for (int i = 0; i < this.functions.size(); i++) {
+			tuple[width + i] = this.functions.get(i).result(group.getValue()[i]);
+		}
+		return tuple;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() {
+		this.groups = null;
+		this.position = null;
+	}
+}
@@ -0,0 +1,122 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes a Join operator as an in-memory hash join. When the
+ * iterator is opened, the tuples of the build input are read into a hash
+ * table on their join attribute value; the tuples of the other (probe)
+ * input are then read one at a time, and combined with the build tuples
+ * that have the same join attribute value.
+ */
+public class HashJoinIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private Predicate predicate;
+	private boolean buildLeft;
+	private List<Attribute> attributes;
+	private int probeKey;
+	private Map<String, List<String[]>> table;
+	private String[] probeTuple;
+	private List<String[]> matches;
+	private int matchPosition;
+
+	/**
+	 * Create a new hash join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param predicate Join predicate
+	 * @param buildLeft true to build the hash table over the left input,
+	 * false to build it over the right input
+	 */
+	public HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate, boolean buildLeft) {
+		this.left = left;
+		this.right = right;
+		this.predicate = predicate;
+		this.buildLeft = buildLeft;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.left.getAttributes(), this.right.getAttributes(), this.predicate);
+		int buildKey = this.buildLeft ? keys[0] : keys[1];
+		this.probeKey = this.buildLeft ? keys[1] : keys[0];
+
+		TupleIterator build = this.buildLeft ? this.left : this.right;
+		this.table = buildTable(build, buildKey);
+
+		probe().open();
+		this.probeTuple = null;
+		this.matches = null;
+		this.matchPosition = 0;
+	}
+
+	/**
+	 * Read the tuples of an input into a hash table on the given attribute
+	 * @param input
+	 * @param key Position of the attribute in the input's tuples
+	 * @return
+	 */
+	static Map<String, List<String[]>> buildTable(TupleIterator input, int key) throws DatabaseException {
+		Map<String, List<String[]>> table = new HashMap<String, List<String[]>>();
+
+		input.open();
+		String[] tuple;
+		while ((tuple = input.next()) != null) {
+			List<String[]> bucket = table.get(tuple[key]);
+			if (bucket == null) {
+				bucket = new ArrayList<String[]>(1);
+				table.put(tuple[key], bucket);
+			}
+			bucket.add(tuple);
+		}
+		input.close();
+
+		return table;
+	}
+
+	private TupleIterator probe() {
+		return this.buildLeft ? this.right : this.left;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		while (this.matches == null || this.matchPosition == this.matches.size()) {
+			if ((this.probeTuple = probe().next()) == null) {
+				return null;
+			}
+			this.matches = this.table.get(this.probeTuple[this.probeKey]);
+			this.matchPosition = 0;
+		}
+
+		String[] match = this.matches.get(this.matchPosition++);
+		return this.buildLeft ? ProductIterator.concatenate(match, this.probeTuple) :
+				ProductIterator.concatenate(this.probeTuple, match);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.table = null;
+		this.matches = null;
+		probe().close();
+	}
+}
@@ -0,0 +1,235 @@
+package sjdb;
+
+/**
+ * This class represents an equi-depth histogram of the values of an
+ * attribute. The histogram divides the values into buckets that each hold
+ * the same number of tuples, and records the bounds and the number of
+ * distinct values of each bucket. Bucket i holds the values v with
+ * bound[i] < v <= bound[i+1], except that the first bucket also holds its
+ * lower bound, and a bucket whose bounds are equal holds just that value.
+ * Values are ordered as by Sort.compare(), which agrees with
+ * Predicate.compareValues() over numbers and over other values, but is
+ * also a total order over a mix of the two.
+ *
+ * When the attribute also has a list of most common values, the histogram
+ * describes only the other values, and so covers only a fraction of the
+ * tuples of the relation.
+ *
+ * In the catalogue, a histogram is written as
+ * hist=lower;upper/distinct;upper/distinct;... with the lower bound of the
+ * first bucket followed by the upper bound and distinct value count of
+ * each bucket, with the separators in the values escaped (see
+ * CatalogueParser).
+ */
+public class Histogram {
+	private String[] bounds;
+	private int[] distinct;
+	private double fraction;
+
+	/**
+	 * Create a histogram
+	 * @param bounds Bounds of the buckets, in increasing order: the lower
+	 * bound of the first bucket, then the upper bound of each bucket
+	 * @param distinct Number of distinct values in each bucket
+	 * @param fraction Fraction of the tuples of the relation whose values
+	 * are described by the histogram
+	 */
+	public Histogram(String[] bounds, int[] distinct, double fraction) {
+		if (bounds.length != distinct.length + 1 || distinct.length == 0) {
+			throw new IllegalArgumentException("A histogram needs one more bound than buckets");
+		}
+		this.bounds = bounds;
+		this.distinct = distinct;
+		this.fraction = fraction;
+	}
+
+	/**
+	 * Return the number of buckets
+	 * @return
+	 */
+	public int getBucketCount() {
+		return this.distinct.length;
+	}
+
+	/**
+	 * Return the fraction of the tuples whose values are described by the
+	 * histogram
+	 * @return
+	 */
+	public double getFraction() {
+		return this.fraction;
+	}
+
+	/**
+	 * Return true if a bucket holds a value
+	 * @param bucket
+	 * @param value
+	 * @return
+	 */
+	private boolean contains(int bucket, String value) {
+		String lower = this.bounds[bucket];
+		String upper = this.bounds[bucket + 1];
+		if (Sort.compare(value, upper) > 0) {
+			return false;
+		}
+		int lowerCmp = Sort.compare(value, lower);
+		return lowerCmp > 0 || (lowerCmp == 0 && (bucket == 0 || lower.equals(upper)));
+	}
+
+	/**
+	 * Return the first bucket that holds a value
+	 * @param value
+	 * @return the bucket, or -1 if the value is outside the histogram
+	 */
+	public int bucketOf(String value) {
+		for (int b = 0; b < this.distinct.length; b++) {
+			if (contains(b, value)) {
+				return b;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Estimate the fraction of the tuples of the relation that take a
+	 * value. Each value of a bucket is assumed to be equally frequent;
+	 * values outside the histogram are given the average frequency.
+	 * @param value
+	 * @return
+	 */
+	public double frequency(String value) {
+		double bucketFraction = this.fraction / this.distinct.length;
+		double frequency = 0;
+		boolean found = false;
+
+		for (int b = 0; b < this.distinct.length; b++) {
+			if (contains(b, value)) {
+				frequency += bucketFraction / Math.max(1, this.distinct[b]);
+				found = true;
+			}
+		}
+
+		if (!found) {
+			return this.fraction / Math.max(1, getValueCount());
+		}
+		return frequency;
+	}
+
+	/**
+	 * Estimate the fraction of the tuples of the relation whose values
+	 * satisfy a range predicate (<, <=, >, >= or BETWEEN). Within a bucket,
+	 * numeric values are assumed to be spread evenly between its bounds,
+	 * and half of the tuples of a bucket are assumed to lie below any other
+	 * value inside it.
+	 * @param predicate
+	 * @return
+	 */
+	public double fraction(Predicate predicate) {
+		String value = predicate.getRightValue();
+		switch (predicate.getComparison()) {
+		case LESS:
+			return below(value, false);
+		case LESS_OR_EQUAL:
+			return below(value, true);
+		case GREATER:
+			return this.fraction - below(value, true);
+		case GREATER_OR_EQUAL:
+			return this.fraction - below(value, false);
+		case BETWEEN:
+			return Math.max(0, below(predicate.getUpperValue(), true) - below(value, false));
+		case NOT_EQUALS:
+			return this.fraction - frequency(value);
+		default:
+			return frequency(value);
+		}
+	}
+
+	/**
+	 * Estimate the fraction of the tuples of the relation whose values are
+	 * below a value (or equal to it, if inclusive)
+	 */
+	private double below(String value, boolean inclusive) {
+		double bucketFraction = this.fraction / this.distinct.length;
+		double below = 0;
+
+		for (int b = 0; b < this.distinct.length; b++) {
+			below += bucketFraction * portionBelow(b, value, inclusive);
+		}
+
+		return below;
+	}
+
+	/**
+	 * Estimate the portion of the tuples of a bucket whose values are below
+	 * a value (or equal to it, if inclusive)
+	 */
+	private double portionBelow(int bucket, String value, boolean inclusive) {
+		String lower = this.bounds[bucket];
+		String upper = this.bounds[bucket + 1];
+		double perValue = 1.0 / Math.max(1, this.distinct[bucket]);
+		int upperCmp = Sort.compare(value, upper);
+		int lowerCmp = Sort.compare(value, lower);
+
+		if (upperCmp > 0) {
+			return 1;
+		} else if (upperCmp == 0) {
+			return inclusive ? 1 : 1 - perValue;
+		} else if (lowerCmp < 0 || (lowerCmp == 0 && bucket > 0)) {
+			// the lower bound belongs to the previous bucket
+			return 0;
+		} else if (lowerCmp == 0) {
+			return inclusive ? perValue : 0;
+		} else if (Predicate.isNumber(value) && Predicate.isNumber(lower) && Predicate.isNumber(upper)) {
+			double low = Double.parseDouble(lower);
+			double high = Double.parseDouble(upper);
+			return Math.min(1, Math.max(0, (Double.parseDouble(value) - low) / (high - low)));
+		} else {
+			return 0.5;
+		}
+	}
+
+	/**
+	 * Return the number of distinct values described by the histogram
+	 * @return
+	 */
+	public int getValueCount() {
+		int values = 0;
+		for (int d : this.distinct) {
+			values += d;
+		}
+		return values;
+	}
+
+	/**
+	 * Parse a histogram in the catalogue syntax, without the hist= prefix
+	 * @param text
+	 * @param fraction Fraction of the tuples described by the histogram
+	 * @return
+	 */
+	public static Histogram parse(String text, double fraction) {
+		String[] parts = text.split(";");
+		String[] bounds = new String[parts.length];
+		int[] distinct = new int[parts.length - 1];
+
+		bounds[0] = CatalogueParser.unescape(parts[0]);
+		for (int i = 1; i < parts.length; i++) {
+			int slash = parts[i].lastIndexOf('/');
+			bounds[i] = CatalogueParser.unescape(parts[i].substring(0, slash));
+			distinct[i - 1] = Integer.parseInt(parts[i].substring(slash + 1));
+		}
+
+		return new Histogram(bounds, distinct, fraction);
+	}
+
+	/**
+	 * Render the histogram in the catalogue syntax, without the hist= prefix
+	 * @return
+	 */
+	public String render() {
+		String ret = CatalogueParser.escape(this.bounds[0]);
+		for (int b = 0; b < this.distinct.length; b++) {
+			ret += ";" + CatalogueParser.escape(this.bounds[b + 1]) + "/" + this.distinct[b];
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,147 @@
+package sjdb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class counts the distinct values of a stream with a HyperLogLog
+ * sketch, in memory that does not grow with the number of values. Each
+ * value is hashed to 64 bits; the leading bits of the hash choose one of
+ * 2^precision registers, which records the longest run of leading zeros
+ * seen in the remaining bits. The standard error of the estimate is about
+ * 1.04 / sqrt(2^precision), i.e. 0.8% with the default precision.
+ *
+ * Until the sketch has seen more than a few thousand distinct hashes, they
+ * are also kept in a set and counted exactly, so the counts of columns with
+ * few values carry no estimation error.
+ */
+public class HyperLogLog {
+	/**
+	 * The default number of bits of the hash that choose a register
+	 */
+	public static final int PRECISION = 14;
+
+	private int precision;
+	private byte[] registers;
+	private Set<Long> exact;
+	private int exactLimit;
+
+	/**
+	 * Create an empty sketch with the default precision
+	 */
+	public HyperLogLog() {
+		this(PRECISION);
+	}
+
+	/**
+	 * Create an empty sketch
+	 * @param precision Number of bits of the hash that choose a register,
+	 * between 4 and 18
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+		this.exact = new HashSet<Long>();
+		this.exactLimit = this.registers.length / 8;
+	}
+
+	/**
+	 * Add a value to the sketch
+	 * @param value
+	 */
+	public void add(String value) {
+		long hash = hash(value);
+
+		if (this.exact != null) {
+			this.exact.add(hash);
+			if (this.exact.size() > this.exactLimit) {
+				this.exact = null;
+			}
+		}
+
+		int register = (int) (hash >>> (64 - this.precision));
+		// the sentinel bit bounds the run of zeros by the bits available
+		long rest = (hash << this.precision) | (1L << (this.precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > this.registers[register]) {
+			this.registers[register] = rank;
+		}
+	}
+
+	/**
+	 * Return the estimated number of distinct values added to the sketch
+	 * @return
+	 */
+	public long estimate() {
+		if (this.exact != null) {
+			return this.exact.size();
+		}
+
+		int m = this.registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < m; i++) {
+			sum += 1.0 / (1L << this.registers[i]);
+			if (this.registers[i] == 0) {
+				zeros++;
+			}
+		}
+
+		double alpha = 0.7213 / (1 + 1.079 / m);
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// linear counting is more accurate while registers are still empty
+			estimate = m * Math.log((double) m / zeros);
+		}
+
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Add the values seen by another sketch of the same precision to this
+	 * sketch
+	 * @param other
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != this.precision) {
+			throw new IllegalArgumentException("Cannot merge sketches of different precision");
+		}
+
+		for (int i = 0; i < this.registers.length; i++) {
+			if (other.registers[i] > this.registers[i]) {
+				this.registers[i] = other.registers[i];
+			}
+		}
+
+		if (this.exact != null && other.exact != null) {
+			this.exact.addAll(other.exact);
+			if (this.exact.size() > this.exactLimit) {
+				this.exact = null;
+			}
+		} else {
+			this.exact = null;
+		}
+	}
+
+	/**
+	 * Hash a value to 64 bits: FNV-1a over its characters, followed by the
+	 * MurmurHash3 finaliser to spread the bits
+	 */
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,90 @@
+package sjdb;
+
+/**
+ * This class describes an index over an attribute of a named relation, as
+ * declared in the system catalogue. A hash index finds the tuples with a
+ * given value of the attribute; a B+tree index also finds the tuples whose
+ * values lie in a range, and returns them in the order of their values.
+ */
+public class Index {
+	/**
+	 * The kinds of index that may be declared
+	 */
+	public enum Type {
+		/** Looks up single values */
+		HASH,
+		/** Looks up single values and ranges of values, in order */
+		BTREE
+	}
+
+	private String relation;
+	private Attribute attribute;
+	private Type type;
+
+	/**
+	 * Create the description of an index
+	 * @param relation Name of the indexed relation
+	 * @param attribute Indexed attribute
+	 * @param type Kind of index
+	 */
+	public Index(String relation, Attribute attribute, Type type) {
+		this.relation = relation;
+		this.attribute = attribute;
+		this.type = type;
+	}
+
+	/**
+	 * Return the name of the indexed relation
+	 * @return
+	 */
+	public String getRelationName() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the indexed attribute
+	 * @return
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Return the kind of index
+	 * @return
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Return true if the index can find the tuples that satisfy a predicate:
+	 * a comparison of the indexed attribute with a value (or placeholder),
+	 * which for a hash index must be an equality. A B+tree index cannot
+	 * find the tuples that satisfy attr<>value any faster than a scan.
+	 * @param predicate
+	 * @return
+	 */
+	public boolean supports(Predicate predicate) {
+		if (predicate.isCompound() || !predicate.hasValue() ||
+				!predicate.getLeftAttribute().equals(this.attribute)) {
+			return false;
+		}
+
+		switch (predicate.getComparison()) {
+		case EQUALS:
+			return true;
+		case NOT_EQUALS:
+			return false;
+		default:
+			return this.type == Type.BTREE;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.type + "(" + this.relation + "." + this.attribute.getName() + ")";
+	}
+}
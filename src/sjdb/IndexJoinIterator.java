@@ -0,0 +1,92 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Join operator as an index nested loop join: each
+ * tuple of the outer input is combined with the tuples that an index over
+ * the named relation scanned by the inner input returns for its join
+ * attribute value. The inner input itself is never read.
+ */
+public class IndexJoinIterator implements TupleIterator {
+	private TupleIterator outer;
+	private TupleIndex index;
+	private Predicate predicate;
+	private boolean innerLeft;
+	private List<Attribute> attributes;
+	private int outerKey;
+	private String[] outerTuple;
+	private List<String[]> matches;
+	private int matchPosition;
+
+	/**
+	 * Create a new index nested loop join iterator
+	 * @param outer Iterator over the outer input
+	 * @param index Index over the join attribute of the inner relation
+	 * @param predicate Join predicate
+	 * @param innerLeft true if the inner relation is the left input of
+	 * the join, false if it is the right input
+	 */
+	public IndexJoinIterator(TupleIterator outer, TupleIndex index, Predicate predicate, boolean innerLeft) {
+		this.outer = outer;
+		this.index = index;
+		this.predicate = predicate;
+		this.innerLeft = innerLeft;
+		this.attributes = new ArrayList<Attribute>();
+		if (innerLeft) {
+			this.attributes.addAll(index.getRelation().getAttributes());
+			this.attributes.addAll(outer.getAttributes());
+		} else {
+			this.attributes.addAll(outer.getAttributes());
+			this.attributes.addAll(index.getRelation().getAttributes());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.outer.getAttributes(),
+				this.index.getRelation().getAttributes(), this.predicate);
+		this.outerKey = keys[0];
+
+		this.index.build();
+		this.outer.open();
+		this.outerTuple = null;
+		this.matches = null;
+		this.matchPosition = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		while (this.matches == null || this.matchPosition == this.matches.size()) {
+			if ((this.outerTuple = this.outer.next()) == null) {
+				return null;
+			}
+			this.matches = this.index.lookup(this.outerTuple[this.outerKey]);
+			this.matchPosition = 0;
+		}
+
+		String[] match = this.matches.get(this.matchPosition++);
+		return this.innerLeft ? ProductIterator.concatenate(match, this.outerTuple) :
+				ProductIterator.concatenate(this.outerTuple, match);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.matches = null;
+		this.outer.close();
+	}
+}
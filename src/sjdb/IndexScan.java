@@ -0,0 +1,89 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements an IndexScan operator, which feeds into a query
+ * plan the tuples of a NamedRelation that satisfy a predicate, found by
+ * looking them up in an index (see Index) rather than by reading the
+ * whole relation. It is equivalent to a Select with the predicate over a
+ * Scan of the relation, and is chosen by the optimiser where it is
+ * cheaper. The tuples found by a B+tree index are in the order of the
+ * indexed attribute.
+ */
+public class IndexScan extends Operator {
+	private NamedRelation relation;
+	private Index index;
+	private Predicate predicate;
+
+	/**
+	 * Create a new index scan of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param index Index over an attribute of the relation
+	 * @param predicate Predicate on the indexed attribute, which the index
+	 * supports (see Index.supports())
+	 */
+	public IndexScan(NamedRelation relation, Index index, Predicate predicate) {
+		this.relation = relation;
+		this.index = index;
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Return the named relation to be scanned
+	 * @return Named relation to be scanned
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the index used to find the tuples
+	 * @return
+	 */
+	public Index getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Return the predicate that the tuples satisfy
+	 * @return
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrder()
+	 */
+	public List<Attribute> getOrder() {
+		List<Attribute> order = new ArrayList<Attribute>();
+		if (this.index.getType() == Index.Type.BTREE) {
+			order.add(this.index.getAttribute());
+		}
+		return order;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "INDEX SCAN [" + this.index.getType() + " " + this.predicate.toString() + "] (" +
+				this.relation.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class executes an IndexScan operator, returning the tuples that an
+ * index over the scanned relation finds for the predicate of the scan.
+ * The relation itself is never read once the index has been built.
+ */
+public class IndexScanIterator implements TupleIterator {
+	private TupleIndex index;
+	private Predicate predicate;
+	private List<String[]> tuples;
+	private int position;
+
+	/**
+	 * Create a new index scan iterator
+	 * @param index Index over the indexed attribute of the scanned relation
+	 * @param predicate Comparison of the indexed attribute with a value
+	 */
+	public IndexScanIterator(TupleIndex index, Predicate predicate) {
+		this.index = index;
+		this.predicate = predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.index.getRelation().getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.tuples = this.index.lookup(this.predicate);
+		this.position = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() {
+		if (this.position == this.tuples.size()) {
+			return null;
+		}
+		return this.tuples.get(this.position++);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() {
+		this.tuples = null;
+	}
+}
@@ -1,11 +1,33 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class represents a join operator.
  * @author nmg
  */
 public class Join extends BinaryOperator {
+	/**
+	 * Physical methods by which a join may be executed
+	 */
+	public enum Method {
+		/** Compare every pair of tuples from the two inputs */
+		NESTED_LOOP,
+		/** Build a hash table over one input in memory, and probe it with the other */
+		HASH,
+		/** Partition both inputs on disk by hash, then hash join each pair of partitions */
+		GRACE_HASH,
+		/** Sort both inputs on the join attributes, and merge them */
+		SORT_MERGE,
+		/** Look up each tuple of one input in an index over the named relation scanned by the other */
+		INDEX_NESTED_LOOP
+	}
+	
 	private Predicate predicate;
+	private Method method;
+	private boolean buildLeft;
+	private boolean methodFixed;
 	/**
 	 * Create a new join operator.
 	 * @param left Left child operator
@@ -15,12 +37,97 @@ public class Join extends BinaryOperator {
 	public Join(Operator left, Operator right, Predicate predicate) {
 		super(left, right);
 		this.predicate = predicate;
+		this.method = Method.NESTED_LOOP;
+		this.buildLeft = false;
+		this.methodFixed = false;
 	}
 
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.BinaryOperator#copy(sjdb.Operator, sjdb.Operator)
+	 */
+	protected Operator copy(Operator left, Operator right) {
+		Join join = new Join(left, right, this.predicate);
+		join.copyMethod(this);
+		return join;
+	}
+	
+	/**
+	 * Return the method by which this join is executed. Joins are executed
+	 * as nested loops unless the optimiser chooses another method.
+	 * @return Join method
+	 */
+	public Method getMethod() {
+		return this.method;
+	}
+	
+	/**
+	 * Return true if the left input is the build side of a hash join, or
+	 * the indexed side of an index nested loop join; otherwise the right 
+	 * input is.
+	 * @return true if the left input is the build side
+	 */
+	public boolean isBuildLeft() {
+		return this.buildLeft;
+	}
+	
+	/**
+	 * Set the method by which this join is executed
+	 * @param method Join method
+	 * @param buildLeft true if the left input is the build (or indexed) side
+	 */
+	public void setMethod(Method method, boolean buildLeft) {
+		this.method = method;
+		this.buildLeft = buildLeft;
+		invalidateOrder();
+	}
+	
+	/**
+	 * Set the method by which this join is executed, and prevent the 
+	 * JoinPlanner from choosing another. The optimiser fixes the method
+	 * of a join whose output order it relies on.
+	 * @param method Join method
+	 * @param buildLeft true if the left input is the build (or indexed) side
+	 */
+	public void fixMethod(Method method, boolean buildLeft) {
+		setMethod(method, buildLeft);
+		this.methodFixed = true;
+	}
+	
+	/**
+	 * Return true if the method of this join has been fixed by the optimiser
+	 * @return true if the method is fixed
+	 */
+	public boolean isMethodFixed() {
+		return this.methodFixed;
+	}
+	
+	/**
+	 * Give this join the same method as another, as when a plan is copied
+	 * @param other Join to copy the method of
+	 */
+	public void copyMethod(Join other) {
+		this.method = other.method;
+		this.buildLeft = other.buildLeft;
+		this.methodFixed = other.methodFixed;
+		invalidateOrder();
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrder()
+	 */
+	public List<Attribute> getOrder() {
+		List<Attribute> order = new ArrayList<Attribute>();
+		// both join attributes take the same value, in merged order
+		if (this.method == Method.SORT_MERGE) {
+			order.add(this.predicate.getLeftAttribute());
+		}
+		return order;
+	}
+	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
 	 */
@@ -28,6 +135,13 @@ public class Join extends BinaryOperator {
 		super.accept(visitor);
 		visitor.visit(this);
 	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
 	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -0,0 +1,55 @@
+package sjdb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This rule reassociates a pair of joins:
+ * 
+ * (A JOIN B) JOIN C => A JOIN (B JOIN C)
+ * 
+ * Together with JoinCommutativity this derives every join tree over the
+ * relations of a group. The new group (B JOIN C) is only created if B and
+ * C are connected in the join graph, so that exploration never introduces
+ * cartesian products that were not already present in the canonical plan.
+ * 
+ * Groups only ever gain expressions, so the rule records how many of the
+ * left child group's expressions it has already combined with each join,
+ * and only considers the ones added since when it is applied again.
+ */
+public class JoinAssociativity implements Rule {
+	private Map<MemoExpression, Integer> explored;
+
+	public JoinAssociativity() {
+		this.explored = new HashMap<MemoExpression, Integer>();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.MemoExpression, sjdb.Memo)
+	 */
+	public boolean apply(MemoExpression expression, Memo memo) {
+		if (expression.isLeaf()) {
+			return false;
+		}
+
+		long right = expression.getRight();
+		List<MemoExpression> children = memo.getGroup(expression.getLeft()).getExpressions();
+		Integer done = this.explored.get(expression);
+		int end = children.size();
+		boolean added = false;
+
+		// adding to other groups never changes the left child group
+		for (int i = done == null ? 0 : done; i < end; i++) {
+			MemoExpression child = children.get(i);
+
+			if (!child.isLeaf() && memo.getGraph().isJoined(child.getRight(), right)) {
+				added |= memo.addExpression(new MemoExpression(child.getRight(), right));
+				added |= memo.addExpression(new MemoExpression(child.getLeft(), child.getRight() | right));
+			}
+		}
+
+		this.explored.put(expression, end);
+		return added;
+	}
+}
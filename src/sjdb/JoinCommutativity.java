@@ -0,0 +1,40 @@
+package sjdb;
+
+/**
+ * This rule swaps the inputs of a join: A JOIN B => B JOIN A
+ * 
+ * When only deep join trees are wanted, a join is only swapped if the
+ * result has the right shape: for left-deep trees, if A is a single
+ * relation, and for right-deep trees, if B is.
+ */
+public class JoinCommutativity implements Rule {
+	private JoinEnumerator.Shape shape;
+	
+	public JoinCommutativity() {
+		this(JoinEnumerator.Shape.BUSHY);
+	}
+	
+	/**
+	 * Create the commutativity rule for join trees of the given shape
+	 * @param shape
+	 */
+	public JoinCommutativity(JoinEnumerator.Shape shape) {
+		this.shape = shape;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.MemoExpression, sjdb.Memo)
+	 */
+	public boolean apply(MemoExpression expression, Memo memo) {
+		if (expression.isLeaf()) {
+			return false;
+		}
+		if (this.shape == JoinEnumerator.Shape.LEFT_DEEP && Long.bitCount(expression.getLeft()) != 1) {
+			return false;
+		}
+		if (this.shape == JoinEnumerator.Shape.RIGHT_DEEP && Long.bitCount(expression.getRight()) != 1) {
+			return false;
+		}
+		return memo.addExpression(new MemoExpression(expression.getRight(), expression.getLeft()));
+	}
+}
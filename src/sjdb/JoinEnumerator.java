@@ -0,0 +1,454 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements a Selinger-style bottom-up dynamic programming
+ * join enumerator. For every connected set of relations in the join graph
+ * it records the cheapest plan of the requested shape that joins them,
+ * where the cost of a plan is computed by a CostModel.
+ *
+ * Sets of relations are represented as bitsets (see QueryGraph), so they
+ * can be enumerated in increasing numeric order: every proper subset of a
+ * set is then guaranteed to have been planned before the set itself.
+ *
+ * For each set the enumerator also keeps the cheapest plan for each of its
+ * interesting orders, even if it costs more than the cheapest plan, as 
+ * long as it costs less than sorting the cheapest plan: an order is 
+ * interesting if a later sort-merge join on a class of attributes that
+ * joins the set to another relation, or the ORDER BY of the query, can
+ * use it without sorting. Orders are identified by the class of attributes
+ * that the join predicates equate with the first attribute of the order,
+ * and are established by sort-merge joins, whose method is then fixed;
+ * such joins are only built for interesting orders, or over inputs that
+ * are already ordered.
+ */
+public class JoinEnumerator {
+	/**
+	 * The shapes of join tree that the enumerator may produce
+	 */
+	public enum Shape {
+		/** The right input of every join is a single relation */
+		LEFT_DEEP,
+		/** The left input of every join is a single relation */
+		RIGHT_DEEP,
+		/** Both inputs of a join may be the result of other joins */
+		BUSHY
+	}
+
+	private QueryGraph graph;
+	private CostModel costModel;
+	private Estimator estimator;
+	private Shape shape;
+	private Map<Long, Operator> bestPlans;
+	private Map<Long, Double> bestCosts;
+	private Map<Long, Map<Attribute, Operator>> orderedPlans;
+	private EquivalenceClasses classes;
+
+	/**
+	 * Create a new enumerator of left-deep join trees over the given join graph
+	 * @param graph Join graph of the query
+	 * @param costModel Cost model used to cost subplans
+	 */
+	public JoinEnumerator(QueryGraph graph, CostModel costModel) {
+		this(graph, costModel, Shape.LEFT_DEEP);
+	}
+
+	/**
+	 * Create a new join enumerator over the given join graph
+	 * @param graph Join graph of the query
+	 * @param costModel Cost model used to cost subplans
+	 * @param shape Shape of the join trees to be considered
+	 */
+	public JoinEnumerator(QueryGraph graph, CostModel costModel, Shape shape) {
+		this.graph = graph;
+		this.costModel = costModel;
+		this.estimator = costModel.getEstimator();
+		this.shape = shape;
+		this.bestPlans = new HashMap<Long, Operator>();
+		this.bestCosts = new HashMap<Long, Double>();
+		this.orderedPlans = new HashMap<Long, Map<Attribute, Operator>>();
+		this.classes = graph.getJoinClasses();
+	}
+
+	/**
+	 * Find the cheapest plan that joins all relations of the query and
+	 * applies all of its predicates; if the query is ordered, this is the
+	 * plan that is cheapest once it has been sorted
+	 * @return Estimated plan without the final project or sort
+	 */
+	public Operator enumerate() {
+		for (int i = 0; i < this.graph.getRelationCount(); i++) {
+			Operator plan = buildAccessPlan(this.graph, this.estimator, i);
+			this.bestPlans.put(QueryGraph.bit(i), plan);
+			this.bestCosts.put(QueryGraph.bit(i), this.costModel.cost(plan));
+			this.orderedPlans.put(QueryGraph.bit(i), new HashMap<Attribute, Operator>());
+		}
+
+		long all = this.graph.getAllRelations();
+		for (long set = 1; set <= all; set++) {
+			if (Long.bitCount(set) > 1 && this.graph.isConnected(set)) {
+				enumerateSplits(set);
+				if (this.bestPlans.containsKey(set)) {
+					pruneOrderedPlans(this.costModel, this.bestPlans.get(set), this.orderedPlans.get(set));
+				}
+			}
+		}
+
+		if (this.bestPlans.containsKey(all)) {
+			this.bestPlans.put(all, chooseOrdered(this.costModel, this.graph, this.bestPlans.get(all),
+					this.orderedPlans.get(all)));
+		}
+
+		Operator plan = combineComponents();
+
+		for (Predicate predicate : this.graph.getResidualPredicates()) {
+			plan = new Select(plan, predicate);
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Consider every way of producing the given set of relations by joining
+	 * two smaller connected sets that is permitted by the tree shape
+	 */
+	private void enumerateSplits(long set) {
+		if (this.shape == Shape.BUSHY) {
+			for (long left = (set - 1) & set; left != 0; left = (left - 1) & set) {
+				considerSplit(set, left, set & ~left);
+			}
+		}
+		else {
+			long rest = set;
+
+			while (rest != 0) {
+				long single = Long.lowestOneBit(rest);
+				rest &= rest - 1;
+
+				if (this.shape == Shape.LEFT_DEEP) {
+					considerSplit(set, set & ~single, single);
+				}
+				else {
+					considerSplit(set, single, set & ~single);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Consider joining the two sets if both have been planned (i.e. are
+	 * connected) and there is a join predicate between them
+	 */
+	private void considerSplit(long set, long left, long right) {
+		if (this.bestPlans.containsKey(left) && this.bestPlans.containsKey(right) &&
+				this.graph.isJoined(left, right)) {
+			considerJoin(set, left, right);
+		}
+	}
+
+	/**
+	 * Build a join of the best plans for the two sets, and the sort-merge
+	 * joins of their best and ordered plans, and keep each that is cheaper
+	 * than the best plan found so far for their union, or for its order
+	 */
+	private void considerJoin(long set, long left, long right) {
+		List<Predicate> predicates = this.graph.getJoinPredicates(left, right, 
+				this.bestPlans.get(left).getOutput(), this.bestPlans.get(right).getOutput());
+		List<Operator> plans = buildMergeJoins(this.costModel, this.graph, set, this.bestPlans.get(left),
+				this.orderedPlans.get(left), this.bestPlans.get(right), this.orderedPlans.get(right),
+				predicates, this.classes);
+		plans.add(0, buildJoin(this.costModel, this.bestPlans.get(left), this.bestPlans.get(right), 
+				predicates));
+
+		Map<Attribute, Operator> ordered = this.orderedPlans.get(set);
+		if (ordered == null) {
+			ordered = new HashMap<Attribute, Operator>();
+			this.orderedPlans.put(set, ordered);
+		}
+
+		for (Operator plan : plans) {
+			double cost = this.costModel.cost(plan);
+			Double bestCost = this.bestCosts.get(set);
+
+			if (bestCost == null || cost < bestCost) {
+				this.bestPlans.put(set, plan);
+				this.bestCosts.put(set, cost);
+			}
+			offerOrderedPlan(this.graph, this.classes, set, ordered, plan);
+		}
+	}
+
+	/**
+	 * Return whichever of the best plan for all relations of the query and
+	 * their best ordered plans is the cheapest once it has been sorted in
+	 * the order of the query, if the query is ordered
+	 * @param costModel Cost model used to cost the sorts
+	 * @param graph Join graph of the query
+	 * @param best Best plan
+	 * @param ordered Best ordered plans, by the class of their order
+	 * @return Chosen plan, without the sort
+	 */
+	static Operator chooseOrdered(CostModel costModel, QueryGraph graph, Operator best, 
+			Map<Attribute, Operator> ordered) {
+		if (graph.getOrder() == null) {
+			return best;
+		}
+
+		Operator chosen = best;
+		double chosenCost = costModel.cost(new Sort(best, graph.getOrder()));
+		for (Operator plan : ordered.values()) {
+			double cost = costModel.cost(new Sort(plan, graph.getOrder()));
+			if (cost < chosenCost) {
+				chosen = plan;
+				chosenCost = cost;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Return the class of the attribute that the output of a plan is
+	 * ordered on first, or null if it is in no known order
+	 * @param classes Classes of the attributes equated by join predicates
+	 * @param plan Estimated plan
+	 * @return Representative of the class
+	 */
+	static Attribute orderClass(EquivalenceClasses classes, Operator plan) {
+		List<Attribute> order = plan.getOrder();
+		return order.isEmpty() ? null : classes.find(order.get(0));
+	}
+
+	/**
+	 * Record a plan for a set of relations as the best plan in its order,
+	 * if the order is interesting for the set and the plan is cheaper than
+	 * the best plan in that order so far
+	 * @param graph Join graph of the query
+	 * @param classes Classes of the attributes equated by join predicates
+	 * @param set Bitset of the relations produced by the plan
+	 * @param ordered Best plans of the set, by the class of their order
+	 * @param plan Estimated and costed plan
+	 */
+	static void offerOrderedPlan(QueryGraph graph, EquivalenceClasses classes, long set, 
+			Map<Attribute, Operator> ordered, Operator plan) {
+		Attribute key = orderClass(classes, plan);
+		if (key == null || !isInteresting(graph, classes, set, key)) {
+			return;
+		}
+
+		Operator best = ordered.get(key);
+		if (best == null || plan.getCost() < best.getCost()) {
+			ordered.put(key, plan);
+		}
+	}
+
+	/**
+	 * Drop the ordered plans of a set of relations that cost at least as
+	 * much once sorted as its best plan does: sorting the best plan into
+	 * their order gives as cheap an input to any later merge join or sort.
+	 * Only the ordered plans that pay for their order are then kept, and
+	 * combined with those of other sets.
+	 * @param costModel Cost model used to cost the sorts
+	 * @param best Best plan of the set
+	 * @param ordered Best ordered plans of the set, by the class of their order
+	 */
+	static void pruneOrderedPlans(CostModel costModel, Operator best, Map<Attribute, Operator> ordered) {
+		Iterator<Operator> iter = ordered.values().iterator();
+		while (iter.hasNext()) {
+			Operator plan = iter.next();
+			if (plan == best) {
+				continue;
+			}
+
+			List<Attribute> order = new ArrayList<Attribute>(plan.getOrder().subList(0, 1));
+			if (costModel.cost(new Sort(plan, order)) >= costModel.cost(new Sort(best, order))) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Return true if an order is interesting for a set of relations: the
+	 * query is ordered on it, or its class joins the set to another relation
+	 */
+	private static boolean isInteresting(QueryGraph graph, EquivalenceClasses classes, long set, 
+			Attribute key) {
+		if (graph.getOrder() != null && classes.find(graph.getOrder().get(0)).equals(key)) {
+			return true;
+		}
+		return graph.isJoinedOn(set, key);
+	}
+
+	/**
+	 * Build the sort-merge joins of two subplans on each of the given
+	 * predicates. Each input of a join is either the best plan for its 
+	 * relations, or their best plan that is already ordered on its join
+	 * attribute, so that it need not be sorted; the method of each join
+	 * is fixed, so that the order of its output can be relied on. The join
+	 * of the two best plans is only built if its order is interesting for
+	 * the union of their relations, as it is otherwise no better than the
+	 * join that buildJoin() builds, whose method is chosen by cost.
+	 * @param costModel Cost model used to estimate the new operators
+	 * @param graph Join graph of the query
+	 * @param set Bitset of the relations joined by the new plans
+	 * @param left Best left subplan
+	 * @param leftOrdered Best ordered left subplans, by the class of their order
+	 * @param right Best right subplan
+	 * @param rightOrdered Best ordered right subplans, by the class of their order
+	 * @param predicates Predicates connecting the two subplans
+	 * @param classes Classes of the attributes equated by join predicates
+	 * @return Combined plans
+	 */
+	static List<Operator> buildMergeJoins(CostModel costModel, QueryGraph graph, long set, 
+			Operator left, Map<Attribute, Operator> leftOrdered, Operator right, 
+			Map<Attribute, Operator> rightOrdered, List<Predicate> predicates, EquivalenceClasses classes) {
+		List<Operator> plans = new ArrayList<Operator>();
+
+		for (Predicate predicate : predicates) {
+			Attribute key = classes.find(predicate.getLeftAttribute());
+			boolean interesting = isInteresting(graph, classes, set, key);
+			Operator leftSorted = leftOrdered.get(key);
+			Operator rightSorted = rightOrdered.get(key);
+			// the best plan may itself be ordered
+			if (leftSorted == left) {
+				leftSorted = null;
+			}
+			if (rightSorted == right) {
+				rightSorted = null;
+			}
+
+			for (Operator leftInput : new Operator[] { left, leftSorted }) {
+				for (Operator rightInput : new Operator[] { right, rightSorted }) {
+					if (leftInput != null && rightInput != null && 
+							(interesting || leftInput != left || rightInput != right)) {
+						Join join = new Join(leftInput, rightInput, predicate);
+						join.fixMethod(Join.Method.SORT_MERGE, false);
+						costModel.getEstimator().estimate(join);
+						plans.add(applyPredicates(costModel.getEstimator(), join, predicates));
+					}
+				}
+			}
+		}
+
+		return plans;
+	}
+
+	/**
+	 * Build the estimated access plan for a single relation of the query: a
+	 * scan followed by selects for all of its local predicates
+	 * @param graph Join graph of the query
+	 * @param estimator Estimator used to estimate the new operators
+	 * @param relation Index of the relation
+	 * @return Access plan
+	 */
+	static Operator buildAccessPlan(QueryGraph graph, Estimator estimator, int relation) {
+		Scan scan = new Scan((NamedRelation) graph.getScan(relation).getRelation());
+		estimator.estimate(scan);
+		Operator plan = scan;
+
+		for (Predicate predicate : graph.getLocalPredicates(relation)) {
+			Select select = new Select(plan, predicate);
+			estimator.estimate(select);
+			plan = select;
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Build an estimated plan that combines two estimated subplans. The
+	 * subplans are joined on the predicate that gives the cheapest plan,
+	 * and the remaining predicates are applied by selects above the join;
+	 * if there are no predicates, a cartesian product is built instead.
+	 * @param costModel Cost model used to estimate and cost the new operators
+	 * @param left Left subplan
+	 * @param right Right subplan
+	 * @param predicates Predicates connecting the two subplans
+	 * @return Combined plan
+	 */
+	static Operator buildJoin(CostModel costModel, Operator left, Operator right,
+			List<Predicate> predicates) {
+		Estimator estimator = costModel.getEstimator();
+		if (predicates.isEmpty()) {
+			Product product = new Product(left, right);
+			estimator.estimate(product);
+			return product;
+		}
+
+		// the selects are costed too, as a join on one predicate may leave
+		// far more tuples for them than a join on another
+		Operator best = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for (Predicate predicate : predicates) {
+			Operator plan = applyPredicates(estimator, new Join(left, right, predicate), predicates);
+			double cost = costModel.cost(plan);
+
+			if (best == null || cost < bestCost) {
+				best = plan;
+				bestCost = cost;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Apply the predicates connecting the inputs of a join, other than its
+	 * own, by selects above it. The join graph gives one predicate for each
+	 * class of equated attributes (see QueryGraph.getJoinPredicates()), so
+	 * none of them is implied by the others.
+	 */
+	private static Operator applyPredicates(Estimator estimator, Join join, List<Predicate> predicates) {
+		Operator plan = join;
+		for (Predicate predicate : predicates) {
+			if (predicate != join.getPredicate()) {
+				Select select = new Select(plan, predicate);
+				estimator.estimate(select);
+				plan = select;
+			}
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Combine the best plans of the connected components of the join graph
+	 * with cartesian products, smallest component first
+	 */
+	private Operator combineComponents() {
+		List<Operator> components = new ArrayList<Operator>();
+		long rest = this.graph.getAllRelations();
+
+		while (rest != 0) {
+			long component = this.graph.getComponent(Long.lowestOneBit(rest), rest);
+			components.add(this.bestPlans.get(component));
+			rest &= ~component;
+		}
+
+		Operator plan = removeSmallest(components);
+		while (!components.isEmpty()) {
+			Product product = new Product(plan, removeSmallest(components));
+			this.estimator.estimate(product);
+			plan = product;
+		}
+
+		return plan;
+	}
+
+	private Operator removeSmallest(List<Operator> plans) {
+		Operator smallest = plans.get(0);
+
+		for (Operator plan : plans) {
+			if (plan.getOutput().getTupleCount() < smallest.getOutput().getTupleCount()) {
+				smallest = plan;
+			}
+		}
+
+		plans.remove(smallest);
+		return smallest;
+	}
+}
@@ -0,0 +1,82 @@
+package sjdb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This rule exchanges two single relations joined in turn to a deep join
+ * tree. For left-deep trees, whose right inputs are single relations:
+ *
+ * (A JOIN b) JOIN c => (A JOIN c) JOIN b
+ *
+ * and for right-deep trees, whose left inputs are single relations:
+ *
+ * a JOIN (b JOIN C) => b JOIN (a JOIN C)
+ *
+ * Together with JoinCommutativity of the bottom join, this derives every
+ * join tree of the given shape over the relations of a group, without the
+ * bushy trees that JoinAssociativity would also derive. As with
+ * JoinAssociativity, the new group (A JOIN c) is only created if A and c
+ * are connected in the join graph.
+ *
+ * Groups only ever gain expressions, so the rule records how many of the
+ * deep child group's expressions it has already exchanged with each join,
+ * and only considers the ones added since when it is applied again.
+ */
+public class JoinExchange implements Rule {
+	private boolean leftDeep;
+	private Map<MemoExpression, Integer> explored;
+
+	/**
+	 * Create the exchange rule for deep join trees
+	 * @param leftDeep true for left-deep trees, false for right-deep trees
+	 */
+	public JoinExchange(boolean leftDeep) {
+		this.leftDeep = leftDeep;
+		this.explored = new HashMap<MemoExpression, Integer>();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.MemoExpression, sjdb.Memo)
+	 */
+	public boolean apply(MemoExpression expression, Memo memo) {
+		if (expression.isLeaf()) {
+			return false;
+		}
+
+		long single = this.leftDeep ? expression.getRight() : expression.getLeft();
+		long deep = this.leftDeep ? expression.getLeft() : expression.getRight();
+		if (Long.bitCount(single) != 1) {
+			return false;
+		}
+
+		List<MemoExpression> children = memo.getGroup(deep).getExpressions();
+		Integer done = this.explored.get(expression);
+		int end = children.size();
+		boolean added = false;
+
+		// adding to other groups never changes the deep child group
+		for (int i = done == null ? 0 : done; i < end; i++) {
+			MemoExpression child = children.get(i);
+			if (child.isLeaf()) {
+				continue;
+			}
+
+			long exchanged = this.leftDeep ? child.getRight() : child.getLeft();
+			long rest = this.leftDeep ? child.getLeft() : child.getRight();
+			if (Long.bitCount(exchanged) == 1 && memo.getGraph().isJoined(rest, single)) {
+				if (this.leftDeep) {
+					added |= memo.addExpression(new MemoExpression(rest, single));
+					added |= memo.addExpression(new MemoExpression(rest | single, exchanged));
+				} else {
+					added |= memo.addExpression(new MemoExpression(single, rest));
+					added |= memo.addExpression(new MemoExpression(exchanged, single | rest));
+				}
+			}
+		}
+
+		this.explored.put(expression, end);
+		return added;
+	}
+}
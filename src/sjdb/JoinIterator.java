@@ -0,0 +1,49 @@
+package sjdb;
+
+/**
+ * This class executes a Join operator as a nested loop, returning the
+ * combinations of tuples from its inputs that satisfy the join predicate.
+ * Either attribute of the predicate may belong to either input.
+ */
+public class JoinIterator extends ProductIterator {
+	private Predicate predicate;
+	private int leftIndex;
+	private int rightIndex;
+	private int leftWidth;
+
+	/**
+	 * Create a new join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input, which is read into memory
+	 * @param predicate Join predicate
+	 */
+	public JoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+		super(left, right);
+		this.predicate = predicate;
+		this.leftWidth = left.getAttributes().size();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ProductIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.leftIndex = Executor.indexOf(getAttributes(), this.predicate.getLeftAttribute());
+		this.rightIndex = Executor.indexOf(getAttributes(), this.predicate.getRightAttribute());
+		super.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.ProductIterator#matches(java.lang.String[], java.lang.String[])
+	 */
+	protected boolean matches(String[] leftTuple, String[] rightTuple) {
+		return value(leftTuple, rightTuple, this.leftIndex).equals(value(leftTuple, rightTuple, this.rightIndex));
+	}
+
+	/**
+	 * Return the value at a position in the concatenation of two tuples,
+	 * without concatenating them
+	 */
+	private String value(String[] leftTuple, String[] rightTuple, int index) {
+		return index < this.leftWidth ? leftTuple[index] : rightTuple[index - this.leftWidth];
+	}
+}
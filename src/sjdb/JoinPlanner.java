@@ -0,0 +1,95 @@
+package sjdb;
+
+/**
+ * This class chooses the physical method by which each join in a plan is
+ * executed. It visits a plan whose outputs have been estimated, and gives
+ * each Join the method, and build side, that is cheapest according to its
+ * CostModel (see CostModel.joinCost()). This is the method with which the
+ * cost model costs a join whose method has not been chosen, so the plans
+ * that the optimiser compared are the plans that are executed.
+ *
+ * Joins whose method has been fixed by the optimiser, because a later
+ * operator relies on the order of their output, are left as they are.
+ */
+public class JoinPlanner implements PlanVisitor {
+	private CostModel costModel;
+
+	/**
+	 * Create a join planner with the cost model's default memory budget
+	 */
+	public JoinPlanner() {
+		this(new CostModel(new Estimator()));
+	}
+
+	/**
+	 * Create a join planner that chooses methods with the given cost model
+	 * @param costModel
+	 */
+	public JoinPlanner(CostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Return the cost model with which join methods are chosen
+	 * @return
+	 */
+	public CostModel getCostModel() {
+		return this.costModel;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		if (op.isMethodFixed()) {
+			return;
+		}
+		
+		// the inputs have been costed already unless they were re-estimated
+		this.costModel.cost(op.getLeft());
+		this.costModel.cost(op.getRight());
+
+		Join.Method bestMethod = Join.Method.NESTED_LOOP;
+		boolean bestBuildLeft = false;
+		double bestCost = Double.POSITIVE_INFINITY;
+
+		for (Join.Method method : Join.Method.values()) {
+			for (int side = 0; side < 2; side++) {
+				boolean buildLeft = side == 0;
+				double cost = this.costModel.joinCost(op, method, buildLeft);
+
+				if (cost < bestCost) {
+					bestMethod = method;
+					bestBuildLeft = buildLeft;
+					bestCost = cost;
+				}
+			}
+		}
+
+		op.setMethod(bestMethod, bestBuildLeft);
+	}
+
+	public void visit(Scan op) {
+	}
+
+	public void visit(IndexScan op) {
+	}
+
+	public void visit(Project op) {
+	}
+
+	public void visit(Select op) {
+	}
+
+	public void visit(Product op) {
+	}
+
+	public void visit(Exchange op) {
+	}
+
+	public void visit(Sort op) {
+	}
+
+	public void visit(Aggregate op) {
+	}
+}
@@ -0,0 +1,236 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements the memo of a Cascades-style rule-based optimiser.
+ * The memo holds groups of logically equivalent expressions, keyed by the
+ * bitset of the relations they produce (see QueryGraph).
+ *
+ * Optimisation proceeds in three steps:
+ *
+ * - copyIn() adds the join tree of the canonical plan to the memo. Each
+ *   predicate of the plan is applied in the smallest group that contains
+ *   all of its attributes, so selections are pushed down as the memo is
+ *   populated.
+ * - explore() applies the transformation rules to every expression until
+ *   no new expression is derived. For bushy trees these are join
+ *   commutativity and associativity; for left-deep and right-deep trees,
+ *   commutativity restricted to the shape and the exchange of two single
+ *   relations (see JoinExchange), so that the memo only grows with the
+ *   number of trees of the shape.
+ * - extract() finds the cheapest plan for a group, bottom-up. The best plan
+ *   of each group is found once and shared by every expression that uses
+ *   the group, and only the operators that are new to a candidate plan are
+ *   visited by the estimator and the cost model. Each group also keeps its
+ *   cheapest plan in each interesting order, which sort-merge joins above
+ *   it and the ORDER BY of the query may use without sorting.
+ */
+public class Memo {
+	private QueryGraph graph;
+	private CostModel costModel;
+	private Estimator estimator;
+	private JoinEnumerator.Shape shape;
+	private EquivalenceClasses classes;
+	private Map<Long, MemoGroup> groups;
+	private List<Rule> rules;
+	private int nextRelation;
+
+	/**
+	 * Create an empty memo for the given query
+	 * @param graph Join graph of the query
+	 * @param costModel Cost model used to cost plans
+	 * @param shape Shape of the join trees that are explored and extracted
+	 */
+	public Memo(QueryGraph graph, CostModel costModel, JoinEnumerator.Shape shape) {
+		this.graph = graph;
+		this.costModel = costModel;
+		this.estimator = costModel.getEstimator();
+		this.shape = shape;
+		this.classes = graph.getJoinClasses();
+		this.groups = new LinkedHashMap<Long, MemoGroup>();
+		this.rules = new ArrayList<Rule>();
+		this.rules.add(new JoinCommutativity(shape));
+		if (shape == JoinEnumerator.Shape.BUSHY) {
+			this.rules.add(new JoinAssociativity());
+		} else {
+			this.rules.add(new JoinExchange(shape == JoinEnumerator.Shape.LEFT_DEEP));
+		}
+		this.nextRelation = 0;
+	}
+
+	/**
+	 * Return the join graph of the query
+	 * @return Join graph
+	 */
+	public QueryGraph getGraph() {
+		return this.graph;
+	}
+
+	/**
+	 * Return the group that produces the given relations, creating it if
+	 * it does not yet exist
+	 * @param relations Bitset of relations
+	 * @return Group
+	 */
+	public MemoGroup getGroup(long relations) {
+		MemoGroup group = this.groups.get(relations);
+
+		if (group == null) {
+			group = new MemoGroup(relations);
+			this.groups.put(relations, group);
+		}
+
+		return group;
+	}
+
+	/**
+	 * Return the number of groups in the memo
+	 * @return Group count
+	 */
+	public int getGroupCount() {
+		return this.groups.size();
+	}
+
+	/**
+	 * Add an expression to the group it belongs to
+	 * @param expression Expression to add
+	 * @return true if the expression was not already in the memo
+	 */
+	public boolean addExpression(MemoExpression expression) {
+		return getGroup(expression.getGroup()).addExpression(expression);
+	}
+
+	/**
+	 * Add the join tree of a canonical plan to the memo. The scans of the
+	 * plan must be visited in the same order as when the query graph was
+	 * built, which is the case for a left-to-right traversal.
+	 * @param plan Canonical plan
+	 * @return Bitset of the root group
+	 */
+	public long copyIn(Operator plan) {
+		if (plan instanceof UnaryOperator) {
+			// selects are applied by the groups, projects by the optimiser
+			return copyIn(((UnaryOperator) plan).getInput());
+		}
+		else if (plan instanceof BinaryOperator) {
+			BinaryOperator opCast = (BinaryOperator) plan;
+			long left = copyIn(opCast.getLeft());
+			long right = copyIn(opCast.getRight());
+
+			addExpression(new MemoExpression(left, right));
+			return left | right;
+		}
+		//only option left is a Scan
+		else {
+			MemoExpression leaf = new MemoExpression(this.nextRelation++);
+			addExpression(leaf);
+			return leaf.getGroup();
+		}
+	}
+
+	/**
+	 * Apply the transformation rules to every expression in the memo until
+	 * no new expressions are derived
+	 */
+	public void explore() {
+		boolean changed = true;
+
+		while (changed) {
+			changed = false;
+
+			List<MemoGroup> current = new ArrayList<MemoGroup>(this.groups.values());
+			for (MemoGroup group : current) {
+				List<MemoExpression> expressions = new ArrayList<MemoExpression>(group.getExpressions());
+
+				for (MemoExpression expression : expressions) {
+					for (Rule rule : this.rules) {
+						changed |= rule.apply(expression, this);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find the cheapest plan for the given group, applying any predicates
+	 * that could not be placed in the join graph on top; if the query is
+	 * ordered, this is the plan that is cheapest once it has been sorted
+	 * @param relations Bitset of the root group
+	 * @return Estimated plan without the final project or sort
+	 */
+	public Operator extract(long relations) {
+		MemoGroup group = optimiseGroup(relations);
+		Operator plan = JoinEnumerator.chooseOrdered(this.costModel, this.graph, group.getBestPlan(), 
+				group.getOrderedPlans());
+
+		for (Predicate predicate : this.graph.getResidualPredicates()) {
+			plan = new Select(plan, predicate);
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Find the cheapest plan for a group, reusing the best plans of its
+	 * child groups
+	 */
+	private MemoGroup optimiseGroup(long relations) {
+		MemoGroup group = getGroup(relations);
+
+		if (group.getBestPlan() == null) {
+			considerExpressions(group, true);
+			// no expression has the requested shape, so take any
+			if (group.getBestPlan() == null) {
+				considerExpressions(group, false);
+			}
+			JoinEnumerator.pruneOrderedPlans(this.costModel, group.getBestPlan(), group.getOrderedPlans());
+		}
+
+		return group;
+	}
+
+	private void considerExpressions(MemoGroup group, boolean checkShape) {
+		for (MemoExpression expression : group.getExpressions()) {
+			if (expression.isLeaf()) {
+				Operator plan = JoinEnumerator.buildAccessPlan(this.graph, this.estimator,
+						expression.getRelation());
+				group.offerPlan(plan, this.costModel.cost(plan));
+			}
+			else if (!checkShape || hasShape(expression)) {
+				MemoGroup left = optimiseGroup(expression.getLeft());
+				MemoGroup right = optimiseGroup(expression.getRight());
+				List<Predicate> predicates = this.graph.getJoinPredicates(expression.getLeft(),
+						expression.getRight(), left.getBestPlan().getOutput(), right.getBestPlan().getOutput());
+				List<Operator> plans = JoinEnumerator.buildMergeJoins(this.costModel, this.graph, 
+						group.getRelations(), left.getBestPlan(), left.getOrderedPlans(), 
+						right.getBestPlan(), right.getOrderedPlans(), predicates, this.classes);
+				plans.add(0, JoinEnumerator.buildJoin(this.costModel, left.getBestPlan(), 
+						right.getBestPlan(), predicates));
+
+				for (Operator plan : plans) {
+					group.offerPlan(plan, this.costModel.cost(plan));
+					JoinEnumerator.offerOrderedPlan(this.graph, this.classes, group.getRelations(),
+							group.getOrderedPlans(), plan);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return true if the join expression is permitted by the tree shape
+	 */
+	private boolean hasShape(MemoExpression expression) {
+		switch (this.shape) {
+		case LEFT_DEEP:
+			return Long.bitCount(expression.getRight()) == 1;
+		case RIGHT_DEEP:
+			return Long.bitCount(expression.getLeft()) == 1;
+		default:
+			return true;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package sjdb;
+
+/**
+ * This class represents a logical expression in the memo of the
+ * rule-based optimiser. An expression is either a leaf, which reads a
+ * single relation of the query (with its local predicates applied), or a
+ * join of two child groups, identified by the bitsets of relations they
+ * produce. The join predicates that connect the two child groups are
+ * applied by the join, so every expression in a group produces the same
+ * logical result.
+ */
+public class MemoExpression {
+	private long left;
+	private long right;
+	private int relation;
+
+	/**
+	 * Create a leaf expression that reads the given relation
+	 * @param relation Index of the relation in the query graph
+	 */
+	public MemoExpression(int relation) {
+		this.left = 0;
+		this.right = 0;
+		this.relation = relation;
+	}
+
+	/**
+	 * Create an expression that joins the two given groups
+	 * @param left Bitset of the left child group
+	 * @param right Bitset of the right child group
+	 */
+	public MemoExpression(long left, long right) {
+		this.left = left;
+		this.right = right;
+		this.relation = -1;
+	}
+
+	/**
+	 * Return true if this expression reads a single relation
+	 * @return true for leaf expressions
+	 */
+	public boolean isLeaf() {
+		return this.relation >= 0;
+	}
+
+	/**
+	 * Return the bitset of relations produced by this expression, which
+	 * identifies the group that it belongs to
+	 * @return Bitset of the owning group
+	 */
+	public long getGroup() {
+		return isLeaf() ? QueryGraph.bit(this.relation) : this.left | this.right;
+	}
+
+	/**
+	 * Return the left child group of a join expression
+	 * @return Bitset of the left child group
+	 */
+	public long getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * Return the right child group of a join expression
+	 * @return Bitset of the right child group
+	 */
+	public long getRight() {
+		return this.right;
+	}
+
+	/**
+	 * Return the relation read by a leaf expression
+	 * @return Index of the relation in the query graph
+	 */
+	public int getRelation() {
+		return this.relation;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.left ^ (this.left >>> 32)) * 31 +
+				(int) (this.right ^ (this.right >>> 32)) * 17 + this.relation;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MemoExpression)) {
+			return false;
+		}
+		MemoExpression rhs = (MemoExpression) obj;
+
+		return this.left == rhs.left && this.right == rhs.right &&
+				this.relation == rhs.relation;
+	}
+
+	public String toString() {
+		if (isLeaf()) {
+			return "#" + this.relation;
+		} else {
+			return "{" + Long.toBinaryString(this.left) + "} JOIN {" +
+					Long.toBinaryString(this.right) + "}";
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents a group of logically equivalent expressions in the
+ * memo of the rule-based optimiser. All expressions in a group produce the
+ * same set of relations with all of their predicates applied; once the
+ * group has been optimised, it records the cheapest plan for any of them,
+ * which is then shared by every expression that uses the group as input,
+ * and the cheapest plan in each of its interesting orders (see 
+ * JoinEnumerator).
+ */
+public class MemoGroup {
+	private long relations;
+	private List<MemoExpression> expressions;
+	private Set<MemoExpression> index;
+	private Operator bestPlan;
+	private double bestCost;
+	private Map<Attribute, Operator> orderedPlans;
+
+	/**
+	 * Create a new, empty group
+	 * @param relations Bitset of the relations produced by the group
+	 */
+	public MemoGroup(long relations) {
+		this.relations = relations;
+		this.expressions = new ArrayList<MemoExpression>();
+		this.index = new HashSet<MemoExpression>();
+		this.bestPlan = null;
+		this.bestCost = Double.POSITIVE_INFINITY;
+		this.orderedPlans = new HashMap<Attribute, Operator>();
+	}
+
+	/**
+	 * Return the bitset of the relations produced by this group
+	 * @return Bitset of relations
+	 */
+	public long getRelations() {
+		return this.relations;
+	}
+
+	/**
+	 * Add an expression to this group, unless an identical one is present
+	 * @param expression Expression to add
+	 * @return true if the expression was added
+	 */
+	public boolean addExpression(MemoExpression expression) {
+		if (!this.index.add(expression)) {
+			return false;
+		}
+		this.expressions.add(expression);
+		return true;
+	}
+
+	/**
+	 * Return the expressions in this group, in the order they were added
+	 * @return Expressions in the group
+	 */
+	public List<MemoExpression> getExpressions() {
+		return this.expressions;
+	}
+
+	/**
+	 * Return the cheapest plan found for this group, or null if the group
+	 * has not been optimised yet
+	 * @return Best estimated plan
+	 */
+	public Operator getBestPlan() {
+		return this.bestPlan;
+	}
+
+	/**
+	 * Return the cost of the cheapest plan found for this group
+	 * @return Best cost
+	 */
+	public double getBestCost() {
+		return this.bestCost;
+	}
+
+	/**
+	 * Return the cheapest plans found for this group in each interesting
+	 * order, which may be recorded by JoinEnumerator.offerOrderedPlan()
+	 * @return Best ordered plans, by the class of their order
+	 */
+	public Map<Attribute, Operator> getOrderedPlans() {
+		return this.orderedPlans;
+	}
+
+	/**
+	 * Record a plan for this group if it is cheaper than the best so far
+	 * @param plan Estimated plan
+	 * @param cost Cost of the plan
+	 */
+	public void offerPlan(Operator plan, double cost) {
+		if (this.bestPlan == null || cost < this.bestCost) {
+			this.bestPlan = plan;
+			this.bestCost = cost;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the tuples of named relations in memory, as lists of
+ * tuples indexed by relation name.
+ */
+public class MemoryTupleSource implements TupleSource {
+	private ConcurrentHashMap<String, List<String[]>> relations;
+
+	public MemoryTupleSource() {
+		this.relations = new ConcurrentHashMap<String, List<String[]>>();
+	}
+
+	/**
+	 * Add a tuple to the named relation with the specified name
+	 * @param relName
+	 * @param values Attribute values, in the order of the relation's attributes
+	 */
+	public synchronized void addTuple(String relName, String... values) {
+		List<String[]> tuples = this.relations.get(relName);
+		if (tuples == null) {
+			tuples = new ArrayList<String[]>();
+			this.relations.put(relName, tuples);
+		}
+		tuples.add(values);
+	}
+
+	/**
+	 * Replace the tuples of the named relation with the specified name
+	 * @param relName
+	 * @param tuples
+	 */
+	public void setTuples(String relName, List<String[]> tuples) {
+		this.relations.put(relName, tuples);
+	}
+
+	/**
+	 * Return the tuples of the named relation with the specified name
+	 * @param relName
+	 * @return
+	 */
+	public List<String[]> getTuples(String relName) throws DatabaseException {
+		List<String[]> tuples = this.relations.get(relName);
+
+		if (tuples == null) {
+			throw new DatabaseException("No tuples for named relation " + relName);
+		}
+
+		return tuples;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleSource#scan(sjdb.NamedRelation)
+	 */
+	public TupleIterator scan(final NamedRelation relation) {
+		return new TupleIterator() {
+			private List<String[]> tuples;
+			private int position;
+
+			public List<Attribute> getAttributes() {
+				return relation.getAttributes();
+			}
+
+			public void open() throws DatabaseException {
+				this.tuples = getTuples(relation.getName());
+				this.position = 0;
+			}
+
+			public String[] next() {
+				if (this.position < this.tuples.size()) {
+					return this.tuples.get(this.position++);
+				}
+				return null;
+			}
+
+			public void close() {
+				this.tuples = null;
+			}
+		};
+	}
+}
@@ -0,0 +1,94 @@
+package sjdb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class holds the most common values of an attribute, each with the
+ * fraction of the tuples of its relation that take that value. Values are
+ * kept in order of decreasing frequency.
+ *
+ * In the catalogue, a list is written as mcv=value@fraction;value@fraction;...
+ * with the separators in the values escaped (see CatalogueParser).
+ */
+public class MostCommonValues {
+	private Map<String, Double> frequencies;
+	private double total;
+
+	/**
+	 * Create a list of most common values
+	 * @param frequencies Fraction of the tuples that take each value, in
+	 * order of decreasing frequency
+	 */
+	public MostCommonValues(Map<String, Double> frequencies) {
+		this.frequencies = new LinkedHashMap<String, Double>(frequencies);
+		this.total = 0;
+		for (Double frequency : frequencies.values()) {
+			this.total += frequency.doubleValue();
+		}
+	}
+
+	/**
+	 * Return the values and their frequencies
+	 * @return
+	 */
+	public Map<String, Double> getFrequencies() {
+		return this.frequencies;
+	}
+
+	/**
+	 * Return the fraction of the tuples that take a value
+	 * @param value
+	 * @return the fraction, or -1 if the value is not in the list
+	 */
+	public double getFrequency(String value) {
+		Double frequency = this.frequencies.get(value);
+		return frequency == null ? -1 : frequency.doubleValue();
+	}
+
+	/**
+	 * Return the fraction of the tuples that take one of the values
+	 * @return
+	 */
+	public double getTotalFrequency() {
+		return this.total;
+	}
+
+	/**
+	 * Return the number of values in the list
+	 * @return
+	 */
+	public int size() {
+		return this.frequencies.size();
+	}
+
+	/**
+	 * Parse a list in the catalogue syntax, without the mcv= prefix
+	 * @param text
+	 * @return
+	 */
+	public static MostCommonValues parse(String text) {
+		Map<String, Double> frequencies = new LinkedHashMap<String, Double>();
+
+		for (String entry : text.split(";")) {
+			int at = entry.lastIndexOf('@');
+			String value = CatalogueParser.unescape(entry.substring(0, at));
+			frequencies.put(value, Double.valueOf(entry.substring(at + 1)));
+		}
+
+		return new MostCommonValues(frequencies);
+	}
+
+	/**
+	 * Render the list in the catalogue syntax, without the mcv= prefix
+	 * @return
+	 */
+	public String render() {
+		String ret = "";
+		for (Map.Entry<String, Double> entry : this.frequencies.entrySet()) {
+			ret += (ret.isEmpty() ? "" : ";") + CatalogueParser.escape(entry.getKey()) + "@" +
+					(Math.round(entry.getValue() * 1e6) / 1e6);
+		}
+		return ret;
+	}
+}
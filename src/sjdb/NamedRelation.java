@@ -3,8 +3,12 @@
  */
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * This class represents a named relation which is fed into a query plan
+ * This class represents a named relation which is fed into a query plan,
+ * along with the indexes declared over its attributes
  * @author nmg
  */
 public class NamedRelation extends Relation {
@@ -12,15 +16,61 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+	/**
+	 * The indexes over attributes of the named relation
+	 */
+	private List<Index> indexes;
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
+		this.indexes = new ArrayList<Index>();
+	}
+
+	/**
+	 * Return the name of the named relation
+	 * @return The name of the relation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the indexes over attributes of the named relation
+	 * @return Indexes, in the order in which they were declared
+	 */
+	public List<Index> getIndexes() {
+		return this.indexes;
+	}
+	
+	/**
+	 * Return an index declared over an attribute of the named relation, 
+	 * preferring a hash index, which looks up single values more cheaply
+	 * @param attribute
+	 * @return Index over the attribute, or null if none is declared
+	 */
+	public Index getIndex(Attribute attribute) {
+		Index found = null;
+		for (Index index : this.indexes) {
+			if (index.getAttribute().equals(attribute) && 
+					(found == null || index.getType() == Index.Type.HASH)) {
+				found = index;
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Add an index over an attribute of the named relation
+	 * @param index
+	 */
+	public void addIndex(Index index) {
+		this.indexes.add(index);
 	}
 
 	/* (non-Javadoc)
@@ -6,6 +6,7 @@ package sjdb;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This abstract class represents an operator in a query, and
@@ -23,9 +24,31 @@ public abstract class Operator {
 	 * The relation produced by this operator as output.
 	 */
 	protected Relation output;
+	/**
+	 * Source of estimate stamps, which increase every time the output of
+	 * any operator is set.
+	 */
+	private static final AtomicLong STAMPS = new AtomicLong();
+	/**
+	 * The stamp taken when the output of this operator was last set, or
+	 * zero if the output has not been estimated (or has been invalidated).
+	 */
+	private long estimateStamp;
+	/**
+	 * The cumulative cost of this operator computed by a CostModel, and
+	 * the estimate stamp it was computed for.
+	 */
+	private double cost;
+	private long costStamp;
+	/**
+	 * The attributes equal to each attribute of the order of the output, 
+	 * or null if they have not been computed since the order last changed.
+	 */
+	private List<List<Attribute>> orderClasses;
 	
 	public Operator() {
 		this.inputs = new ArrayList<Operator>();
+		this.estimateStamp = 0;
 	}
 	
 	/**
@@ -45,6 +68,7 @@ public abstract class Operator {
 	 */
 	protected void addOperator(Operator op) {
 		this.inputs.add(op);
+		this.invalidateEstimate();
 	}
 	
 	/**
@@ -61,6 +85,134 @@ public abstract class Operator {
 	 */
 	public void setOutput(Relation reln) {
 		this.output = reln;
+		this.estimateStamp = STAMPS.incrementAndGet();
+	}
+	
+	/**
+	 * Return true if the output of this operator has been estimated, and
+	 * none of its inputs has been re-estimated since. Only the direct 
+	 * inputs are checked, so this takes constant time; an input whose 
+	 * estimate is replaced always gets a newer stamp than its parent's.
+	 * @return true if the cached output estimate is current
+	 */
+	public boolean isEstimated() {
+		if (this.output == null || this.estimateStamp == 0) {
+			return false;
+		}
+		for (Operator input : this.inputs) {
+			if (input.estimateStamp == 0 || input.estimateStamp > this.estimateStamp) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Discard the cached output estimate of this operator, so that it is
+	 * recomputed the next time the operator is estimated.
+	 */
+	public void invalidateEstimate() {
+		this.estimateStamp = 0;
+	}
+	
+	/**
+	 * Return the cumulative cost of this operator, as last set by a
+	 * CostModel.
+	 * @return Cost, in page reads
+	 */
+	public double getCost() {
+		return this.cost;
+	}
+	
+	/**
+	 * Set the cumulative cost of this operator, which is computed from its
+	 * current output estimate.
+	 * @param cost Cost, in page reads
+	 */
+	public void setCost(double cost) {
+		this.cost = cost;
+		this.costStamp = this.estimateStamp;
+	}
+	
+	/**
+	 * Return true if the cost of this operator has been computed from its
+	 * current output estimate. An input whose estimate is replaced makes 
+	 * the estimate of this operator stale (see isEstimated()), and so its
+	 * cost too.
+	 * @return true if the cached cost is current
+	 */
+	public boolean isCosted() {
+		return this.costStamp != 0 && this.costStamp == this.estimateStamp && isEstimated();
+	}
+	
+	/**
+	 * Return this operator over the given inputs, in the order of
+	 * getInputs(): the operator itself if they are its current inputs, or
+	 * otherwise a copy of it with the same parameters. The optimiser
+	 * rewrites plans bottom-up with this, so that only the operators above
+	 * a change are copied.
+	 * @param inputs New inputs
+	 * @return Operator over the inputs
+	 */
+	public Operator withInputs(List<Operator> inputs) {
+		for (int i = 0; i < this.inputs.size(); i++) {
+			if (inputs.get(i) != this.inputs.get(i)) {
+				return copy(inputs);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Return a copy of this operator over new inputs. Scans have no inputs,
+	 * and so are never copied.
+	 * @param inputs New inputs, in the order of getInputs()
+	 * @return Copy of this operator
+	 */
+	protected Operator copy(List<Operator> inputs) {
+		return this;
+	}
+	
+	/**
+	 * Return the attributes on which the output of this operator is known
+	 * to be ordered, most significant first, in the order of Sort.compare().
+	 * The order is that produced by the methods the operators are executed
+	 * with, so it is empty unless a Sort or a sort-merge join establishes
+	 * it and the operators above preserve it.
+	 * @return Order of the output, or an empty list if it is in no known order
+	 */
+	public List<Attribute> getOrder() {
+		return new ArrayList<Attribute>();
+	}
+	
+	/**
+	 * Return, for each attribute of the order of the output, the attributes
+	 * that the joins and selects of this plan equate with it, on which the
+	 * output is just as ordered. They are computed once, and kept until
+	 * the order changes (see invalidateOrder()).
+	 * @return Classes of the attributes of the order, most significant first
+	 */
+	public List<List<Attribute>> getOrderClasses() {
+		if (this.orderClasses == null) {
+			List<List<Attribute>> classes = new ArrayList<List<Attribute>>();
+			List<Attribute> order = getOrder();
+			if (!order.isEmpty()) {
+				EquivalenceClasses equivalences = EquivalenceClasses.of(this);
+				for (Attribute attr : order) {
+					classes.add(equivalences.getMembers(attr));
+				}
+			}
+			this.orderClasses = classes;
+		}
+		return this.orderClasses;
+	}
+	
+	/**
+	 * Discard the cached classes of the order of this operator, as when
+	 * the method that produces the order changes.
+	 */
+	protected void invalidateOrder() {
+		this.orderClasses = null;
 	}
 	
 	/**
@@ -73,4 +225,11 @@ public abstract class Operator {
 			iter.next().accept(visitor);
 		}
 	}
+	
+	/**
+	 * Accept a visitor to this operator only, without first visiting 
+	 * its inputs.
+	 * @param visitor Visitor to be accepted
+	 */
+	public abstract void acceptLocal(PlanVisitor visitor);
 }
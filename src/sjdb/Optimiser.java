@@ -1,67 +1,641 @@
 package sjdb;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * This class optimises canonical query plans. An optimiser holds no 
+ * state for the query being optimised: everything that the greedy passes
+ * need while optimising a plan is kept in a Context that is created for
+ * each call to optimise(), so a single optimiser (and the catalogue and
+ * estimator it uses) can serve concurrent calls from many threads.
+ */
 public class Optimiser {
 	
-	private Catalogue catalogue;
-	private Estimator estimator;
-	private Operator revisedPlan; 
-	private List<Select> selectOps;
-	private List<Operator> subtreeList;
-	private boolean reorderDeepest;
-	private List<Attribute> reorderedAttrs;
+	/**
+	 * Join ordering strategies supported by the optimiser
+	 */
+	public enum Strategy {
+		/** Greedily move the most restricting subtrees into the left-deep chain */
+		GREEDY,
+		/** Bottom-up dynamic programming over connected sets of relations */
+		DYNAMIC,
+		/** Rule-driven exploration of a memo of equivalent expressions */
+		MEMO
+	}
+	
+	/**
+	 * Queries over more relations than this are optimised greedily, as the
+	 * number of subsets considered by the dynamic programming enumerator
+	 * and the memo grows exponentially
+	 */
+	public static final int MAX_DYNAMIC_RELATIONS = 16;
+	
+	/**
+	 * Queries over more relations than this are restricted to left-deep
+	 * join trees, as bushy enumeration considers every split of every set
+	 */
+	public static final int MAX_BUSHY_RELATIONS = 12;
+	
+	private final Catalogue catalogue;
+	private final Strategy strategy;
+	private final JoinEnumerator.Shape shape;
+	private final Estimator estimator;
+	private final CostModel costModel;
+	private final JoinPlanner planner;
+	private final ParallelPlanner parallelPlanner;
+	
+	/**
+	 * The per-query state of the greedy optimisation passes
+	 */
+	private static class Context {
+		private Operator revisedPlan; 
+		private List<Select> selectOps;
+		private List<Operator> subtreeList;
+		private boolean reorderDeepest;
+		private List<Attribute> reorderedAttrs;
+		private EquivalenceClasses classes;
+		
+		private Context() {
+			this.revisedPlan = null;
+			this.selectOps = new ArrayList<Select>();
+			this.subtreeList = new ArrayList<Operator>();
+			this.reorderDeepest = true;
+			this.reorderedAttrs = new ArrayList<Attribute>();
+		}
+	}
 	
+	/**
+	 * Create an optimiser that orders joins by dynamic programming over
+	 * bushy trees. The memo considers the same plans but takes longer to
+	 * find them, so it is not the default.
+	 * @param cat
+	 */
 	public Optimiser(Catalogue cat) {
+		this(cat, Strategy.DYNAMIC);
+	}
+	
+	public Optimiser(Catalogue cat, Strategy strategy) {
+		this(cat, strategy, JoinEnumerator.Shape.BUSHY);
+	}
+	
+	public Optimiser(Catalogue cat, Strategy strategy, JoinEnumerator.Shape shape) {
+		this(cat, strategy, shape, new JoinPlanner());
+	}
+	
+	public Optimiser(Catalogue cat, Strategy strategy, JoinEnumerator.Shape shape, JoinPlanner planner) {
+		this(cat, strategy, shape, planner, new ParallelPlanner(1));
+	}
+	
+	/**
+	 * Create an optimiser that costs plans with the cost model of its join
+	 * planner, so that join orders are compared under the same memory 
+	 * budget as the join methods are chosen
+	 * @param cat
+	 * @param strategy
+	 * @param shape
+	 * @param planner
+	 * @param parallelPlanner
+	 */
+	public Optimiser(Catalogue cat, Strategy strategy, JoinEnumerator.Shape shape, JoinPlanner planner,
+			ParallelPlanner parallelPlanner) {
 		this.catalogue = cat;
-		this.estimator = new Estimator();
-		this.revisedPlan = null;
-		this.selectOps = new ArrayList<Select>();
-		this.subtreeList = new ArrayList<Operator>();
-		this.reorderDeepest = true;
-		this.reorderedAttrs = new ArrayList<Attribute>();
+		this.strategy = strategy;
+		this.shape = shape;
+		this.costModel = planner.getCostModel();
+		this.estimator = this.costModel.getEstimator();
+		this.planner = planner;
+		this.parallelPlanner = parallelPlanner;
 	}
 	
 	/**
-	 * Main function that optimises a plan
+	 * Main function that optimises a plan: adds the predicates implied by
+	 * those of the query, chooses the join order, merges the selects that
+	 * are applied one after another, replaces selects over scans by index
+	 * scans where they are cheaper, pushes partial aggregates below joins
+	 * where they are cheaper, then chooses the method by which each join
+	 * is executed, and finally the parts of the plan that are executed in
+	 * parallel
 	 * @param canonicalPlan
 	 * @return the optimised plan
 	 */
 	public Operator optimise(Operator canonicalPlan) {
-		this.revisedPlan = this.copyCanonicalPlan(canonicalPlan);
+		Operator revisedPlan = this.orderJoins(this.inferPredicates(canonicalPlan));
+		revisedPlan = this.removeRedundantSelects(revisedPlan);
+		revisedPlan = this.mergeSelects(revisedPlan);
+		revisedPlan = this.chooseAccessPaths(revisedPlan);
+		revisedPlan = this.pushAggregates(revisedPlan);
+		
+		this.estimator.estimate(revisedPlan);
+		revisedPlan.accept(this.planner);
+		
+		revisedPlan = this.parallelPlanner.addExchanges(revisedPlan);
+		this.estimator.estimate(revisedPlan);
+		
+		return revisedPlan;
+	}
+	
+	/**
+	 * Choose the join order of a plan with the optimiser's strategy. The
+	 * sort of an ordered query stays at the top of the plan; the 
+	 * enumerated strategies take its order into account, and may choose a
+	 * plan that is already in that order
+	 * @param canonicalPlan
+	 * @return the reordered plan
+	 */
+	private Operator orderJoins(Operator canonicalPlan) {
+		if (isGrouped(canonicalPlan)) {
+			return this.orderJoinsBelowAggregate(canonicalPlan);
+		}
+		if (this.strategy != Strategy.GREEDY) {
+			QueryGraph graph = new QueryGraph(canonicalPlan);
+			
+			if (graph.getRelationCount() <= MAX_DYNAMIC_RELATIONS) {
+				return this.optimiseEnumerated(canonicalPlan, graph);
+			}
+		}
+		
+		if (canonicalPlan instanceof Sort) {
+			Sort opCast = (Sort) canonicalPlan;
+			return new Sort(this.orderJoinsGreedily(opCast.getInput()), opCast.getAttributes());
+		}
+		return this.orderJoinsGreedily(canonicalPlan);
+	}
+	
+	/**
+	 * Return true if a canonical plan is that of a grouped query, whose
+	 * aggregate is below only its project and sort
+	 */
+	private static boolean isGrouped(Operator canonicalPlan) {
+		Operator plan = canonicalPlan;
+		while (plan instanceof Sort || plan instanceof Project) {
+			plan = ((UnaryOperator) plan).getInput();
+		}
+		return plan instanceof Aggregate;
+	}
+	
+	/**
+	 * Choose the join order of a grouped query below its aggregate, as for
+	 * a query that projects the attributes that the aggregate reads. The 
+	 * operators above the aggregate are kept; they do not benefit from
+	 * any order of its input, which is lost by hashing.
+	 * @param canonicalPlan
+	 * @return the reordered plan
+	 */
+	private Operator orderJoinsBelowAggregate(Operator canonicalPlan) {
+		if (canonicalPlan instanceof Aggregate) {
+			Aggregate opCast = (Aggregate) canonicalPlan;
+			Operator input = opCast.getInput();
+			if (!opCast.getInputAttributes().isEmpty()) {
+				input = new Project(input, opCast.getInputAttributes());
+			}
+			
+			return new Aggregate(this.orderJoins(input), opCast.getGroupBy(), opCast.getFunctions());
+		}
+		if (canonicalPlan instanceof Sort) {
+			Sort opCast = (Sort) canonicalPlan;
+			return new Sort(this.orderJoinsBelowAggregate(opCast.getInput()), opCast.getAttributes());
+		}
+		Project opCast = (Project) canonicalPlan;
+		return new Project(this.orderJoinsBelowAggregate(opCast.getInput()), opCast.getAttributes());
+	}
+	
+	/**
+	 * Choose the join order of a plan without a sort with the greedy passes
+	 * @param canonicalPlan
+	 * @return the reordered plan
+	 */
+	private Operator orderJoinsGreedily(Operator canonicalPlan) {
+		Context ctx = new Context();
+		ctx.revisedPlan = this.copyCanonicalPlan(canonicalPlan);
+		ctx.classes = EquivalenceClasses.of(canonicalPlan);
 		
 		// 1) move selects down
-		this.revisedPlan = this.moveSelects(revisedPlan);
-		this.selectOps.clear();
+		ctx.revisedPlan = this.moveSelects(ctx, ctx.revisedPlan);
+		ctx.selectOps.clear();
 		
 		// 2) reorder the join by placing the most restricting scans first
-		this.revisedPlan = this.reorderJoins(revisedPlan);
+		ctx.revisedPlan = this.reorderJoins(ctx, ctx.revisedPlan);
 		
 		//move selects down again because reordering may have pushed them up
-		this.revisedPlan = this.moveSelects(revisedPlan);
-		this.selectOps.clear();
+		ctx.revisedPlan = this.moveSelects(ctx, ctx.revisedPlan);
+		ctx.selectOps.clear();
 		
 		// 3) create joins
-		this.revisedPlan = this.makeJoins(revisedPlan, new ArrayList<Select>());
+		ctx.revisedPlan = this.makeJoins(ctx, ctx.revisedPlan, new ArrayList<Select>());
 		
 		// 4) move projects down
-		if (this.performMoveProjects(revisedPlan)) {
-			this.revisedPlan = this.moveProjects(revisedPlan, new ArrayList<Attribute>());	
+		if (this.performMoveProjects(ctx.revisedPlan)) {
+			ctx.revisedPlan = this.moveProjects(ctx.revisedPlan, new ArrayList<Attribute>());	
+		}
+		
+		return ctx.revisedPlan;
+	}
+	
+	/**
+	 * Optimise a query template containing placeholders of the form attr=?
+	 * once, so that it can be bound to values without optimising again
+	 * @param canonicalPlan
+	 * @return the prepared query
+	 */
+	public PreparedQuery prepare(Operator canonicalPlan) {
+		Operator template = this.optimise(canonicalPlan);
+		
+		return new PreparedQuery(template);
+	}
+	
+	/**
+	 * Optimise a plan by choosing the join order with the dynamic
+	 * programming enumerator or the memo, then moving projects down
+	 * @param canonicalPlan - the plan to be optimised
+	 * @param graph - join graph of the canonical plan
+	 * @return the optimised plan
+	 */
+	private Operator optimiseEnumerated(Operator canonicalPlan, QueryGraph graph) {
+		JoinEnumerator.Shape shape = this.shape;
+		if (shape == JoinEnumerator.Shape.BUSHY && graph.getRelationCount() > MAX_BUSHY_RELATIONS) {
+			shape = JoinEnumerator.Shape.LEFT_DEEP;
+		}
+		
+		Operator revisedPlan;
+		if (this.strategy == Strategy.MEMO) {
+			Memo memo = new Memo(graph, this.costModel, shape);
+			long root = memo.copyIn(canonicalPlan);
+			memo.explore();
+			revisedPlan = memo.extract(root);
+		}
+		else {
+			JoinEnumerator enumerator = new JoinEnumerator(graph, this.costModel, shape);
+			revisedPlan = enumerator.enumerate();
+		}
+		
+		if (graph.getProjection() != null) {
+			revisedPlan = new Project(revisedPlan, graph.getProjection());
+			revisedPlan = this.moveProjects(revisedPlan, new ArrayList<Attribute>());
+		}
+		if (graph.getOrder() != null) {
+			revisedPlan = new Sort(revisedPlan, graph.getOrder());
+		}
+		
+		return revisedPlan;
+	}
+	
+	/**
+	 * Add selects for the comparisons implied by the predicates of a 
+	 * canonical plan, below its project or aggregate: given a=b and a="x",
+	 * b="x" is implied (see EquivalenceClasses), and filters the relation
+	 * of b before it is joined. The equalities implied by a=b and b=c are
+	 * only added if a and c belong to the same relation; otherwise the join
+	 * orderings join the relations of a and c on the class of a, b and c 
+	 * instead (see QueryGraph).
+	 * @param canonicalPlan
+	 * @return the plan with the implied selects
+	 */
+	private Operator inferPredicates(Operator canonicalPlan) {
+		if (canonicalPlan instanceof Sort || canonicalPlan instanceof Project || 
+				canonicalPlan instanceof Aggregate) {
+			UnaryOperator opCast = (UnaryOperator) canonicalPlan;
+			return opCast.withInput(inferPredicates(opCast.getInput()));
+		}
+		
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		List<Relation> relations = new ArrayList<Relation>();
+		collectPredicates(canonicalPlan, predicates, relations);
+		
+		EquivalenceClasses classes = new EquivalenceClasses();
+		for (Predicate predicate : predicates) {
+			classes.add(predicate);
+		}
+		
+		Operator revisedPlan = canonicalPlan;
+		for (Predicate predicate : classes.infer(predicates, relations)) {
+			revisedPlan = new Select(revisedPlan, predicate);
+		}
+		
+		return revisedPlan;
+	}
+	
+	private void collectPredicates(Operator plan, List<Predicate> predicates, List<Relation> relations) {
+		if (plan instanceof Select) {
+			predicates.add(((Select) plan).getPredicate());
+		}
+		else if (plan instanceof Join) {
+			predicates.add(((Join) plan).getPredicate());
+		}
+		
+		if (plan instanceof Scan) {
+			relations.add(((Scan) plan).getRelation());
+		}
+		else {
+			for (Operator input : plan.getInputs()) {
+				collectPredicates(input, predicates, relations);
+			}
+		}
+	}
+	
+	/**
+	 * Remove the selects of the form attr=attr whose attributes have 
+	 * already been equated by the joins and selects below them, as happens
+	 * when two relations are joined on one of several equivalent predicates
+	 * @param plan
+	 * @return the plan without redundant selects
+	 */
+	private Operator removeRedundantSelects(Operator plan) {
+		return removeRedundantSelects(plan, new EquivalenceClasses());
+	}
+	
+	/**
+	 * Remove the redundant selects of a plan, whose inputs are visited 
+	 * before it, given the classes of the attributes equated by the joins
+	 * and selects visited so far. Those of other subtrees equate only 
+	 * attributes of other relations, so they do not affect the plan.
+	 */
+	private Operator removeRedundantSelects(Operator plan, EquivalenceClasses classes) {
+		if (plan instanceof Select) {
+			Select opCast = (Select) plan;
+			Predicate predicate = opCast.getPredicate();
+			Operator revisedInput = removeRedundantSelects(opCast.getInput(), classes);
+			
+			if (!predicate.hasValue() && classes.isEquivalent(
+					predicate.getLeftAttribute(), predicate.getRightAttribute())) {
+				return revisedInput;
+			}
+			classes.add(predicate);
+			return opCast.withInput(revisedInput);
+		}
+		//a scan has no inputs
+		else if (plan instanceof Scan) {
+			return plan;
+		}
+		
+		List<Operator> revisedInputs = new ArrayList<Operator>();
+		for (Operator input : plan.getInputs()) {
+			revisedInputs.add(removeRedundantSelects(input, classes));
+		}
+		if (plan instanceof Join) {
+			classes.add(((Join) plan).getPredicate());
+		}
+		return plan.withInputs(revisedInputs);
+	}
+	
+	/**
+	 * Merge each chain of selects into a single select whose predicate is
+	 * the conjunction of theirs, so that their input is filtered in a 
+	 * single pass. The predicates are ordered from the most to the least
+	 * selective, so that evaluation rejects most tuples after the first.
+	 * @param plan - the plan to be merged
+	 * @return the plan with no select directly over another
+	 */
+	private Operator mergeSelects(Operator plan) {
+		if (plan instanceof Select) {
+			final Map<Predicate, Double> selectivities = new HashMap<Predicate, Double>();
+			List<Predicate> predicates = new ArrayList<Predicate>();
+			Operator input = plan;
+			
+			this.estimator.estimate(plan);
+			while (input instanceof Select) {
+				Select select = (Select) input;
+				long inputCount = select.getInput().getOutput().getTupleCount();
+				selectivities.put(select.getPredicate(), inputCount == 0 ? 0 : 
+						(double) select.getOutput().getTupleCount() / inputCount);
+				predicates.add(0, select.getPredicate());
+				input = select.getInput();
+			}
+			
+			Operator revisedInput = mergeSelects(input);
+			if (predicates.size() == 1) {
+				return ((Select) plan).withInput(revisedInput);
+			}
+			
+			Collections.sort(predicates, new Comparator<Predicate>() {
+				public int compare(Predicate a, Predicate b) {
+					return selectivities.get(a).compareTo(selectivities.get(b));
+				}
+			});
+			return new Select(revisedInput, Predicate.and(predicates));
+		}
+		//a scan has no inputs
+		else if (plan instanceof Scan) {
+			return plan;
 		}
 		
-		return this.revisedPlan;
+		List<Operator> revisedInputs = new ArrayList<Operator>();
+		for (Operator input : plan.getInputs()) {
+			revisedInputs.add(mergeSelects(input));
+		}
+		return plan.withInputs(revisedInputs);
+	}
+	
+	/**
+	 * Replace each select over a scan, or over a project of a scan, by an
+	 * index scan that applies one of the comparisons of the select, with a
+	 * select for the others above it, where an index of the scanned 
+	 * relation supports the comparison and the index scan is estimated to
+	 * be cheaper. The access path of a relation does not change the output
+	 * of the select, so it can be chosen once the joins have been ordered.
+	 * @param plan - the plan with merged selects
+	 * @return the plan with the cheapest access paths
+	 */
+	private Operator chooseAccessPaths(Operator plan) {
+		if (plan instanceof Select) {
+			Select opCast = (Select) plan;
+			Operator input = opCast.getInput();
+			Operator scanned = input instanceof Project ? ((Project) input).getInput() : input;
+			
+			if (scanned instanceof Scan) {
+				return chooseAccessPath(opCast, (Scan) scanned);
+			}
+			return opCast.withInput(chooseAccessPaths(input));
+		}
+		else if (plan instanceof Project) {
+			Project opCast = (Project) plan;
+			Operator revisedInput = chooseAccessPaths(opCast.getInput());
+
+			// an index scan that applies the whole select leaves a project
+			// directly over another
+			if (revisedInput != opCast.getInput() && revisedInput instanceof Project) {
+				revisedInput = ((Project) revisedInput).getInput();
+			}
+			return opCast.withInput(revisedInput);
+		}
+		//a scan has no inputs
+		else if (plan instanceof Scan) {
+			return plan;
+		}
+		
+		List<Operator> revisedInputs = new ArrayList<Operator>();
+		for (Operator input : plan.getInputs()) {
+			revisedInputs.add(chooseAccessPaths(input));
+		}
+		return plan.withInputs(revisedInputs);
+	}
+	
+	/**
+	 * Return the cheapest of a select over a scan (possibly through a 
+	 * project) and the index scans of the scanned relation that can apply
+	 * one of the comparisons of the select
+	 */
+	private Operator chooseAccessPath(Select select, Scan scan) {
+		NamedRelation relation = (NamedRelation) scan.getRelation();
+		Predicate predicate = select.getPredicate();
+		List<Predicate> predicates = predicate.getConnective() == Predicate.Connective.AND ?
+				predicate.getOperands() : Collections.singletonList(predicate);
+		
+		Operator best = select;
+		double bestCost = this.costModel.cost(select);
+		
+		for (Index index : relation.getIndexes()) {
+			for (Predicate indexed : predicates) {
+				if (!index.supports(indexed)) {
+					continue;
+				}
+				
+				Operator candidate = new IndexScan(relation, index, indexed);
+				if (select.getInput() instanceof Project) {
+					candidate = new Project(candidate, ((Project) select.getInput()).getAttributes());
+				}
+				List<Predicate> others = new ArrayList<Predicate>(predicates);
+				others.remove(indexed);
+				if (!others.isEmpty()) {
+					candidate = new Select(candidate, Predicate.and(others));
+				}
+				
+				double cost = this.costModel.cost(candidate);
+				if (cost < bestCost) {
+					best = candidate;
+					bestCost = cost;
+				}
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Push partial aggregation below the join under the aggregate of a 
+	 * grouped query, where it is estimated to be cheaper (see 
+	 * pushAggregate()). The operators above the aggregate are kept.
+	 * @param plan - the plan with its access paths chosen
+	 * @return the plan with eager aggregation
+	 */
+	private Operator pushAggregates(Operator plan) {
+		if (plan instanceof Aggregate) {
+			return pushAggregate((Aggregate) plan);
+		}
+		else if (plan instanceof Project || plan instanceof Sort) {
+			UnaryOperator opCast = (UnaryOperator) plan;
+			return opCast.withInput(pushAggregates(opCast.getInput()));
+		}
+		//there is no aggregate above the joins
+		else {
+			return plan;
+		}
+	}
+	
+	/**
+	 * Return the cheapest of an aggregate and the plans that aggregate 
+	 * eagerly below the join under it (through any projects). If every
+	 * attribute aggregated comes from one input of the join, that input 
+	 * can be replaced by a partial aggregate, which groups on the join 
+	 * attribute and the grouping attributes of that input, and computes the
+	 * partial aggregates of the aggregates (see AggregateFunction); each 
+	 * tuple of the partial aggregate stands for all the tuples of its group,
+	 * which would have been joined with the same tuples. The final aggregate
+	 * above the join combines the partial results. The partial aggregate 
+	 * may itself be pushed below a join of its input.
+	 */
+	private Operator pushAggregate(Aggregate aggregate) {
+		Operator input = aggregate.getInput();
+		while (input instanceof Project) {
+			input = ((Project) input).getInput();
+		}
+		if (!(input instanceof Join)) {
+			return aggregate;
+		}
+		
+		Join join = (Join) input;
+		List<AggregateFunction> finals = new ArrayList<AggregateFunction>();
+		for (AggregateFunction function : aggregate.getFunctions()) {
+			finals.add(function.getFinal());
+		}
+		
+		// the aggregate reads only the attributes it needs, so the projects
+		// between it and the join are not needed either way
+		Operator best = new Aggregate(join, aggregate.getGroupBy(), aggregate.getFunctions());
+		double bestCost = this.costModel.cost(best);
+		
+		for (int side = 0; side < 2; side++) {
+			Operator pushed = side == 0 ? join.getLeft() : join.getRight();
+			Aggregate partial = partialAggregate(aggregate, join.getPredicate(), pushed);
+			if (partial == null) {
+				continue;
+			}
+			
+			Operator revisedInput = pushAggregate(partial);
+			Operator revisedJoin = side == 0 ? join.withInputs(revisedInput, join.getRight()) :
+				join.withInputs(join.getLeft(), revisedInput);
+			Operator candidate = new Aggregate(revisedJoin, aggregate.getGroupBy(), finals);
+			
+			double cost = this.costModel.cost(candidate);
+			if (cost < bestCost) {
+				best = candidate;
+				bestCost = cost;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Return the partial aggregate of an input of a join from which an 
+	 * aggregate over the join can be computed, or null if the aggregate 
+	 * reads attributes of the other input
+	 */
+	private Aggregate partialAggregate(Aggregate aggregate, Predicate predicate, Operator input) {
+		this.estimator.estimate(input);
+		List<Attribute> attributes = input.getOutput().getAttributes();
+		
+		List<AggregateFunction> partials = new ArrayList<AggregateFunction>();
+		List<Attribute> outputs = new ArrayList<Attribute>();
+		for (AggregateFunction function : aggregate.getFunctions()) {
+			if (!attributes.containsAll(function.getAttributes())) {
+				return null;
+			}
+			for (AggregateFunction partial : function.getPartials()) {
+				if (!outputs.contains(partial.getOutput())) {
+					partials.add(partial);
+					outputs.add(partial.getOutput());
+				}
+			}
+		}
+		
+		List<Attribute> groupBy = new ArrayList<Attribute>();
+		for (Attribute attr : aggregate.getGroupBy()) {
+			if (attributes.contains(attr)) {
+				groupBy.add(attr);
+			}
+		}
+		Attribute joinAttr = attributes.contains(predicate.getLeftAttribute()) ? 
+				predicate.getLeftAttribute() : predicate.getRightAttribute();
+		if (!groupBy.contains(joinAttr)) {
+			groupBy.add(joinAttr);
+		}
+		
+		return new Aggregate(input, groupBy, partials);
 	}
 	
 	/**
 	 * Main SELECT moving function
 	 */
-	private Operator moveSelects(Operator plan) {
+	private Operator moveSelects(Context ctx, Operator plan) {
 		if (plan instanceof Scan) {
-			List<Select> selects = getScanSelects(plan, this.selectOps);
+			List<Select> selects = getScanSelects(plan, ctx.selectOps);
 			
 			Operator revisedPlan = plan;
 			
@@ -73,12 +647,12 @@ public class Optimiser {
 		} 
 		else if (plan instanceof Select) {
 			Select opCast = (Select) plan;
-			this.selectOps.add(opCast);
+			ctx.selectOps.add(opCast);
 			
-			Operator revisedPlan = moveSelects(opCast.getInput());
+			Operator revisedPlan = moveSelects(ctx, opCast.getInput());
 			
 			//select was moved down
-			if (!this.selectOps.contains(opCast)) {
+			if (!ctx.selectOps.contains(opCast)) {
 				return revisedPlan;
 			}
 			//the select hasn't been moved down
@@ -88,16 +662,16 @@ public class Optimiser {
 		}
 		else if (plan instanceof Product) {
 			Product opCast = (Product) plan;
-			Operator revisedLeftPlan = moveSelects(opCast.getLeft());
-			Operator revisedRightPlan = moveSelects(opCast.getRight());
+			Operator revisedLeftPlan = moveSelects(ctx, opCast.getLeft());
+			Operator revisedRightPlan = moveSelects(ctx, opCast.getRight());
 			Operator revisedPlan = new Product(revisedLeftPlan, revisedRightPlan);
 			
 			//if there is a chance to move selects get the product outputs
-			if (!this.selectOps.isEmpty()) {
-				revisedPlan.accept(estimator);
+			if (!ctx.selectOps.isEmpty()) {
+				this.estimator.estimate(revisedPlan);
 			}
 			
-			List<Select> selects = getProductSelects((Product)revisedPlan, this.selectOps);
+			List<Select> selects = getProductSelects((Product)revisedPlan, ctx.selectOps);
 			
 			for (Select select : selects) {
 				revisedPlan = new Select(revisedPlan, select.getPredicate());
@@ -109,7 +683,7 @@ public class Optimiser {
 		else {
 			Project opCast = (Project) plan;
 			
-			Operator revisedPlan = moveSelects(opCast.getInput());
+			Operator revisedPlan = moveSelects(ctx, opCast.getInput());
 			
 			return new Project (revisedPlan, opCast.getAttributes());
 		}
@@ -118,20 +692,20 @@ public class Optimiser {
 	/**
 	 * Main JOIN creating function
 	 */
-	private Operator makeJoins(Operator plan, List<Select> selects) {
+	private Operator makeJoins(Context ctx, Operator plan, List<Select> selects) {
 		if (plan instanceof Project) {
 			Project opCast = (Project) plan;
 			
-			Operator revisedPlan = makeJoins(opCast.getInput(), selects);
+			Operator revisedPlan = makeJoins(ctx, opCast.getInput(), selects);
 			return new Project(revisedPlan, opCast.getAttributes());
 		}
 		else if (plan instanceof Select) {
 			Select opCast = (Select) plan;
 			Operator revisedPlan;
 			
-			if (!opCast.getPredicate().equalsValue()) {
+			if (!opCast.getPredicate().hasValue()) {
 				selects.add(opCast);
-				revisedPlan = makeJoins(opCast.getInput(), selects);
+				revisedPlan = makeJoins(ctx, opCast.getInput(), selects);
 				
 				//the select hasn't been combined into a JOIN
 				if (selects.contains(opCast)) {
@@ -143,17 +717,17 @@ public class Optimiser {
 				}
 			}
 			else {
-				revisedPlan = makeJoins(opCast.getInput(), selects);
+				revisedPlan = makeJoins(ctx, opCast.getInput(), selects);
 				return new Select(revisedPlan, opCast.getPredicate());
 			}
 			
 		}
 		else if (plan instanceof Product) {
 			Product opCast = (Product) plan;
-			Predicate predicate = getJoinPredicate(opCast, selects);
+			Predicate predicate = getJoinPredicate(ctx, opCast, selects);
 			
-			Operator leftRevised = makeJoins(opCast.getLeft(), new ArrayList<Select>());
-			Operator rightRevised = makeJoins(opCast.getRight(), new ArrayList<Select>());
+			Operator leftRevised = makeJoins(ctx, opCast.getLeft(), new ArrayList<Select>());
+			Operator rightRevised = makeJoins(ctx, opCast.getRight(), new ArrayList<Select>());
 			
 			if (predicate != null) {
 				return new Join(leftRevised, rightRevised, predicate);
@@ -187,7 +761,7 @@ public class Optimiser {
 			
 			Operator revisedPlan = moveProjects(opCast.getInput(), curLevelAttrs);
 			revisedPlan = new Select(revisedPlan, opCast.getPredicate());
-			revisedPlan.accept(this.estimator);
+			this.estimator.estimate(revisedPlan);
 			
 			return appendProject(revisedPlan, parentAttrs);
 			
@@ -199,8 +773,9 @@ public class Optimiser {
 			Operator leftRevised = moveProjects(opCast.getLeft(), curLevelAttrs);
 			Operator rightRevised = moveProjects(opCast.getRight(), curLevelAttrs);
 			
-			Operator revisedPlan = new Join(leftRevised, rightRevised, opCast.getPredicate());
-			revisedPlan.accept(this.estimator);
+			Join revisedPlan = new Join(leftRevised, rightRevised, opCast.getPredicate());
+			revisedPlan.copyMethod(opCast);
+			this.estimator.estimate(revisedPlan);
 			
 			return appendProject(revisedPlan, parentAttrs);
 		}
@@ -210,7 +785,7 @@ public class Optimiser {
 			Operator rightRevised = moveProjects(opCast.getRight(), parentAttrs);
 			
 			Operator revisedPlan = new Product(leftRevised, rightRevised);
-			revisedPlan.accept(this.estimator);
+			this.estimator.estimate(revisedPlan);
 			
 			return appendProject(revisedPlan, parentAttrs);
 		}
@@ -224,29 +799,24 @@ public class Optimiser {
 	/**
 	 * Main JOIN reordering function
 	 */
-	private Operator reorderJoins(Operator plan) {
+	private Operator reorderJoins(Context ctx, Operator plan) {
 		if (plan instanceof Project) {
 			Project opCast = (Project) plan;
 			
-			Operator revisedPlan = reorderJoins(opCast.getInput());
+			Operator revisedPlan = reorderJoins(ctx, opCast.getInput());
 			return new Project(revisedPlan, opCast.getAttributes());
 		}
 		else if(plan instanceof Select) {
 			Select opCast = (Select) plan;
 			
-			Operator revisedPlan = reorderJoins(opCast.getInput());
+			Operator revisedPlan = reorderJoins(ctx, opCast.getInput());
 			
 			//check if select should be moved up due to join reordering
-			if (this.reorderedAttrs.contains(opCast.getPredicate().getLeftAttribute())) {
-				this.selectOps.add(opCast);
-				return revisedPlan;
-			}
-			
-			//check the right attribute
-			if (!opCast.getPredicate().equalsValue() && 
-					this.reorderedAttrs.contains(opCast.getPredicate().getRightAttribute())) {
-				this.selectOps.add(opCast);
-				return revisedPlan;
+			for (Attribute attr : opCast.getPredicate().getAttributes()) {
+				if (ctx.reorderedAttrs.contains(attr)) {
+					ctx.selectOps.add(opCast);
+					return revisedPlan;
+				}
 			}
 			
 			return new Select(revisedPlan, opCast.getPredicate());
@@ -259,48 +829,48 @@ public class Optimiser {
 			
 			//save right tree
 			Operator rightTree = opCast.getRight();
-			rightTree.accept(this.estimator);
-			this.subtreeList.add(rightTree);
+			this.estimator.estimate(rightTree);
+			ctx.subtreeList.add(rightTree);
 			
 			//reorder left tree
 			Operator leftTree = opCast.getLeft();
-			Operator revisedLeftPlan = reorderJoins(leftTree);
-			revisedLeftPlan.accept(this.estimator);
+			Operator revisedLeftPlan = reorderJoins(ctx, leftTree);
+			this.estimator.estimate(revisedLeftPlan);
 			
 			Operator revisedLeft = revisedLeftPlan;
 			
 			//check if left tree can be reordered
-			if (this.reorderDeepest) {
-				Operator mostRestrictingLeft = findMostRestrictingLeft(revisedLeftPlan.getOutput().getTupleCount());
+			if (ctx.reorderDeepest) {
+				Operator mostRestrictingLeft = findMostRestrictingLeft(ctx, this.costModel.outputCost(revisedLeftPlan));
 				
 				if (mostRestrictingLeft != null) {
-					this.subtreeList.add(revisedLeftPlan);
+					ctx.subtreeList.add(revisedLeftPlan);
 					revisedLeft = mostRestrictingLeft;
 					// find the attributes of the reordered subtree so we move up the selects
 					List<Attribute> leftAttrs = findReorderedAttrs(revisedLeftPlan);
-					this.reorderedAttrs.addAll(leftAttrs);
+					ctx.reorderedAttrs.addAll(leftAttrs);
 				}
-				this.reorderDeepest = false;
+				ctx.reorderDeepest = false;
 			}
 			
 			//check if right tree can be reordered
 			Operator mostRestrictingRight = null;
 			//if it doesn't contain it it has been put somewhere down the tree
-			if (!this.subtreeList.contains(rightTree)) {
-				mostRestrictingRight = findMostRestrictingRight(Integer.MAX_VALUE);
+			if (!ctx.subtreeList.contains(rightTree)) {
+				mostRestrictingRight = findMostRestrictingRight(ctx, Double.POSITIVE_INFINITY);
 			}
 			else {
-				mostRestrictingRight = findMostRestrictingRight(rightTree.getOutput().getTupleCount());
+				mostRestrictingRight = findMostRestrictingRight(ctx, this.costModel.outputCost(rightTree));
 			}
 
 			if (mostRestrictingRight == null) {
-				this.subtreeList.remove(rightTree);
+				ctx.subtreeList.remove(rightTree);
 				return new Product(revisedLeft, rightTree);
 			}
 			else {
 				// find the attributes of the reordered subtree so we move up the selects
 				List<Attribute> rightAttrs = findReorderedAttrs(rightTree);
-				this.reorderedAttrs.addAll(rightAttrs);
+				ctx.reorderedAttrs.addAll(rightAttrs);
 				return new Product (revisedLeft, mostRestrictingRight);
 			}
 		}
@@ -371,17 +941,8 @@ public class Optimiser {
 		List<Attribute> relationAttrs = scan.getRelation().getAttributes();
 		Predicate predicate = select.getPredicate();
 
-		if (predicate.equalsValue()) {
-			if (relationAttrs.contains(predicate.getLeftAttribute())) {
-				return true;
-			}
-			else {
-				return false;
-			}
-		}
-		else {
-			return false;
-		}
+		// attr=attr over a single relation is a filter, and never a join
+		return relationAttrs.containsAll(predicate.getAttributes());
 	}
 	
 	private List<Select> getProductSelects(Product product, List<Select> selects) {
@@ -402,24 +963,23 @@ public class Optimiser {
 	private boolean isSelectValid(Product product, Select select) {
 		Predicate predicate = select.getPredicate();
 		List<Attribute> relationAttrs = product.getOutput().getAttributes();
-		List<Attribute> predicateAttrs = new ArrayList<Attribute>();
-		predicateAttrs.add(predicate.getLeftAttribute());
-		
-		if (!predicate.equalsValue()) {
-			predicateAttrs.add(predicate.getRightAttribute());
-		}
 		
-		return relationAttrs.containsAll(predicateAttrs);
+		return relationAttrs.containsAll(predicate.getAttributes());
 	}
 	
 	/**
 	 * Function that chooses which select to combine with a product
-	 * in order to from a join
+	 * in order to from a join: the one whose join is the cheapest.
+	 * The product may instead be joined on a class of equated attributes
+	 * that its inputs share, if that join is cheaper still; the selects
+	 * are then left in place, above the join
 	 */
-	private Predicate getJoinPredicate(Product product, List<Select> selects) {
+	private Predicate getJoinPredicate(Context ctx, Product product, List<Select> selects) {
 		//List<Select> validSelects = getProductSelects(product, selects);
-		Map<Select, Select> potentialSelects = new HashMap<Select, Select>();
+		Map<Select, Join> potentialJoins = new LinkedHashMap<Select, Join>();
 		Predicate predicate = null;
+		double minCost = Double.POSITIVE_INFINITY;
+		Select restrSelect = null;
 		
 		//Sanity check
 		/*if (validSelects.size() > 1) {
@@ -431,36 +991,56 @@ public class Optimiser {
 			for (int i = 0; i < selects.size(); i++) {
 				Select curSelect = selects.get(i);
 				//make sure predicate has two attributes and can be used for a join
-				if (!curSelect.getPredicate().equalsValue()) {
-					Select temp = new Select(product, curSelect.getPredicate());
-					temp.accept(this.estimator);
-					potentialSelects.put(curSelect, temp);
+				if (!curSelect.getPredicate().hasValue()) {
+					Join temp = new Join(product.getLeft(), product.getRight(), curSelect.getPredicate());
+					this.costModel.cost(temp);
+					potentialJoins.put(curSelect, temp);
 				}
 			}
 			
-			int minCost = Integer.MAX_VALUE;
-			Select restrSelect = null;
-			//find the most restrictive select from the map
-			for (Map.Entry<Select, Select> entry : potentialSelects.entrySet())
+			//find the cheapest join from the map
+			for (Map.Entry<Select, Join> entry : potentialJoins.entrySet())
 			{
-			    if (entry.getValue().getOutput().getTupleCount() < minCost) {
-			    	minCost = entry.getValue().getOutput().getTupleCount();
+			    if (restrSelect == null || entry.getValue().getCost() < minCost) {
+			    	minCost = entry.getValue().getCost();
 			    	restrSelect = entry.getKey();
 			    }
 			}
-			
+		}
+		
+		Join classJoin = getClassJoin(ctx, product);
+		if (classJoin != null && (restrSelect == null || classJoin.getCost() < minCost)) {
+			return classJoin.getPredicate();
+		}
+		
+		if (restrSelect != null) {
 			predicate = restrSelect.getPredicate();
 			selects.remove(restrSelect);
-			
-			//Sanity check
-			if (predicate.equalsValue()) {
-				System.out.println("A Valid predicate for a given cartesian product equals a value");
-			}
 		}
 		
 		return predicate;
 	}
 	
+	/**
+	 * Return the cheapest costed join of the inputs of a product on a
+	 * class of equated attributes, or null if its inputs share none
+	 */
+	private Join getClassJoin(Context ctx, Product product) {
+		this.estimator.estimate(product);
+		Join best = null;
+		
+		for (Predicate candidate : ctx.classes.getJoinPredicates(product.getLeft().getOutput(),
+				product.getRight().getOutput())) {
+			Join join = new Join(product.getLeft(), product.getRight(), candidate);
+			this.costModel.cost(join);
+			if (best == null || join.getCost() < best.getCost()) {
+				best = join;
+			}
+		}
+		
+		return best;
+	}
+	
 	/**
 	 * Private helper functions for PROJECT moving
 	 */
@@ -472,12 +1052,7 @@ public class Optimiser {
 	 */
 	private List<Attribute> addPredicateAttributes(Select op, List<Attribute> parentAttrs) {
 		List<Attribute> allAttrs = new ArrayList<Attribute>(parentAttrs); 
-		Predicate predicate = op.getPredicate();
-		allAttrs.add(predicate.getLeftAttribute());
-		
-		if (!predicate.equalsValue()) {
-			allAttrs.add(predicate.getRightAttribute());
-		}
+		allAttrs.addAll(op.getPredicate().getAttributes());
 		
 		return allAttrs;
 	}
@@ -551,40 +1126,43 @@ public class Optimiser {
 	// Join reordering functions
 	/**
 	 * 
-	 * @param op The operator that is currently the leftmost deep and most restricting
+	 * @param op The output cost of the operator that is currently the leftmost deep and most restricting
 	 * @return the most restricting operator that will become the leftmost deepest
 	 */
-	private Operator findMostRestrictingLeft (int op) {
-		return findMostRestricting(op, 1);
+	private Operator findMostRestrictingLeft (Context ctx, double op) {
+		return findMostRestricting(ctx, op, 1);
 	}
 	
 	/**
 	 * 
-	 * @param op The operator that is on the right side 
+	 * @param op The output cost of the operator that is on the right side 
 	 * @return the most restricting operator from up the tree
 	 */
-	private Operator findMostRestrictingRight (int op) {
-		return findMostRestricting(op, 0);
+	private Operator findMostRestrictingRight (Context ctx, double op) {
+		return findMostRestricting(ctx, op, 0);
 	}
 	
 	/**
-	 * Generic function used by findMosrRestricitingLeft and findMostRestrictingRight
+	 * Generic function used by findMosrRestricitingLeft and findMostRestrictingRight.
+	 * Subtrees are ranked by the cost their outputs impose on the joins above
+	 * them (see CostModel.outputCost()), which accounts for tuple widths
 	 */
-	private Operator findMostRestricting(int opCount, int n) {
-		int min = opCount;
+	private Operator findMostRestricting(Context ctx, double opCost, int n) {
+		double min = opCost;
 		Operator mostRestricting = null;
 		
-		for (int i = 0; i < this.subtreeList.size() - n; i++) {
-			Operator tempOp = this.subtreeList.get(i);
+		for (int i = 0; i < ctx.subtreeList.size() - n; i++) {
+			Operator tempOp = ctx.subtreeList.get(i);
 			
-			if (tempOp.getOutput().getTupleCount() < min) {
-				min = tempOp.getOutput().getTupleCount();
+			double cost = this.costModel.outputCost(tempOp);
+			if (cost < min) {
+				min = cost;
 				mostRestricting = tempOp;
 			}
 		}
 		
 		if (mostRestricting !=null) {
-			this.subtreeList.remove(mostRestricting);
+			ctx.subtreeList.remove(mostRestricting);
 		}
 		
 		return mostRestricting;
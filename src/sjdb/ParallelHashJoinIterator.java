@@ -0,0 +1,222 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class executes a Join operator as a parallel, radix-partitioned
+ * hash join. When the iterator is opened, the tuples of both inputs are
+ * read into memory and divided into one chunk per worker; the workers
+ * then partition their chunks on the leading bits of a hash of the join
+ * attribute value, so that matching tuples always fall into partitions
+ * with the same number. Finally, each pair of partitions is joined as an
+ * in-memory hash join by a separate task. Partitions are small enough for
+ * their hash tables to stay in cache, and need no synchronisation.
+ */
+public class ParallelHashJoinIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private Predicate predicate;
+	private boolean buildLeft;
+	private ForkJoinPool pool;
+	private int degree;
+	private int bits;
+	private List<Attribute> attributes;
+	private List<List<String[]>> results;
+	private int resultIndex;
+	private int position;
+
+	/**
+	 * Create a new parallel hash join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param predicate Join predicate
+	 * @param buildLeft true to build the hash tables over the partitions of
+	 * the left input, false to build them over those of the right input
+	 * @param pool Pool that runs the workers
+	 * @param degree Number of workers
+	 */
+	public ParallelHashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate,
+			boolean buildLeft, ForkJoinPool pool, int degree) {
+		this.left = left;
+		this.right = right;
+		this.predicate = predicate;
+		this.buildLeft = buildLeft;
+		this.pool = pool;
+		this.degree = degree;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+
+		// use several partitions per worker, so that the load is balanced
+		// when the values are skewed
+		this.bits = 1;
+		while ((1 << this.bits) < degree * 4) {
+			this.bits++;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.left.getAttributes(), this.right.getAttributes(), this.predicate);
+		List<String[]> leftTuples = readAll(this.left);
+		List<String[]> rightTuples = readAll(this.right);
+
+		List<List<List<String[]>>> leftChunks = partition(leftTuples, keys[0]);
+		List<List<List<String[]>>> rightChunks = partition(rightTuples, keys[1]);
+		final List<List<List<String[]>>> buildChunks = this.buildLeft ? leftChunks : rightChunks;
+		final List<List<List<String[]>>> probeChunks = this.buildLeft ? rightChunks : leftChunks;
+		final int buildKey = this.buildLeft ? keys[0] : keys[1];
+		final int probeKey = this.buildLeft ? keys[1] : keys[0];
+
+		List<Callable<List<String[]>>> tasks = new ArrayList<Callable<List<String[]>>>();
+		for (int p = 0; p < (1 << this.bits); p++) {
+			final int partition = p;
+			tasks.add(new Callable<List<String[]>>() {
+				public List<String[]> call() {
+					return joinPartition(buildChunks, probeChunks, partition, buildKey, probeKey);
+				}
+			});
+		}
+
+		this.results = invokeAll(tasks);
+		this.resultIndex = 0;
+		this.position = 0;
+	}
+
+	private static List<String[]> readAll(TupleIterator input) throws DatabaseException {
+		List<String[]> tuples = new ArrayList<String[]>();
+
+		input.open();
+		String[] tuple;
+		while ((tuple = input.next()) != null) {
+			tuples.add(tuple);
+		}
+		input.close();
+
+		return tuples;
+	}
+
+	/**
+	 * Partition the tuples of an input in parallel
+	 * @param tuples
+	 * @param key Position of the join attribute in the tuples
+	 * @return The partitions of each worker's chunk of the tuples
+	 */
+	private List<List<List<String[]>>> partition(final List<String[]> tuples, final int key)
+			throws DatabaseException {
+		final int chunkSize = (tuples.size() + this.degree - 1) / this.degree;
+		List<Callable<List<List<String[]>>>> tasks = new ArrayList<Callable<List<List<String[]>>>>();
+
+		for (int start = 0; start < tuples.size(); start += chunkSize) {
+			final int from = start;
+			tasks.add(new Callable<List<List<String[]>>>() {
+				public List<List<String[]>> call() {
+					List<List<String[]>> partitions = new ArrayList<List<String[]>>(1 << bits);
+					for (int p = 0; p < 1 << bits; p++) {
+						partitions.add(new ArrayList<String[]>());
+					}
+					int to = Math.min(from + chunkSize, tuples.size());
+					for (int i = from; i < to; i++) {
+						String[] tuple = tuples.get(i);
+						partitions.get(partitionOf(tuple[key])).add(tuple);
+					}
+					return partitions;
+				}
+			});
+		}
+
+		return invokeAll(tasks);
+	}
+
+	private int partitionOf(String value) {
+		int hash = value.hashCode() * 0x9E3779B9;
+		return hash >>> (32 - this.bits);
+	}
+
+	/**
+	 * Join the tuples of all chunks that fall in one partition
+	 */
+	private List<String[]> joinPartition(List<List<List<String[]>>> buildChunks, List<List<List<String[]>>> probeChunks,
+			int partition, int buildKey, int probeKey) {
+		Map<String, List<String[]>> table = new HashMap<String, List<String[]>>();
+		for (List<List<String[]>> chunk : buildChunks) {
+			for (String[] tuple : chunk.get(partition)) {
+				List<String[]> bucket = table.get(tuple[buildKey]);
+				if (bucket == null) {
+					bucket = new ArrayList<String[]>(1);
+					table.put(tuple[buildKey], bucket);
+				}
+				bucket.add(tuple);
+			}
+		}
+
+		List<String[]> output = new ArrayList<String[]>();
+		for (List<List<String[]>> chunk : probeChunks) {
+			for (String[] tuple : chunk.get(partition)) {
+				List<String[]> matches = table.get(tuple[probeKey]);
+				if (matches != null) {
+					for (String[] match : matches) {
+						output.add(this.buildLeft ? ProductIterator.concatenate(match, tuple) :
+								ProductIterator.concatenate(tuple, match));
+					}
+				}
+			}
+		}
+
+		return output;
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws DatabaseException {
+		List<T> results = new ArrayList<T>();
+
+		try {
+			for (Future<T> future : this.pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			throw new DatabaseException(e);
+		} catch (ExecutionException e) {
+			throw new DatabaseException("Parallel join failed", e.getCause());
+		}
+
+		return results;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() {
+		while (this.resultIndex < this.results.size()) {
+			List<String[]> result = this.results.get(this.resultIndex);
+			if (this.position < result.size()) {
+				return result.get(this.position++);
+			}
+			this.resultIndex++;
+			this.position = 0;
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() {
+		this.results = null;
+	}
+}
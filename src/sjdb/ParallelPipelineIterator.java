@@ -0,0 +1,213 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class executes a pipeline, i.e. a chain of Select and Project
+ * operators over a Scan, in parallel. The tuples of the scanned relation
+ * are read in morsels of MORSEL_SIZE tuples; each worker repeatedly takes
+ * the next morsel and executes the pipeline over it, and the output of
+ * each morsel is passed back through a bounded queue. The order of the
+ * output tuples is therefore not that of the scan.
+ */
+public class ParallelPipelineIterator implements TupleIterator {
+	/**
+	 * The number of tuples in each morsel
+	 */
+	public static final int MORSEL_SIZE = 10000;
+
+	/**
+	 * Marker that is queued after the output of the last morsel
+	 */
+	private static final List<String[]> END = new ArrayList<String[]>();
+
+	private NamedRelation relation;
+	private TupleIterator scan;
+	private Operator pipeline;
+	private ForkJoinPool pool;
+	private int degree;
+	private List<Attribute> attributes;
+	private BlockingQueue<List<String[]>> results;
+	// workers still processing morsels, and workers that have not exited
+	private AtomicInteger running;
+	private AtomicInteger active;
+	private volatile boolean cancelled;
+	private volatile boolean closed;
+	// an exception thrown by a worker, rethrown by next()
+	private volatile Exception failure;
+	private boolean finished;
+	private List<String[]> current;
+	private int position;
+
+	/**
+	 * Create a new parallel pipeline iterator
+	 * @param pipeline Top operator of the pipeline
+	 * @param source Source of the tuples of the scanned relation
+	 * @param pool Pool that runs the workers
+	 * @param degree Number of workers
+	 */
+	public ParallelPipelineIterator(Operator pipeline, TupleSource source, ForkJoinPool pool, int degree) {
+		this.relation = (NamedRelation) ParallelPlanner.getPipelineScan(pipeline).getRelation();
+		this.scan = source.scan(this.relation);
+		this.pipeline = pipeline;
+		this.pool = pool;
+		this.degree = degree;
+		this.attributes = new Executor(source).build(pipeline).getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.scan.open();
+		this.results = new LinkedBlockingQueue<List<String[]>>(this.degree * 2);
+		this.running = new AtomicInteger(this.degree);
+		this.active = new AtomicInteger(this.degree);
+		this.cancelled = false;
+		this.closed = false;
+		this.failure = null;
+		this.finished = false;
+		this.current = null;
+
+		for (int i = 0; i < this.degree; i++) {
+			this.pool.execute(new Worker());
+		}
+	}
+
+	/**
+	 * Read the next morsel from the scan
+	 * @return Tuples of the morsel, or null if the scan is exhausted
+	 */
+	private List<String[]> nextMorsel() throws DatabaseException {
+		List<String[]> morsel = new ArrayList<String[]>(MORSEL_SIZE);
+
+		synchronized (this.scan) {
+			String[] tuple;
+			while (morsel.size() < MORSEL_SIZE && (tuple = this.scan.next()) != null) {
+				morsel.add(tuple);
+			}
+		}
+
+		return morsel.isEmpty() ? null : morsel;
+	}
+
+	/**
+	 * Queue a list of tuples, unless the workers are stopped first; the
+	 * end marker is queued unless the iterator is closed first
+	 */
+	private void put(List<String[]> tuples) throws InterruptedException {
+		while (!this.results.offer(tuples, 10, TimeUnit.MILLISECONDS)) {
+			if (this.closed || (this.cancelled && tuples != END)) {
+				return;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		while (this.current == null || this.position == this.current.size()) {
+			if (this.finished) {
+				return null;
+			}
+			try {
+				this.current = this.results.take();
+			} catch (InterruptedException e) {
+				throw new DatabaseException(e);
+			}
+			this.position = 0;
+
+			if (this.current == END) {
+				this.finished = true;
+				if (this.failure instanceof RuntimeException) {
+					throw (RuntimeException) this.failure;
+				} else if (this.failure != null) {
+					throw (DatabaseException) this.failure;
+				}
+			}
+		}
+
+		return this.current.get(this.position++);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		// stop the workers, and wait for them to finish their morsels
+		this.cancelled = true;
+		this.closed = true;
+		while (this.active.get() > 0) {
+			try {
+				this.results.poll(10, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw new DatabaseException(e);
+			}
+		}
+		this.results = null;
+		this.current = null;
+		this.scan.close();
+	}
+
+	/**
+	 * Worker that executes the pipeline over morsels until the scan is
+	 * exhausted
+	 */
+	private class Worker implements Runnable {
+		public void run() {
+			try {
+				List<String[]> morsel;
+				while (!cancelled && (morsel = nextMorsel()) != null) {
+					MemoryTupleSource source = new MemoryTupleSource();
+					source.setTuples(relation.getName(), morsel);
+					TupleIterator iter = new Executor(source).build(pipeline);
+
+					List<String[]> output = new ArrayList<String[]>();
+					iter.open();
+					String[] tuple;
+					while ((tuple = iter.next()) != null) {
+						output.add(tuple);
+					}
+					iter.close();
+
+					if (!output.isEmpty()) {
+						put(output);
+					}
+				}
+			} catch (DatabaseException e) {
+				failure = e;
+				cancelled = true;
+			} catch (InterruptedException e) {
+				failure = new DatabaseException(e);
+				cancelled = true;
+			} catch (RuntimeException e) {
+				// otherwise the output would just end, without the morsels left
+				failure = e;
+				cancelled = true;
+			} finally {
+				if (running.decrementAndGet() == 0) {
+					try {
+						put(END);
+					} catch (InterruptedException e) {
+						// the iterator is being closed
+					}
+				}
+				active.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package sjdb;
+
+/**
+ * This class adds Exchange operators to an estimated plan, to mark the
+ * subtrees that are worth executing in parallel with a given number of
+ * worker threads. Two kinds of subtree are executed in parallel:
+ *
+ * - pipelines, i.e. chains of Select and Project operators over a Scan,
+ *   whose tuples are divided into morsels that the workers process
+ *   independently
+ * - hash joins, whose inputs are radix-partitioned, with the pairs of
+ *   partitions joined independently by the workers
+ *
+ * A subtree that processes n tuples (the tuple count of the scanned
+ * relation, or of both join inputs) is executed in parallel only if
+ * n / degree + STARTUP_TUPLES * degree < n, i.e. if the time saved by
+ * dividing the work outweighs the cost of starting and coordinating the
+ * workers.
+ */
+public class ParallelPlanner {
+	/**
+	 * The cost of starting and coordinating each worker, in tuples processed
+	 */
+	public static final long STARTUP_TUPLES = 10000;
+
+	private int degree;
+
+	/**
+	 * Create a parallel planner
+	 * @param degree Number of worker threads; with 1, no exchanges are added
+	 */
+	public ParallelPlanner(int degree) {
+		this.degree = degree;
+	}
+
+	/**
+	 * Return the number of worker threads of each exchange
+	 * @return Degree of parallelism
+	 */
+	public int getDegree() {
+		return this.degree;
+	}
+
+	/**
+	 * Return true if processing the given number of tuples in parallel is
+	 * estimated to be faster than processing them on one thread
+	 * @param tuples
+	 * @return
+	 */
+	public boolean pays(long tuples) {
+		return this.degree > 1 && tuples / this.degree + STARTUP_TUPLES * this.degree < tuples;
+	}
+
+	/**
+	 * Return a plan with exchanges added above the subtrees that are worth
+	 * executing in parallel. The outputs of the plan must have been
+	 * estimated; operators above an added exchange are copied, and the
+	 * rest of the plan is shared with the input.
+	 * @param plan Estimated plan
+	 * @return Plan with exchanges
+	 */
+	public Operator addExchanges(Operator plan) {
+		if (this.degree <= 1) {
+			return plan;
+		}
+		return parallelise(plan);
+	}
+
+	private Operator parallelise(Operator op) {
+		if (op instanceof Scan || op instanceof IndexScan) {
+			return op;
+		}
+
+		Scan scan = getPipelineScan(op);
+		if (scan != null) {
+			return pays(scan.getRelation().getTupleCount()) ? new Exchange(op, this.degree) : op;
+		}
+
+		Operator revised;
+		if (op instanceof BinaryOperator) {
+			BinaryOperator opCast = (BinaryOperator) op;
+			revised = opCast.withInputs(parallelise(opCast.getLeft()), parallelise(opCast.getRight()));
+
+			long inputTuples = Estimator.saturatedAdd(opCast.getLeft().getOutput().getTupleCount(),
+					opCast.getRight().getOutput().getTupleCount());
+			if (op instanceof Join && ((Join) op).getMethod() == Join.Method.HASH && pays(inputTuples)) {
+				return new Exchange(revised, this.degree);
+			}
+		} else {
+			UnaryOperator opCast = (UnaryOperator) op;
+			revised = opCast.withInput(parallelise(opCast.getInput()));
+		}
+
+		return revised;
+	}
+
+	/**
+	 * Return the Scan at the bottom of a pipeline
+	 * @param op
+	 * @return Scan, or null if the operator is not the top of a chain of
+	 * Select and Project operators over a Scan
+	 */
+	static Scan getPipelineScan(Operator op) {
+		while (op instanceof Select || op instanceof Project) {
+			op = ((UnaryOperator) op).getInput();
+		}
+		return op instanceof Scan ? (Scan) op : null;
+	}
+}
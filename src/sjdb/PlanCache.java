@@ -0,0 +1,186 @@
+package sjdb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a bounded, least-recently-used cache of optimised plans
+ * that sits in front of an Optimiser. Plans are keyed by the normalised
+ * form of the canonical query (see QueryNormaliser), and each cached plan
+ * records the catalogue versions of the relations it reads. A cached plan
+ * is discarded, and the query optimised again, if any of those relations
+ * has been updated in the catalogue since.
+ *
+ * Cached plans are shared between all callers that submit the same query,
+ * so they must not be modified.
+ */
+public class PlanCache {
+	/**
+	 * The default number of plans kept by the cache
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private Catalogue catalogue;
+	private Optimiser optimiser;
+	private LinkedHashMap<String, CachedPlan> plans;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * An optimised plan and the versions of the relations it reads
+	 */
+	private static class CachedPlan {
+		private Operator plan;
+		private Map<String, Long> versions;
+
+		private CachedPlan(Operator plan, Map<String, Long> versions) {
+			this.plan = plan;
+			this.versions = versions;
+		}
+	}
+
+	/**
+	 * Create a plan cache with the default capacity
+	 * @param catalogue Catalogue that the queries refer to
+	 * @param optimiser Optimiser used on cache misses
+	 */
+	public PlanCache(Catalogue catalogue, Optimiser optimiser) {
+		this(catalogue, optimiser, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a plan cache
+	 * @param catalogue Catalogue that the queries refer to
+	 * @param optimiser Optimiser used on cache misses
+	 * @param capacity Maximum number of plans to keep
+	 */
+	public PlanCache(Catalogue catalogue, Optimiser optimiser, final int capacity) {
+		this.catalogue = catalogue;
+		this.optimiser = optimiser;
+		this.plans = new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+				if (size() > capacity) {
+					PlanCache.this.evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+		this.invalidations = 0;
+	}
+
+	/**
+	 * Return the optimised plan for a canonical query plan, optimising it
+	 * only if no current plan for the same query is cached
+	 * @param canonicalPlan Canonical query plan
+	 * @return Optimised plan
+	 */
+	public Operator optimise(Operator canonicalPlan) throws DatabaseException {
+		QueryNormaliser normaliser = new QueryNormaliser();
+		canonicalPlan.accept(normaliser);
+		String key = normaliser.getNormalisedQuery();
+
+		synchronized (this) {
+			CachedPlan cached = this.plans.get(key);
+
+			if (cached != null && isCurrent(cached)) {
+				this.hits++;
+				return cached.plan;
+			}
+			if (cached != null) {
+				this.plans.remove(key);
+				this.invalidations++;
+			}
+			this.misses++;
+		}
+
+		// record the versions before optimising, so that a concurrent
+		// update makes the new entry stale rather than being missed
+		Map<String, Long> versions = new HashMap<String, Long>();
+		for (String name : normaliser.getRelationNames()) {
+			versions.put(name, this.catalogue.getRelationVersion(name));
+		}
+
+		Operator plan = this.optimiser.optimise(canonicalPlan);
+
+		synchronized (this) {
+			this.plans.put(key, new CachedPlan(plan, versions));
+		}
+
+		return plan;
+	}
+
+	private boolean isCurrent(CachedPlan cached) throws DatabaseException {
+		for (Map.Entry<String, Long> entry : cached.versions.entrySet()) {
+			if (this.catalogue.getRelationVersion(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Discard all cached plans
+	 */
+	public synchronized void clear() {
+		this.plans.clear();
+	}
+
+	/**
+	 * Return the number of cached plans
+	 * @return Cached plan count
+	 */
+	public synchronized int size() {
+		return this.plans.size();
+	}
+
+	/**
+	 * Return the number of lookups that found a current cached plan
+	 * @return Hit count
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * Return the number of lookups that had to optimise the query
+	 * @return Miss count
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Return the number of plans discarded to make room for newer ones
+	 * @return Eviction count
+	 */
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Return the number of plans discarded because a relation they read
+	 * was updated in the catalogue
+	 * @return Invalidation count
+	 */
+	public synchronized long getInvalidations() {
+		return this.invalidations;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return "hits=" + this.hits + " misses=" + this.misses + " evictions=" +
+				this.evictions + " invalidations=" + this.invalidations;
+	}
+}
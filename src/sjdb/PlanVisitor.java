@@ -11,6 +11,11 @@ public interface PlanVisitor {
 	 * @param op Scan operator to be visited
 	 */
 	public void visit(Scan op);
+	/**
+	 * Visit an IndexScan operator.
+	 * @param op IndexScan operator to be visited
+	 */
+	public void visit(IndexScan op);
 	/**
 	 * Visit a Project operator.
 	 * @param op Project operator to be visited
@@ -31,4 +36,19 @@ public interface PlanVisitor {
 	 * @param op
 	 */
 	public void visit(Join op);
+	/**
+	 * Visit an Exchange operator.
+	 * @param op Exchange operator to be visited
+	 */
+	public void visit(Exchange op);
+	/**
+	 * Visit a Sort operator.
+	 * @param op Sort operator to be visited
+	 */
+	public void visit(Sort op);
+	/**
+	 * Visit an Aggregate operator.
+	 * @param op Aggregate operator to be visited
+	 */
+	public void visit(Aggregate op);
 }
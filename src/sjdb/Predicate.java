@@ -1,18 +1,96 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class is used to represent the predicates associated with 
- * joins and select operators. Note that, while a string value is
- * required for predicates of the form attr=value, this values is 
- * only used by the toString() method; a future version of
- * Attribute which uses more expressive synopses may change this.
+ * joins and select operators. A predicate either equates two attributes,
+ * as in attr=attr, or compares an attribute with a value, as in 
+ * attr="value", attr<"value" or attr BETWEEN "lower" AND "upper"; the
+ * comparisons other than equality order values as compareValues() does.
+ * The values of predicates are used by the Estimator when the attribute 
+ * carries a list of its most common values or a histogram.
+ * 
+ * A predicate of the form attr=? (or attr<?, etc.) has a placeholder in 
+ * place of the value, and is used in query templates; it is estimated 
+ * without reference to a value, and bound to a value once the template 
+ * has been optimised.
+ * 
+ * A compound predicate combines other predicates with AND, OR or NOT, as
+ * in a="1" AND (b<"2" OR NOT c=d), and is used by select operators only.
+ * Its operands may refer to any number of attributes (see getAttributes()),
+ * and it is evaluated over a tuple in a single pass by test(String[], int[]).
  * 
  * @author nmg
  */
 public class Predicate {
+	/**
+	 * The ways in which a predicate may compare an attribute with a value
+	 */
+	public enum Comparison {
+		EQUALS("="),
+		NOT_EQUALS("<>"),
+		LESS("<"),
+		LESS_OR_EQUAL("<="),
+		GREATER(">"),
+		GREATER_OR_EQUAL(">="),
+		/** Between two values, inclusive */
+		BETWEEN(" BETWEEN ");
+		
+		private String symbol;
+		
+		private Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+		
+		/**
+		 * Return the symbol of the comparison in the query syntax
+		 * @return
+		 */
+		public String getSymbol() {
+			return this.symbol;
+		}
+		
+		/**
+		 * Return the comparison with the given symbol
+		 * @param symbol
+		 * @return the comparison, or null if there is none
+		 */
+		public static Comparison fromSymbol(String symbol) {
+			for (Comparison comparison : values()) {
+				if (comparison.symbol.trim().equals(symbol.trim())) {
+					return comparison;
+				}
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * The ways in which a compound predicate combines its operands
+	 */
+	public enum Connective {
+		AND,
+		OR,
+		/** The negation of a single operand */
+		NOT
+	}
+	
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
+	private Comparison comparison;
 	private String rightValue;
+	private String upperValue;
+	private int parameter;
+	private Connective connective;
+	private List<Predicate> operands;
+	private List<Attribute> attributes;
+	// positions of the attributes of a comparison among those of the 
+	// compound predicate that contains it (or of the comparison itself)
+	private int leftSlot;
+	private int rightSlot;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -22,6 +100,9 @@ public class Predicate {
 	public Predicate(Attribute left, Attribute right) {
 		this.leftAttribute = left;
 		this.rightAttribute = right;
+		this.comparison = Comparison.EQUALS;
+		this.parameter = -1;
+		this.rightSlot = 1;
 	}
 
 	/**
@@ -30,21 +111,317 @@ public class Predicate {
 	 * @param value
 	 */
 	public Predicate(Attribute left, String value) {
+		this(left, Comparison.EQUALS, value);
+	}
+
+	/**
+	 * Create a predicate of the form attr=? 
+	 * @param left
+	 * @param parameter index of the placeholder in the query, from 0
+	 */
+	public Predicate(Attribute left, int parameter) {
+		this(left, Comparison.EQUALS, parameter);
+	}
+
+	/**
+	 * Create a predicate that compares an attribute with a value, such as
+	 * attr<value
+	 * @param left
+	 * @param comparison any comparison but BETWEEN
+	 * @param value
+	 */
+	public Predicate(Attribute left, Comparison comparison, String value) {
+		if (comparison == Comparison.BETWEEN) {
+			throw new IllegalArgumentException("BETWEEN needs a lower and an upper value");
+		}
 		this.leftAttribute = left;
+		this.comparison = comparison;
 		this.rightValue = value;
+		this.parameter = -1;
+	}
+
+	/**
+	 * Create a predicate that compares an attribute with a placeholder,
+	 * such as attr<?
+	 * @param left
+	 * @param comparison any comparison but BETWEEN
+	 * @param parameter index of the placeholder in the query, from 0
+	 */
+	public Predicate(Attribute left, Comparison comparison, int parameter) {
+		if (comparison == Comparison.BETWEEN) {
+			throw new IllegalArgumentException("BETWEEN needs a lower and an upper value");
+		}
+		this.leftAttribute = left;
+		this.comparison = comparison;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * Create a predicate of the form attr BETWEEN lower AND upper
+	 * @param left
+	 * @param lower
+	 * @param upper
+	 */
+	public Predicate(Attribute left, String lower, String upper) {
+		this.leftAttribute = left;
+		this.comparison = Comparison.BETWEEN;
+		this.rightValue = lower;
+		this.upperValue = upper;
+		this.parameter = -1;
+	}
+
+	/**
+	 * Create a compound predicate, whose comparisons are located among the
+	 * given attributes
+	 * @param connective
+	 * @param operands
+	 * @param columns Attributes of the outermost compound predicate, or 
+	 * null if this is the outermost
+	 */
+	private Predicate(Connective connective, List<Predicate> operands, List<Attribute> columns) {
+		this.connective = connective;
+		this.parameter = -1;
+		this.attributes = new ArrayList<Attribute>();
+		for (Predicate operand : operands) {
+			for (Attribute attr : operand.getAttributes()) {
+				if (!this.attributes.contains(attr)) {
+					this.attributes.add(attr);
+				}
+			}
+		}
+		
+		this.operands = new ArrayList<Predicate>();
+		for (Predicate operand : operands) {
+			this.operands.add(operand.locate(columns == null ? this.attributes : columns));
+		}
+	}
+	
+	/**
+	 * Copy a comparison
+	 * @param predicate
+	 */
+	private Predicate(Predicate predicate) {
+		this.leftAttribute = predicate.leftAttribute;
+		this.rightAttribute = predicate.rightAttribute;
+		this.comparison = predicate.comparison;
+		this.rightValue = predicate.rightValue;
+		this.upperValue = predicate.upperValue;
+		this.parameter = predicate.parameter;
+	}
+	
+	/**
+	 * Create the conjunction of predicates. Operands that are themselves
+	 * conjunctions are flattened into the new predicate.
+	 * @param operands at least one predicate
+	 * @return the conjunction, or the operand itself if there is only one
+	 */
+	public static Predicate and(List<Predicate> operands) {
+		return combine(Connective.AND, operands);
+	}
+	
+	/**
+	 * Create the disjunction of predicates. Operands that are themselves
+	 * disjunctions are flattened into the new predicate.
+	 * @param operands at least one predicate
+	 * @return the disjunction, or the operand itself if there is only one
+	 */
+	public static Predicate or(List<Predicate> operands) {
+		return combine(Connective.OR, operands);
+	}
+	
+	/**
+	 * Create the negation of a predicate
+	 * @param operand
+	 * @return
+	 */
+	public static Predicate not(Predicate operand) {
+		return new Predicate(Connective.NOT, Collections.singletonList(operand), null);
+	}
+	
+	private static Predicate combine(Connective connective, List<Predicate> operands) {
+		if (operands.isEmpty()) {
+			throw new IllegalArgumentException(connective + " needs at least one operand");
+		}
+		if (operands.size() == 1) {
+			return operands.get(0);
+		}
+		
+		List<Predicate> flattened = new ArrayList<Predicate>();
+		for (Predicate operand : operands) {
+			if (operand.connective == connective) {
+				flattened.addAll(operand.operands);
+			} else {
+				flattened.add(operand);
+			}
+		}
+		return new Predicate(connective, flattened, null);
+	}
+	
+	/**
+	 * Return a copy of this predicate whose comparisons are located among
+	 * the given attributes
+	 */
+	private Predicate locate(List<Attribute> columns) {
+		if (isCompound()) {
+			return new Predicate(this.connective, this.operands, columns);
+		}
+		
+		Predicate located = new Predicate(this);
+		located.leftSlot = columns.indexOf(this.leftAttribute);
+		located.rightSlot = this.rightAttribute == null ? -1 : columns.indexOf(this.rightAttribute);
+		return located;
+	}
+	
+	/**
+	 * Return true if this predicate combines other predicates with AND, OR
+	 * or NOT
+	 * @return
+	 */
+	public boolean isCompound() {
+		return this.connective != null;
+	}
+	
+	/**
+	 * Return the connective of a compound predicate
+	 * @return the connective, or null if this is not a compound predicate
+	 */
+	public Connective getConnective() {
+		return this.connective;
+	}
+	
+	/**
+	 * Return the operands of a compound predicate
+	 * @return the operands, or null if this is not a compound predicate
+	 */
+	public List<Predicate> getOperands() {
+		return this.operands;
+	}
+	
+	/**
+	 * Return the attributes referred to by this predicate: ATTR for 
+	 * ATTR=value, LEFT and RIGHT for LEFT=RIGHT, and the attributes of the
+	 * operands of a compound predicate, each once, in order of appearance
+	 * @return
+	 */
+	public List<Attribute> getAttributes() {
+		if (isCompound()) {
+			return this.attributes;
+		}
+		
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		attributes.add(this.leftAttribute);
+		if (this.rightAttribute != null) {
+			attributes.add(this.rightAttribute);
+		}
+		return attributes;
 	}
 
 	/**
-	 * Return true if this predicate is of the form attr=value
+	 * Return true if this predicate compares an attribute with a value (or
+	 * a placeholder), and false if it is of the form attr=attr. Compound
+	 * predicates are never of the form attr=attr, so return true.
 	 * @return
 	 */
-	public boolean equalsValue() {
-		return this.rightValue != null;
+	public boolean hasValue() {
+		return this.rightValue != null || this.parameter >= 0 || isCompound();
+	}
+	
+	/**
+	 * Return the comparison made by this predicate
+	 * @return
+	 */
+	public Comparison getComparison() {
+		return this.comparison;
+	}
+	
+	/**
+	 * Return true if this predicate has a placeholder in place of its value
+	 * @return
+	 */
+	public boolean isParameter() {
+		return this.parameter >= 0;
+	}
+	
+	/**
+	 * Return the index of the placeholder for predicates of the form attr=?
+	 * @return parameter index, or -1 if this is not a placeholder
+	 */
+	public int getParameter() {
+		return this.parameter;
+	}
+	
+	/**
+	 * Return true if this predicate or any of its operands has a 
+	 * placeholder in place of its value
+	 * @return
+	 */
+	public boolean hasParameters() {
+		return maxParameter() >= 0;
+	}
+	
+	/**
+	 * Return the highest index of a placeholder in this predicate or any
+	 * of its operands
+	 * @return parameter index, or -1 if there are no placeholders
+	 */
+	public int maxParameter() {
+		int max = this.parameter;
+		if (isCompound()) {
+			for (Predicate operand : this.operands) {
+				max = Math.max(max, operand.maxParameter());
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Return the predicate attr=value (or attr<value, etc.) for a predicate
+	 * with a placeholder
+	 * @param value value to substitute for the placeholder
+	 * @return bound predicate
+	 */
+	public Predicate bind(String value) {
+		return new Predicate(this.leftAttribute, this.comparison, value);
+	}
+	
+	/**
+	 * Return this predicate with each of its placeholders, and those of its
+	 * operands, replaced by a value
+	 * @param values values to substitute, indexed by placeholder
+	 * @return bound predicate, or this predicate if it has no placeholders
+	 */
+	public Predicate bind(String[] values) {
+		if (isParameter()) {
+			return bind(values[this.parameter]);
+		} else if (!isCompound() || !hasParameters()) {
+			return this;
+		}
+		
+		List<Predicate> bound = new ArrayList<Predicate>();
+		for (Predicate operand : this.operands) {
+			bound.add(operand.bind(values));
+		}
+		return new Predicate(this.connective, bound, null);
+	}
+	
+	/**
+	 * Return the predicate that compares another attribute with the value
+	 * (or placeholder) of this predicate, as in other<value for attr<value
+	 * @param attribute attribute to substitute for the left attribute
+	 * @return the new predicate
+	 */
+	public Predicate substitute(Attribute attribute) {
+		if (isCompound() || !hasValue()) {
+			throw new IllegalArgumentException("Only a comparison with a value can be substituted: " + this);
+		}
+		Predicate substituted = new Predicate(this);
+		substituted.leftAttribute = attribute;
+		return substituted;
 	}
 	
 	/**
 	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
-	 * @return left attribute
+	 * @return left attribute, or null for compound predicates
 	 */
 	public Attribute getLeftAttribute() {
 		return this.leftAttribute;
@@ -59,21 +436,167 @@ public class Predicate {
 	}
 	
 	/**
-	 * Return VALUE for predicates of the form attr=VALUE
+	 * Return VALUE for predicates of the form attr=VALUE (or attr<VALUE, 
+	 * etc.), or LOWER for predicates of the form attr BETWEEN LOWER AND upper
 	 * @return right value
 	 */
 	public String getRightValue() {
 		return this.rightValue;
 	}
 	
+	/**
+	 * Return UPPER for predicates of the form attr BETWEEN lower AND UPPER
+	 * @return upper value, or null for other predicates
+	 */
+	public String getUpperValue() {
+		return this.upperValue;
+	}
+	
+	/**
+	 * Return true if a value of the left attribute satisfies this 
+	 * predicate, which must compare the attribute with a value
+	 * @param value
+	 * @return
+	 */
+	public boolean test(String value) {
+		switch (this.comparison) {
+		case EQUALS:
+			return value.equals(this.rightValue);
+		case NOT_EQUALS:
+			return !value.equals(this.rightValue);
+		case LESS:
+			return compareValues(value, this.rightValue) < 0;
+		case LESS_OR_EQUAL:
+			return compareValues(value, this.rightValue) <= 0;
+		case GREATER:
+			return compareValues(value, this.rightValue) > 0;
+		case GREATER_OR_EQUAL:
+			return compareValues(value, this.rightValue) >= 0;
+		default:
+			return compareValues(value, this.rightValue) >= 0 && compareValues(value, this.upperValue) <= 0;
+		}
+	}
+	
+	/**
+	 * Return true if a tuple satisfies this predicate, which may be a 
+	 * compound predicate. The operands of AND and OR are evaluated in 
+	 * order, and only until the result is known.
+	 * @param tuple
+	 * @param columns Position in the tuple of each of the attributes 
+	 * returned by getAttributes()
+	 * @return
+	 */
+	public boolean test(String[] tuple, int[] columns) {
+		if (!isCompound()) {
+			String left = tuple[columns[this.leftSlot]];
+			return hasValue() ? test(left) : left.equals(tuple[columns[this.rightSlot]]);
+		}
+		
+		switch (this.connective) {
+		case AND:
+			for (Predicate operand : this.operands) {
+				if (!operand.test(tuple, columns)) {
+					return false;
+				}
+			}
+			return true;
+		case OR:
+			for (Predicate operand : this.operands) {
+				if (operand.test(tuple, columns)) {
+					return true;
+				}
+			}
+			return false;
+		default:
+			return !this.operands.get(0).test(tuple, columns);
+		}
+	}
+	
+	/**
+	 * Compare two attribute values. Values that are both numbers are
+	 * compared numerically, and other values lexicographically.
+	 * @param a
+	 * @param b
+	 * @return a negative number, zero or a positive number as a is less
+	 * than, equal to or greater than b
+	 */
+	public static int compareValues(String a, String b) {
+		if (isNumber(a) && isNumber(b)) {
+			int result = Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+			if (result != 0) {
+				return result;
+			}
+		}
+		return a.compareTo(b);
+	}
+	
+	/**
+	 * Return true if a value is a decimal number, with an optional sign,
+	 * fraction and exponent
+	 */
+	static boolean isNumber(String value) {
+		int i = 0;
+		int n = value.length();
+		if (i < n && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			i++;
+		}
+		int digits = 0;
+		while (i < n && Character.isDigit(value.charAt(i))) {
+			i++;
+			digits++;
+		}
+		if (i < n && value.charAt(i) == '.') {
+			i++;
+			while (i < n && Character.isDigit(value.charAt(i))) {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if (i < n && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+			i++;
+			if (i < n && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+				i++;
+			}
+			int exponent = i;
+			while (i < n && Character.isDigit(value.charAt(i))) {
+				i++;
+			}
+			if (i == exponent) {
+				return false;
+			}
+		}
+		return i == n;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (this.rightValue == null) {
-			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
+		if (isCompound()) {
+			String ret = "";
+			for (Predicate operand : this.operands) {
+				String text = operand.isCompound() ? "(" + operand + ")" : operand.toString();
+				if (this.connective == Connective.NOT) {
+					ret = "NOT " + text;
+				} else {
+					ret += (ret.isEmpty() ? "" : " " + this.connective + " ") + text;
+				}
+			}
+			return ret;
+		}
+		
+		String left = this.leftAttribute.toString();
+		if (this.parameter >= 0) {
+			return left + this.comparison.getSymbol() + "?";
+		} else if (this.rightValue == null) {
+			return left + "=" + this.rightAttribute.toString(); 
+		} else if (this.comparison == Comparison.BETWEEN) {
+			return left + " BETWEEN \"" + this.rightValue + "\" AND \"" + this.upperValue + "\"";
 		} else {
-			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
+			return left + this.comparison.getSymbol() + "\"" + this.rightValue + "\"";
 		}
 	}
 }
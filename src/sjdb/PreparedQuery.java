@@ -0,0 +1,119 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a query template that has been optimised once, 
+ * and can then be bound to values for its placeholders any number of 
+ * times. Since a predicate of the form attr=? is estimated in the same way
+ * regardless of its value, the optimised template is a valid plan for 
+ * every binding, and binding only substitutes the values into a copy of 
+ * the plan (keeping its estimates); the optimiser is not run again.
+ * 
+ * Prepared queries are created with Optimiser.prepare().
+ */
+public class PreparedQuery {
+	private Operator template;
+	private int parameterCount;
+
+	/**
+	 * Create a prepared query from an optimised template
+	 * @param template Optimised, estimated plan containing placeholders
+	 */
+	public PreparedQuery(Operator template) {
+		this.template = template;
+		this.parameterCount = countParameters(template);
+	}
+
+	/**
+	 * Return the optimised template, with its placeholders unbound
+	 * @return Optimised template
+	 */
+	public Operator getTemplate() {
+		return this.template;
+	}
+
+	/**
+	 * Return the number of placeholders in the template
+	 * @return Parameter count
+	 */
+	public int getParameterCount() {
+		return this.parameterCount;
+	}
+
+	/**
+	 * Return the optimised plan with the placeholders of the template 
+	 * replaced by the given values. Subtrees without placeholders are 
+	 * shared with the template.
+	 * @param values Values for the placeholders, in order
+	 * @return Bound plan
+	 */
+	public Operator bind(String... values) {
+		if (values.length != this.parameterCount) {
+			throw new IllegalArgumentException("Expected " + this.parameterCount + 
+					" values but got " + values.length);
+		}
+		return bind(this.template, values);
+	}
+
+	private Operator bind(Operator op, String[] values) {
+		Operator bound;
+
+		if (op instanceof Select) {
+			Select opCast = (Select) op;
+			Operator input = bind(opCast.getInput(), values);
+			Predicate predicate = opCast.getPredicate();
+
+			if (!predicate.hasParameters() && input == opCast.getInput()) {
+				return op;
+			}
+			bound = new Select(input, predicate.bind(values));
+		}
+		else if (op instanceof IndexScan) {
+			IndexScan opCast = (IndexScan) op;
+
+			if (!opCast.getPredicate().hasParameters()) {
+				return op;
+			}
+			bound = new IndexScan((NamedRelation) opCast.getRelation(), opCast.getIndex(), 
+					opCast.getPredicate().bind(values));
+		}
+		//a scan has no inputs
+		else if (op instanceof Scan) {
+			return op;
+		}
+		else {
+			List<Operator> inputs = new ArrayList<Operator>();
+			for (Operator input : op.getInputs()) {
+				inputs.add(bind(input, values));
+			}
+			bound = op.withInputs(inputs);
+
+			if (bound == op) {
+				return op;
+			}
+		}
+
+		bound.setOutput(op.getOutput());
+		return bound;
+	}
+
+	private static int countParameters(Operator op) {
+		int count = 0;
+
+		if (op instanceof Select) {
+			count = ((Select) op).getPredicate().maxParameter() + 1;
+		}
+		else if (op instanceof IndexScan) {
+			count = ((IndexScan) op).getPredicate().maxParameter() + 1;
+		}
+		if (!(op instanceof Scan)) {
+			for (Operator input : op.getInputs()) {
+				count = Math.max(count, countParameters(input));
+			}
+		}
+
+		return count;
+	}
+}
@@ -15,6 +15,13 @@ public class Product extends BinaryOperator {
 		super(left, right);
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.BinaryOperator#copy(sjdb.Operator, sjdb.Operator)
+	 */
+	protected Operator copy(Operator left, Operator right) {
+		return new Product(left, right);
+	}
+	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
 	 */
@@ -23,6 +30,13 @@ public class Product extends BinaryOperator {
 		visitor.visit(this);
 	}
 
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,107 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Product operator as a nested loop: the tuples of
+ * the right input are read into memory when the iterator is opened, and
+ * each tuple of the left input is combined with each of them in turn.
+ * Subclasses may restrict the combinations that are returned.
+ */
+public class ProductIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private List<Attribute> attributes;
+	private List<String[]> rightTuples;
+	private String[] leftTuple;
+	private int rightPosition;
+
+	/**
+	 * Create a new product iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input, which is read into memory
+	 */
+	public ProductIterator(TupleIterator left, TupleIterator right) {
+		this.left = left;
+		this.right = right;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.rightTuples = new ArrayList<String[]>();
+		this.right.open();
+		String[] tuple;
+		while ((tuple = this.right.next()) != null) {
+			this.rightTuples.add(tuple);
+		}
+		this.right.close();
+
+		this.left.open();
+		this.leftTuple = null;
+		this.rightPosition = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		while (true) {
+			if (this.leftTuple == null || this.rightPosition == this.rightTuples.size()) {
+				if (this.rightTuples.isEmpty() || (this.leftTuple = this.left.next()) == null) {
+					return null;
+				}
+				this.rightPosition = 0;
+			}
+
+			String[] rightTuple = this.rightTuples.get(this.rightPosition++);
+			if (matches(this.leftTuple, rightTuple)) {
+				return concatenate(this.leftTuple, rightTuple);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.rightTuples = null;
+		this.left.close();
+	}
+
+	/**
+	 * Return true if a pair of tuples from the left and right inputs is to
+	 * be combined into an output tuple
+	 * @param leftTuple Tuple from the left input
+	 * @param rightTuple Tuple from the right input
+	 * @return true for every pair, unless overridden
+	 */
+	protected boolean matches(String[] leftTuple, String[] rightTuple) {
+		return true;
+	}
+
+	/**
+	 * Combine a tuple from each input into an output tuple
+	 * @param leftTuple
+	 * @param rightTuple
+	 * @return
+	 */
+	public static String[] concatenate(String[] leftTuple, String[] rightTuple) {
+		String[] ret = new String[leftTuple.length + rightTuple.length];
+		System.arraycopy(leftTuple, 0, ret, 0, leftTuple.length);
+		System.arraycopy(rightTuple, 0, ret, leftTuple.length, rightTuple.length);
+		return ret;
+	}
+}
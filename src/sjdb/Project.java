@@ -1,5 +1,6 @@
 package sjdb;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 
@@ -27,6 +28,37 @@ public class Project extends UnaryOperator {
 	public List<Attribute> getAttributes() {
 		return this.attributes;
 	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#copy(sjdb.Operator)
+	 */
+	protected Operator copy(Operator input) {
+		return new Project(input, this.attributes);
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrder()
+	 */
+	public List<Attribute> getOrder() {
+		// only the attributes before the first to be projected out remain ordered
+		List<Attribute> order = new ArrayList<Attribute>();
+		for (Attribute attr : getInput().getOrder()) {
+			if (!this.attributes.contains(attr)) {
+				break;
+			}
+			order.add(attr);
+		}
+		return order;
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrderClasses()
+	 */
+	public List<List<Attribute>> getOrderClasses() {
+		// not cached, as the join below may change its method
+		List<List<Attribute>> classes = getInput().getOrderClasses();
+		return classes.subList(0, Math.min(classes.size(), getOrder().size()));
+	}
 	
 	/* (non-Javadoc)
 	 * @see sjdb.UnaryOperator#accept(sjdb.OperatorVisitor)
@@ -37,6 +69,13 @@ public class Project extends UnaryOperator {
 		visitor.visit(this);
 	}
 
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,76 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Project operator, returning the projected
+ * attributes of each tuple of its input. As in the Estimator, the
+ * attributes keep the order in which they appear in the input.
+ */
+public class ProjectIterator implements TupleIterator {
+	private TupleIterator input;
+	private List<Attribute> attributes;
+	private int[] indexes;
+
+	/**
+	 * Create a new project iterator
+	 * @param input Iterator over the tuples to be projected
+	 * @param attributes Attributes to retain
+	 */
+	public ProjectIterator(TupleIterator input, List<Attribute> attributes) {
+		this.input = input;
+		this.attributes = new ArrayList<Attribute>();
+
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<Attribute> inputAttributes = input.getAttributes();
+		for (int i = 0; i < inputAttributes.size(); i++) {
+			if (attributes.contains(inputAttributes.get(i))) {
+				this.attributes.add(inputAttributes.get(i));
+				indexes.add(i);
+			}
+		}
+
+		this.indexes = new int[indexes.size()];
+		for (int i = 0; i < this.indexes.length; i++) {
+			this.indexes[i] = indexes.get(i);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		this.input.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		String[] tuple = this.input.next();
+		if (tuple == null) {
+			return null;
+		}
+
+		String[] ret = new String[this.indexes.length];
+		for (int i = 0; i < this.indexes.length; i++) {
+			ret[i] = tuple[this.indexes[i]];
+		}
+		return ret;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.input.close();
+	}
+}
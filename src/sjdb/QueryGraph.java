@@ -0,0 +1,415 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the join graph of a canonical query plan. Each
+ * named relation scanned by the plan is a vertex, identified by its
+ * position in the FROM clause, and sets of relations are represented as
+ * bitsets (bit i set for relation i).
+ *
+ * The predicates of the canonical plan are classified as either local
+ * predicates, which refer to a single relation and can be applied directly
+ * above its scan, or equalities of the form attr=attr, which are gathered
+ * into equivalence classes of attributes. Every relation with an attribute
+ * in a class is joined to every other: when two sets of relations meet,
+ * a single join predicate is built from each class with members on both
+ * sides, as the members on each side have already been made equal (by the
+ * joins within the set, or by the local equalities of a relation). So the
+ * predicates a=b and a=c join the relations of b and c on b=c, without 
+ * inferring every equality implied by the class. Any predicate whose 
+ * attributes cannot be located is kept as a residual predicate, to be 
+ * applied at the top of the plan.
+ */
+public class QueryGraph {
+	/**
+	 * The maximum number of relations that can be represented in a bitset
+	 */
+	public static final int MAX_RELATIONS = 63;
+
+	private List<Scan> scans;
+	private List<List<Predicate>> localPredicates;
+	private EquivalenceClasses classes;
+	private List<List<Attribute>> joinClasses;
+	private List<Long> joinSets;
+	private Map<Attribute, Long> classSets;
+	private List<Predicate> residualPredicates;
+	private List<Attribute> projection;
+	private List<Attribute> order;
+	private Map<Attribute, Integer> owners;
+	private long[] neighbours;
+
+	/**
+	 * Build the join graph of the given canonical plan
+	 * @param canonicalPlan Plan of the form SORT?(PROJECT(SELECT*(PRODUCT*(SCAN))))
+	 */
+	public QueryGraph(Operator canonicalPlan) {
+		this.scans = new ArrayList<Scan>();
+		this.localPredicates = new ArrayList<List<Predicate>>();
+		this.classes = new EquivalenceClasses();
+		this.joinClasses = new ArrayList<List<Attribute>>();
+		this.joinSets = new ArrayList<Long>();
+		this.classSets = new HashMap<Attribute, Long>();
+		this.residualPredicates = new ArrayList<Predicate>();
+		this.projection = null;
+		this.order = null;
+		this.owners = new HashMap<Attribute, Integer>();
+
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		collect(canonicalPlan, predicates);
+
+		for (Predicate predicate : predicates) {
+			classify(predicate);
+		}
+		
+		this.neighbours = new long[this.scans.size()];
+		for (List<Attribute> members : this.classes.getClasses()) {
+			addClass(members);
+		}
+	}
+
+	/**
+	 * Walk the canonical plan, recording scans, predicates, the projection
+	 * and the order
+	 */
+	private void collect(Operator plan, List<Predicate> predicates) {
+		if (plan instanceof Sort) {
+			Sort opCast = (Sort) plan;
+			this.order = opCast.getAttributes();
+			collect(opCast.getInput(), predicates);
+		}
+		else if (plan instanceof Project) {
+			Project opCast = (Project) plan;
+			this.projection = opCast.getAttributes();
+			collect(opCast.getInput(), predicates);
+		}
+		else if (plan instanceof Select) {
+			Select opCast = (Select) plan;
+			collect(opCast.getInput(), predicates);
+			predicates.add(opCast.getPredicate());
+		}
+		else if (plan instanceof BinaryOperator) {
+			BinaryOperator opCast = (BinaryOperator) plan;
+			collect(opCast.getLeft(), predicates);
+			collect(opCast.getRight(), predicates);
+
+			if (opCast instanceof Join) {
+				predicates.add(((Join) opCast).getPredicate());
+			}
+		}
+		//only option left is a Scan
+		else {
+			Scan opCast = (Scan) plan;
+			int index = this.scans.size();
+
+			if (index >= MAX_RELATIONS) {
+				throw new IllegalArgumentException("Query refers to more than " +
+						MAX_RELATIONS + " relations");
+			}
+
+			this.scans.add(opCast);
+			this.localPredicates.add(new ArrayList<Predicate>());
+
+			for (Attribute attr : opCast.getRelation().getAttributes()) {
+				this.owners.put(attr, index);
+			}
+		}
+	}
+
+	/**
+	 * Sort a predicate into the local, join or residual predicates
+	 */
+	private void classify(Predicate predicate) {
+		if (predicate.isCompound()) {
+			classifyCompound(predicate);
+			return;
+		}
+
+		Integer left = this.owners.get(predicate.getLeftAttribute());
+		Integer right = left;
+
+		if (!predicate.hasValue()) {
+			right = this.owners.get(predicate.getRightAttribute());
+		}
+
+		if (left == null || right == null) {
+			this.residualPredicates.add(predicate);
+		}
+		else if (!predicate.hasValue()) {
+			this.classes.add(predicate);
+		}
+		else {
+			this.localPredicates.get(left).add(predicate);
+		}
+	}
+
+	/**
+	 * Record a class of equated attributes: the relations that own its
+	 * members are joined to each other, and the members owned by a single
+	 * relation are equated by its local predicates
+	 */
+	private void addClass(List<Attribute> members) {
+		long set = 0;
+		Map<Integer, Attribute> first = new HashMap<Integer, Attribute>();
+
+		for (Attribute member : members) {
+			int owner = this.owners.get(member);
+			Attribute equal = first.get(owner);
+			if (equal == null) {
+				first.put(owner, member);
+			}
+			else {
+				this.localPredicates.get(owner).add(new Predicate(equal, member));
+			}
+			set |= bit(owner);
+		}
+
+		if (Long.bitCount(set) > 1) {
+			this.joinClasses.add(members);
+			this.joinSets.add(set);
+			this.classSets.put(this.classes.find(members.get(0)), set);
+			for (int owner : first.keySet()) {
+				this.neighbours[owner] |= set & ~bit(owner);
+			}
+		}
+	}
+
+	/**
+	 * Sort a compound predicate into the local predicates of the relation
+	 * that owns all of its attributes, or else into the residual predicates,
+	 * as it cannot be used as a join predicate
+	 */
+	private void classifyCompound(Predicate predicate) {
+		Integer owner = null;
+
+		for (Attribute attr : predicate.getAttributes()) {
+			Integer relation = this.owners.get(attr);
+			if (relation == null || (owner != null && owner.intValue() != relation.intValue())) {
+				this.residualPredicates.add(predicate);
+				return;
+			}
+			owner = relation;
+		}
+
+		this.localPredicates.get(owner).add(predicate);
+	}
+
+	/**
+	 * Return the bitset containing only the given relation
+	 * @param relation Index of the relation
+	 * @return Singleton bitset
+	 */
+	public static long bit(int relation) {
+		return 1L << relation;
+	}
+
+	/**
+	 * Return the number of relations in the query
+	 * @return Relation count
+	 */
+	public int getRelationCount() {
+		return this.scans.size();
+	}
+
+	/**
+	 * Return the bitset containing all relations in the query
+	 * @return Bitset of all relations
+	 */
+	public long getAllRelations() {
+		return bit(this.scans.size()) - 1;
+	}
+
+	/**
+	 * Return the scan of the given relation
+	 * @param relation Index of the relation
+	 * @return Scan operator from the canonical plan
+	 */
+	public Scan getScan(int relation) {
+		return this.scans.get(relation);
+	}
+
+	/**
+	 * Return the predicates that refer only to the given relation
+	 * @param relation Index of the relation
+	 * @return Local predicates
+	 */
+	public List<Predicate> getLocalPredicates(int relation) {
+		return this.localPredicates.get(relation);
+	}
+
+	/**
+	 * Return the predicates whose attributes could not be located in any
+	 * of the scanned relations
+	 * @return Residual predicates
+	 */
+	public List<Predicate> getResidualPredicates() {
+		return this.residualPredicates;
+	}
+
+	/**
+	 * Return the attributes projected by the query, or null if the query
+	 * has no project operator (SELECT *)
+	 * @return Projected attributes
+	 */
+	public List<Attribute> getProjection() {
+		return this.projection;
+	}
+
+	/**
+	 * Return the attributes that the output of the query is ordered on, or
+	 * null if the query has no sort operator (no ORDER BY)
+	 * @return Sort attributes, most significant first
+	 */
+	public List<Attribute> getOrder() {
+		return this.order;
+	}
+
+	/**
+	 * Return the classes of attributes that are equated by the predicates
+	 * of the query
+	 * @return Equivalence classes
+	 */
+	public EquivalenceClasses getJoinClasses() {
+		return this.classes;
+	}
+
+	/**
+	 * Return the join predicates that connect the two disjoint sets of
+	 * relations: for each class of equated attributes with members on both
+	 * sides, the equality of its first member on the left with its first
+	 * member on the right
+	 * @param left Bitset of relations on one side
+	 * @param right Bitset of relations on the other side
+	 * @return Connecting join predicates
+	 */
+	public List<Predicate> getJoinPredicates(long left, long right) {
+		return getJoinPredicates(left, right, null, null);
+	}
+
+	/**
+	 * Return the join predicates that connect the outputs of plans for two
+	 * disjoint sets of relations: for each class of equated attributes with
+	 * members on both sides, the equality of the member on each side with
+	 * the fewest values in the output of that side. The members on each 
+	 * side are equal, so this is the member whose estimate is closest to
+	 * the values that they all share.
+	 * @param left Bitset of relations on one side
+	 * @param right Bitset of relations on the other side
+	 * @param leftOutput Estimated output of a plan for the left side, or
+	 * null to take the first member of each class
+	 * @param rightOutput Estimated output of a plan for the right side
+	 * @return Connecting join predicates
+	 */
+	public List<Predicate> getJoinPredicates(long left, long right, Relation leftOutput, 
+			Relation rightOutput) {
+		List<Predicate> predicates = new ArrayList<Predicate>();
+
+		for (int i = 0; i < this.joinClasses.size(); i++) {
+			long set = this.joinSets.get(i);
+			if ((set & left) != 0 && (set & right) != 0) {
+				predicates.add(new Predicate(getMember(i, left, leftOutput), getMember(i, right, rightOutput)));
+			}
+		}
+
+		return predicates;
+	}
+
+	/**
+	 * Return the member of a class that belongs to one of a set of 
+	 * relations and has the fewest values in their output, or the first
+	 * such member if the output is not given
+	 */
+	private Attribute getMember(int joinClass, long set, Relation output) {
+		Attribute member = null;
+		long valueCount = Long.MAX_VALUE;
+
+		for (Attribute candidate : this.joinClasses.get(joinClass)) {
+			if ((bit(this.owners.get(candidate)) & set) == 0) {
+				continue;
+			}
+			if (output == null) {
+				return candidate;
+			}
+			long count = output.getAttribute(candidate).getValueCount();
+			if (member == null || count < valueCount) {
+				member = candidate;
+				valueCount = count;
+			}
+		}
+		return member;
+	}
+
+	/**
+	 * Return true if there is at least one join predicate between the two
+	 * disjoint sets of relations
+	 */
+	public boolean isJoined(long left, long right) {
+		return (getNeighbours(left) & right) != 0;
+	}
+
+	/**
+	 * Return true if a class of equated attributes joins a set of relations
+	 * to some relation outside it
+	 * @param set Bitset of relations
+	 * @param key Representative of the class (see EquivalenceClasses.find())
+	 * @return true if the class leaves the set
+	 */
+	public boolean isJoinedOn(long set, Attribute key) {
+		Long classSet = this.classSets.get(key);
+		return classSet != null && (classSet & set) != 0 && (classSet & ~set) != 0;
+	}
+
+	/**
+	 * Return the relations adjacent to (but not in) the given set
+	 * @param set Bitset of relations
+	 * @return Bitset of neighbouring relations
+	 */
+	public long getNeighbours(long set) {
+		long result = 0;
+		long rest = set;
+
+		while (rest != 0) {
+			int relation = Long.numberOfTrailingZeros(rest);
+			result |= this.neighbours[relation];
+			rest &= rest - 1;
+		}
+
+		return result & ~set;
+	}
+
+	/**
+	 * Return true if the given set of relations forms a connected subgraph
+	 * of the join graph
+	 * @param set Bitset of relations
+	 * @return true if connected
+	 */
+	public boolean isConnected(long set) {
+		if (set == 0) {
+			return false;
+		}
+		return getComponent(Long.lowestOneBit(set), set) == set;
+	}
+
+	/**
+	 * Return the connected component within the given set of relations
+	 * that contains the start relations
+	 * @param start Bitset of relations to start from
+	 * @param within Bitset of relations that may be reached
+	 * @return Bitset of the connected component
+	 */
+	public long getComponent(long start, long within) {
+		long reached = start;
+		long frontier = start;
+
+		while (frontier != 0) {
+			long next = getNeighbours(reached) & within & ~reached;
+			reached |= next;
+			frontier = next;
+		}
+
+		return reached;
+	}
+}
@@ -0,0 +1,136 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class is a visitor that computes a normalised textual form of a
+ * query plan, which is used as the key of the plan cache. The relations
+ * scanned and the predicates applied by the plan are sorted, and the
+ * attributes of attr=attr predicates are put in order, so that queries
+ * which differ only in the order of their FROM and WHERE clauses have the
+ * same normalised form. The order of the projected attributes is kept, as
+ * it determines the order of the columns in the result, and so is the
+ * order of the GROUP BY and ORDER BY attributes. The aggregates of a
+ * grouped query are listed with the projected attributes, under the
+ * names of their results, such as SUM(attr).
+ */
+public class QueryNormaliser implements PlanVisitor {
+	private List<String> relations;
+	private List<String> predicates;
+	private List<Attribute> projection;
+	private List<Attribute> grouping;
+	private List<Attribute> order;
+
+	public QueryNormaliser() {
+		this.relations = new ArrayList<String>();
+		this.predicates = new ArrayList<String>();
+		this.projection = null;
+		this.grouping = null;
+		this.order = null;
+	}
+
+	/**
+	 * Return the names of the relations scanned by the visited plan
+	 * @return Relation names, sorted
+	 */
+	public List<String> getRelationNames() {
+		List<String> names = new ArrayList<String>(this.relations);
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Return the normalised form of the visited plan
+	 * @return Normalised query text
+	 */
+	public String getNormalisedQuery() {
+		List<String> preds = new ArrayList<String>(this.predicates);
+		Collections.sort(preds);
+
+		String ret = "SELECT ";
+		if (this.projection == null) {
+			ret += "*";
+		} else {
+			ret += join(this.projection.iterator());
+		}
+		ret += "\nFROM " + join(getRelationNames().iterator());
+		if (!preds.isEmpty()) {
+			ret += "\nWHERE " + join(preds.iterator());
+		}
+		if (this.grouping != null && !this.grouping.isEmpty()) {
+			ret += "\nGROUP BY " + join(this.grouping.iterator());
+		}
+		if (this.order != null) {
+			ret += "\nORDER BY " + join(this.order.iterator());
+		}
+
+		return ret;
+	}
+
+	private String join(Iterator<?> iter) {
+		String ret = iter.next().toString();
+
+		while (iter.hasNext()) {
+			ret += "," + iter.next().toString();
+		}
+
+		return ret;
+	}
+
+	private String normalise(Predicate predicate) {
+		if (predicate.hasValue()) {
+			return predicate.toString();
+		}
+
+		String left = predicate.getLeftAttribute().getName();
+		String right = predicate.getRightAttribute().getName();
+
+		if (left.compareTo(right) > 0) {
+			return right + "=" + left;
+		} else {
+			return left + "=" + right;
+		}
+	}
+
+	public void visit(Scan op) {
+		this.relations.add(op.getRelation().toString());
+	}
+
+	public void visit(IndexScan op) {
+		this.relations.add(op.getRelation().toString());
+		this.predicates.add(normalise(op.getPredicate()));
+	}
+
+	public void visit(Project op) {
+		this.projection = op.getAttributes();
+	}
+
+	public void visit(Select op) {
+		this.predicates.add(normalise(op.getPredicate()));
+	}
+
+	public void visit(Product op) {
+		// no predicate to record
+	}
+
+	public void visit(Join op) {
+		this.predicates.add(normalise(op.getPredicate()));
+	}
+
+	public void visit(Exchange op) {
+		// does not change the query
+	}
+
+	public void visit(Sort op) {
+		this.order = op.getAttributes();
+	}
+
+	public void visit(Aggregate op) {
+		// a project above the aggregate replaces its attributes
+		this.projection = op.getAttributes();
+		this.grouping = op.getGroupBy();
+	}
+}
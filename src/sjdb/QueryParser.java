@@ -5,6 +5,7 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -17,34 +18,163 @@ import java.util.regex.Matcher;
  * SELECT <attribute name>,<attribute name>,...,<attribute name>
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
+ * GROUP BY <attribute name>,<attribute name>,...,<attribute name>
+ * ORDER BY <attribute name>,<attribute name>,...,<attribute name>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
  * <attribute name>="<value>"
+ * <attribute name>=<number>
  * <attribute name>=<attribute name>
+ * <attribute name>=?
+ * <attribute name><comparison><value>
+ * <attribute name><comparison>?
+ * <attribute name> BETWEEN <value> AND <value>
  * 
- * The WHERE line (corresponding to the select operators) is optional and 
- * may be omitted; the other lines are required.
+ * where <comparison> is one of <, <=, >, >= or <>, and the values of 
+ * comparisons may be written with or without quotes. Only equality 
+ * predicates may compare two attributes, so an unquoted value of an
+ * equality must be a decimal number; any other word is an attribute name.
+ * Every attribute compared must belong to one of the FROM relations.
+ * 
+ * Predicates may be combined with AND, OR and NOT, and grouped with 
+ * parentheses, as in a="1" OR (b<2 AND NOT c=d); NOT binds more tightly
+ * than AND, which binds more tightly than OR. Each <predicate> of the 
+ * WHERE line gives a select operator, except that one whose outermost 
+ * connective is AND gives a select for each of its operands, just as if
+ * they had been separated by commas.
+ * 
+ * A ? is a placeholder for a value that is supplied later, when the query
+ * is used as a template (see PreparedQuery). Placeholders are numbered 
+ * from 0 in the order in which they appear.
+ * 
+ * The SELECT line may also list aggregates of the forms COUNT(*), 
+ * SUM(<attribute name>) and AVG(<attribute name>), whose results are 
+ * attributes named as they are written, without spaces. A query with 
+ * aggregates or a GROUP BY line is grouped: its other SELECT attributes 
+ * must be GROUP BY attributes, and it cannot be SELECT *.
+ * 
+ * The WHERE line (corresponding to the select operators), the GROUP BY 
+ * line and the ORDER BY line (corresponding to a sort operator) are 
+ * optional and may be omitted; the other lines are required. Unless the 
+ * query is SELECT *, the ORDER BY attributes must be among the projected 
+ * attributes or the results of the aggregates.
  * 
  * To form the canonical query, a left-deep tree of cartesian
  * products over scans over the named relations is built, following by a series
- * of select with the given predicates, and then a single project 
- * with the given attributes.
+ * of select with the given predicates, then a single project 
+ * with the given attributes, and finally a sort on the ORDER BY attributes.
+ * A grouped query has an aggregate in place of the project, grouping on
+ * the GROUP BY attributes, with a project above it if some of them are
+ * not among the SELECT attributes.
  * 
  * Note that the author of this class was extremely lazy, and so the parsing 
  * is unforgiving and may be sensitive to extraneous whitespace. In particular, 
  * values in predicates that contain spaces (or for that matter commas) will 
  * break the parsing of the WHERE clause.
  * 
+ * A parser created with QueryParser(Catalogue) keeps no per-query state,
+ * and parse(Reader) may be called any number of times, from any number
+ * of threads.
+ * 
  * @author nmg
  */
 public class QueryParser {
+	private static final Pattern VALUE_PREDICATE = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+	private static final String VALUE = "(?:\"([^\"]*)\"|([\\w.+-]+))";
+	private static final Pattern COMPARISON_PREDICATE = 
+			Pattern.compile("(\\w+)\\s*(<=|>=|<>|<|>)\\s*(?:\"([^\"]*)\"|([\\w.+-]+|\\?))");
+	private static final Pattern BETWEEN_PREDICATE = 
+			Pattern.compile("(\\w+)\\s+BETWEEN\\s+" + VALUE + "\\s+AND\\s+" + VALUE);
+	private static final Pattern PARAMETER_PREDICATE = Pattern.compile("(\\w+)=\\?");
+	private static final Pattern NUMBER_PREDICATE = 
+			Pattern.compile("(\\w+)=([+-]?(?:\\d+(?:\\.\\d*)?|\\.\\d+)(?:[eE][+-]?\\d+)?)(?![\\w.])");
+	private static final Pattern ATTRIBUTE_PREDICATE = Pattern.compile("(\\w+)=(\\w+)");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s*");
+	private static final Pattern AGGREGATE = 
+			Pattern.compile("(?:(COUNT)\\s*\\(\\s*\\*|(SUM|AVG)\\s*\\(\\s*(\\w+))\\s*\\)");
+	
+	/**
+	 * The position reached in a WHERE term, and the index of its next
+	 * placeholder, while the term is being parsed
+	 */
+	private static class Term {
+		private String text;
+		private int position;
+		private int parameter;
+		
+		private Term(String text, int parameter) {
+			this.text = text;
+			this.position = 0;
+			this.parameter = parameter;
+		}
+		
+		/**
+		 * Skip any whitespace, then match a pattern at the current 
+		 * position, and move past it if it matches
+		 * @return the matcher, or null if the pattern does not match
+		 */
+		private Matcher match(Pattern pattern) {
+			skip();
+			Matcher m = pattern.matcher(this.text);
+			m.region(this.position, this.text.length());
+			if (!m.lookingAt()) {
+				return null;
+			}
+			this.position = m.end();
+			return m;
+		}
+		
+		/**
+		 * Skip any whitespace, then move past a keyword or symbol if it 
+		 * is next
+		 * @return true if the keyword was found
+		 */
+		private boolean accept(String keyword) {
+			skip();
+			if (!this.text.startsWith(keyword, this.position)) {
+				return false;
+			}
+			int end = this.position + keyword.length();
+			if (Character.isLetter(keyword.charAt(0)) && end < this.text.length() && 
+					Character.isLetterOrDigit(this.text.charAt(end))) {
+				return false;
+			}
+			this.position = end;
+			return true;
+		}
+		
+		private void skip() {
+			Matcher m = WHITESPACE.matcher(this.text);
+			m.region(this.position, this.text.length());
+			m.lookingAt();
+			this.position = m.end();
+		}
+		
+		private boolean atEnd() {
+			skip();
+			return this.position == this.text.length();
+		}
+	}
+	
 	private BufferedReader reader;
 	private Catalogue catalogue;
 
 	/**
-	 * Create a new QueryParser. This class is intended to be used once only;
-	 * repeated calls to parse() may cause unexpected behaviour.
+	 * Create a new reusable QueryParser, which reads each query from the
+	 * input passed to parse(Reader).
+	 * 
+	 * @param catalogue
+	 */
+	public QueryParser(Catalogue catalogue) {
+		this.catalogue = catalogue;
+		this.reader = null;
+	}
+
+	/**
+	 * Create a new QueryParser that reads from the given input. This is 
+	 * intended to be used once only; repeated calls to parse() may cause 
+	 * unexpected behaviour.
 	 * 
 	 * @param catalogue
 	 * @param input
@@ -63,19 +193,49 @@ public class QueryParser {
 	 * @throws Exception
 	 */
 	public Operator parse() throws Exception {
+		return parse(this.reader);
+	}
+	
+	/**
+	 * Read a query from the given input and parse it to create a canonical
+	 * query plan.
+	 * 
+	 * @param input
+	 * @return
+	 * @throws Exception
+	 */
+	public Operator parse(Reader input) throws Exception {
+		BufferedReader reader;
+		if (input instanceof BufferedReader) {
+			reader = (BufferedReader) input;
+		} else {
+			reader = new BufferedReader(input);
+		}
+		
 		Operator product, select, project;
-		String projectLine = this.reader.readLine();
-		String productLine = this.reader.readLine();
-		String selectLine = this.reader.readLine();
+		String projectLine = reader.readLine();
+		String productLine = reader.readLine();
+		String selectLine = reader.readLine();
+		String groupLine = null;
+		String sortLine = selectLine;
 		
 		product = parseProduct(productLine);
 		if (selectLine != null && selectLine.startsWith("WHERE")) {
 			select = parseSelect(selectLine, product); 
-			project = parseProject(projectLine, select);
+			sortLine = reader.readLine();
 		} else {
-			project = parseProject(projectLine, product);
+			select = product;
+		}
+		
+		if (sortLine != null && sortLine.startsWith("GROUP BY")) {
+			groupLine = sortLine;
+			sortLine = reader.readLine();
 		}
+		project = parseProject(projectLine, groupLine, select);
 		
+		if (sortLine != null && sortLine.startsWith("ORDER BY")) {
+			return parseSort(sortLine, project);
+		}
 		return project;
 	}
 	
@@ -141,53 +301,238 @@ public class QueryParser {
 		String[] pred = prds[1].split("\\s*,\\s*");
 		Operator ret = op;
 		
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		collectAttributes(op, attributes);
+		int parameters = 0;
+		
 		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+			Predicate predicate = buildPredicate(pred[i].trim(), parameters);
+			parameters = Math.max(parameters, predicate.maxParameter() + 1);
+			
+			for (Attribute attribute : predicate.getAttributes()) {
+				if (!attributes.contains(attribute)) {
+					throw new IllegalArgumentException("Unknown attribute " + 
+							attribute.getName() + " in " + pred[i].trim());
+				}
+			}
+			
+			if (predicate.getConnective() == Predicate.Connective.AND) {
+				for (Predicate operand : predicate.getOperands()) {
+					ret = new Select(ret, operand);
+				}
+			} else {
+				ret = new Select(ret, predicate);
+			}
 		}
 		
 		return ret;
 	}
 	
 	/**
-	 * Build a chain of select operators.
-	 * @param pred
+	 * Collect the attributes of the relations scanned by a product tree
 	 * @param op
+	 * @param attributes
+	 */
+	private void collectAttributes(Operator op, List<Attribute> attributes) {
+		if (op instanceof Scan) {
+			attributes.addAll(((Scan) op).getRelation().getAttributes());
+		} else if (op instanceof Product) {
+			collectAttributes(((Product) op).getLeft(), attributes);
+			collectAttributes(((Product) op).getRight(), attributes);
+		}
+	}
+	
+	/**
+	 * Build the predicate of a WHERE term, which may combine predicates
+	 * with AND, OR and NOT.
+	 * @param pred
+	 * @param parameter index of the next placeholder
 	 * @return
 	 */
-	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
-		Predicate ret;
+	private Predicate buildPredicate(String pred, int parameter) {
+		Term term = new Term(pred, parameter);
+		Predicate ret = parseDisjunction(term);
 		
-		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
-		} else {
-			String[] atts = pred.split("=");
-			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
+		if (!term.atEnd()) {
+			throw new IllegalArgumentException("Cannot parse predicate at \"" + 
+					pred.substring(term.position) + "\" in " + pred);
+		}
+		return ret;
+	}
+	
+	private Predicate parseDisjunction(Term term) {
+		List<Predicate> operands = new ArrayList<Predicate>();
+		operands.add(parseConjunction(term));
+		while (term.accept("OR")) {
+			operands.add(parseConjunction(term));
+		}
+		return Predicate.or(operands);
+	}
+	
+	private Predicate parseConjunction(Term term) {
+		List<Predicate> operands = new ArrayList<Predicate>();
+		operands.add(parseNegation(term));
+		while (term.accept("AND")) {
+			operands.add(parseNegation(term));
+		}
+		return Predicate.and(operands);
+	}
+	
+	private Predicate parseNegation(Term term) {
+		if (term.accept("NOT")) {
+			return Predicate.not(parseNegation(term));
+		}
+		if (term.accept("(")) {
+			Predicate ret = parseDisjunction(term);
+			if (!term.accept(")")) {
+				throw new IllegalArgumentException("Missing ) in " + term.text);
+			}
+			return ret;
 		}
+		return parseComparison(term);
+	}
+	
+	/**
+	 * Parse a single comparison, such as attr="value" or attr=attr
+	 * @param term
+	 * @return
+	 */
+	private Predicate parseComparison(Term term) {
+		Matcher m;
 		
-		return new Select(op, ret);
+		if ((m = term.match(BETWEEN_PREDICATE)) != null) {
+			return new Predicate(new Attribute(m.group(1)), 
+					m.group(2) != null ? m.group(2) : m.group(3),
+					m.group(4) != null ? m.group(4) : m.group(5));
+		} else if ((m = term.match(COMPARISON_PREDICATE)) != null) {
+			Attribute attr = new Attribute(m.group(1));
+			Predicate.Comparison cmp = Predicate.Comparison.fromSymbol(m.group(2));
+			if (m.group(3) != null) {
+				return new Predicate(attr, cmp, m.group(3));
+			} else if (m.group(4).equals("?")) {
+				return new Predicate(attr, cmp, term.parameter++);
+			} else {
+				return new Predicate(attr, cmp, m.group(4));
+			}
+		} else if ((m = term.match(VALUE_PREDICATE)) != null) {
+			return new Predicate(new Attribute(m.group(1)), m.group(2));
+		} else if ((m = term.match(PARAMETER_PREDICATE)) != null) {
+			return new Predicate(new Attribute(m.group(1)), term.parameter++);
+		} else if ((m = term.match(NUMBER_PREDICATE)) != null) {
+			return new Predicate(new Attribute(m.group(1)), m.group(2));
+		} else if ((m = term.match(ATTRIBUTE_PREDICATE)) != null) {
+			return new Predicate(new Attribute(m.group(1)), new Attribute(m.group(2)));
+		}
+		
+		throw new IllegalArgumentException("Cannot parse predicate at \"" + 
+				term.text.substring(term.position) + "\" in " + term.text);
 	}
 	
 	/**
-	 * Parse a "SELECT ..." line and build the corresponding project operator.
+	 * Parse an "ORDER BY ..." line and build the corresponding sort operator.
 	 * @param line
 	 * @param op
 	 * @return
 	 */
-	private Operator parseProject(String line, Operator op) {
+	private Operator parseSort(String line, Operator op) {
+		String[] atts = line.split("ORDER BY\\s+");
+		String[] attr = atts[1].split("\\s*,\\s*");
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+
+		for (int i=0; i<attr.length; i++) {
+			Attribute attribute = new Attribute(attr[i].trim());
+			if ((op instanceof Project && !((Project) op).getAttributes().contains(attribute)) ||
+					(op instanceof Aggregate && !((Aggregate) op).getAttributes().contains(attribute))) {
+				throw new IllegalArgumentException("ORDER BY attribute " + 
+						attribute.getName() + " is not projected");
+			}
+			attributes.add(attribute);
+		}
+
+		return new Sort(op, attributes);
+	}
+	
+	/**
+	 * Parse a "SELECT ..." line and build the corresponding project operator,
+	 * or the aggregate of a grouped query.
+	 * @param line
+	 * @param groupLine "GROUP BY ..." line, or null
+	 * @param op
+	 * @return
+	 */
+	private Operator parseProject(String line, String groupLine, Operator op) {
 		String[] atts = line.split("SELECT\\s+");		
 		if (atts[1].trim().equals("*")) {
+			if (groupLine != null) {
+				throw new IllegalArgumentException("SELECT * cannot be grouped");
+			}
 			return op;
 		} else {
 			String[] attr = atts[1].split("\\s*,\\s*");
 			ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+			ArrayList<AggregateFunction> functions = new ArrayList<AggregateFunction>();
 
 			for (int i=0; i<attr.length; i++) {
-				attributes.add(new Attribute(attr[i].trim()));
+				Matcher m = AGGREGATE.matcher(attr[i].trim());
+				if (!m.matches()) {
+					attributes.add(new Attribute(attr[i].trim()));
+				} else if (m.group(1) != null) {
+					functions.add(new AggregateFunction(AggregateFunction.Kind.COUNT, null));
+				} else {
+					functions.add(new AggregateFunction(AggregateFunction.Kind.valueOf(m.group(2)), 
+							new Attribute(m.group(3))));
+				}
 			}
 
-			return new Project(op, attributes);
+			if (functions.isEmpty() && groupLine == null) {
+				return new Project(op, attributes);
+			}
+			return parseAggregate(groupLine, attributes, functions, op);
+		}
+	}
+	
+	/**
+	 * Parse a "GROUP BY ..." line and build the aggregate of a grouped query,
+	 * with a project above it if not all the grouping attributes are selected
+	 * @param line "GROUP BY ..." line, or null if the query has only aggregates
+	 * @param attributes Attributes of the SELECT line
+	 * @param functions Aggregates of the SELECT line
+	 * @param op
+	 * @return
+	 */
+	private Operator parseAggregate(String line, List<Attribute> attributes, 
+			List<AggregateFunction> functions, Operator op) {
+		ArrayList<Attribute> groupBy = new ArrayList<Attribute>();
+		if (line != null) {
+			String[] atts = line.split("GROUP BY\\s+");
+			String[] attr = atts[1].split("\\s*,\\s*");
+			
+			for (int i=0; i<attr.length; i++) {
+				groupBy.add(new Attribute(attr[i].trim()));
+			}
+		}
+		
+		for (Attribute attribute : attributes) {
+			if (!groupBy.contains(attribute)) {
+				throw new IllegalArgumentException("SELECT attribute " + 
+						attribute.getName() + " is not in GROUP BY");
+			}
+		}
+		
+		// an aggregate listed twice is computed once
+		ArrayList<AggregateFunction> distinct = new ArrayList<AggregateFunction>();
+		ArrayList<Attribute> projected = new ArrayList<Attribute>(attributes);
+		for (AggregateFunction function : functions) {
+			if (!projected.contains(function.getOutput())) {
+				distinct.add(function);
+				projected.add(function.getOutput());
+			}
+		}
+		
+		Operator aggregate = new Aggregate(op, groupBy, distinct);
+		if (attributes.containsAll(groupBy)) {
+			return aggregate;
 		}
+		return new Project(aggregate, projected);
 	}
 }
\ No newline at end of file
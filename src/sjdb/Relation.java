@@ -6,18 +6,20 @@ import java.util.ArrayList;
 
 /**
  * The Relation class represents an unnamed relation. It consists of a 
- * number of attributes and a size (tuple count).
+ * number of attributes and a size (tuple count). Tuple counts are 64-bit,
+ * so that the estimated sizes of products of large relations can be
+ * represented; see Estimator for the saturating arithmetic used on them.
  * 
  * @author nmg
  */
 public class Relation {
 	private List<Attribute> attributes;
-	private int size;
+	private long size;
 
 	/**
 	 * Create a new relation with the given tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
 	}
@@ -56,7 +58,7 @@ public class Relation {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute, this.size));
 		} else {
 			this.attributes.add(attribute);	
 		}
@@ -67,7 +69,7 @@ public class Relation {
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
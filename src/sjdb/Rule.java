@@ -0,0 +1,16 @@
+package sjdb;
+
+/**
+ * This is an interface for a transformation rule of the rule-based
+ * optimiser. A rule matches a logical expression in the memo and adds the
+ * equivalent expressions that it derives from it to the memo.
+ */
+public interface Rule {
+	/**
+	 * Apply this rule to an expression in the memo.
+	 * @param expression Expression to be transformed
+	 * @param memo Memo containing the expression
+	 * @return true if any new expression was added to the memo
+	 */
+	public boolean apply(MemoExpression expression, Memo memo);
+}
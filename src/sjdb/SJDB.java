@@ -5,6 +5,35 @@ package sjdb;
 import java.io.*;
 
 /**
+ * Usage:
+ * 
+ * java sjdb.SJDB <catalogue file>
+ *   reads a single query from stdin and prints its canonical and 
+ *   optimised plans
+ *   
+ * java sjdb.SJDB <catalogue file> -execute [-vector] [-parallel <n>] [<data directory>]
+ *   as above, and then executes both plans, reporting the number of
+ *   tuples each produces and the time taken; the tuples of each relation
+ *   R are read from R.col or R.csv in the data directory, or generated 
+ *   from the catalogue statistics if no directory is given. With -vector, plans
+ *   are executed in column batches rather than a tuple at a time. With
+ *   -parallel, the optimised plan executes large scans and hash joins
+ *   with n worker threads
+ *   
+ * java sjdb.SJDB <catalogue file> -store <data directory>
+ *   converts the tuples of each relation R from R.csv in the data 
+ *   directory to the columnar file R.col
+ *   
+ * java sjdb.SJDB <catalogue file> -batch [-threads <n>] [-out <file>] [<query file>]
+ *   reads queries separated by blank lines from the query file (or stdin)
+ *   and optimises them with a pool of worker threads, writing the results
+ *   to the output file (or stdout) in order
+ *   
+ * java sjdb.SJDB <catalogue file> -batch -stress <rounds> [-threads <n>] [<query file>]
+ *   optimises each query once on a single thread and then the given 
+ *   number of times concurrently with a shared optimiser, reporting any 
+ *   result that differs; exits with status 1 if there are differences
+ *   
  * @author nmg
  *
  */
@@ -20,6 +49,16 @@ public class SJDB {
 		CatalogueParser catParser = new CatalogueParser(catFile, cat);
 		catParser.parse();
 		
+		if (args.length > 1 && args[1].equals("-batch")) {
+			runBatch(cat, args);
+			return;
+		}
+		
+		if (args.length > 2 && args[1].equals("-store")) {
+			store(cat, new File(args[2]));
+			return;
+		}
+		
 		// read stdin, parse, and build canonical query plan
 		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
 		Operator plan = queryParser.parse();
@@ -33,8 +72,26 @@ public class SJDB {
 		System.out.println(output.getTupleCount());
 		System.out.println(output.getAttributes());
 		
+		// read the execution options
+		boolean execute = args.length > 1 && args[1].equals("-execute");
+		boolean vector = false;
+		int degree = 1;
+		TupleSource source = new SyntheticTupleSource();
+		for (int i = 2; execute && i < args.length; i++) {
+			if (args[i].equals("-vector")) {
+				vector = true;
+			} else if (args[i].equals("-parallel")) {
+				degree = Integer.parseInt(args[++i]);
+			} else {
+				File directory = new File(args[i]);
+				StoredTupleSource.attachAll(cat, directory);
+				source = new StoredTupleSource(cat, new FileTupleSource(directory));
+			}
+		}
+		
 		//create optimised plan
-		Optimiser opt = new Optimiser(cat);
+		Optimiser opt = new Optimiser(cat, Optimiser.Strategy.DYNAMIC, JoinEnumerator.Shape.BUSHY, 
+				new JoinPlanner(), new ParallelPlanner(degree));
 		Operator optPlan = opt.optimise(plan);
 		
 		//print optimised plan stats
@@ -44,6 +101,90 @@ public class SJDB {
 		output = plan.getOutput();
 		System.out.println(output.getTupleCount());
 		System.out.println(output.getAttributes());
+		
+		if (execute) {
+			System.out.println();
+			execute("Canonical plan", plan, source, vector);
+			execute("Optimised plan", optPlan, source, vector);
+		}
+	}
+	
+	/**
+	 * Execute a plan and report its output tuple count and run time
+	 * @param label
+	 * @param plan
+	 * @param source
+	 * @param vector true to execute the plan in column batches
+	 */
+	private static void execute(String label, Operator plan, TupleSource source, boolean vector) 
+			throws Exception {
+		long start = System.nanoTime();
+		long count = vector ? new BatchExecutor(source).count(plan) : new Executor(source).count(plan);
+		double millis = (System.nanoTime() - start) / 1e6;
+		
+		System.out.println(String.format("%s: %d tuples in %.3f ms (%.0f tuples/s)", label, count, 
+				millis, millis == 0 ? 0 : count / (millis / 1000)));
+	}
+	
+	/**
+	 * Convert the text files of the relations in a data directory to 
+	 * columnar files
+	 * @param cat
+	 * @param directory
+	 */
+	private static void store(Catalogue cat, File directory) throws Exception {
+		FileTupleSource source = new FileTupleSource(directory);
+		File[] files = directory.listFiles();
+		
+		for (int i = 0; files != null && i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.endsWith(".csv")) {
+				NamedRelation reln = cat.getRelation(name.substring(0, name.length() - 4));
+				File file = new File(directory, reln.getName() + ColumnFile.EXTENSION);
+				long count = ColumnFile.write(file, reln, source.scan(reln));
+				System.out.println(String.format("%s: %d tuples, %d bytes", file, count, file.length()));
+			}
+		}
+	}
+	
+	/**
+	 * Optimise a stream of queries with a BatchRunner
+	 * @param cat
+	 * @param args
+	 */
+	private static void runBatch(Catalogue cat, String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Reader input = new InputStreamReader(System.in);
+		PrintStream output = System.out;
+		int rounds = 0;
+		
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-stress")) {
+				rounds = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-out")) {
+				output = new PrintStream(new FileOutputStream(args[++i]));
+			} else {
+				input = new FileReader(args[i]);
+			}
+		}
+		
+		BatchRunner runner = new BatchRunner(cat, threads);
+		int mismatches = 0;
+		if (rounds > 0) {
+			mismatches = runner.stress(input, rounds, output);
+		} else {
+			runner.run(input, output);
+		}
+		
+		input.close();
+		if (output != System.out) {
+			output.close();
+		}
+		if (mismatches > 0) {
+			System.exit(1);
+		}
 	}
 
 }
@@ -3,6 +3,8 @@
  */
 package sjdb;
 
+import java.util.List;
+
 /**
  * @author nmg
  *
@@ -21,11 +23,40 @@ public class Select extends UnaryOperator {
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#copy(sjdb.Operator)
+	 */
+	protected Operator copy(Operator input) {
+		return new Select(input, this.predicate);
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrder()
+	 */
+	public List<Attribute> getOrder() {
+		return getInput().getOrder();
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrderClasses()
+	 */
+	public List<List<Attribute>> getOrderClasses() {
+		// not cached, as the join below may change its method
+		return getInput().getOrderClasses();
+	}
 	
 	public void accept(PlanVisitor visitor) {
 		super.accept(visitor);
 		visitor.visit(this);
 	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
 	
 	public String toString() {
 		return "SELECT [" + this.predicate.toString() + "] (" + getInput().toString() + ")";
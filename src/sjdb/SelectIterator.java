@@ -0,0 +1,68 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class executes a Select operator, returning the tuples of its input
+ * that satisfy the select predicate. A compound predicate is evaluated over
+ * each tuple in a single pass.
+ */
+public class SelectIterator implements TupleIterator {
+	private TupleIterator input;
+	private Predicate predicate;
+	private int[] columns;
+
+	/**
+	 * Create a new select iterator
+	 * @param input Iterator over the tuples to be filtered
+	 * @param predicate Select predicate
+	 */
+	public SelectIterator(TupleIterator input, Predicate predicate) {
+		this.input = input;
+		this.predicate = predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.input.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		if (this.predicate.hasParameters()) {
+			throw new DatabaseException("Unbound parameter in " + this.predicate);
+		}
+		List<Attribute> attributes = this.predicate.getAttributes();
+		this.columns = new int[attributes.size()];
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i] = Executor.indexOf(getAttributes(), attributes.get(i));
+		}
+		this.input.open();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() throws DatabaseException {
+		String[] tuple;
+
+		while ((tuple = this.input.next()) != null) {
+			if (this.predicate.test(tuple, this.columns)) {
+				return tuple;
+			}
+		}
+
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() throws DatabaseException {
+		this.input.close();
+	}
+}
@@ -0,0 +1,100 @@
+package sjdb;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class represents a Sort operator, which orders the tuples of its
+ * input on the values of a list of attributes, the first of which is the
+ * most significant. Values are ordered as by compare(), which is also
+ * the order in which sort-merge joins produce their output, so a Sort
+ * over a plan that is already in the required order need not reorder
+ * any tuples (see Operator.getOrder()).
+ */
+public class Sort extends UnaryOperator {
+	private List<Attribute> attributes;
+
+	/**
+	 * Create a new sort operator.
+	 * @param input Child operator
+	 * @param attributes Attributes to order the tuples on, most significant first
+	 */
+	public Sort(Operator input, List<Attribute> attributes) {
+		super(input);
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Return the attributes that the tuples are ordered on
+	 * @return Sort attributes, most significant first
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#copy(sjdb.Operator)
+	 */
+	protected Operator copy(Operator input) {
+		return new Sort(input, this.attributes);
+	}
+
+	/**
+	 * Compare two values in the order used by sorts. Decimal numbers come
+	 * before other values and are ordered numerically, as by
+	 * Predicate.compareValues(), and other values are ordered as strings.
+	 * Unlike compareValues(), this is a total order even over a mix of
+	 * numbers and other values, and only equal values compare as equal.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static int compare(String a, String b) {
+		boolean numberA = Predicate.isNumber(a);
+		boolean numberB = Predicate.isNumber(b);
+
+		if (numberA != numberB) {
+			return numberA ? -1 : 1;
+		}
+		return numberA ? Predicate.compareValues(a, b) : a.compareTo(b);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getOrder()
+	 */
+	public List<Attribute> getOrder() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#acceptLocal(sjdb.PlanVisitor)
+	 */
+	public void acceptLocal(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = "SORT [";
+		Iterator<Attribute> iter = this.attributes.iterator();
+
+		ret += iter.next().getName();
+
+		while (iter.hasNext()) {
+			ret += "," + iter.next().getName();
+		}
+		ret += "] (" + getInput().toString() + ")";
+
+		return ret;
+	}
+}
@@ -0,0 +1,84 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class executes a Sort operator. When the iterator is opened, the
+ * tuples of its input are read into memory and sorted on the values of the
+ * sort attributes, as by Sort.compare(). The sort is stable, and takes
+ * linear time over input that is already in order.
+ */
+public class SortIterator implements TupleIterator {
+	private TupleIterator input;
+	private List<Attribute> keys;
+	private List<String[]> tuples;
+	private int position;
+
+	/**
+	 * Create a new sort iterator
+	 * @param input Iterator over the tuples to be sorted
+	 * @param keys Attributes to sort on, most significant first
+	 */
+	public SortIterator(TupleIterator input, List<Attribute> keys) {
+		this.input = input;
+		this.keys = keys;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.input.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		final int[] columns = new int[this.keys.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = Executor.indexOf(getAttributes(), this.keys.get(i));
+		}
+
+		this.tuples = new ArrayList<String[]>();
+		this.input.open();
+		String[] tuple;
+		while ((tuple = this.input.next()) != null) {
+			this.tuples.add(tuple);
+		}
+		this.input.close();
+
+		Collections.sort(this.tuples, new Comparator<String[]>() {
+			public int compare(String[] a, String[] b) {
+				for (int column : columns) {
+					int cmp = Sort.compare(a[column], b[column]);
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				return 0;
+			}
+		});
+		this.position = 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() {
+		if (this.position == this.tuples.size()) {
+			return null;
+		}
+		return this.tuples.get(this.position++);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() {
+		this.tuples = null;
+	}
+}
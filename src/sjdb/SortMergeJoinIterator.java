@@ -0,0 +1,156 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class executes a Join operator as a sort-merge join. When the
+ * iterator is opened, the tuples of both inputs are read and sorted on
+ * their join attribute values; the sorted inputs are then merged, and each
+ * group of left tuples is combined with the group of right tuples that has
+ * the same join attribute value. Values are ordered as by Sort.compare(),
+ * so the output is in the order of a Sort on the join attributes.
+ */
+public class SortMergeJoinIterator implements TupleIterator {
+	private TupleIterator left;
+	private TupleIterator right;
+	private Predicate predicate;
+	private List<Attribute> attributes;
+	private int leftKey;
+	private int rightKey;
+	private List<String[]> leftTuples;
+	private List<String[]> rightTuples;
+	// positions of the next unmerged tuples
+	private int leftPosition;
+	private int rightPosition;
+	// the current groups of tuples with equal values, and the next pair
+	private int leftGroupEnd;
+	private int rightGroupStart;
+	private int rightGroupEnd;
+	private int leftMatch;
+	private int rightMatch;
+
+	/**
+	 * Create a new sort-merge join iterator
+	 * @param left Iterator over the left input
+	 * @param right Iterator over the right input
+	 * @param predicate Join predicate
+	 */
+	public SortMergeJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+		this.left = left;
+		this.right = right;
+		this.predicate = predicate;
+		this.attributes = new ArrayList<Attribute>();
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#getAttributes()
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#open()
+	 */
+	public void open() throws DatabaseException {
+		int[] keys = Executor.joinKeys(this.left.getAttributes(), this.right.getAttributes(), this.predicate);
+		this.leftKey = keys[0];
+		this.rightKey = keys[1];
+
+		this.leftTuples = sort(this.left, this.leftKey);
+		this.rightTuples = sort(this.right, this.rightKey);
+		this.leftPosition = 0;
+		this.rightPosition = 0;
+		this.leftMatch = 0;
+		this.leftGroupEnd = 0;
+	}
+
+	/**
+	 * Read the tuples of an input, sorted on the given attribute
+	 */
+	private static List<String[]> sort(TupleIterator input, final int key) throws DatabaseException {
+		List<String[]> tuples = new ArrayList<String[]>();
+
+		input.open();
+		String[] tuple;
+		while ((tuple = input.next()) != null) {
+			tuples.add(tuple);
+		}
+		input.close();
+
+		Collections.sort(tuples, new Comparator<String[]>() {
+			public int compare(String[] a, String[] b) {
+				return Sort.compare(a[key], b[key]);
+			}
+		});
+
+		return tuples;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#next()
+	 */
+	public String[] next() {
+		if (this.leftMatch == this.leftGroupEnd && !nextGroup()) {
+			return null;
+		}
+
+		String[] ret = ProductIterator.concatenate(this.leftTuples.get(this.leftMatch),
+				this.rightTuples.get(this.rightMatch));
+
+		if (++this.rightMatch == this.rightGroupEnd) {
+			this.rightMatch = this.rightGroupStart;
+			this.leftMatch++;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Advance to the next pair of groups of left and right tuples with
+	 * equal join attribute values
+	 * @return false if there are no more such groups
+	 */
+	private boolean nextGroup() {
+		while (this.leftPosition < this.leftTuples.size() && this.rightPosition < this.rightTuples.size()) {
+			String leftValue = this.leftTuples.get(this.leftPosition)[this.leftKey];
+			int cmp = Sort.compare(leftValue, this.rightTuples.get(this.rightPosition)[this.rightKey]);
+
+			if (cmp < 0) {
+				this.leftPosition++;
+			} else if (cmp > 0) {
+				this.rightPosition++;
+			} else {
+				this.leftMatch = this.leftPosition;
+				this.rightMatch = this.rightPosition;
+				this.rightGroupStart = this.rightPosition;
+				while (this.leftPosition < this.leftTuples.size() &&
+						this.leftTuples.get(this.leftPosition)[this.leftKey].equals(leftValue)) {
+					this.leftPosition++;
+				}
+				while (this.rightPosition < this.rightTuples.size() &&
+						this.rightTuples.get(this.rightPosition)[this.rightKey].equals(leftValue)) {
+					this.rightPosition++;
+				}
+				this.leftGroupEnd = this.leftPosition;
+				this.rightGroupEnd = this.rightPosition;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleIterator#close()
+	 */
+	public void close() {
+		this.leftTuples = null;
+		this.rightTuples = null;
+	}
+}
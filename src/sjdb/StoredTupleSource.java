@@ -0,0 +1,93 @@
+package sjdb;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * This class reads the tuples of named relations from the columnar files
+ * attached to them in a Catalogue. The tuples of relations without an
+ * attached file are read from another source, if one is given.
+ */
+public class StoredTupleSource implements TupleSource {
+	private Catalogue catalogue;
+	private TupleSource fallback;
+
+	/**
+	 * Create a tuple source over the files attached in a catalogue
+	 * @param catalogue
+	 */
+	public StoredTupleSource(Catalogue catalogue) {
+		this(catalogue, null);
+	}
+
+	/**
+	 * Create a tuple source over the files attached in a catalogue
+	 * @param catalogue
+	 * @param fallback Source of the tuples of relations without a file, or null
+	 */
+	public StoredTupleSource(Catalogue catalogue, TupleSource fallback) {
+		this.catalogue = catalogue;
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Attach the columnar files in a directory to the named relations of a
+	 * catalogue; the tuples of relation R are stored in the file R.col
+	 * @param catalogue
+	 * @param directory
+	 * @return Number of files attached
+	 */
+	public static int attachAll(Catalogue catalogue, File directory) throws DatabaseException {
+		File[] files = directory.listFiles();
+		int attached = 0;
+
+		for (int i = 0; files != null && i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.endsWith(ColumnFile.EXTENSION)) {
+				String relName = name.substring(0, name.length() - ColumnFile.EXTENSION.length());
+				catalogue.attachFile(relName, new ColumnFile(files[i]));
+				attached++;
+			}
+		}
+
+		return attached;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleSource#scan(sjdb.NamedRelation)
+	 */
+	public TupleIterator scan(final NamedRelation relation) {
+		if (this.fallback != null && this.catalogue.getFile(relation.getName()) == null) {
+			return this.fallback.scan(relation);
+		}
+
+		// the file is looked up when the scan is opened, not when it is built
+		return new TupleIterator() {
+			private TupleIterator tuples;
+
+			public List<Attribute> getAttributes() {
+				return relation.getAttributes();
+			}
+
+			public void open() throws DatabaseException {
+				ColumnFile file = catalogue.getFile(relation.getName());
+				if (file == null) {
+					throw new DatabaseException("No file attached to named relation " + relation.getName());
+				}
+				this.tuples = file.scan(relation);
+				this.tuples.open();
+			}
+
+			public String[] next() throws DatabaseException {
+				return this.tuples.next();
+			}
+
+			public void close() throws DatabaseException {
+				if (this.tuples != null) {
+					this.tuples.close();
+					this.tuples = null;
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,70 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class generates the tuples of named relations from their statistics
+ * in the catalogue, so that plans can be executed without stored data.
+ * Each relation has exactly its catalogued number of tuples, and each
+ * attribute takes the values "v0", "v1", ... up to its catalogued value
+ * count, uniformly. An attribute with n values and a key attribute with m
+ * values, n <= m, therefore join as the Estimator assumes: every value of
+ * the first attribute matches one tuple of the second.
+ *
+ * Tuples are generated as they are read; nothing is stored.
+ */
+public class SyntheticTupleSource implements TupleSource {
+
+	public SyntheticTupleSource() {
+		// empty constructor
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.TupleSource#scan(sjdb.NamedRelation)
+	 */
+	public TupleIterator scan(final NamedRelation relation) {
+		return new TupleIterator() {
+			private long[] valueCounts;
+			private long[] offsets;
+			private long row;
+
+			public List<Attribute> getAttributes() {
+				return relation.getAttributes();
+			}
+
+			public void open() {
+				List<Attribute> attributes = relation.getAttributes();
+				this.valueCounts = new long[attributes.size()];
+				this.offsets = new long[attributes.size()];
+
+				for (int i = 0; i < attributes.size(); i++) {
+					long values = attributes.get(i).getValueCount();
+					this.valueCounts[i] = values > 0 ? values : Math.max(1, relation.getTupleCount());
+					// start each attribute at a different value, so that
+					// attributes with equal value counts are not identical
+					this.offsets[i] = (attributes.get(i).getName().hashCode() & Integer.MAX_VALUE) %
+							this.valueCounts[i];
+				}
+				this.row = 0;
+			}
+
+			public String[] next() {
+				if (this.row >= relation.getTupleCount()) {
+					return null;
+				}
+
+				String[] tuple = new String[this.valueCounts.length];
+				for (int i = 0; i < tuple.length; i++) {
+					tuple[i] = "v" + ((this.row + this.offsets[i]) % this.valueCounts[i]);
+				}
+				this.row++;
+
+				return tuple;
+			}
+
+			public void close() {
+				this.valueCounts = null;
+			}
+		};
+	}
+}
@@ -0,0 +1,185 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * This class is an in-memory index over an attribute of a named relation,
+ * which maps each value of the attribute to the tuples of the relation
+ * that have that value. The index is built by scanning the relation the
+ * first time it is used.
+ *
+ * A hash index looks up single values. A B+tree index keeps the values in
+ * the order of Sort.compare(), and also looks up the values that satisfy
+ * a range comparison, returning their tuples in that order. Since
+ * Predicate.compareValues() compares numbers numerically only with other
+ * numbers, numbers and other values are kept apart, and the range of each
+ * is found separately.
+ */
+public class TupleIndex {
+	private NamedRelation relation;
+	private Attribute attribute;
+	private Index.Type type;
+	private TupleSource source;
+	private Map<String, List<String[]>> entries;
+	private NavigableMap<String, List<String[]>> numbers;
+	private NavigableMap<String, List<String[]>> others;
+
+	/**
+	 * Create a hash index over an attribute of a named relation
+	 * @param relation Named relation to be indexed
+	 * @param attribute Indexed attribute
+	 * @param source Source of the tuples of the relation
+	 */
+	public TupleIndex(NamedRelation relation, Attribute attribute, TupleSource source) {
+		this(relation, attribute, Index.Type.HASH, source);
+	}
+
+	/**
+	 * Create an index of the given type over an attribute of a named relation
+	 * @param relation Named relation to be indexed
+	 * @param attribute Indexed attribute
+	 * @param type Kind of index
+	 * @param source Source of the tuples of the relation
+	 */
+	public TupleIndex(NamedRelation relation, Attribute attribute, Index.Type type, TupleSource source) {
+		this.relation = relation;
+		this.attribute = attribute;
+		this.type = type;
+		this.source = source;
+	}
+
+	/**
+	 * Return the indexed named relation
+	 * @return
+	 */
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the indexed attribute
+	 * @return
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Build the index, if it has not been built already
+	 */
+	public synchronized void build() throws DatabaseException {
+		if (this.entries != null) {
+			return;
+		}
+
+		TupleIterator tuples = this.source.scan(this.relation);
+		Map<String, List<String[]>> entries = HashJoinIterator.buildTable(tuples,
+				Executor.indexOf(this.relation.getAttributes(), this.attribute));
+
+		if (this.type == Index.Type.BTREE) {
+			this.numbers = new TreeMap<String, List<String[]>>(new Comparator<String>() {
+				public int compare(String a, String b) {
+					return Sort.compare(a, b);
+				}
+			});
+			this.others = new TreeMap<String, List<String[]>>();
+			for (Map.Entry<String, List<String[]>> entry : entries.entrySet()) {
+				(Predicate.isNumber(entry.getKey()) ? this.numbers : this.others).put(entry.getKey(),
+						entry.getValue());
+			}
+		}
+		this.entries = entries;
+	}
+
+	/**
+	 * Return the tuples of the relation with the given attribute value
+	 * @param value
+	 * @return Matching tuples, in the order of the relation's attributes
+	 */
+	public List<String[]> lookup(String value) throws DatabaseException {
+		build();
+		List<String[]> tuples = this.entries.get(value);
+		return tuples == null ? Collections.<String[]>emptyList() : tuples;
+	}
+
+	/**
+	 * Return the tuples of the relation whose attribute values satisfy a
+	 * comparison with a value, which for a hash index must be an equality
+	 * @param predicate Comparison of the indexed attribute with a value
+	 * @return Matching tuples, in the order of the relation's attributes;
+	 * for a B+tree index, in the order of their attribute values
+	 */
+	public List<String[]> lookup(Predicate predicate) throws DatabaseException {
+		if (predicate.getComparison() == Predicate.Comparison.EQUALS) {
+			return lookup(predicate.getRightValue());
+		}
+		if (this.type != Index.Type.BTREE) {
+			throw new DatabaseException("A hash index cannot look up " + predicate);
+		}
+
+		build();
+		String lower = null;
+		String upper = null;
+		switch (predicate.getComparison()) {
+		case LESS:
+		case LESS_OR_EQUAL:
+			upper = predicate.getRightValue();
+			break;
+		case GREATER:
+		case GREATER_OR_EQUAL:
+			lower = predicate.getRightValue();
+			break;
+		case BETWEEN:
+			lower = predicate.getRightValue();
+			upper = predicate.getUpperValue();
+			break;
+		default:
+			break;
+		}
+
+		List<String[]> tuples = new ArrayList<String[]>();
+		// numbers are ordered numerically, but compared with other values
+		// as strings, so the range only narrows them if its bounds are numbers
+		if ((lower == null || Predicate.isNumber(lower)) && (upper == null || Predicate.isNumber(upper))) {
+			addRange(tuples, this.numbers, lower, upper, predicate);
+		} else {
+			addRange(tuples, this.numbers, null, null, predicate);
+		}
+		addRange(tuples, this.others, lower, upper, predicate);
+
+		return tuples;
+	}
+
+	/**
+	 * Add the tuples of the values between two inclusive bounds that satisfy
+	 * a predicate, in the order of the values
+	 */
+	private static void addRange(List<String[]> tuples, NavigableMap<String, List<String[]>> values,
+			String lower, String upper, Predicate predicate) {
+		Comparator<? super String> order = values.comparator();
+		if (lower != null && upper != null &&
+				(order == null ? lower.compareTo(upper) : order.compare(lower, upper)) > 0) {
+			return;
+		}
+
+		NavigableMap<String, List<String[]>> range = values;
+		if (lower != null) {
+			range = range.tailMap(lower, true);
+		}
+		if (upper != null) {
+			range = range.headMap(upper, true);
+		}
+
+		for (Map.Entry<String, List<String[]>> entry : range.entrySet()) {
+			if (predicate.test(entry.getKey())) {
+				tuples.addAll(entry.getValue());
+			}
+		}
+	}
+}
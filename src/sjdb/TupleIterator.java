@@ -0,0 +1,34 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This is an interface for the iterators that execute a query plan. Each
+ * operator in a plan is executed by an iterator that pulls tuples from the
+ * iterators for its inputs, one at a time, between calls to open() and
+ * close(). An iterator may be opened again after it has been closed.
+ *
+ * A tuple is an array of attribute values, in the order of the attributes
+ * returned by getAttributes(). Tuples returned by next() must not be
+ * modified by the caller.
+ */
+public interface TupleIterator {
+	/**
+	 * Return the attributes of the tuples produced by this iterator
+	 * @return Attributes, in the order of the values in each tuple
+	 */
+	public List<Attribute> getAttributes();
+	/**
+	 * Prepare to produce tuples, opening any inputs
+	 */
+	public void open() throws DatabaseException;
+	/**
+	 * Return the next tuple
+	 * @return Next tuple, or null if there are no more tuples
+	 */
+	public String[] next() throws DatabaseException;
+	/**
+	 * Release any resources held by this iterator and its inputs
+	 */
+	public void close() throws DatabaseException;
+}
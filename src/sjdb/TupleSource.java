@@ -0,0 +1,17 @@
+package sjdb;
+
+/**
+ * This is an interface for the sources of the tuples stored in named
+ * relations, which are read by the Scan operators of an executed plan.
+ */
+public interface TupleSource {
+	/**
+	 * Return an iterator over the tuples of a named relation, with values
+	 * in the order of the relation's attributes. The tuples need not be
+	 * available until the iterator is opened, and failures to read them
+	 * are reported by open() or next().
+	 * @param relation Named relation to be scanned
+	 * @return Iterator over the tuples of the relation
+	 */
+	public TupleIterator scan(NamedRelation relation);
+}
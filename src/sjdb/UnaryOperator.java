@@ -3,6 +3,8 @@
  */
 package sjdb;
 
+import java.util.List;
+
 /**
  * @author nmg
  *
@@ -25,6 +27,30 @@ public abstract class UnaryOperator extends Operator {
 		return this.inputs.get(0);
 	}
 
+	/**
+	 * Return this operator over the given input: the operator itself if it
+	 * is its current input, or otherwise a copy (see Operator.withInputs())
+	 * @param input New input
+	 * @return Operator over the input
+	 */
+	public Operator withInput(Operator input) {
+		return input == getInput() ? this : copy(input);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#copy(java.util.List)
+	 */
+	protected Operator copy(List<Operator> inputs) {
+		return copy(inputs.get(0));
+	}
+
+	/**
+	 * Return a copy of this operator over a new input
+	 * @param input New input
+	 * @return Copy of this operator
+	 */
+	protected abstract Operator copy(Operator input);
+
 	/* (non-Javadoc)
 	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
 	 */
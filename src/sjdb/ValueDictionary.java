@@ -0,0 +1,70 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class dictionary-encodes attribute values for batch execution. Each
+ * distinct value is assigned a code, counting up from 0 in the order in
+ * which values are first encoded, so that values can be compared and
+ * hashed as ints, and codes can be used directly as array indexes.
+ *
+ * All the columns of a plan executed in batches share one dictionary, so
+ * equal values in different columns have equal codes.
+ */
+public class ValueDictionary {
+	private HashMap<String, Integer> codes;
+	private List<String> values;
+
+	public ValueDictionary() {
+		this.codes = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+	}
+
+	/**
+	 * Return the code for a value, assigning a new code if the value has
+	 * not been encoded before
+	 * @param value
+	 * @return
+	 */
+	public int encode(String value) {
+		Integer code = this.codes.get(value);
+
+		if (code == null) {
+			code = this.values.size();
+			this.codes.put(value, code);
+			this.values.add(value);
+		}
+
+		return code;
+	}
+
+	/**
+	 * Return the code for a value without assigning one
+	 * @param value
+	 * @return Code, or -1 if the value has not been encoded
+	 */
+	public int lookup(String value) {
+		Integer code = this.codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Return the value for a code
+	 * @param code
+	 * @return
+	 */
+	public String decode(int code) {
+		return this.values.get(code);
+	}
+
+	/**
+	 * Return the number of values encoded so far; all codes are less
+	 * than this.
+	 * @return
+	 */
+	public int size() {
+		return this.values.size();
+	}
+}
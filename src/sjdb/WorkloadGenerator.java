@@ -0,0 +1,329 @@
+package sjdb;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates synthetic catalogues and queries for scale testing.
+ * Everything it generates is determined by the seed it is created with, so
+ * benchmark and regression runs can be reproduced exactly.
+ *
+ * Relation i of a generated catalogue is named Ri, and has a key attribute
+ * ri_id with one value per tuple, followed by a number of other attributes
+ * ri_a0, ri_a1, ... Tuple counts are drawn from a log-uniform distribution,
+ * so there are many small relations and a few very large ones, and the
+ * value count of each non-key attribute is the tuple count raised to a
+ * random power between 0 and 1, ranging from a handful of categories to
+ * almost unique values.
+ *
+ * Generated queries join a random selection of the relations. Their join
+ * graph is a chain, star, cycle or clique, or a chain with a given fraction
+ * of the other possible join predicates; each join predicate equates an
+ * attribute of one relation with the key of the other, and each relation
+ * may also have a selection of the form attr="value".
+ *
+ * Usage:
+ *
+ * java sjdb.WorkloadGenerator [-seed <n>] [-relations <n>] [-catalogue <file>]
+ *     [-queries <file>] [-topology chain|star|cycle|clique] [-size <n>]
+ *     [-count <n>] [-selection <probability>]
+ */
+public class WorkloadGenerator {
+	/**
+	 * The shapes of join graph that generated queries can have
+	 */
+	public enum Topology {
+		/** Each relation is joined with the next */
+		CHAIN,
+		/** The first relation is joined with every other relation */
+		STAR,
+		/** A chain in which the last relation is also joined with the first */
+		CYCLE,
+		/** Every relation is joined with every other relation */
+		CLIQUE
+	}
+
+	/**
+	 * The default smallest and largest tuple counts of generated relations
+	 */
+	public static final int MIN_TUPLES = 10;
+	public static final int MAX_TUPLES = 1000000;
+
+	/**
+	 * The default number of non-key attributes of generated relations
+	 */
+	public static final int ATTRIBUTES = 4;
+
+	private Random random;
+	private int[] tupleCounts;
+	private int[][] valueCounts;
+
+	/**
+	 * Create a generator with a catalogue of the given number of relations
+	 * @param seed Seed that determines everything generated
+	 * @param relations Number of relations in the catalogue
+	 */
+	public WorkloadGenerator(long seed, int relations) {
+		this(seed, relations, ATTRIBUTES, MIN_TUPLES, MAX_TUPLES);
+	}
+
+	/**
+	 * Create a generator with a catalogue of the given shape
+	 * @param seed Seed that determines everything generated
+	 * @param relations Number of relations in the catalogue
+	 * @param attributes Number of non-key attributes per relation
+	 * @param minTuples Smallest tuple count of a relation
+	 * @param maxTuples Largest tuple count of a relation
+	 */
+	public WorkloadGenerator(long seed, int relations, int attributes, int minTuples, int maxTuples) {
+		this.random = new Random(seed);
+		this.tupleCounts = new int[relations];
+		this.valueCounts = new int[relations][attributes];
+
+		double low = Math.log(minTuples);
+		double high = Math.log(maxTuples);
+
+		for (int i = 0; i < relations; i++) {
+			int tuples = (int) Math.round(Math.exp(low + this.random.nextDouble() * (high - low)));
+			this.tupleCounts[i] = tuples;
+
+			for (int j = 0; j < attributes; j++) {
+				int values = (int) Math.round(Math.pow(tuples, this.random.nextDouble()));
+				this.valueCounts[i][j] = Math.max(1, Math.min(tuples, values));
+			}
+		}
+	}
+
+	/**
+	 * Return the number of relations in the generated catalogue
+	 * @return Relation count
+	 */
+	public int getRelationCount() {
+		return this.tupleCounts.length;
+	}
+
+	/**
+	 * Write the generated catalogue in the format read by CatalogueParser
+	 * @param out Writer to write the catalogue to
+	 */
+	public void writeCatalogue(Writer out) {
+		PrintWriter writer = new PrintWriter(out);
+
+		for (int i = 0; i < this.tupleCounts.length; i++) {
+			String line = "R" + i + ":" + this.tupleCounts[i] + ":" + key(i) + "," + this.tupleCounts[i];
+			for (int j = 0; j < this.valueCounts[i].length; j++) {
+				line += ":" + attribute(i, j) + "," + this.valueCounts[i][j];
+			}
+			writer.println(line);
+		}
+
+		writer.flush();
+	}
+
+	/**
+	 * Add the generated relations and attributes to a catalogue
+	 * @param catalogue Catalogue to populate
+	 */
+	public void populate(Catalogue catalogue) {
+		for (int i = 0; i < this.tupleCounts.length; i++) {
+			catalogue.createRelation("R" + i, this.tupleCounts[i]);
+			catalogue.createAttribute("R" + i, key(i), this.tupleCounts[i]);
+			for (int j = 0; j < this.valueCounts[i].length; j++) {
+				catalogue.createAttribute("R" + i, attribute(i, j), this.valueCounts[i][j]);
+			}
+		}
+	}
+
+	/**
+	 * Generate a query with a join graph of the given topology
+	 * @param topology Shape of the join graph
+	 * @param size Number of relations joined by the query
+	 * @param selection Probability that a relation has a selection
+	 * @return Query text in the format read by QueryParser
+	 */
+	public String generateQuery(Topology topology, int size, double selection) {
+		List<int[]> edges = new ArrayList<int[]>();
+
+		for (int i = 0; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				boolean joined;
+				switch (topology) {
+				case CHAIN:
+					joined = j == i + 1;
+					break;
+				case STAR:
+					joined = i == 0;
+					break;
+				case CYCLE:
+					joined = j == i + 1 || (i == 0 && j == size - 1 && size > 2);
+					break;
+				default:
+					joined = true;
+				}
+				if (joined) {
+					edges.add(new int[] { i, j });
+				}
+			}
+		}
+
+		return buildQuery(size, edges, selection);
+	}
+
+	/**
+	 * Generate a query whose join graph is a chain plus the given fraction
+	 * of the other possible join predicates, chosen at random
+	 * @param size Number of relations joined by the query
+	 * @param density Fraction of the non-chain join predicates to include,
+	 * from 0 (a chain) to 1 (a clique)
+	 * @param selection Probability that a relation has a selection
+	 * @return Query text in the format read by QueryParser
+	 */
+	public String generateQuery(int size, double density, double selection) {
+		List<int[]> edges = new ArrayList<int[]>();
+		List<int[]> extra = new ArrayList<int[]>();
+
+		for (int i = 0; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				if (j == i + 1) {
+					edges.add(new int[] { i, j });
+				} else {
+					extra.add(new int[] { i, j });
+				}
+			}
+		}
+
+		Collections.shuffle(extra, this.random);
+		edges.addAll(extra.subList(0, (int) Math.round(density * extra.size())));
+
+		return buildQuery(size, edges, selection);
+	}
+
+	/**
+	 * Build the text of a query over a random selection of relations
+	 * @param size Number of relations
+	 * @param edges Pairs of positions in the FROM clause to be joined
+	 * @param selection Probability that a relation has a selection
+	 */
+	private String buildQuery(int size, List<int[]> edges, double selection) {
+		if (size > this.tupleCounts.length) {
+			throw new IllegalArgumentException("Query over " + size + " relations, but the catalogue has " +
+					this.tupleCounts.length);
+		}
+
+		List<Integer> all = new ArrayList<Integer>();
+		for (int i = 0; i < this.tupleCounts.length; i++) {
+			all.add(i);
+		}
+		Collections.shuffle(all, this.random);
+		List<Integer> chosen = all.subList(0, size);
+
+		List<String> relations = new ArrayList<String>();
+		List<String> predicates = new ArrayList<String>();
+		List<String> projection = new ArrayList<String>();
+
+		for (int rel : chosen) {
+			relations.add("R" + rel);
+			if (this.random.nextDouble() < selection) {
+				int attr = this.random.nextInt(this.valueCounts[rel].length);
+				int value = this.random.nextInt(this.valueCounts[rel][attr]);
+				predicates.add(attribute(rel, attr) + "=\"v" + value + "\"");
+			}
+			if (projection.isEmpty() || this.random.nextInt(4) == 0) {
+				projection.add(key(rel));
+			}
+		}
+
+		for (int[] edge : edges) {
+			int left = chosen.get(edge[0]);
+			int right = chosen.get(edge[1]);
+
+			// join a non-key attribute of one side with the key of the other
+			if (this.random.nextBoolean()) {
+				int swap = left;
+				left = right;
+				right = swap;
+			}
+			int attr = this.random.nextInt(this.valueCounts[left].length);
+			predicates.add(attribute(left, attr) + "=" + key(right));
+		}
+
+		Collections.shuffle(predicates, this.random);
+
+		String query = "SELECT " + join(projection) + "\nFROM " + join(relations) + "\n";
+		if (!predicates.isEmpty()) {
+			query += "WHERE " + join(predicates) + "\n";
+		}
+
+		return query;
+	}
+
+	private static String key(int relation) {
+		return "r" + relation + "_id";
+	}
+
+	private static String attribute(int relation, int attribute) {
+		return "r" + relation + "_a" + attribute;
+	}
+
+	private static String join(List<String> parts) {
+		String ret = parts.get(0);
+		for (int i = 1; i < parts.size(); i++) {
+			ret += "," + parts.get(i);
+		}
+		return ret;
+	}
+
+	public static void main(String[] args) throws Exception {
+		long seed = 1;
+		int relations = 200;
+		String catFile = null;
+		String queryFile = null;
+		Topology topology = Topology.CHAIN;
+		int size = 8;
+		int count = 10;
+		double selection = 0.5;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-relations")) {
+				relations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-catalogue")) {
+				catFile = args[++i];
+			} else if (args[i].equals("-queries")) {
+				queryFile = args[++i];
+			} else if (args[i].equals("-topology")) {
+				topology = Topology.valueOf(args[++i].toUpperCase());
+			} else if (args[i].equals("-size")) {
+				size = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-count")) {
+				count = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-selection")) {
+				selection = Double.parseDouble(args[++i]);
+			}
+		}
+
+		WorkloadGenerator generator = new WorkloadGenerator(seed, relations);
+
+		if (catFile != null) {
+			Writer out = new FileWriter(catFile);
+			generator.writeCatalogue(out);
+			out.close();
+		}
+
+		PrintWriter out = queryFile == null ? new PrintWriter(System.out) :
+				new PrintWriter(new FileWriter(queryFile));
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				out.println();
+			}
+			out.print(generator.generateQuery(topology, size, selection));
+		}
+		out.close();
+	}
+}
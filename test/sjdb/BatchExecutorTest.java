@@ -0,0 +1,130 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Executes plans with the batch executor and the tuple executor over the
+ * same stored tuples, and checks that they produce the same results.
+ * The relations are several batches long, and their values are numbers,
+ * so that ranges, sums and averages are exercised as well as equalities.
+ */
+public class BatchExecutorTest {
+	private static final int EMPLOYEES = 3 * ColumnBatch.SIZE + 17;
+	private static final int DEPARTMENTS = 40;
+
+	private Catalogue cat;
+	private MemoryTupleSource source;
+
+	@Before
+	public void setUp() {
+		this.cat = new Catalogue();
+		this.cat.createRelation("Emp", EMPLOYEES);
+		this.cat.createAttribute("Emp", "eid", EMPLOYEES);
+		this.cat.createAttribute("Emp", "dept", DEPARTMENTS);
+		this.cat.createAttribute("Emp", "salary", 100);
+		this.cat.createRelation("Dept", DEPARTMENTS);
+		this.cat.createAttribute("Dept", "did", DEPARTMENTS);
+		this.cat.createAttribute("Dept", "region", 4);
+		this.cat.createIndex("Emp", "salary", Index.Type.BTREE);
+		this.cat.createIndex("Dept", "did", Index.Type.HASH);
+
+		Random random = new Random(1);
+		this.source = new MemoryTupleSource();
+		for (int i = 0; i < EMPLOYEES; i++) {
+			// some employees belong to departments that do not exist
+			this.source.addTuple("Emp", Integer.toString(i),
+					Integer.toString(random.nextInt(DEPARTMENTS + 5)),
+					Integer.toString(random.nextInt(100) * 10));
+		}
+		for (int i = 0; i < DEPARTMENTS; i++) {
+			this.source.addTuple("Dept", Integer.toString(i), Integer.toString(i % 4));
+		}
+	}
+
+	@Test
+	public void queries() throws Exception {
+		String[] queries = {
+			"SELECT *\nFROM Emp",
+			"SELECT eid,salary\nFROM Emp\nWHERE salary>=500",
+			"SELECT eid\nFROM Emp\nWHERE salary BETWEEN 200 AND 300 OR dept=7",
+			"SELECT eid\nFROM Emp\nWHERE salary=40",
+			"SELECT eid,region\nFROM Emp,Dept\nWHERE dept=did,region=2",
+			"SELECT eid,salary\nFROM Emp\nWHERE salary<100\nORDER BY salary,eid",
+			"SELECT dept,COUNT(*),SUM(salary),AVG(salary)\nFROM Emp\nGROUP BY dept",
+			"SELECT region,COUNT(*),SUM(salary)\nFROM Emp,Dept\nWHERE dept=did\nGROUP BY region\nORDER BY region",
+		};
+		QueryParser parser = new QueryParser(this.cat);
+
+		for (String query : queries) {
+			Operator canonical = parser.parse(new StringReader(query));
+			check(query, canonical);
+			check(query, new Optimiser(this.cat, Optimiser.Strategy.DYNAMIC).optimise(canonical));
+		}
+	}
+
+	@Test
+	public void joinMethods() throws Exception {
+		Attribute dept = this.cat.getAttribute("dept");
+		Attribute did = this.cat.getAttribute("did");
+
+		for (Join.Method method : Join.Method.values()) {
+			for (boolean buildLeft : new boolean[] { false, true }) {
+				Join join = new Join(new Scan(this.cat.getRelation("Emp")),
+						new Scan(this.cat.getRelation("Dept")), new Predicate(dept, did));
+				join.fixMethod(method, buildLeft);
+				check(method + " buildLeft=" + buildLeft, join);
+			}
+		}
+	}
+
+	@Test
+	public void emptyInput() throws Exception {
+		Attribute salary = this.cat.getAttribute("salary");
+		Operator empty = new Select(new Scan(this.cat.getRelation("Emp")), new Predicate(salary, "-1"));
+		List<AggregateFunction> functions = Arrays.asList(
+				new AggregateFunction(AggregateFunction.Kind.COUNT, null));
+
+		check("empty select", empty);
+		check("empty aggregate", new Aggregate(empty, Arrays.asList(salary), functions));
+	}
+
+	/**
+	 * Execute a plan with both executors, and compare their output
+	 */
+	private void check(String label, Operator plan) throws Exception {
+		new Estimator().estimate(plan);
+		List<String> tuples = read(new Executor(this.source).build(plan));
+		List<String> batches = read(new BatchExecutor(this.source).buildTuples(plan));
+
+		if (!(plan instanceof Sort)) {
+			Collections.sort(tuples);
+			Collections.sort(batches);
+		}
+		assertEquals(label + "\n" + plan, tuples, batches);
+		if (!label.startsWith("empty")) {
+			assertFalse(label + " has no output", tuples.isEmpty());
+		}
+	}
+
+	private static List<String> read(TupleIterator iter) throws Exception {
+		List<String> tuples = new ArrayList<String>();
+		iter.open();
+		String[] tuple;
+		while ((tuple = iter.next()) != null) {
+			tuples.add(Arrays.toString(tuple));
+		}
+		iter.close();
+		return tuples;
+	}
+}
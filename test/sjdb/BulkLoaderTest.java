@@ -0,0 +1,140 @@
+package sjdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Loads CSV files, and checks the relations and statistics added to the
+ * catalogue and the tuples copied to the data directory.
+ */
+public class BulkLoaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File input;
+	private File data;
+	private Catalogue cat;
+
+	@Before
+	public void setUp() throws Exception {
+		this.input = this.folder.newFolder("input");
+		this.data = this.folder.newFolder("data");
+		this.cat = new Catalogue();
+	}
+
+	@Test
+	public void load() throws Exception {
+		File emp = csv("Emp", "eid,dept,salary", 20000, new Row() {
+			public String get(int i) {
+				return i + "," + (i % 25) + "," + (i % 7 == 0 ? 100 : i % 1000);
+			}
+		});
+		File dept = csv("Dept", "did,name", 25, new Row() {
+			public String get(int i) {
+				return i + ",d" + i;
+			}
+		});
+
+		List<NamedRelation> relations = new BulkLoader(this.cat, this.data, 2).load(Arrays.asList(emp, dept));
+		assertEquals(2, relations.size());
+		assertEquals("Emp", relations.get(0).getName());
+		assertEquals("Dept", relations.get(1).getName());
+		assertEquals(20000, this.cat.getRelation("Emp").getTupleCount());
+		assertEquals(25, this.cat.getRelation("Dept").getTupleCount());
+
+		// small columns are counted exactly, large ones are estimated
+		assertEquals(25, this.cat.getAttribute("dept").getValueCount());
+		assertEquals(1000, this.cat.getAttribute("salary").getValueCount());
+		assertEquals(25, this.cat.getAttribute("did").getValueCount());
+		long eids = this.cat.getAttribute("eid").getValueCount();
+		assertTrue("estimated " + eids + " of 20000 eids", eids > 19000 && eids <= 20000);
+
+		// the frequent salary is one of the most common values
+		Attribute salary = this.cat.getAttribute("salary");
+		assertEquals(1.0 / 7, salary.getMostCommonValues().getFrequency("100"), 0.02);
+
+		TupleIterator tuples = new FileTupleSource(this.data).scan(this.cat.getRelation("Dept"));
+		tuples.open();
+		for (int i = 0; i < 25; i++) {
+			assertArrayEquals(new String[] { Integer.toString(i), "d" + i }, tuples.next());
+		}
+		assertNull(tuples.next());
+		tuples.close();
+	}
+
+	@Test
+	public void renderedCatalogue() throws Exception {
+		final String[] times = { "10:30", "a;b@c", "1/2%" };
+		File file = csv("T", "t,u", 3000, new Row() {
+			public String get(int i) {
+				return times[i % 3] + "," + (i % 500) + ":" + (i % 60) + "/" + (i % 7);
+			}
+		});
+		NamedRelation relation = new BulkLoader(this.cat, this.data, 2).load(Arrays.asList(file)).get(0);
+		assertNotNull(this.cat.getAttribute("u").getHistogram());
+
+		// the separators in the values are escaped, and read back
+		File catFile = this.folder.newFile("T.cat");
+		Writer out = new FileWriter(catFile);
+		out.write(relation.render() + "\n");
+		out.close();
+		Catalogue parsed = new Catalogue();
+		new CatalogueParser(catFile.getPath(), parsed).parse();
+
+		assertEquals(relation.render(), parsed.getRelation("T").render());
+		assertEquals(2, parsed.getRelation("T").getAttributes().size());
+		MostCommonValues mostCommon = parsed.getAttribute("t").getMostCommonValues();
+		for (String time : times) {
+			assertEquals(time, 1.0 / 3, mostCommon.getFrequency(time), 1e-3);
+		}
+	}
+
+	@Test
+	public void raggedRow() throws Exception {
+		File bad = csv("Bad", "a,b", 3, new Row() {
+			public String get(int i) {
+				return i == 1 ? "1" : i + "," + i;
+			}
+		});
+
+		try {
+			new BulkLoader(this.cat, this.data, 2).load(Arrays.asList(bad));
+			fail("row with a missing value loaded");
+		} catch (DatabaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Bad.csv:3"));
+		}
+	}
+
+	/**
+	 * Produces the rows of a generated CSV file
+	 */
+	private interface Row {
+		public String get(int i);
+	}
+
+	private File csv(String name, String header, int rows, Row row) throws Exception {
+		File file = new File(this.input, name + ".csv");
+		Writer out = new FileWriter(file);
+		out.write(header + "\n");
+		for (int i = 0; i < rows; i++) {
+			out.write(row.get(i) + "\n");
+		}
+		out.close();
+		return file;
+	}
+}
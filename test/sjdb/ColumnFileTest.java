@@ -0,0 +1,126 @@
+package sjdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes relations to columnar files and reads them back.
+ */
+public class ColumnFileTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Catalogue cat;
+	private NamedRelation relation;
+
+	@Before
+	public void setUp() {
+		this.cat = new Catalogue();
+		this.relation = this.cat.createRelation("R", 0);
+		this.cat.createAttribute("R", "a", 0);
+		this.cat.createAttribute("R", "b", 0);
+		this.cat.createAttribute("R", "c", 0);
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		// columns with 1, 2 and 4 byte codes, and values that are empty or not ASCII
+		List<String[]> tuples = new ArrayList<String[]>();
+		for (int i = 0; i < 70000; i++) {
+			tuples.add(new String[] { i % 3 == 0 ? "" : "x\u00e9\u4e2d" + (i % 3),
+					Integer.toString(i % 300), "v" + i });
+		}
+
+		File file = write(tuples);
+		ColumnFile columns = new ColumnFile(file);
+		assertEquals(tuples.size(), columns.getTupleCount());
+		assertEquals(Arrays.asList("a", "b", "c"), columns.getAttributeNames());
+		assertEquals(3, columns.getValueCount(0));
+		assertEquals(300, columns.getValueCount(1));
+		assertEquals(70000, columns.getValueCount(2));
+		assertEquals(tuples.get(12345)[1], columns.getValue(1, columns.getCode(1, 12345)));
+
+		assertTuples(tuples, columns.scan(this.relation));
+		// a second scan reads the same tuples
+		assertTuples(tuples, columns.scan(this.relation));
+	}
+
+	@Test
+	public void emptyRelation() throws Exception {
+		ColumnFile columns = new ColumnFile(write(new ArrayList<String[]>()));
+		assertEquals(0, columns.getTupleCount());
+		assertTuples(new ArrayList<String[]>(), columns.scan(this.relation));
+	}
+
+	@Test
+	public void storedTupleSource() throws Exception {
+		List<String[]> tuples = new ArrayList<String[]>();
+		tuples.add(new String[] { "1", "2", "3" });
+		tuples.add(new String[] { "4", "5", "6" });
+		write(tuples);
+
+		assertEquals(1, StoredTupleSource.attachAll(this.cat, this.folder.getRoot()));
+		assertTuples(tuples, new StoredTupleSource(this.cat).scan(this.relation));
+	}
+
+	@Test
+	public void wrongAttributes() throws Exception {
+		ColumnFile columns = new ColumnFile(write(new ArrayList<String[]>()));
+		Catalogue other = new Catalogue();
+		NamedRelation relation = other.createRelation("R", 0);
+		other.createAttribute("R", "a", 0);
+		other.createAttribute("R", "c", 0);
+
+		try {
+			columns.check(relation);
+			fail("attributes a,b,c accepted for a relation with a,c");
+		} catch (DatabaseException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void notAColumnFile() throws Exception {
+		File file = this.folder.newFile("R" + ColumnFile.EXTENSION);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("a,b,c\n1,2,3\n4,5,6\n".getBytes("UTF-8"));
+		out.close();
+
+		try {
+			new ColumnFile(file);
+			fail("text file opened as a columnar file");
+		} catch (DatabaseException e) {
+			// expected
+		}
+	}
+
+	private File write(List<String[]> tuples) throws Exception {
+		File file = new File(this.folder.getRoot(), "R" + ColumnFile.EXTENSION);
+		MemoryTupleSource source = new MemoryTupleSource();
+		source.setTuples("R", tuples);
+		assertEquals(tuples.size(), ColumnFile.write(file, this.relation, source.scan(this.relation)));
+		return file;
+	}
+
+	private static void assertTuples(List<String[]> expected, TupleIterator iter) throws Exception {
+		iter.open();
+		for (String[] tuple : expected) {
+			assertArrayEquals(tuple, iter.next());
+		}
+		assertNull(iter.next());
+		iter.close();
+	}
+}
@@ -0,0 +1,147 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Optimises the same set of queries from many threads at once, through a
+ * shared Optimiser and through a shared PlanCache, and checks that every
+ * thread gets the plan that a single thread gets.
+ */
+public class ConcurrentOptimiserTest {
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 20;
+
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() {
+		this.pool = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.shutdownNow();
+	}
+
+	@Test
+	public void sharedOptimiserOnSampleQueries() throws Exception {
+		Catalogue cat = catalogue("data/unicat.txt");
+		List<String> queries = readQueries("data/uniqueries.txt");
+
+		for (Optimiser.Strategy strategy : Optimiser.Strategy.values()) {
+			checkOptimiser(cat, new Optimiser(cat, strategy), queries);
+		}
+	}
+
+	@Test
+	public void sharedOptimiserOnGeneratedQueries() throws Exception {
+		WorkloadGenerator generator = new WorkloadGenerator(1, 6);
+		Catalogue cat = new Catalogue();
+		generator.populate(cat);
+		List<String> queries = new ArrayList<String>();
+		for (int size = 2; size <= 6; size++) {
+			queries.add(generator.generateQuery(size, 0.25, 0.5));
+		}
+
+		for (Optimiser.Strategy strategy : Optimiser.Strategy.values()) {
+			checkOptimiser(cat, new Optimiser(cat, strategy), queries);
+		}
+	}
+
+	@Test
+	public void sharedPlanCache() throws Exception {
+		Catalogue cat = catalogue("data/unicat.txt");
+		List<String> queries = readQueries("data/uniqueries.txt");
+		List<String> expected = optimiseAll(cat, new Optimiser(cat), queries);
+
+		final QueryParser parser = new QueryParser(cat);
+		final PlanCache cache = new PlanCache(cat, new Optimiser(cat));
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (final String query : queries) {
+				results.add(this.pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return cache.optimise(parser.parse(new StringReader(query))).toString();
+					}
+				}));
+			}
+		}
+
+		check(expected, results);
+		// threads that miss on the same query at once each optimise it
+		assertEquals(queries.size(), cache.size());
+		assertEquals(results.size(), cache.getHits() + cache.getMisses());
+	}
+
+	/**
+	 * Optimise the queries on the calling thread, then optimise them again
+	 * concurrently with the same optimiser, and compare the plans
+	 */
+	private void checkOptimiser(Catalogue cat, final Optimiser optimiser, List<String> queries)
+			throws Exception {
+		List<String> expected = optimiseAll(cat, optimiser, queries);
+
+		final QueryParser parser = new QueryParser(cat);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (final String query : queries) {
+				results.add(this.pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return optimiser.optimise(parser.parse(new StringReader(query))).toString();
+					}
+				}));
+			}
+		}
+
+		check(expected, results);
+	}
+
+	private void check(List<String> expected, List<Future<String>> results) throws Exception {
+		for (int i = 0; i < results.size(); i++) {
+			int query = i % expected.size();
+			assertEquals("query " + (query + 1) + " in round " + (i / expected.size() + 1),
+					expected.get(query), results.get(i).get());
+		}
+	}
+
+	private static List<String> optimiseAll(Catalogue cat, Optimiser optimiser, List<String> queries)
+			throws Exception {
+		QueryParser parser = new QueryParser(cat);
+		List<String> plans = new ArrayList<String>();
+		for (String query : queries) {
+			plans.add(optimiser.optimise(parser.parse(new StringReader(query))).toString());
+		}
+		return plans;
+	}
+
+	private static Catalogue catalogue(String file) {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser(file, cat).parse();
+		return cat;
+	}
+
+	private static List<String> readQueries(String file) throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		List<String> queries = new ArrayList<String>();
+		String query;
+		while ((query = BatchRunner.readQuery(reader)) != null) {
+			queries.add(query);
+		}
+		reader.close();
+		return queries;
+	}
+}
@@ -0,0 +1,200 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Executes the canonical plan of each query, and checks that the plans
+ * chosen by the optimiser produce the same tuples with every join ordering
+ * strategy and tree shape, with and without parallel exchanges, and on
+ * both the tuple and batch executors.
+ */
+public class ExecutorTest {
+	private static final int DEGREE = 4;
+
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void setUpClass() {
+		pool = new ForkJoinPool(DEGREE);
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void sampleQueries() throws Exception {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+
+		List<String> queries = new ArrayList<String>();
+		for (int i = 1; i <= 5; i++) {
+			queries.add(readFile("data/q" + i + ".txt"));
+		}
+		queries.add("SELECT persname,projname\nFROM Person,Project,Department\n" +
+				"WHERE persid=manager,dept=deptid\nORDER BY projname,persname");
+		queries.add("SELECT deptname,COUNT(*)\nFROM Person,Project,Department\n" +
+				"WHERE persid=manager,dept=deptid\nGROUP BY deptname");
+		queries.add("SELECT COUNT(*)\nFROM Person,Project\nWHERE age=\"v3\"");
+
+		for (String query : queries) {
+			checkQuery(cat, query);
+		}
+	}
+
+	@Test
+	public void generatedQueries() throws Exception {
+		for (int seed = 0; seed < 24; seed++) {
+			WorkloadGenerator generator = new WorkloadGenerator(seed, 5, 2, 5, 30);
+			Catalogue cat = new Catalogue();
+			generator.populate(cat);
+
+			WorkloadGenerator.Topology topology = WorkloadGenerator.Topology.values()[
+					seed % WorkloadGenerator.Topology.values().length];
+			checkQuery(cat, generator.generateQuery(topology, 3 + seed % 3, 0.3));
+		}
+	}
+
+	@Test
+	public void failedMorsel() throws Exception {
+		Catalogue cat = new Catalogue();
+		NamedRelation relation = cat.createRelation("R", 5 * ParallelPipelineIterator.MORSEL_SIZE);
+		cat.createAttribute("R", "a", 1);
+		Attribute b = cat.createAttribute("R", "b", 1);
+		MemoryTupleSource source = new MemoryTupleSource();
+		for (int i = 0; i < relation.getTupleCount(); i++) {
+			// a short tuple in the middle makes its worker fail
+			source.addTuple("R", i == 2 * ParallelPipelineIterator.MORSEL_SIZE ?
+					new String[] { "1" } : new String[] { "1", "2" });
+		}
+
+		Operator plan = new Exchange(new Project(new Scan(relation), Arrays.asList(b)), DEGREE);
+		new Estimator().estimate(plan);
+		TupleIterator iter = new Executor(source, pool).build(plan);
+		iter.open();
+		try {
+			while (iter.next() != null) {
+				// drain the output
+			}
+			fail("output ended without the failed morsel");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// expected
+		} finally {
+			iter.close();
+		}
+	}
+
+	/**
+	 * Check the optimised plans of a query against its canonical plan
+	 */
+	private void checkQuery(Catalogue cat, String query) throws Exception {
+		TupleSource source = new SyntheticTupleSource();
+		Operator canonical = new QueryParser(cat).parse(new StringReader(query));
+		new Estimator().estimate(canonical);
+		List<Attribute> attributes = canonical.getOutput().getAttributes();
+		List<String> expected = execute(new Executor(source).build(canonical), attributes, canonical);
+
+		for (Optimiser.Strategy strategy : Optimiser.Strategy.values()) {
+			for (JoinEnumerator.Shape shape : JoinEnumerator.Shape.values()) {
+				for (int degree : new int[] { 1, DEGREE }) {
+					Operator plan = new Optimiser(cat, strategy, shape, new JoinPlanner(),
+							new EagerParallelPlanner(degree)).optimise(canonical);
+					String label = strategy + " " + shape + " degree " + degree + "\n" + query + "\n" + plan;
+
+					assertEquals("tuple executor, " + label, expected,
+							execute(new Executor(source, pool).build(plan), attributes, plan));
+					assertEquals("batch executor, " + label, expected,
+							execute(new BatchExecutor(source).buildTuples(plan), attributes, plan));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the output of a plan as a list of tuples, with their values in
+	 * the order of the given attributes. The tuples are sorted unless the
+	 * plan sorts them, in which case they are checked to be in order.
+	 */
+	private static List<String> execute(TupleIterator iter, List<Attribute> attributes, Operator plan)
+			throws Exception {
+		List<Attribute> order = plan instanceof Sort ? ((Sort) plan).getAttributes() : null;
+		List<String> tuples = new ArrayList<String>();
+		List<String> previous = null;
+
+		iter.open();
+		String[] tuple;
+		while ((tuple = iter.next()) != null) {
+			String[] values = new String[attributes.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = tuple[Executor.indexOf(iter.getAttributes(), attributes.get(i))];
+			}
+			tuples.add(Arrays.toString(values));
+
+			if (order != null) {
+				List<String> key = new ArrayList<String>();
+				for (Attribute attribute : order) {
+					key.add(tuple[Executor.indexOf(iter.getAttributes(), attribute)]);
+				}
+				assertTrue("out of order: " + previous + " before " + key,
+						previous == null || compare(previous, key) <= 0);
+				previous = key;
+			}
+		}
+		iter.close();
+
+		Collections.sort(tuples);
+		return tuples;
+	}
+
+	private static int compare(List<String> left, List<String> right) {
+		for (int i = 0; i < left.size(); i++) {
+			int c = Sort.compare(left.get(i), right.get(i));
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private static String readFile(String file) throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		StringBuilder text = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			text.append(line).append('\n');
+		}
+		reader.close();
+		return text.toString();
+	}
+
+	/**
+	 * A parallel planner that adds every exchange it can, however small
+	 * the data, so that the parallel iterators are exercised
+	 */
+	private static class EagerParallelPlanner extends ParallelPlanner {
+		public EagerParallelPlanner(int degree) {
+			super(degree);
+		}
+
+		@Override
+		public boolean pays(long tuples) {
+			return getDegree() > 1;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Builds most common value lists and equi-depth histograms from sampled
+ * columns, and checks the selectivities estimated from them against the
+ * true fractions of the column.
+ */
+public class HistogramTest {
+	private static final int TUPLES = 100000;
+
+	@Test
+	public void uniformColumn() {
+		ColumnSample sample = new ColumnSample(1);
+		Random random = new Random(2);
+		for (int i = 0; i < TUPLES; i++) {
+			sample.add(Integer.toString(random.nextInt(1000)));
+		}
+
+		// values may be listed by chance, but none is much more common than the rest
+		MostCommonValues mostCommon = sample.getMostCommonValues(1000);
+		assertEquals(0, mostCommon == null ? 0 : mostCommon.getTotalFrequency(), 0.05);
+		Histogram histogram = sample.getHistogram(1000, mostCommon);
+		assertEquals(1000, histogram.getValueCount() + (mostCommon == null ? 0 : mostCommon.size()), 50);
+
+		Attribute attr = new Attribute("a");
+		double fraction = histogram.getFraction();
+		assertEquals(0.25, histogram.fraction(new Predicate(attr, Predicate.Comparison.LESS, "250")), 0.05);
+		assertEquals(0.5, histogram.fraction(new Predicate(attr, Predicate.Comparison.GREATER_OR_EQUAL, "500")), 0.05);
+		assertEquals(0.1, histogram.fraction(new Predicate(attr, "100", "199")), 0.02);
+		assertEquals(0.001, histogram.frequency("500"), 0.0005);
+		assertEquals(0, histogram.fraction(new Predicate(attr, Predicate.Comparison.LESS, "-1")), 0);
+		assertEquals(fraction, histogram.fraction(new Predicate(attr, Predicate.Comparison.LESS, "5000")), 1e-9);
+	}
+
+	@Test
+	public void skewedColumn() {
+		ColumnSample sample = new ColumnSample(1);
+		Random random = new Random(2);
+		for (int i = 0; i < TUPLES; i++) {
+			sample.add(random.nextDouble() < 0.3 ? "7" : Integer.toString(random.nextInt(1000)));
+		}
+
+		MostCommonValues mostCommon = sample.getMostCommonValues(1000);
+		assertEquals(0.3, mostCommon.getFrequency("7"), 0.02);
+		Histogram histogram = sample.getHistogram(1000, mostCommon);
+		assertEquals(1 - mostCommon.getTotalFrequency(), histogram.getFraction(), 1e-9);
+
+		// the histogram describes the other 70% of the tuples
+		Attribute attr = new Attribute("a");
+		assertEquals(0.35, histogram.fraction(new Predicate(attr, Predicate.Comparison.LESS, "500")), 0.02);
+	}
+
+	@Test
+	public void fewValues() {
+		ColumnSample sample = new ColumnSample(1);
+		for (int i = 0; i < 1000; i++) {
+			sample.add("v" + (i % 10 < 5 ? 0 : i % 10));
+		}
+
+		// a complete sample of few values lists them all, exactly
+		MostCommonValues mostCommon = sample.getMostCommonValues(6);
+		assertEquals(6, mostCommon.size());
+		assertEquals(0.5, mostCommon.getFrequency("v0"), 0);
+		assertEquals(0.1, mostCommon.getFrequency("v9"), 0);
+		assertEquals(1.0, mostCommon.getTotalFrequency(), 1e-9);
+		assertNull(sample.getHistogram(6, mostCommon));
+	}
+
+	@Test
+	public void mixedColumn() {
+		// numbers mixed with values that start with digits, which
+		// Predicate.compareValues() does not order transitively
+		ColumnSample sample = new ColumnSample(1);
+		Random random = new Random(2);
+		for (int i = 0; i < TUPLES; i++) {
+			String number = Integer.toString(random.nextInt(1000));
+			int kind = random.nextInt(3);
+			sample.add(kind == 0 ? number : kind == 1 ? number + "a" : "x" + number);
+		}
+
+		MostCommonValues mostCommon = sample.getMostCommonValues(3000);
+		Histogram histogram = sample.getHistogram(3000, mostCommon);
+		assertEquals(0, histogram.bucketOf("0"));
+		assertEquals(histogram.getBucketCount() - 1, histogram.bucketOf("x999"));
+		for (String value : new String[] { "12", "12a", "x12" }) {
+			assertTrue(value, histogram.bucketOf(value) >= 0);
+		}
+
+		// the values that start with x come after all the others
+		Attribute attr = new Attribute("a");
+		assertEquals(2.0 / 3, histogram.fraction(new Predicate(attr, Predicate.Comparison.LESS, "x")), 0.05);
+		assertEquals(1.0 / 3, histogram.fraction(new Predicate(attr, Predicate.Comparison.GREATER, "x")), 0.05);
+	}
+
+	@Test
+	public void renderAndParse() {
+		Histogram histogram = new Histogram(new String[] { "1", "10", "10", "50" }, new int[] { 9, 1, 30 }, 0.8);
+		Histogram parsed = Histogram.parse(histogram.render(), 0.8);
+		assertEquals(histogram.render(), parsed.render());
+		assertEquals(40, parsed.getValueCount());
+		assertEquals(0, parsed.bucketOf("10"));
+		assertEquals(2, parsed.bucketOf("11"));
+		assertEquals(-1, parsed.bucketOf("51"));
+
+		MostCommonValues mostCommon = MostCommonValues.parse("a@0.25;b@0.125");
+		assertEquals("a@0.25;b@0.125", mostCommon.render());
+		assertEquals(0.375, mostCommon.getTotalFrequency(), 1e-9);
+		assertEquals(-1, mostCommon.getFrequency("c"), 0);
+	}
+
+	@Test
+	public void estimatedSelections() throws Exception {
+		ColumnSample sample = new ColumnSample(1);
+		Random random = new Random(2);
+		for (int i = 0; i < TUPLES; i++) {
+			sample.add(random.nextDouble() < 0.3 ? "7" : Integer.toString(random.nextInt(1000)));
+		}
+		MostCommonValues mostCommon = sample.getMostCommonValues(1000);
+		Histogram histogram = sample.getHistogram(1000, mostCommon);
+
+		Catalogue cat = new Catalogue();
+		NamedRelation relation = cat.createRelation("R", TUPLES);
+		Attribute attr = cat.createAttribute("R", "a", 1000, mostCommon, histogram);
+
+		assertEquals(0.3 * TUPLES, estimate(new Select(new Scan(relation), new Predicate(attr, "7"))), 0.02 * TUPLES);
+		assertEquals(0.35 * TUPLES, estimate(new Select(new Scan(relation),
+				new Predicate(attr, Predicate.Comparison.GREATER_OR_EQUAL, "500"))), 0.02 * TUPLES);
+		// "7" is below 500, so its tuples are added from the most common values
+		assertEquals(0.65 * TUPLES, estimate(new Select(new Scan(relation),
+				new Predicate(attr, Predicate.Comparison.LESS, "500"))), 0.02 * TUPLES);
+	}
+
+	private static long estimate(Operator plan) {
+		new Estimator().estimate(plan);
+		return plan.getOutput().getTupleCount();
+	}
+}
@@ -0,0 +1,96 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that HyperLogLog sketches count small sets exactly, and estimate
+ * the size of large sets within a few standard errors.
+ */
+public class HyperLogLogTest {
+	/**
+	 * The number of standard errors an estimate may be out by
+	 */
+	private static final double ERRORS = 4;
+
+	@Test
+	public void exactWhileSmall() {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i = 0; i < 2000; i++) {
+			sketch.add("v" + i);
+			sketch.add("v" + i);
+			assertEquals(i + 1, sketch.estimate());
+		}
+	}
+
+	@Test
+	public void errorBounds() {
+		Random random = new Random(1);
+		for (int precision : new int[] { 4, 10, 14, 18 }) {
+			for (int count : new int[] { 100, 10000, 100000, 1000000 }) {
+				HyperLogLog sequential = new HyperLogLog(precision);
+				HyperLogLog randomised = new HyperLogLog(precision);
+				for (int i = 0; i < count; i++) {
+					sequential.add("v" + i);
+					randomised.add(Long.toString(random.nextLong()));
+				}
+				assertWithinBounds(precision, count, sequential.estimate());
+				assertWithinBounds(precision, count, randomised.estimate());
+			}
+		}
+	}
+
+	@Test
+	public void duplicatesAreNotCounted() {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50000; i++) {
+				sketch.add("v" + i);
+			}
+		}
+		assertWithinBounds(HyperLogLog.PRECISION, 50000, sketch.estimate());
+	}
+
+	@Test
+	public void merge() {
+		HyperLogLog left = new HyperLogLog();
+		HyperLogLog right = new HyperLogLog();
+		for (int i = 0; i < 100000; i++) {
+			left.add("v" + i);
+			right.add("v" + (i + 50000));
+		}
+		left.merge(right);
+		assertWithinBounds(HyperLogLog.PRECISION, 150000, left.estimate());
+
+		// small sketches are merged exactly
+		HyperLogLog small = new HyperLogLog();
+		HyperLogLog other = new HyperLogLog();
+		for (int i = 0; i < 100; i++) {
+			small.add("v" + i);
+			other.add("v" + (i + 60));
+		}
+		small.merge(other);
+		assertEquals(160, small.estimate());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mergeDifferentPrecision() {
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void precisionOutOfRange() {
+		new HyperLogLog(19);
+	}
+
+	private static void assertWithinBounds(int precision, long count, long estimate) {
+		double bound = ERRORS * 1.04 / Math.sqrt(1 << precision);
+		double error = Math.abs(estimate - count) / (double) count;
+		assertTrue("precision " + precision + ": estimated " + estimate + " of " + count +
+				" values, error " + error + " > " + bound, error <= bound);
+	}
+}
@@ -0,0 +1,78 @@
+package sjdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Chooses the method of a join between a small and a large relation, and
+ * checks that an index nested loop join is only chosen over an index that
+ * the catalogue declares.
+ */
+public class JoinPlannerTest {
+	private Catalogue cat;
+
+	@Before
+	public void setUp() {
+		this.cat = new Catalogue();
+		this.cat.createRelation("Small", 10);
+		this.cat.createAttribute("Small", "s", 10);
+		this.cat.createRelation("Large", 1000000);
+		this.cat.createAttribute("Large", "id", 1000000);
+		this.cat.createAttribute("Large", "payload", 1000000);
+	}
+
+	@Test
+	public void undeclaredIndex() throws Exception {
+		Join join = plan();
+		assertFalse(join.getMethod() == Join.Method.INDEX_NESTED_LOOP);
+	}
+
+	@Test
+	public void declaredIndex() throws Exception {
+		for (Index.Type type : Index.Type.values()) {
+			setUp();
+			this.cat.createIndex("Large", "id", type);
+
+			Join join = plan();
+			assertEquals(type.toString(), Join.Method.INDEX_NESTED_LOOP, join.getMethod());
+			assertFalse(join.isBuildLeft());
+		}
+	}
+
+	@Test
+	public void indexOverOtherAttribute() throws Exception {
+		this.cat.createIndex("Large", "payload", Index.Type.HASH);
+		Join join = plan();
+		assertFalse(join.getMethod() == Join.Method.INDEX_NESTED_LOOP);
+	}
+
+	@Test
+	public void declaredIndexCostsLess() throws Exception {
+		CostModel costModel = new CostModel(new Estimator());
+		Join join = join();
+		costModel.cost(join);
+		double built = costModel.joinCost(join, Join.Method.INDEX_NESTED_LOOP, false);
+
+		this.cat.createIndex("Large", "id", Index.Type.HASH);
+		join = join();
+		costModel.cost(join);
+		double declared = costModel.joinCost(join, Join.Method.INDEX_NESTED_LOOP, false);
+		assertTrue(built + " <= " + declared, declared < built);
+	}
+
+	private Join join() throws Exception {
+		return new Join(new Scan(this.cat.getRelation("Small")), new Scan(this.cat.getRelation("Large")),
+				new Predicate(this.cat.getAttribute("s"), this.cat.getAttribute("id")));
+	}
+
+	private Join plan() throws Exception {
+		Join join = join();
+		new Estimator().estimate(join);
+		join.accept(new JoinPlanner());
+		return join;
+	}
+}